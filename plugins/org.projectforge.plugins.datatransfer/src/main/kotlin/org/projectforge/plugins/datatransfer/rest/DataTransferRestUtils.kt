@@ -50,15 +50,19 @@ object DataTransferRestUtils {
     byUser: PFUserDO? = null,
     byExternalUser: String? = null,
   ) {
-    AttachmentsRestUtils.multiDownload(
-      response,
-      attachmentsService,
-      attachmentsAccessChecker,
-      areaName,
-      jcrPath,
-      id,
-      attachments,
-    )
+    if (!AttachmentsRestUtils.multiDownload(
+        response,
+        attachmentsService,
+        attachmentsAccessChecker,
+        areaName,
+        jcrPath,
+        id,
+        attachments,
+      )
+    ) {
+      // Download failed (e. g. aborted by client), so no audit entry.
+      return
+    }
     dataTransferAuditDao.insertAudit(
       if (attachments.isNullOrEmpty()) AttachmentsEventType.DOWNLOAD_ALL else AttachmentsEventType.DOWNLOAD_MULTI,
       dbObj,
@@ -39,6 +39,7 @@ import org.projectforge.rest.AttachmentsServicesRest
 import org.projectforge.rest.config.Rest
 import org.projectforge.rest.config.RestUtils
 import org.projectforge.rest.dto.PostData
+import org.projectforge.rest.utils.FileDownloadUtils
 import org.projectforge.ui.ResponseAction
 import org.projectforge.ui.TargetType
 import org.springframework.beans.factory.annotation.Autowired
@@ -83,12 +84,13 @@ class DataTransferPublicServicesRest {
   @GetMapping("download/{category}/{id}")
   fun download(
     request: HttpServletRequest,
+    response: HttpServletResponse,
     @PathVariable("category", required = true) category: String,
     @PathVariable("id", required = true) id: Long,
     @RequestParam("fileId", required = true) fileId: String,
     @RequestParam("listId") listId: String?,
   )
-      : ResponseEntity<*> {
+      : ResponseEntity<*>? {
     check(category == DataTransferPlugin.ID)
     check(listId == AttachmentsService.DEFAULT_NODE)
     val data = dataTransferPublicSession.checkLogin(request, id) ?: return RestUtils.badRequest("No valid login.")
@@ -100,7 +102,21 @@ class DataTransferPublicServicesRest {
     if (!attachmentsAccessChecker.hasDownloadAccess(request, area, fileId)) {
       return RestUtils.badRequest("Download not enabled.")
     }
-    val result =
+    val attachment = attachmentsService.getAttachmentInfoForDownload(
+      dataTransferAreaPagesRest.jcrPath!!,
+      id,
+      fileId,
+      attachmentsAccessChecker,
+    ) ?: throw TechnicalException(
+      "File to download not accessible for user or not found: category=$category, id=$id, fileId=$fileId, listId=$listId)}."
+    )
+    FileDownloadUtils.download(
+      request,
+      response,
+      filename = attachment.name ?: "file",
+      size = attachment.size,
+      checksum = attachment.checksum,
+    ) { startPosition ->
       attachmentsService.getAttachmentInputStream(
         dataTransferAreaPagesRest.jcrPath!!,
         id,
@@ -108,14 +124,11 @@ class DataTransferPublicServicesRest {
         attachmentsAccessChecker,
         data = area,
         attachmentsEventListener = dataTransferAreaDao,
-        userString = getExternalUserString(request, sessionData.userInfo)
-      )
-        ?: throw TechnicalException(
-          "File to download not accessible for user or not found: category=$category, id=$id, fileId=$fileId, listId=$listId)}."
-        )
-    val filename = result.first.fileName ?: "file"
-    val inputStream = result.second
-    return RestUtils.downloadFile(filename, inputStream)
+        userString = getExternalUserString(request, sessionData.userInfo),
+        startPosition = startPosition,
+      )?.second
+    }
+    return null
   }
 
   @GetMapping("downloadAll/{category}/{id}")
@@ -24,7 +24,6 @@
 package org.projectforge.plugins.datatransfer
 
 import mu.KotlinLogging
-import org.apache.commons.io.IOUtils
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Test
 import org.mockito.Mockito
@@ -36,7 +35,6 @@ import org.projectforge.plugins.datatransfer.restPublic.DataTransferPublicSessio
 import org.projectforge.rest.core.PagesResolver
 import org.projectforge.business.test.AbstractTestBase
 import org.springframework.beans.factory.annotation.Autowired
-import org.springframework.core.io.InputStreamResource
 import org.springframework.web.multipart.MultipartFile
 import java.io.ByteArrayInputStream
 import jakarta.annotation.PostConstruct
@@ -207,21 +205,25 @@ class DataTransferPublicAccessTest : AbstractTestBase() {
     dataTransferArea: DataTransferAreaDO,
     fileObject: FileObject,
   ): ByteArray? {
-    val response = try {
+    val response = Mockito.mock(HttpServletResponse::class.java)
+    val servletOutputStream = DataTransferTestService.MyServletOutputStream()
+    Mockito.`when`(response.outputStream).thenReturn(servletOutputStream)
+    try {
       dataTransferPublicServicesRest.download(
         request,
+        response,
         category = DataTransferPlugin.ID,
         id = dataTransferArea.id!!,
         fileId = fileObject.fileId!!,
         listId = AttachmentsService.DEFAULT_NODE,
-      )
+      )?.let {
+        return null // Bad request (no valid login or download not enabled).
+      }
     } catch (ex: Exception) {
       // Not found or no access
       log.info(ex.message, ex)
       return null
     }
-    (response.body as InputStreamResource).inputStream.use {
-      return IOUtils.toByteArray(it)
-    }
+    return servletOutputStream.byteArray.takeIf { it.isNotEmpty() }
   }
 }
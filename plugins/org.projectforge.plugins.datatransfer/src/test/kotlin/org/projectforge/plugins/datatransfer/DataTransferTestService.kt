@@ -24,7 +24,6 @@
 package org.projectforge.plugins.datatransfer
 
 import org.apache.commons.io.FilenameUtils
-import org.apache.commons.io.IOUtils
 import org.mockito.Mockito
 import org.projectforge.framework.jcr.AttachmentsService
 import org.projectforge.framework.persistence.jpa.MyJpaWithExtLibrariesScanner
@@ -46,6 +45,7 @@ import jakarta.annotation.PostConstruct
 import jakarta.servlet.ServletOutputStream
 import jakarta.servlet.WriteListener
 import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
 import jakarta.servlet.http.HttpSession
 
 
@@ -133,8 +133,13 @@ class DataTransferTestService {
     dataTransferArea: DataTransferAreaDO,
     fileObject: FileObject
   ): ByteArray? {
-    val response = try {
+    val response = Mockito.mock(HttpServletResponse::class.java)
+    val servletOutputStream = MyServletOutputStream()
+    Mockito.`when`(response.outputStream).thenReturn(servletOutputStream)
+    try {
       attachmentsServicesRest.download(
+        mockHttpServletRequest(),
+        response,
         DataTransferPlugin.ID,
         dataTransferArea.id!!,
         fileObject.fileId!!,
@@ -144,9 +149,7 @@ class DataTransferTestService {
       // Not found or no access
       return null
     }
-    response.body?.inputStream.use {
-      return IOUtils.toByteArray(it)
-    }
+    return servletOutputStream.byteArray.takeIf { it.isNotEmpty() }
   }
 
   companion object {
@@ -34,6 +34,9 @@ import org.projectforge.framework.utils.NumberHelper;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.SortedMap;
 
 /**
  * @author Kai Reinhard (k.reinhard@micromata.de)
@@ -61,48 +64,20 @@ public class LiquidityForecastCashFlow implements Serializable {
     debits = newBigDecimalArray(nextDays);
     creditsExpected = newBigDecimalArray(nextDays);
     debitsExpected = newBigDecimalArray(nextDays);
-    for (final LiquidityEntry entry : forecast.getEntries()) {
-      final BigDecimal amount = entry.getAmount();
-      if (amount == null) {
-        continue;
-      }
-      final LocalDate dateOfPayment = entry.getDateOfPayment();
-      LocalDate expectedDateOfPayment = entry.getExpectedDateOfPayment();
-      if (expectedDateOfPayment == null) {
-        expectedDateOfPayment = dateOfPayment;
-      }
-      int numberOfDay = 0;
-      if (dateOfPayment != null) {
-        final PFDay dayOfPayment = PFDay.from(dateOfPayment); // not null
-        if (baseDate.isBefore(dayOfPayment) && !baseDate.isSameDay(dayOfPayment)) {
-          numberOfDay = (int) baseDate.daysBetween(dayOfPayment);
-        }
-      }
-      if (numberOfDay >= 0 && numberOfDay < nextDays) {
-        if (amount.compareTo(BigDecimal.ZERO) == 0) {
-          // Zero, nothing to do.
-        } else if (amount.compareTo(BigDecimal.ZERO) > 0) {
-          debits[numberOfDay] = debits[numberOfDay].add(amount);
-        } else {
-          credits[numberOfDay] = credits[numberOfDay].add(amount);
-        }
-      }
-      int numberOfDayExpected = 0;
-      if (expectedDateOfPayment != null) {
-        final PFDay expectedDayOfPayment = PFDay.from(expectedDateOfPayment); // not null
-        if (baseDate.isBefore(expectedDayOfPayment) && !baseDate.isSameDay(expectedDayOfPayment)) {
-          numberOfDayExpected = (int) baseDate.daysBetween(expectedDayOfPayment);
-        }
-      }
-      if (numberOfDayExpected >= 0 && numberOfDayExpected < nextDays) {
-        if (amount.compareTo(BigDecimal.ZERO) == 0) {
-          // Zero, nothing to do.
-        } else if (amount.compareTo(BigDecimal.ZERO) > 0) {
-          debitsExpected[numberOfDayExpected] = debitsExpected[numberOfDayExpected].add(amount);
-        } else {
-          creditsExpected[numberOfDayExpected] = creditsExpected[numberOfDayExpected].add(amount);
-        }
-      }
+    if (nextDays <= 0) {
+      return;
+    }
+    // Only the totals of the days of the given period are needed (entries of days before are summed up in the first day):
+    final LocalDate day0 = baseDate.getLocalDate();
+    final SortedMap<LocalDate, LiquidityForecast.DayTotals> dayTotals = forecast.getDayTotals().headMap(day0.plusDays(nextDays));
+    for (final Map.Entry<LocalDate, LiquidityForecast.DayTotals> entry : dayTotals.entrySet()) {
+      final LocalDate day = entry.getKey();
+      final int numberOfDay = day.isAfter(day0) ? (int) ChronoUnit.DAYS.between(day0, day) : 0;
+      final LiquidityForecast.DayTotals totals = entry.getValue();
+      credits[numberOfDay] = credits[numberOfDay].add(totals.getCredits());
+      debits[numberOfDay] = debits[numberOfDay].add(totals.getDebits());
+      creditsExpected[numberOfDay] = creditsExpected[numberOfDay].add(totals.getCreditsExpected());
+      debitsExpected[numberOfDay] = debitsExpected[numberOfDay].add(totals.getDebitsExpected());
     }
   }
 
@@ -26,10 +26,9 @@ package org.projectforge.plugins.liquidityplanning
 import org.projectforge.business.fibu.*
 import org.projectforge.framework.time.DayHolder
 import org.projectforge.framework.time.PFDay.Companion.from
-import org.projectforge.framework.time.PFDay.Companion.fromOrNull
-import org.projectforge.statistics.IntAggregatedValues
 import org.projectforge.web.WicketSupport
 import java.io.Serializable
+import java.math.BigDecimal
 import java.time.LocalDate
 import java.util.*
 
@@ -40,6 +39,17 @@ class LiquidityForecast() : Serializable {
     private val entries = mutableListOf<LiquidityEntry>()
     private var liquiEntries = mutableListOf<LiquidityEntry>()
 
+    /**
+     * The liquidity entries by id of their [LiquidityEntryDO], for replacing single entries (see [putLiquidityEntry]).
+     */
+    private var liquiEntriesById = mutableMapOf<Long, LiquidityEntry>()
+
+    /**
+     * Sums of the amounts of all entries per day of payment and expected day of payment. Entries without date of
+     * payment are stored under [LocalDate.MIN].
+     */
+    private val dayTotals = TreeMap<LocalDate, DayTotals>()
+
     /**
      * @return the invoices
      */
@@ -51,12 +61,12 @@ class LiquidityForecast() : Serializable {
     /**
      * Used for calculating the expected date of payment for future invoices.
      */
-    private val aggregatedDebitorInvoicesValuesMap: MutableMap<String, IntAggregatedValues> = HashMap()
+    private var aggregatedDebitorInvoicesValuesMap: Map<String, PaymentTimeAggregate> = HashMap()
 
     /**
      * Used for calculating the expected date of payment for future invoices.
      */
-    private val aggregatedCreditorInvoicesValuesMap: MutableMap<String, IntAggregatedValues> = HashMap()
+    private var aggregatedCreditorInvoicesValuesMap: Map<String, PaymentTimeAggregate> = HashMap()
 
     /**
      * @return the creditorInvoices
@@ -87,30 +97,133 @@ class LiquidityForecast() : Serializable {
         entries.addAll(invoicesLiquidityEntries)
         entries.addAll(creditorInvoicesLiquidityEntries)
         sort()
+        dayTotals.clear()
+        entries.forEach { addToDayTotals(it, false) }
         return this
     }
 
     /**
+     * @return A copy of this forecast, which may be modified by [putLiquidityEntry] and [removeLiquidityEntry] without
+     * affecting this forecast (the invoices and the entries itself are shared).
+     */
+    fun copy(): LiquidityForecast {
+        val copy = LiquidityForecast()
+        copy.baseDate = baseDate
+        copy.entries.addAll(entries)
+        copy.liquiEntries = LinkedList(liquiEntries)
+        copy.liquiEntriesById = HashMap(liquiEntriesById)
+        dayTotals.forEach { (day, totals) -> copy.dayTotals[day] = DayTotals(totals) }
+        copy.invoices = invoices
+        copy.invoicesLiquidityEntries = invoicesLiquidityEntries
+        copy.aggregatedDebitorInvoicesValuesMap = aggregatedDebitorInvoicesValuesMap
+        copy.creditorInvoices = creditorInvoices
+        copy.creditorInvoicesLiquidityEntries = creditorInvoicesLiquidityEntries
+        copy.aggregatedCreditorInvoicesValuesMap = aggregatedCreditorInvoicesValuesMap
+        return copy
+    }
+
+    /**
+     * Adds the given liquidity entry or replaces the entry with the same id. Only the sorted entries and the totals of
+     * the days of payment of the old and the new entry are updated, no rebuild is needed.
      * @return this for chaining.
      */
-    private fun sort(): LiquidityForecast {
-        entries.sortWith(Comparator { o1, o2 ->
-            if (o1.dateOfPayment == null) {
-                if (o2.dateOfPayment != null) {
-                    return@Comparator -1
-                }
-            } else if (o2.dateOfPayment == null) {
-                return@Comparator 1
+    fun putLiquidityEntry(liquiEntry: LiquidityEntryDO): LiquidityForecast {
+        val id = liquiEntry.id ?: return this
+        removeLiquidityEntry(id)
+        val entry = createLiquidityEntry(liquiEntry)
+        liquiEntries.add(entry)
+        liquiEntriesById[id] = entry
+        var index = entries.binarySearch(entry, ENTRY_COMPARATOR)
+        if (index < 0) {
+            index = -index - 1
+        }
+        entries.add(index, entry)
+        addToDayTotals(entry, false)
+        return this
+    }
+
+    /**
+     * Removes the liquidity entry with the given id (if present) and updates the totals of its days of payment.
+     * @return this for chaining.
+     */
+    fun removeLiquidityEntry(id: Long): LiquidityForecast {
+        val entry = liquiEntriesById.remove(id) ?: return this
+        liquiEntries.removeIf { it === entry }
+        entries.removeIf { it === entry }
+        addToDayTotals(entry, true)
+        return this
+    }
+
+    /**
+     * Sums of the amounts of all entries per day of payment and expected day of payment (read-only). Entries without
+     * date of payment are stored under [LocalDate.MIN].
+     */
+    fun getDayTotals(): SortedMap<LocalDate, DayTotals> {
+        return Collections.unmodifiableSortedMap(dayTotals)
+    }
+
+    private fun addToDayTotals(entry: LiquidityEntry, remove: Boolean) {
+        val amount = entry.amount ?: return
+        if (amount.signum() == 0) {
+            return // Zero, nothing to do.
+        }
+        val day = entry.dateOfPayment ?: LocalDate.MIN
+        val expectedDay = entry.expectedDateOfPayment ?: day
+        addToDayTotals(day, amount, false, remove)
+        addToDayTotals(expectedDay, amount, true, remove)
+    }
+
+    private fun addToDayTotals(day: LocalDate, amount: BigDecimal, expected: Boolean, remove: Boolean) {
+        val totals = dayTotals.getOrPut(day) { DayTotals() }
+        totals.add(amount, expected, remove)
+        if (totals.numberOfValues == 0) {
+            dayTotals.remove(day)
+        }
+    }
+
+    /**
+     * Sums of credits (negative amounts) and debits (positive amounts) of one day.
+     */
+    class DayTotals() : Serializable {
+        var credits: BigDecimal = BigDecimal.ZERO
+            private set
+        var debits: BigDecimal = BigDecimal.ZERO
+            private set
+        var creditsExpected: BigDecimal = BigDecimal.ZERO
+            private set
+        var debitsExpected: BigDecimal = BigDecimal.ZERO
+            private set
+        internal var numberOfValues = 0
+            private set
+
+        internal constructor(other: DayTotals) : this() {
+            credits = other.credits
+            debits = other.debits
+            creditsExpected = other.creditsExpected
+            debitsExpected = other.debitsExpected
+            numberOfValues = other.numberOfValues
+        }
+
+        internal fun add(amount: BigDecimal, expected: Boolean, remove: Boolean) {
+            val value = if (remove) amount.negate() else amount
+            if (amount.signum() > 0) {
+                if (expected) debitsExpected += value else debits += value
             } else {
-                val compare = o1.dateOfPayment.compareTo(o2.dateOfPayment)
-                if (compare != 0) {
-                    return@Comparator compare
-                }
+                if (expected) creditsExpected += value else credits += value
             }
-            val s1 = if (o1.subject != null) o1.subject else ""
-            val s2 = if (o2.subject != null) o2.subject else ""
-            s1.compareTo(s2)
-        })
+            numberOfValues += if (remove) -1 else 1
+        }
+
+        companion object {
+            private const val serialVersionUID = 4126385513086210497L
+        }
+    }
+
+    /**
+     * @return this for chaining.
+     */
+    private fun sort(): LiquidityForecast {
+        entries.sortWith(ENTRY_COMPARATOR)
         return this
     }
 
@@ -126,20 +239,42 @@ class LiquidityForecast() : Serializable {
         if (list == null) {
             return this
         }
-        val ignorePaidStatus = baseDate?.isBefore(LocalDate.now()) ?: false
+        liquiEntriesById = HashMap()
         for (liquiEntry in list) {
-            val entry = LiquidityEntry()
-            entry.dateOfPayment = liquiEntry.dateOfPayment
-            entry.amount = liquiEntry.amount
-            if (ignorePaidStatus) {
-                entry.isPaid = liquiEntry.dateOfPayment!!.isBefore(baseDate)
-            } else {
-                entry.isPaid = liquiEntry.paid
-            }
-            entry.subject = liquiEntry.subject
-            entry.type = LiquidityEntryType.LIQUIDITY
+            val entry = createLiquidityEntry(liquiEntry)
             liquiEntries.add(entry)
+            liquiEntry.id?.let { liquiEntriesById[it] = entry }
+        }
+        return this
+    }
+
+    private fun createLiquidityEntry(liquiEntry: LiquidityEntryDO): LiquidityEntry {
+        val ignorePaidStatus = baseDate?.isBefore(LocalDate.now()) ?: false
+        val entry = LiquidityEntry()
+        entry.dateOfPayment = liquiEntry.dateOfPayment
+        entry.amount = liquiEntry.amount
+        if (ignorePaidStatus) {
+            entry.isPaid = liquiEntry.dateOfPayment!!.isBefore(baseDate)
+        } else {
+            entry.isPaid = liquiEntry.paid
         }
+        entry.subject = liquiEntry.subject
+        entry.type = LiquidityEntryType.LIQUIDITY
+        return entry
+    }
+
+    /**
+     * Uses the given (incrementally maintained) payment statistics for calculating the expected date of payment of
+     * future invoices instead of calculating them from the paid invoices.<br></br>
+     * Should be called before [.setInvoices]!
+     * @see LiquidityPaymentStatistics
+     */
+    fun setPaymentStatistics(
+        debitorStatistics: Map<String, PaymentTimeAggregate>,
+        creditorStatistics: Map<String, PaymentTimeAggregate>,
+    ): LiquidityForecast {
+        aggregatedDebitorInvoicesValuesMap = debitorStatistics
+        aggregatedCreditorInvoicesValuesMap = creditorStatistics
         return this
     }
 
@@ -153,38 +288,15 @@ class LiquidityForecast() : Serializable {
         if (list == null) {
             return this
         }
+        val kontoCache = WicketSupport.get(KontoCache::class.java)
+        val map = HashMap(aggregatedDebitorInvoicesValuesMap)
         for (invoice in list) {
-            val date = fromOrNull(invoice.datum)
-            val dateOfPayment = fromOrNull(invoice.bezahlDatum)
-            if (date == null || dateOfPayment == null) {
-                continue
-            }
-            val timeForPayment = date.daysBetween(dateOfPayment).toInt()
+            val timeForPayment = LiquidityPaymentStatistics.getTimeForPayment(invoice) ?: continue
             val amount: Int = invoice.info.grossSum.toInt()
             // Store values for different groups:
-            val projectId = invoice.projekt?.id
-            if (projectId != null) {
-                ensureAndAddDebitorPaymentValue("project#$projectId", timeForPayment, amount)
-            }
-            val customerId = invoice.kunde?.nummer
-            if (customerId != null) {
-                ensureAndAddDebitorPaymentValue("customer#$customerId", timeForPayment, amount)
-            }
-            val account = WicketSupport.get(KontoCache::class.java).getKonto(invoice)
-            val accountId = account?.id
-            if (accountId != null) {
-                ensureAndAddDebitorPaymentValue("account#$accountId", timeForPayment, amount)
-            }
-            var customerText = invoice.kundeText
-            if (customerText != null) {
-                customerText = customerText.lowercase()
-                ensureAndAddDebitorPaymentValue("customer:$customerText", timeForPayment, amount)
-                if (customerText.length > 5) {
-                    customerText = customerText.substring(0, 5)
-                }
-                ensureAndAddDebitorPaymentValue("shortCustomer:$customerText", timeForPayment, amount)
-            }
+            addPaymentValue(map, LiquidityPaymentStatistics.getDebitorKeys(invoice, kontoCache), timeForPayment, amount)
         }
+        aggregatedDebitorInvoicesValuesMap = map
         return this
     }
 
@@ -245,13 +357,18 @@ class LiquidityForecast() : Serializable {
         }
     }
 
-    private fun ensureAndAddDebitorPaymentValue(mapId: String, timeForPayment: Int, amount: Int) {
-        var values = aggregatedDebitorInvoicesValuesMap[mapId]
-        if (values == null) {
-            values = IntAggregatedValues()
-            aggregatedDebitorInvoicesValuesMap[mapId] = values
+    private fun addPaymentValue(
+        map: MutableMap<String, PaymentTimeAggregate>,
+        keys: List<String>,
+        timeForPayment: Int,
+        amount: Int
+    ) {
+        keys.forEach { key ->
+            // Copy on write, the values of the given map may be shared with other forecasts:
+            val values = map[key]?.let { PaymentTimeAggregate(it) } ?: PaymentTimeAggregate()
+            values.add(timeForPayment, amount)
+            map[key] = values
         }
-        values.add(timeForPayment, amount)
     }
 
     /**
@@ -264,29 +381,13 @@ class LiquidityForecast() : Serializable {
         if (list == null) {
             return this
         }
+        val map = HashMap(aggregatedCreditorInvoicesValuesMap)
         for (invoice in list) {
-            val date = fromOrNull(invoice.datum)
-            val dateOfPayment = fromOrNull(invoice.bezahlDatum)
-            if (date == null || dateOfPayment == null) {
-                continue
-            }
-            val timeForPayment = date.daysBetween(dateOfPayment).toInt()
+            val timeForPayment = LiquidityPaymentStatistics.getTimeForPayment(invoice) ?: continue
             val amount: Int = invoice.info.grossSum.toInt()
-            val account = invoice.konto
-            val accountId = account?.id
-            if (accountId != null) {
-                ensureAndAddCreditorPaymentValue("account#$accountId", timeForPayment, amount)
-            }
-            var creditorText = invoice.kreditor
-            if (creditorText != null) {
-                creditorText = creditorText.lowercase()
-                ensureAndAddCreditorPaymentValue("creditor:$creditorText", timeForPayment, amount)
-                if (creditorText.length > 5) {
-                    creditorText = creditorText.substring(0, 5)
-                }
-                ensureAndAddCreditorPaymentValue("shortCreditor:$creditorText", timeForPayment, amount)
-            }
+            addPaymentValue(map, LiquidityPaymentStatistics.getCreditorKeys(invoice), timeForPayment, amount)
         }
+        aggregatedCreditorInvoicesValuesMap = map
         return this
     }
 
@@ -337,15 +438,6 @@ class LiquidityForecast() : Serializable {
         }
     }
 
-    private fun ensureAndAddCreditorPaymentValue(mapId: String, timeForPayment: Int, amount: Int) {
-        var values = aggregatedCreditorInvoicesValuesMap[mapId]
-        if (values == null) {
-            values = IntAggregatedValues()
-            aggregatedCreditorInvoicesValuesMap[mapId] = values
-        }
-        values.add(timeForPayment, amount)
-    }
-
     private fun getDate(date: LocalDate?, timeOfPayment: Int): LocalDate {
         val day = from(date!!).plusDays(timeOfPayment.toLong())
         return day.localDate
@@ -426,4 +518,27 @@ class LiquidityForecast() : Serializable {
     fun getCreditorInvoicesLiquidityEntries(): Collection<LiquidityEntry>? {
         return creditorInvoicesLiquidityEntries
     }
+
+    companion object {
+        /**
+         * Sorts by date of payment (entries without date first) and subject.
+         */
+        private val ENTRY_COMPARATOR = Comparator<LiquidityEntry> { o1, o2 ->
+            if (o1.dateOfPayment == null) {
+                if (o2.dateOfPayment != null) {
+                    return@Comparator -1
+                }
+            } else if (o2.dateOfPayment == null) {
+                return@Comparator 1
+            } else {
+                val compare = o1.dateOfPayment.compareTo(o2.dateOfPayment)
+                if (compare != 0) {
+                    return@Comparator compare
+                }
+            }
+            val s1 = if (o1.subject != null) o1.subject else ""
+            val s2 = if (o2.subject != null) o2.subject else ""
+            s1.compareTo(s2)
+        }
+    }
 }
@@ -23,29 +23,125 @@
 
 package org.projectforge.plugins.liquidityplanning
 
+import jakarta.annotation.PostConstruct
 import org.projectforge.business.fibu.*
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.persistence.api.BaseDOModifiedListener
+import org.projectforge.framework.persistence.jpa.PfPersistenceService
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
 import java.time.LocalDate
 
 /**
+ * Builds the liquidity forecasts. The forecast of today is cached per user (the visible invoices depend on the access
+ * rights of the user): it's rebuilt only after modifications of invoices, modifications of liquidity entries are
+ * applied to the cached forecasts incrementally (only the days of payment of the modified entry are recalculated).
+ *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 @Service
-open class LiquidityForecastBuilder {
+open class LiquidityForecastBuilder : BaseDOModifiedListener<LiquidityEntryDO> {
     @Autowired
     private lateinit var eingangsrechnungDao: EingangsrechnungDao
 
     @Autowired
     private lateinit var liquidityEntryDao: LiquidityEntryDao
 
+    @Autowired
+    private lateinit var paymentStatistics: LiquidityPaymentStatistics
+
+    @Autowired
+    private lateinit var persistenceService: PfPersistenceService
+
     @Autowired
     private lateinit var rechnungDao: RechnungDao
 
+    private class CachedForecast(
+        val day: LocalDate,
+        val invoicesVersion: Long,
+        val liquidityEntriesVersion: Long,
+        val forecast: LiquidityForecast,
+    )
+
+    /**
+     * Forecasts of today by user id. The cached forecasts are never modified (copy on write), because they're shared
+     * with the pages displaying them. Only the forecasts of the [MAX_CACHED_FORECASTS] last recently used users are
+     * kept.
+     */
+    private val cachedForecasts = object : LinkedHashMap<Long, CachedForecast>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Long, CachedForecast>): Boolean {
+            return size > MAX_CACHED_FORECASTS
+        }
+    }
+
+    private var liquidityEntriesVersion = 0L
+
+    @PostConstruct
+    private fun postConstruct() {
+        liquidityEntryDao.register(this)
+    }
+
+    /**
+     * Applies the modified liquidity entry to all cached forecasts after the commit of the modification (otherwise a
+     * forecast built concurrently might not contain it, but be considered as up-to-date).
+     */
+    override fun afterInsertOrModify(obj: LiquidityEntryDO, operationType: OperationType) {
+        persistenceService.runAfterCommit { applyLiquidityEntry(obj, operationType) }
+    }
+
+    private fun applyLiquidityEntry(obj: LiquidityEntryDO, operationType: OperationType) {
+        val id = obj.id ?: return
+        val today = LocalDate.now()
+        synchronized(cachedForecasts) {
+            ++liquidityEntriesVersion
+            // Forecasts of former days are outdated anyway:
+            cachedForecasts.values.removeIf { it.day != today }
+            cachedForecasts.entries.forEach { entry ->
+                val cached = entry.value
+                val forecast = cached.forecast.copy()
+                if (obj.deleted || operationType == OperationType.DELETE || obj.paid) {
+                    // Only unpaid entries are part of the forecast of today.
+                    forecast.removeLiquidityEntry(id)
+                } else {
+                    forecast.putLiquidityEntry(obj)
+                }
+                entry.setValue(CachedForecast(cached.day, cached.invoicesVersion, liquidityEntriesVersion, forecast))
+            }
+        }
+    }
+
     /**
      * Calculates expected dates of payments inside the last year (-365 days).
+     * The forecast of today is cached, the returned forecast must not be modified.
      */
     open fun build(baseDate: LocalDate?): LiquidityForecast {
+        val today = LocalDate.now()
+        val userId = ThreadLocalUserContext.loggedInUserId
+        if (baseDate?.isBefore(today) == true || userId == null) {
+            return buildForecast(baseDate)
+        }
+        val invoicesVersion = paymentStatistics.invoicesVersion
+        val entriesVersion: Long
+        synchronized(cachedForecasts) {
+            cachedForecasts[userId]?.let { cached ->
+                if (cached.day == today && cached.invoicesVersion == invoicesVersion
+                    && cached.liquidityEntriesVersion == liquidityEntriesVersion
+                ) {
+                    return cached.forecast
+                }
+            }
+            entriesVersion = liquidityEntriesVersion
+        }
+        val forecast = buildForecast(today)
+        synchronized(cachedForecasts) {
+            // If liquidity entries were modified meanwhile, the versions differ and the forecast will be rebuilt on next call.
+            cachedForecasts[userId] = CachedForecast(today, invoicesVersion, entriesVersion, forecast)
+        }
+        return forecast
+    }
+
+    private fun buildForecast(baseDate: LocalDate?): LiquidityForecast {
         val useBaseDate = baseDate ?: LocalDate.now()
         val forecast = LiquidityForecast()
         // Consider only invoices of the last year:
@@ -74,10 +170,13 @@ open class LiquidityForecastBuilder {
     private fun processInvoices(forecast: LiquidityForecast, baseDate: LocalDate, fromDate: LocalDate, toDate: LocalDate, historicalForecast: Boolean) {
         val rechnungFilter = createRechnungFilter(baseDate, fromDate, toDate, historicalForecast)
         if (!historicalForecast) {
-            rechnungFilter.setShowBezahlt()
-            val paidInvoices = rechnungDao.select(rechnungFilter)
-            forecast.calculateExpectedTimeOfPayments(paidInvoices)
-            rechnungFilter.setShowUnbezahlt() // For next query.
+            // The payment statistics of the paid invoices are maintained incrementally. They're built from all invoices,
+            // so they're only used if the user has access to the debitor or creditor invoices:
+            forecast.setPaymentStatistics(
+                if (rechnungDao.hasLoggedInUserSelectAccess(false)) paymentStatistics.getDebitorStatistics() else emptyMap(),
+                if (eingangsrechnungDao.hasLoggedInUserSelectAccess(false)) paymentStatistics.getCreditorStatistics() else emptyMap(),
+            )
+            rechnungFilter.setShowUnbezahlt()
         }
         val invoices = rechnungDao.select(rechnungFilter).toMutableList()
         handleHistoricalInvoices(invoices, baseDate, historicalForecast)
@@ -87,10 +186,7 @@ open class LiquidityForecastBuilder {
     private fun processCreditorInvoices(forecast: LiquidityForecast, baseDate: LocalDate, fromDate: LocalDate, toDate: LocalDate, historicalForecast: Boolean) {
         val rechnungFilter = createRechnungFilter(baseDate, fromDate, toDate, historicalForecast)
         if (!historicalForecast) {
-            rechnungFilter.setShowBezahlt()
-            val paidInvoices = eingangsrechnungDao.select(rechnungFilter)
-            forecast.calculateExpectedTimeOfCreditorPayments(paidInvoices)
-            rechnungFilter.setShowUnbezahlt() // For next query.
+            rechnungFilter.setShowUnbezahlt() // Payment statistics are already set by processInvoices.
         }
         val invoices = eingangsrechnungDao.select(rechnungFilter).toMutableList()
         handleHistoricalInvoices(invoices, baseDate, historicalForecast)
@@ -118,4 +214,11 @@ open class LiquidityForecastBuilder {
         }
         return filter
     }
+
+    companion object {
+        /**
+         * Maximum number of cached forecasts (one per user).
+         */
+        const val MAX_CACHED_FORECASTS = 20
+    }
 }
@@ -0,0 +1,301 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.liquidityplanning
+
+import jakarta.annotation.PostConstruct
+import mu.KotlinLogging
+import org.projectforge.business.fibu.*
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.persistence.api.BaseDOModifiedListener
+import org.projectforge.framework.persistence.api.QueryFilter
+import org.projectforge.framework.persistence.jpa.PfPersistenceService
+import org.projectforge.framework.time.PFDay
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+import java.time.LocalDate
+import java.util.concurrent.atomic.AtomicLong
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Payment behaviour of debitors and creditors (aggregated times of payment of the paid invoices of the last year),
+ * used for calculating the expected dates of payment of the liquidity forecast.
+ *
+ * All paid invoices are loaded only once a day (the time window moves). Modifications of invoices are applied
+ * incrementally: the modified invoices are marked as dirty and reloaded on next access, their previous contributions
+ * are removed from the aggregated values and their new ones added.
+ */
+@Service
+open class LiquidityPaymentStatistics {
+    @Autowired
+    private lateinit var eingangsrechnungDao: EingangsrechnungDao
+
+    @Autowired
+    private lateinit var kontoCache: KontoCache
+
+    @Autowired
+    private lateinit var persistenceService: PfPersistenceService
+
+    @Autowired
+    private lateinit var rechnungDao: RechnungDao
+
+    private val debitorStatistics = Statistics()
+
+    private val creditorStatistics = Statistics()
+
+    private val invoicesVersionCounter = AtomicLong()
+
+    /**
+     * The day the statistics were loaded completely for (the window of paid invoices is relative to this day).
+     */
+    private var loadedDay: LocalDate? = null
+
+    /**
+     * Incremented on every modification of any debitor or creditor invoice. Useful for detecting, whether forecasts
+     * built before are outdated.
+     */
+    val invoicesVersion: Long
+        get() = invoicesVersionCounter.get()
+
+    /**
+     * @return The aggregated times of payment of the debitor invoices (read-only snapshot).
+     * @see getDebitorKeys
+     */
+    fun getDebitorStatistics(): Map<String, PaymentTimeAggregate> {
+        synchronized(this) {
+            ensureUpToDate()
+            return debitorStatistics.getSnapshot()
+        }
+    }
+
+    /**
+     * @return The aggregated times of payment of the creditor invoices (read-only snapshot).
+     * @see getCreditorKeys
+     */
+    fun getCreditorStatistics(): Map<String, PaymentTimeAggregate> {
+        synchronized(this) {
+            ensureUpToDate()
+            return creditorStatistics.getSnapshot()
+        }
+    }
+
+    @PostConstruct
+    private fun postConstruct() {
+        rechnungDao.register(object : BaseDOModifiedListener<RechnungDO> {
+            override fun afterInsertOrModify(obj: RechnungDO, operationType: OperationType) {
+                persistenceService.runAfterCommit { markDirty(debitorStatistics, obj.id) }
+            }
+        })
+        eingangsrechnungDao.register(object : BaseDOModifiedListener<EingangsrechnungDO> {
+            override fun afterInsertOrModify(obj: EingangsrechnungDO, operationType: OperationType) {
+                persistenceService.runAfterCommit { markDirty(creditorStatistics, obj.id) }
+            }
+        })
+    }
+
+    /**
+     * Called after the commit of the modification, so the reload of the dirty invoices sees the committed state.
+     */
+    private fun markDirty(statistics: Statistics, id: Long?) {
+        invoicesVersionCounter.incrementAndGet()
+        id ?: return
+        synchronized(this) {
+            statistics.dirtyIds.add(id)
+        }
+    }
+
+    private fun ensureUpToDate() {
+        val today = LocalDate.now()
+        if (loadedDay != today) {
+            loadAll(today)
+            return
+        }
+        val fromDate = getFromDate(today)
+        val toDate = getToDate(today)
+        if (debitorStatistics.dirtyIds.isNotEmpty()) {
+            debitorStatistics.dirtyIds.forEach { id ->
+                val invoice = rechnungDao.find(id, checkAccess = false)
+                debitorStatistics.put(id, invoice?.let { getContribution(it, fromDate, toDate) })
+            }
+            log.debug { "Payment statistics of ${debitorStatistics.dirtyIds.size} modified debitor invoices updated." }
+            debitorStatistics.dirtyIds.clear()
+        }
+        if (creditorStatistics.dirtyIds.isNotEmpty()) {
+            creditorStatistics.dirtyIds.forEach { id ->
+                val invoice = eingangsrechnungDao.find(id, checkAccess = false)
+                creditorStatistics.put(id, invoice?.let { getContribution(it, fromDate, toDate) })
+            }
+            log.debug { "Payment statistics of ${creditorStatistics.dirtyIds.size} modified creditor invoices updated." }
+            creditorStatistics.dirtyIds.clear()
+        }
+    }
+
+    private fun loadAll(today: LocalDate) {
+        val fromDate = getFromDate(today)
+        val toDate = getToDate(today)
+        debitorStatistics.clear()
+        rechnungDao.select(createQueryFilter(fromDate, toDate), checkAccess = false).forEach { invoice ->
+            debitorStatistics.put(invoice.id!!, getContribution(invoice, fromDate, toDate))
+        }
+        creditorStatistics.clear()
+        eingangsrechnungDao.select(createQueryFilter(fromDate, toDate), checkAccess = false).forEach { invoice ->
+            creditorStatistics.put(invoice.id!!, getContribution(invoice, fromDate, toDate))
+        }
+        loadedDay = today
+        log.info { "Payment statistics of ${debitorStatistics.size} debitor and ${creditorStatistics.size} creditor invoices loaded." }
+    }
+
+    private fun createQueryFilter(fromDate: LocalDate, toDate: LocalDate): QueryFilter {
+        val queryFilter = QueryFilter()
+        queryFilter.deleted = false
+        queryFilter.add(QueryFilter.between("datum", fromDate, toDate))
+        return queryFilter
+    }
+
+    /**
+     * @return The contribution of the given invoice or null, if the invoice isn't paid, deleted or outside the window.
+     */
+    private fun getContribution(invoice: AbstractRechnungDO, fromDate: LocalDate, toDate: LocalDate): Contribution? {
+        if (invoice.deleted || !invoice.info.isBezahlt) {
+            return null
+        }
+        val date = invoice.datum ?: return null
+        if (date.isBefore(fromDate) || date.isAfter(toDate)) {
+            return null
+        }
+        val timeForPayment = getTimeForPayment(invoice) ?: return null
+        val keys = if (invoice is RechnungDO) getDebitorKeys(invoice, kontoCache) else getCreditorKeys(invoice as EingangsrechnungDO)
+        return Contribution(keys, timeForPayment, invoice.info.grossSum.toInt())
+    }
+
+    private class Contribution(val keys: List<String>, val timeForPayment: Int, val amount: Int)
+
+    /**
+     * Contributions of the single invoices and the aggregated values per key (project, customer, account etc.).
+     */
+    private class Statistics {
+        private val contributions = mutableMapOf<Long, Contribution>()
+
+        private val aggregates = mutableMapOf<String, PaymentTimeAggregate>()
+
+        private var snapshot: Map<String, PaymentTimeAggregate>? = null
+
+        val dirtyIds = mutableSetOf<Long>()
+
+        val size: Int
+            get() = contributions.size
+
+        /**
+         * Replaces the contribution of the given invoice.
+         * @param contribution The new contribution or null, if the invoice doesn't contribute (anymore).
+         */
+        fun put(id: Long, contribution: Contribution?) {
+            contributions.remove(id)?.let { old ->
+                old.keys.forEach { key ->
+                    aggregates[key]?.let { aggregate ->
+                        aggregate.remove(old.timeForPayment, old.amount)
+                        if (aggregate.isEmpty) {
+                            aggregates.remove(key)
+                        }
+                    }
+                }
+                snapshot = null
+            }
+            contribution ?: return
+            contributions[id] = contribution
+            contribution.keys.forEach { key ->
+                aggregates.getOrPut(key) { PaymentTimeAggregate() }.add(contribution.timeForPayment, contribution.amount)
+            }
+            snapshot = null
+        }
+
+        fun clear() {
+            contributions.clear()
+            aggregates.clear()
+            dirtyIds.clear()
+            snapshot = null
+        }
+
+        /**
+         * The snapshot is only copied after modifications, so forecasts may use it without synchronization.
+         */
+        fun getSnapshot(): Map<String, PaymentTimeAggregate> {
+            snapshot?.let { return it }
+            return aggregates.mapValues { PaymentTimeAggregate(it.value) }.also { snapshot = it }
+        }
+    }
+
+    companion object {
+        /**
+         * Only invoices of the last year are considered.
+         */
+        internal fun getFromDate(baseDate: LocalDate): LocalDate {
+            return baseDate.minusMonths(12)
+        }
+
+        internal fun getToDate(baseDate: LocalDate): LocalDate {
+            return baseDate.plusMonths(3)
+        }
+
+        /**
+         * @return The days between date of invoice and date of payment or null, if the invoice isn't paid.
+         */
+        internal fun getTimeForPayment(invoice: AbstractRechnungDO): Int? {
+            val date = PFDay.fromOrNull(invoice.datum) ?: return null
+            val dateOfPayment = PFDay.fromOrNull(invoice.bezahlDatum) ?: return null
+            return date.daysBetween(dateOfPayment).toInt()
+        }
+
+        /**
+         * The keys of the groups the invoice belongs to, in order of precedence: project, customer, account, customer
+         * text and the first 5 characters of the customer text.
+         */
+        internal fun getDebitorKeys(invoice: RechnungDO, kontoCache: KontoCache): List<String> {
+            val keys = mutableListOf<String>()
+            invoice.projekt?.id?.let { keys.add("project#$it") }
+            invoice.kunde?.nummer?.let { keys.add("customer#$it") }
+            kontoCache.getKonto(invoice)?.id?.let { keys.add("account#$it") }
+            invoice.kundeText?.lowercase()?.let { customerText ->
+                keys.add("customer:$customerText")
+                keys.add("shortCustomer:${customerText.take(5)}")
+            }
+            return keys
+        }
+
+        /**
+         * The keys of the groups the invoice belongs to, in order of precedence: account, creditor and the first 5
+         * characters of the creditor.
+         */
+        internal fun getCreditorKeys(invoice: EingangsrechnungDO): List<String> {
+            val keys = mutableListOf<String>()
+            invoice.konto?.id?.let { keys.add("account#$it") }
+            invoice.kreditor?.lowercase()?.let { creditorText ->
+                keys.add("creditor:$creditorText")
+                keys.add("shortCreditor:${creditorText.take(5)}")
+            }
+            return keys
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.liquidityplanning
+
+import java.io.Serializable
+
+/**
+ * Aggregated times of payment (days between date of invoice and date of payment) weighted by the gross amount of the
+ * invoices. In contrast to [org.projectforge.statistics.IntAggregatedValues] values may be removed again, so the
+ * aggregate may be updated incrementally on modifications of invoices.
+ */
+class PaymentTimeAggregate() : Serializable {
+    var numberOfValues = 0
+        private set
+
+    private var weightedSum = 0L
+
+    private var weightSum = 0L
+
+    constructor(other: PaymentTimeAggregate) : this() {
+        numberOfValues = other.numberOfValues
+        weightedSum = other.weightedSum
+        weightSum = other.weightSum
+    }
+
+    /**
+     * The weighted average time of payment in days, or 0 if no value (or only zero weights) was added.
+     */
+    val weightedAverage: Int
+        get() = if (weightSum == 0L) 0 else (weightedSum / weightSum).toInt()
+
+    val isEmpty: Boolean
+        get() = numberOfValues == 0
+
+    fun add(timeForPayment: Int, amount: Int) {
+        ++numberOfValues
+        weightedSum += timeForPayment.toLong() * amount
+        weightSum += amount
+    }
+
+    /**
+     * Removes a value previously added by [add].
+     */
+    fun remove(timeForPayment: Int, amount: Int) {
+        --numberOfValues
+        weightedSum -= timeForPayment.toLong() * amount
+        weightSum -= amount
+    }
+
+    companion object {
+        private const val serialVersionUID = -3427901134720316811L
+    }
+}
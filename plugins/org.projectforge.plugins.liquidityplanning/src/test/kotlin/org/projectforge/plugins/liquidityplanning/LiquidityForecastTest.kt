@@ -0,0 +1,96 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.liquidityplanning
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.math.BigDecimal
+import java.time.LocalDate
+
+class LiquidityForecastTest {
+    @Test
+    fun incrementalUpdateTest() {
+        val entries = mutableListOf(
+            createEntry(1, "2024-10-01", "100.00", "Rent"),
+            createEntry(2, "2024-10-01", "-50.50", "Insurance"),
+            createEntry(3, "2024-10-15", "1000", "Salary"),
+            createEntry(4, null, "-20", "Unknown"),
+        )
+        val forecast = LiquidityForecast().set(entries).build()
+        val expectedTotals = getTotals(forecast)
+
+        val copy = forecast.copy()
+        entries[1] = createEntry(2, "2024-10-20", "-60", "Insurance")
+        copy.putLiquidityEntry(entries[1])
+        entries.add(createEntry(5, "2024-10-15", "42", "Bonus"))
+        copy.putLiquidityEntry(entries[4])
+        entries.removeAt(0)
+        copy.removeLiquidityEntry(1)
+        copy.removeLiquidityEntry(4711) // Unknown entry, nothing to do.
+
+        val rebuilt = LiquidityForecast().set(entries).build()
+        Assertions.assertEquals(getTotals(rebuilt), getTotals(copy))
+        Assertions.assertEquals(rebuilt.getEntries().map { it.subject }, copy.getEntries().map { it.subject })
+        Assertions.assertEquals(listOf("Unknown", "Bonus", "Salary", "Insurance"), copy.getEntries().map { it.subject })
+        Assertions.assertFalse(copy.getDayTotals().containsKey(LocalDate.parse("2024-10-01")), "Day without entries expected to be removed.")
+
+        // Original forecast is unmodified (copy on write):
+        Assertions.assertEquals(expectedTotals, getTotals(forecast))
+        Assertions.assertEquals(4, forecast.getEntries().size)
+    }
+
+    @Test
+    fun paymentTimeAggregateTest() {
+        val aggregate = PaymentTimeAggregate()
+        aggregate.add(10, 1000)
+        aggregate.add(40, 3000)
+        Assertions.assertEquals(32, aggregate.weightedAverage)
+        aggregate.add(100, 500)
+        aggregate.remove(100, 500)
+        Assertions.assertEquals(2, aggregate.numberOfValues)
+        Assertions.assertEquals(32, aggregate.weightedAverage)
+        aggregate.remove(10, 1000)
+        aggregate.remove(40, 3000)
+        Assertions.assertTrue(aggregate.isEmpty)
+        Assertions.assertEquals(0, aggregate.weightedAverage)
+    }
+
+    private fun getTotals(forecast: LiquidityForecast): Map<LocalDate, List<String>> {
+        return forecast.getDayTotals().mapValues { (_, totals) ->
+            listOf(totals.credits, totals.debits, totals.creditsExpected, totals.debitsExpected).map {
+                it.setScale(2).toPlainString()
+            }
+        }
+    }
+
+    private fun createEntry(id: Long, dateOfPayment: String?, amount: String, subject: String): LiquidityEntryDO {
+        val entry = LiquidityEntryDO()
+        entry.id = id
+        entry.dateOfPayment = dateOfPayment?.let { LocalDate.parse(it) }
+        entry.amount = BigDecimal(amount)
+        entry.subject = subject
+        return entry
+    }
+}
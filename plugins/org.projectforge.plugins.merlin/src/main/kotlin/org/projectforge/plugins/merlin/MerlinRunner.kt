@@ -32,6 +32,11 @@ import de.micromata.merlin.word.WordDocument
 import de.micromata.merlin.word.templating.*
 import fr.opensagres.poi.xwpf.converter.pdf.PdfConverter
 import fr.opensagres.poi.xwpf.converter.pdf.PdfOptions
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import mu.KotlinLogging
 import org.apache.commons.io.FilenameUtils
 import org.projectforge.business.user.UserGroupCache
@@ -57,11 +62,13 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
 import java.io.InputStream
 import java.math.RoundingMode
 import java.util.*
 import java.util.zip.ZipEntry
-import java.util.zip.ZipInputStream
 import java.util.zip.ZipOutputStream
 
 
@@ -115,102 +122,200 @@ open class MerlinRunner {
   }
 
   /**
+   * Reads and validates the Excel serial file and loads the Word® template. The documents will be generated by
+   * [runSerialExecution] (e. g. by a [MerlinSerialExecutionJob]).
    * @param id Id of the MerlinTemplateDO
    * @param istream Inputstream of Excel serial file.
-   * @return Pair of filename and byte array representing the zip file containing all generated word documents.
+   * @return The prepared serial execution or null, if the given file isn't a valid serial execution file.
    */
-  fun serialExecuteTemplate(id: Long, filename: String, istream: InputStream): Pair<String, ByteArray>? {
+  fun prepareSerialExecution(id: Long, filename: String, istream: InputStream): SerialExecution? {
     if (!filename.endsWith("xlsx") && !filename.endsWith(".xls")) {
       log.error { "Only Excel files are supported for serial execution. Unsupported file: '$filename'" }
       return null
     }
     val lastLogNumber = MerlinPlugin.ensureUserLogSubscription().lastEntryNumber
-    var serialData: SerialData?
     val analysis = merlinHandler.analyze(id)
     val templateDefinition = analysis.statistics.templateDefinition
     val dto = analysis.dto
-    val wordDocument = merlinHandler.getWordTemplateToCloseOnYourOwn(id) ?: return null
-    wordDocument.use { doc ->
-      val excelByteArray: ByteArray
-      istream.use {
-        excelByteArray = it.readAllBytes()
-      }
-      ByteArrayInputStream(excelByteArray).use { xlsIstream ->
-        ExcelWorkbook(xlsIstream, filename).use { workbook ->
-          if (!SerialDataExcelReader.isMerlinSerialRunDefinition(workbook)) {
-            return null
-          }
-          val reader = SerialDataExcelReader(workbook)
-          initTemplateRunContext(reader.templateRunContext)
-          val data = reader.serialData
-          data.templateDefinition = templateDefinition
-          data.template = analysis.statistics.template
-          data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE))
-          data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_DESC))
-          data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_AS_PDF))
-          data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_AS_PDF_DESC))
-          reader.readVariables(data.template.statistics)
-
-          val validatedEntries = mutableListOf<Variables>()
-          data.entries.forEachIndexed { index, variables ->
-            var error = false
-            // Validate each set of variables (one set per document to generate):
-            dto.variables.filter { it.input }.forEach { variable ->
-              variable.validate(variables.get(variable.name))?.let { errorMsg ->
-                log.error { "Document #$index: $errorMsg" }
-                error = true
-              }
-            }
-            if (!error) {
-              validatedEntries.add(variables)
+    val wordDocumentResult = merlinHandler.getWordTemplateInputStream(id) ?: return null
+    val wordTemplateByteArray = wordDocumentResult.second.use { it.readAllBytes() }
+    val excelByteArray: ByteArray
+    istream.use {
+      excelByteArray = it.readAllBytes()
+    }
+    ByteArrayInputStream(excelByteArray).use { xlsIstream ->
+      ExcelWorkbook(xlsIstream, filename).use { workbook ->
+        if (!SerialDataExcelReader.isMerlinSerialRunDefinition(workbook)) {
+          return null
+        }
+        val reader = SerialDataExcelReader(workbook)
+        initTemplateRunContext(reader.templateRunContext)
+        val data = reader.serialData
+        data.templateDefinition = templateDefinition
+        data.template = analysis.statistics.template
+        data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE))
+        data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_DESC))
+        data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_AS_PDF))
+        data.template.statistics.inputVariables.add(VariableDefinition(PERSONAL_BOX_VARIABLE_AS_PDF_DESC))
+        reader.readVariables(data.template.statistics)
+
+        val validatedEntries = mutableListOf<Variables>()
+        data.entries.forEachIndexed { index, variables ->
+          var error = false
+          // Validate each set of variables (one set per document to generate):
+          dto.variables.filter { it.input }.forEach { variable ->
+            variable.validate(variables.get(variable.name))?.let { errorMsg ->
+              log.error { "Document #$index: $errorMsg" }
+              error = true
             }
           }
-          data.entries = validatedEntries
+          if (!error) {
+            validatedEntries.add(variables)
+          }
+        }
+        data.entries = validatedEntries
+        return SerialExecution(
+          templateId = id,
+          dto = dto,
+          serialData = data,
+          excelFilename = filename,
+          excelByteArray = excelByteArray,
+          wordTemplateFilename = wordDocumentResult.first.fileName ?: "untitled.docx",
+          wordTemplateByteArray = wordTemplateByteArray,
+          lastLogNumber = lastLogNumber,
+        )
+      }
+    }
+  }
 
-          serialData = data
+  /**
+   * Generates all documents of the given serial execution. The documents are rendered (and converted to pdf, if
+   * required) in parallel by a bounded number of workers and are written in the order of the serial file directly
+   * to the given zip file. So the memory usage is independent of the number of documents.
+   * Drops files in receiver's personal box (DataTransfer) if configured, adds log view events as Excel file and the
+   * serial Excel file itself to the zip archive. Finally, the zip archive is put in the personal box of the
+   * logged-in user.
+   * @param isActive Checked for every document, the generation stops if false (cancellation).
+   * @param progress Called with the number of documents written so far.
+   * @return false, if cancelled.
+   */
+  suspend fun runSerialExecution(
+    execution: SerialExecution,
+    zipFile: File,
+    isActive: () -> Boolean,
+    progress: (Int) -> Unit,
+  ): Boolean {
+    val serialData = execution.serialData
+    val dto = execution.dto
+    val receivers = getPersonalBoxReceivers(serialData, dto)
+    val usedFilenames = mutableSetOf<String>()
+    var counter = 0
+    ZipOutputStream(FileOutputStream(zipFile)).use { zipOut ->
+      val writeDocument = { document: RenderedDocument ->
+        val filename = getUniqueFilename(document.filename, usedFilenames)
+        zipOut.putNextEntry(ZipEntry(filename))
+        zipOut.write(document.wordBytes)
+        zipOut.closeEntry()
+        document.pdfDocument?.let { pdf ->
+          val pdfFilename = "${FilenameUtils.getBaseName(filename)}.pdf"
+          zipOut.putNextEntry(ZipEntry(pdfFilename))
+          zipOut.write(pdf.content)
+          zipOut.closeEntry()
+        }
+        receivers?.get(document.index)?.let { (docReceiver, pdfReceiver) ->
+          sendToPersonalBox(docReceiver, pdfReceiver, filename, document.wordBytes, document.pdfDocument)
         }
+        progress(++counter)
       }
-      val runner = SerialTemplateRunner(serialData, doc)
-      var zipByteArray: ByteArray = runner.run(filename)
-      zipByteArray = postProcessSerialDocuments(
-        zipByteArray,
-        excelByteArray,
-        filename,
-        serialData!!,
-        dto,
-        lastLogNumber,
-        dto.pdfExport == true
-      )
-      if (merlinHandler.dataTransferPluginAvailable()) {
-        val receiver = ThreadLocalUserContext.loggedInUser!!
-        val personalBox = dataTransferAreaDao.ensurePersonalBox(receiver.id!!)
-        val personalBoxFilename = "${DateHelper.getFilenameFormatTimestamp(ThreadLocalUserContext.timeZone).format(Date())}_${runner.zipFilename}"
-        personalBox?.let {
-          val description = translate("plugins.merlin.template.dataTransferUsage.resultZip")
-          try {
+      coroutineScope {
+        val pending = ArrayDeque<Deferred<RenderedDocument>>()
+        serialData.entries.forEachIndexed { index, variables ->
+          if (!isActive()) {
+            pending.forEach { it.cancel() }
+            return@coroutineScope
+          }
+          val pdf = dto.pdfExport == true || receivers?.get(index)?.second?.user != null
+          pending.add(async(serialExecutionDispatcher) { renderDocument(execution, variables, index, pdf) })
+          if (pending.size >= MAX_PENDING_DOCUMENTS) {
+            writeDocument(pending.removeFirst().await())
+          }
+        }
+        while (pending.isNotEmpty()) {
+          writeDocument(pending.removeFirst().await())
+        }
+      }
+      if (!isActive()) {
+        log.info { "Serial execution of '${dto.name}' cancelled after $counter documents." }
+        return false
+      }
+      writeLogsAndSerialFile(zipOut, execution)
+    }
+    log.info { "Serial execution of '${dto.name}': $counter documents written to zip file of size ${FormatterUtils.formatBytes(zipFile.length())}." }
+    if (merlinHandler.dataTransferPluginAvailable()) {
+      val receiver = ThreadLocalUserContext.loggedInUser!!
+      val personalBox = dataTransferAreaDao.ensurePersonalBox(receiver.id!!)
+      val personalBoxFilename =
+        "${DateHelper.getFilenameFormatTimestamp(ThreadLocalUserContext.timeZone).format(Date())}_${execution.zipFilename}"
+      personalBox?.let {
+        val description = translate("plugins.merlin.template.dataTransferUsage.resultZip")
+        val size = zipFile.length()
+        try {
+          FileInputStream(zipFile).use { istream ->
             attachmentsService.addAttachment(
               dataTransferAreaPagesRest.jcrPath!!,
               fileInfo = FileInfo(
                 personalBoxFilename,
-                fileSize = zipByteArray.size.toLong(),
+                fileSize = size,
                 description = description
               ),
-              content = zipByteArray,
+              inputStream = istream,
               baseDao = dataTransferAreaDao,
               obj = it,
               accessChecker = dataTransferAreaPagesRest.attachmentsAccessChecker,
             )
-            log.info("Document '${personalBoxFilename}' of size ${FormatterUtils.formatBytes(zipByteArray.size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '$description'.")
-          } catch (ex: Exception) {
-            log.error(
-              "Can't put document '${personalBoxFilename}' of size ${FormatterUtils.formatBytes(zipByteArray.size)} into user '${receiver.userDisplayName}' personal box: ${ex.message}",
-              ex
-            )
           }
+          log.info("Document '${personalBoxFilename}' of size ${FormatterUtils.formatBytes(size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '$description'.")
+        } catch (ex: Exception) {
+          log.error(
+            "Can't put document '${personalBoxFilename}' of size ${FormatterUtils.formatBytes(size)} into user '${receiver.userDisplayName}' personal box: ${ex.message}",
+            ex
+          )
         }
       }
-      return Pair(runner.zipFilename, zipByteArray)
     }
+    return true
+  }
+
+  /**
+   * Renders one document of a serial execution. Every call works on its own copy of the Word® template, so calls
+   * may run in parallel.
+   */
+  private fun renderDocument(
+    execution: SerialExecution,
+    variables: Variables,
+    index: Int,
+    pdf: Boolean
+  ): RenderedDocument {
+    ByteArrayInputStream(execution.wordTemplateByteArray).use { istream ->
+      WordDocument(istream, execution.wordTemplateFilename).use { doc ->
+        val runner = WordTemplateRunner(execution.serialData.templateDefinition, doc)
+        val result = runner.run(variables)
+        val filename = runner.createFilename(execution.dto.fileNamePattern, variables)
+        val wordBytes = result.asByteArrayOutputStream.toByteArray()
+        log.info { "Document #${index + 1} created: $filename" }
+        val pdfDocument = if (pdf) convertToPdf(wordBytes, filename) else null
+        return RenderedDocument(index, filename, wordBytes, pdfDocument)
+      }
+    }
+  }
+
+  private fun getUniqueFilename(filename: String, usedFilenames: MutableSet<String>): String {
+    var result = filename
+    var counter = 1
+    while (!usedFilenames.add(result)) {
+      result = "${FilenameUtils.getBaseName(filename)}_${++counter}.${FilenameUtils.getExtension(filename)}"
+    }
+    return result
   }
 
   /**
@@ -285,91 +390,48 @@ open class MerlinRunner {
   }
 
   /**
-   * Drops files in receiver's personal box (DataTransfer) if configured and adds log view events as Excel
-   * file to zip archive.
+   * Adds log view events as Excel file and the serial Excel file itself to the zip archive.
    */
-  private fun postProcessSerialDocuments(
-    zipByteArray: ByteArray,
-    excelByteArray: ByteArray,
-    excelFilename: String,
-    serialData: SerialData,
-    dto: MerlinTemplate,
-    lastLogNumber: Long?,
-    pdfExport: Boolean,
-  ): ByteArray {
-    val convertedPdfDocuments = processPersonalBoxOfReceivers(zipByteArray, serialData, dto)
-    ZipInputStream(ByteArrayInputStream(zipByteArray)).use { zipInputStream ->
-      ByteArrayOutputStream().use { baos ->
-        ZipOutputStream(baos).use { zipOut ->
-          var zipEntry = zipInputStream.nextEntry
-          while (zipEntry != null) {
-            val clonedZipEntry = zipEntry.clone() as ZipEntry
-            zipOut.putNextEntry(clonedZipEntry)
-            if (!zipEntry.isDirectory) {
-              val ba = zipInputStream.readAllBytes()
-              zipOut.write(ba)
-              if (zipEntry.name.endsWith(".docx")) {
-                // Test if filename was already generated to put in user's personal data transfer box:
-                var pdfFile = convertedPdfDocuments.find {
-                  FilenameUtils.getBaseName(it.filename) == FilenameUtils.getBaseName(zipEntry.name)
-                }
-                if (pdfFile == null && pdfExport) {
-                  // pdfExport is demanded, so generate it:
-                  pdfFile = convertToPdf(ba, zipEntry.name)
-                }
-                if (pdfFile != null) {
-                  zipOut.closeEntry()
-                  zipOut.putNextEntry(ZipEntry(pdfFile.filename))
-                  zipOut.write(pdfFile.content)
-                }
-              }
-            }
-            zipOut.closeEntry()
-            zipEntry = zipInputStream.nextEntry
-          }
-          zipInputStream.closeEntry()
-
-          ExcelUtils.prepareWorkbook().use { workbook ->
-            val sheet = workbook.createOrGetSheet(translate("plugins.merlin.export.logging.excel.sheetName"))
-            ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "isoTimestamp", 20)
-            ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "level", 6)
-            ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "message", 100)
-            ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "loggerName", 60)
-            val boldFont = workbook.createOrGetFont("bold", bold = true)
-            val boldStyle = workbook.createOrGetCellStyle("hr", font = boldFont)
-            val headRow = sheet.createRow() // second row as head row.
-            sheet.columnDefinitions.forEachIndexed { index, it ->
-              headRow.getCell(index).setCellValue(it.columnHeadname).setCellStyle(boldStyle)
-            }
-            val logs =
-              MerlinPlugin.ensureUserLogSubscription()
-                .query(LogFilter(lastReceivedLogOrderNumber = lastLogNumber, maxSize = 10000))
-                .sortedBy { it.id } // In ascending order.
-            logs.forEach { logEntry ->
-              val row = sheet.createRow()
-              ExcelUtils.autoFill(row, logEntry)
-            }
-            val logViewerBytes = workbook.asByteArrayOutputStream.toByteArray()
-            val logViewerEntry = ZipEntry("${translate("plugins.merlin.export.logging.excel.logBaseFilename")}.xlsx")
-            zipOut.putNextEntry(logViewerEntry)
-            zipOut.write(logViewerBytes)
-            zipOut.closeEntry()
-          }
-          zipOut.putNextEntry(ZipEntry(excelFilename))
-          zipOut.write(excelByteArray)
-          zipOut.closeEntry()
-        }
-        return baos.toByteArray()
+  private fun writeLogsAndSerialFile(zipOut: ZipOutputStream, execution: SerialExecution) {
+    ExcelUtils.prepareWorkbook().use { workbook ->
+      val sheet = workbook.createOrGetSheet(translate("plugins.merlin.export.logging.excel.sheetName"))
+      ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "isoTimestamp", 20)
+      ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "level", 6)
+      ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "message", 100)
+      ExcelUtils.registerColumn(sheet, LoggingEventData::class.java, "loggerName", 60)
+      val boldFont = workbook.createOrGetFont("bold", bold = true)
+      val boldStyle = workbook.createOrGetCellStyle("hr", font = boldFont)
+      val headRow = sheet.createRow() // second row as head row.
+      sheet.columnDefinitions.forEachIndexed { index, it ->
+        headRow.getCell(index).setCellValue(it.columnHeadname).setCellStyle(boldStyle)
+      }
+      val logs =
+        MerlinPlugin.ensureUserLogSubscription()
+          .query(LogFilter(lastReceivedLogOrderNumber = execution.lastLogNumber, maxSize = 10000))
+          .sortedBy { it.id } // In ascending order.
+      logs.forEach { logEntry ->
+        val row = sheet.createRow()
+        ExcelUtils.autoFill(row, logEntry)
       }
+      val logViewerBytes = workbook.asByteArrayOutputStream.toByteArray()
+      val logViewerEntry = ZipEntry("${translate("plugins.merlin.export.logging.excel.logBaseFilename")}.xlsx")
+      zipOut.putNextEntry(logViewerEntry)
+      zipOut.write(logViewerBytes)
+      zipOut.closeEntry()
     }
+    zipOut.putNextEntry(ZipEntry(execution.excelFilename))
+    zipOut.write(execution.excelByteArray)
+    zipOut.closeEntry()
   }
 
-  private fun processPersonalBoxOfReceivers(
-    zipByteArray: ByteArray,
+  /**
+   * @return The receivers of the Word® and pdf documents (by index of the serial entry), or null if no
+   * #PersonalBox value or #PersonalBoxAsPdf is given or any receiver isn't valid.
+   */
+  private fun getPersonalBoxReceivers(
     serialData: SerialData,
     dto: MerlinTemplate
-  ): List<PDFDocument> {
-    val pdfDocuments = mutableListOf<PDFDocument>()
+  ): List<Pair<PersonalBoxReceiver, PersonalBoxReceiver>>? {
     if (serialData.entries.none {
         val personalBoxVariable = it.get(PERSONAL_BOX_VARIABLE)
         val personalBoxUsed =
@@ -382,142 +444,113 @@ open class MerlinRunner {
         personalBoxUsed || personalBoxAsPdfUsed
       }) {
       // No #PersonalBox value or #PersonalBoxAsPdf given. Nothing to do.
-      return pdfDocuments
+      return null
     }
     if (!merlinHandler.dataTransferPluginAvailable()) {
       log.error { "No DataTransfer activated, can't use personal box. Please contact your administrator to activate the plugin 'DataTransfer'." }
-      return pdfDocuments
+      return null
     }
     log.info { "Using $PERSONAL_BOX_VARIABLE/$PERSONAL_BOX_VARIABLE_AS_PDF for sending documents via DataTransfer." }
     // First, check all usernames:
-    val docReceivers = mutableListOf<PersonalBoxReceiver>()
-    val pdfReceivers = mutableListOf<PersonalBoxReceiver>()
+    val receivers = mutableListOf<Pair<PersonalBoxReceiver, PersonalBoxReceiver>>()
     var validUsernames = true
     serialData.entries.forEachIndexed { index, variables ->
       val personalBoxUserResult = getUser(variables.get(PERSONAL_BOX_VARIABLE))
       val docReceiver = personalBoxUserResult.second
       val personalBoxAsPdfUserResult = getUser(variables.get(PERSONAL_BOX_VARIABLE_AS_PDF))
       val pdfReceiver = personalBoxAsPdfUserResult.second
-      var error = false
       if (!personalBoxUserResult.first || !personalBoxAsPdfUserResult.first) {
         validUsernames = false
-      } else {
-        dto.variables.filter { it.input }.forEach { variable ->
-          if (!error) { // Log only first validation error.
-            variable.validate(variables.get(variable.name))?.let { errorMsg ->
-              log.error { "Not sending anything to receiver '${docReceiver?.getFullname() ?: pdfReceiver?.getFullname()}' due to validation error of variable '${variable.name}': $errorMsg" }
-              error = true
-            }
-          }
-        }
       }
-      if (!error) {
-        docReceivers.add(PersonalBoxReceiver(docReceiver, variables, PERSONAL_BOX_VARIABLE_DESC, index))
-        pdfReceivers.add(PersonalBoxReceiver(pdfReceiver, variables, PERSONAL_BOX_VARIABLE_AS_PDF_DESC, index))
-        if (docReceiver != null && pdfReceiver != null && docReceiver != pdfReceiver) {
-          validUsernames = false
-          log.error { "Can't send Word® file and PDF file to different users: '${docReceiver.getFullname()}' != '${pdfReceiver.getFullname()}'!" }
-        }
+      receivers.add(
+        Pair(
+          PersonalBoxReceiver(docReceiver, variables, PERSONAL_BOX_VARIABLE_DESC, index),
+          PersonalBoxReceiver(pdfReceiver, variables, PERSONAL_BOX_VARIABLE_AS_PDF_DESC, index),
+        )
+      )
+      if (docReceiver != null && pdfReceiver != null && docReceiver != pdfReceiver) {
+        validUsernames = false
+        log.error { "Can't send Word® file and PDF file to different users: '${docReceiver.getFullname()}' != '${pdfReceiver.getFullname()}'!" }
       }
     }
     if (!validUsernames) {
       log.error { "Errors for personal box users occurred. No document will be send to any personal user box. Aborting." }
-      return pdfDocuments
+      return null
     }
-    var counter = 0
-    ZipInputStream(ByteArrayInputStream(zipByteArray)).use { zipInputStream ->
-      var zipEntry = zipInputStream.nextEntry
-      while (zipEntry != null) {
-        if (zipEntry.isDirectory) {
-          continue
-        }
-        zipEntry = zipInputStream.nextEntry
-        ++counter
-      }
-      zipInputStream.closeEntry()
+    return receivers
+  }
+
+  /**
+   * Puts the generated Word® document and/or the pdf document in the personal box of the receiver.
+   */
+  private fun sendToPersonalBox(
+    docReceiver: PersonalBoxReceiver,
+    pdfReceiver: PersonalBoxReceiver,
+    filename: String,
+    wordBytes: ByteArray,
+    pdfDocument: PDFDocument?,
+  ) {
+    if (docReceiver.user == null && pdfReceiver.user == null) {
+      return
     }
-    if (counter != docReceivers.size || pdfReceivers.size != counter) {
-      log.warn { "Oups, number of generated Word documents doesn't match number of personal box receivers. Aborting: Don't send any document to any personal user's box." }
-      return pdfDocuments
+    val receiver = if (docReceiver.user != null) {
+      docReceiver
+    } else {
+      pdfReceiver
     }
-    counter = 0
-    ZipInputStream(ByteArrayInputStream(zipByteArray)).use { zipInputStream ->
-      var zipEntry = zipInputStream.nextEntry
-      while (zipEntry != null) {
-        if (zipEntry.isDirectory) {
-          continue
+    try {
+      val personalBox = dataTransferAreaDao.ensurePersonalBox(receiver.userId)
+      if (personalBox == null) {
+        log.error { "Can't get personal box of user '${receiver.userFullname}. Skipping user." }
+        return
+      }
+      if (docReceiver.user != null) {
+        try {
+          attachmentsService.addAttachment(
+            dataTransferAreaPagesRest.jcrPath!!,
+            fileInfo = FileInfo(
+              filename,
+              fileSize = wordBytes.size.toLong(),
+              description = docReceiver.attachmentDescription
+            ),
+            content = wordBytes,
+            baseDao = dataTransferAreaDao,
+            obj = personalBox,
+            accessChecker = dataTransferAreaPagesRest.attachmentsAccessChecker,
+          )
+          log.info("Document '$filename' of size ${FormatterUtils.formatBytes(wordBytes.size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '${docReceiver.attachmentDescription}'.")
+        } catch (ex: Exception) {
+          log.error(
+            "Can't put document '$filename' of size ${FormatterUtils.formatBytes(wordBytes.size)} into user '${receiver.userFullname}' personal box: ${ex.message}",
+            ex
+          )
         }
-        val docReceiver = docReceivers[counter]
-        val pdfReceiver = pdfReceivers[counter++]
-        if (docReceiver.user != null || pdfReceiver.user != null) {
-          val receiver = if (docReceiver.user != null) {
-            docReceiver
-          } else {
-            pdfReceiver
-          }
-          try {
-            zipEntry.name
-            val personalBox = dataTransferAreaDao.ensurePersonalBox(receiver.userId)
-            if (personalBox == null) {
-              log.error { "Can't get personal box of user '${receiver.userFullname}. Skipping user." }
-              continue
-            }
-            val wordBytes = zipInputStream.readAllBytes()
-            if (docReceiver.user != null) {
-              try {
-                attachmentsService.addAttachment(
-                  dataTransferAreaPagesRest.jcrPath!!,
-                  fileInfo = FileInfo(
-                    zipEntry.name,
-                    fileSize = zipEntry.size,
-                    description = docReceiver.attachmentDescription
-                  ),
-                  content = wordBytes,
-                  baseDao = dataTransferAreaDao,
-                  obj = personalBox,
-                  accessChecker = dataTransferAreaPagesRest.attachmentsAccessChecker,
-                )
-                log.info("Document '${zipEntry.name}' of size ${FormatterUtils.formatBytes(wordBytes.size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '${docReceiver.attachmentDescription}'.")
-              } catch (ex: Exception) {
-                log.error(
-                  "Can't put document '${zipEntry.name}' of size ${FormatterUtils.formatBytes(wordBytes.size)} into user '${receiver.userFullname}' personal box: ${ex.message}",
-                  ex
-                )
-              }
-            }
-            if (pdfReceiver.user != null) {
-              val pdfDocument = convertToPdf(wordBytes, zipEntry.name)
-              pdfDocuments.add(pdfDocument)
-              try {
-                attachmentsService.addAttachment(
-                  dataTransferAreaPagesRest.jcrPath!!,
-                  fileInfo = FileInfo(
-                    pdfDocument.filename,
-                    fileSize = pdfDocument.content.size.toLong(),
-                    description = pdfReceiver.attachmentDescription
-                  ),
-                  content = pdfDocument.content,
-                  baseDao = dataTransferAreaDao,
-                  obj = personalBox,
-                  accessChecker = dataTransferAreaPagesRest.attachmentsAccessChecker,
-                )
-                log.info("Document '${pdfDocument.filename}' of size ${FormatterUtils.formatBytes(pdfDocument.content.size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '${pdfReceiver.attachmentDescription}'.")
-              } catch (ex: Exception) {
-                log.error(
-                  "Can't put document '${pdfDocument.filename}' of size ${FormatterUtils.formatBytes(pdfDocument.content.size)} into user '${receiver.userFullname}' personal box: ${ex.message}",
-                  ex
-                )
-              }
-            }
-          } catch (ex: Exception) {
-            log.error("Can't put document into user '${receiver.userFullname}' personal box: ${ex.message}", ex)
-          }
+      }
+      if (pdfReceiver.user != null && pdfDocument != null) {
+        try {
+          attachmentsService.addAttachment(
+            dataTransferAreaPagesRest.jcrPath!!,
+            fileInfo = FileInfo(
+              pdfDocument.filename,
+              fileSize = pdfDocument.content.size.toLong(),
+              description = pdfReceiver.attachmentDescription
+            ),
+            content = pdfDocument.content,
+            baseDao = dataTransferAreaDao,
+            obj = personalBox,
+            accessChecker = dataTransferAreaPagesRest.attachmentsAccessChecker,
+          )
+          log.info("Document '${pdfDocument.filename}' of size ${FormatterUtils.formatBytes(pdfDocument.content.size)} put in the personal box (DataTransfer) of '${receiver.userDisplayName}' with description '${pdfReceiver.attachmentDescription}'.")
+        } catch (ex: Exception) {
+          log.error(
+            "Can't put document '${pdfDocument.filename}' of size ${FormatterUtils.formatBytes(pdfDocument.content.size)} into user '${receiver.userFullname}' personal box: ${ex.message}",
+            ex
+          )
         }
-        zipEntry = zipInputStream.nextEntry
       }
-      zipInputStream.closeEntry()
+    } catch (ex: Exception) {
+      log.error("Can't put document into user '${receiver.userFullname}' personal box: ${ex.message}", ex)
     }
-    return pdfDocuments
   }
 
   private fun getUser(userObject: Any?): Pair<Boolean, PFUserDO?> {
@@ -594,6 +627,19 @@ open class MerlinRunner {
     private const val PERSONAL_BOX_VARIABLE_AS_PDF_DESC =
       "#PersonalBoxAsPdf_Description" // This string is also used in MerlinI18nResources.properties.
 
+    /**
+     * Number of documents rendered in parallel by serial executions (shared by all running serial executions).
+     */
+    private val SERIAL_EXECUTION_PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+
+    /**
+     * Maximum number of rendered documents kept in memory, waiting for being written to the zip file.
+     */
+    private val MAX_PENDING_DOCUMENTS = 2 * SERIAL_EXECUTION_PARALLELISM
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val serialExecutionDispatcher = Dispatchers.Default.limitedParallelism(SERIAL_EXECUTION_PARALLELISM)
+
     fun initTemplateRunContext(templateRunContext: TemplateRunContext) {
       val locale = ThreadLocalUserContext.locale
       templateRunContext.setLocale(DateFormats.getFormatString(DateFormatType.DATE), locale)
@@ -601,4 +647,30 @@ open class MerlinRunner {
   }
 
   class PDFDocument(val filename: String, val content: ByteArray)
+
+  /**
+   * A generated document of a serial execution.
+   * @param index The index of the serial entry.
+   */
+  class RenderedDocument(val index: Int, val filename: String, val wordBytes: ByteArray, val pdfDocument: PDFDocument?)
+
+  /**
+   * All data of a prepared (read and validated) serial execution.
+   */
+  class SerialExecution(
+    val templateId: Long,
+    val dto: MerlinTemplate,
+    val serialData: SerialData,
+    val excelFilename: String,
+    val excelByteArray: ByteArray,
+    val wordTemplateFilename: String,
+    val wordTemplateByteArray: ByteArray,
+    val lastLogNumber: Long?,
+  ) {
+    val numberOfDocuments: Int
+      get() = serialData.entries.size
+
+    val zipFilename: String
+      get() = "${FilenameUtils.getBaseName(excelFilename)}.zip"
+  }
 }
@@ -0,0 +1,138 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.merlin
+
+import mu.KotlinLogging
+import org.projectforge.framework.i18n.translate
+import org.projectforge.framework.i18n.translateMsg
+import org.projectforge.framework.jobs.AbstractJob
+import org.projectforge.framework.persistence.user.entities.PFUserDO
+import org.projectforge.plugins.merlin.rest.MerlinExecutionPageRest
+import org.projectforge.rest.core.RestResolver
+import java.io.File
+import java.nio.file.Files
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Runs a serial execution of a Merlin template in the background. The generated documents are written to a temporary
+ * zip file, which may be downloaded by the owner after the job is finished (as long as the job is kept by the
+ * JobHandler).
+ */
+class MerlinSerialExecutionJob(
+  private val merlinRunner: MerlinRunner,
+  private val serialExecution: MerlinRunner.SerialExecution,
+) : AbstractJob(
+  translateMsg("plugins.merlin.serial.job.title", serialExecution.dto.name, serialExecution.numberOfDocuments),
+  area = "MerlinSerialExecution",
+  // Only one serial execution per user at a time, further ones will be queued:
+  queueStrategy = QueueStrategy.PER_QUEUE_AND_USER,
+  timeoutSeconds = 3600,
+) {
+  /**
+   * The generated zip file, available after the job is finished.
+   */
+  var resultFile: File? = null
+    private set
+
+  val zipFilename: String
+    get() = serialExecution.zipFilename
+
+  init {
+    totalNumber = serialExecution.numberOfDocuments
+    processedNumber = 0
+  }
+
+  override suspend fun run() {
+    purgeOldResultFiles()
+    val file = Files.createTempFile(getTempDir().toPath(), "serial-execution-", ".zip").toFile()
+    resultFile = file
+    val completed = merlinRunner.runSerialExecution(
+      serialExecution,
+      file,
+      isActive = { isActive },
+      progress = { processedNumber = it },
+    )
+    if (!completed) {
+      deleteResultFile()
+    }
+  }
+
+  override val info: String
+    get() {
+      val file = resultFile
+      if (status != Status.FINISHED || file == null || !file.exists()) {
+        return super.info
+      }
+      val url = RestResolver.getRestUrl(MerlinExecutionPageRest::class.java, "serialExecutionResult/$id")
+      return "${super.info}\n\n[${translate("download")}: $zipFilename]($url)"
+    }
+
+  override fun onAfterTermination() {
+    if (status != Status.FINISHED) {
+      deleteResultFile()
+    }
+  }
+
+  override fun writeAccess(user: PFUserDO?): Boolean {
+    return isOwner
+  }
+
+  private fun deleteResultFile() {
+    resultFile?.let {
+      if (it.exists()) {
+        log.info { "Deleting result file of serial execution: ${it.absolutePath}" }
+        it.delete()
+      }
+    }
+    resultFile = null
+  }
+
+  companion object {
+    private const val TEMP_DIR = "projectforge-merlin"
+
+    /**
+     * Result files are deleted after this time (terminated jobs are removed by the JobHandler after one hour).
+     */
+    private const val KEEP_RESULT_FILES_MS = 2 * 60 * 60 * 1000L
+
+    private fun getTempDir(): File {
+      val dir = File(System.getProperty("java.io.tmpdir"), TEMP_DIR)
+      if (!dir.exists()) {
+        dir.mkdirs()
+      }
+      return dir
+    }
+
+    private fun purgeOldResultFiles() {
+      getTempDir().listFiles()?.forEach { file ->
+        if (System.currentTimeMillis() - file.lastModified() > KEEP_RESULT_FILES_MS) {
+          log.info { "Deleting outdated result file of serial execution: ${file.absolutePath}" }
+          file.delete()
+        }
+      }
+    }
+  }
+}
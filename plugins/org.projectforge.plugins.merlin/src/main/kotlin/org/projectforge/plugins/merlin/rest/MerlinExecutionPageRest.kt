@@ -32,6 +32,8 @@ import org.projectforge.business.user.service.UserPrefService
 import org.projectforge.business.user.service.UserService
 import org.projectforge.common.FormatterUtils
 import org.projectforge.framework.i18n.translate
+import org.projectforge.framework.jobs.AbstractJob
+import org.projectforge.framework.jobs.JobHandler
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.utils.NumberHelper
 import org.projectforge.menu.MenuItem
@@ -45,6 +47,7 @@ import org.projectforge.rest.core.PagesResolver
 import org.projectforge.rest.core.RestResolver
 import org.projectforge.rest.dto.FormLayoutData
 import org.projectforge.rest.dto.PostData
+import org.projectforge.rest.jobs.JobsMonitorPageRest
 import org.projectforge.ui.*
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.http.HttpStatus
@@ -53,6 +56,7 @@ import org.springframework.web.bind.annotation.*
 import org.springframework.web.multipart.MultipartFile
 import jakarta.servlet.http.HttpServletRequest
 import jakarta.validation.Valid
+import java.io.FileInputStream
 
 private val log = KotlinLogging.logger {}
 
@@ -81,6 +85,9 @@ class MerlinExecutionPageRest : AbstractDynamicPageRest() {
   @Autowired
   private lateinit var employeeService: EmployeeService
 
+  @Autowired
+  private lateinit var jobHandler: JobHandler
+
   /**
    * Will be called, if the user wants to change his/her observeStatus.
    */
@@ -128,11 +135,34 @@ class MerlinExecutionPageRest : AbstractDynamicPageRest() {
         )
       }."
     }
-    val result = merlinRunner.serialExecuteTemplate(id, filename ?: "untitled.xlsx", file.inputStream)
+    val serialExecution = merlinRunner.prepareSerialExecution(id, filename ?: "untitled.xlsx", file.inputStream)
       ?: throw IllegalArgumentException("Can't execute serial Excel file.")
-    val zipFilename = result.first
-    val zipByteArray = result.second
-    return RestUtils.downloadFile(zipFilename, zipByteArray)
+    val job = jobHandler.addJob(MerlinSerialExecutionJob(merlinRunner, serialExecution))
+    return ResponseEntity.ok(
+      ResponseAction(
+        url = PagesResolver.getDynamicPageUrl(
+          JobsMonitorPageRest::class.java,
+          absolute = true,
+          params = mapOf("jobId" to job.id),
+        ),
+        targetType = TargetType.REDIRECT,
+      )
+    )
+  }
+
+  /**
+   * Download of the zip file generated by a finished serial execution job.
+   */
+  @GetMapping("serialExecutionResult/{jobId}")
+  fun downloadSerialExecutionResult(@PathVariable("jobId", required = true) jobId: Int): ResponseEntity<*> {
+    val job = jobHandler.getJobById(jobId) as? MerlinSerialExecutionJob
+    val file = job?.resultFile
+    if (job == null || !job.isOwner || job.status != AbstractJob.Status.FINISHED || file == null || !file.exists()) {
+      log.warn { "Result of serial execution job #$jobId not available (job not finished, expired or not owned by user)." }
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(translate("download.expired"))
+    }
+    log.info { "Downloading result of serial execution job #$jobId: ${job.zipFilename}" }
+    return RestUtils.downloadFile(job.zipFilename, FileInputStream(file))
   }
 
   private fun validate(data: MerlinExecutionData): List<ValidationError>? {
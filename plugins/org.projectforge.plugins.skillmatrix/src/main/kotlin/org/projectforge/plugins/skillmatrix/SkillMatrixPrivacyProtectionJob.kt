@@ -47,6 +47,9 @@ class SkillMatrixPrivacyProtectionJob : IPrivacyProtectionJob {
     @Autowired
     private lateinit var purgeCronPrivacyProtectionJob: CronPrivacyProtectionJob
 
+    @Autowired
+    private lateinit var skillStatisticsCache: SkillStatisticsCache
+
     @Autowired
     private lateinit var userDao: UserDao
 
@@ -69,6 +72,7 @@ class SkillMatrixPrivacyProtectionJob : IPrivacyProtectionJob {
                         )
                     }
                     if (counter > 0) {
+                        skillStatisticsCache.reload() // Bulk deletion isn't seen by the cache's listener.
                         log.info { "Deleted $counter entries of the skill matrix of user '${user.username}' with id ${user.id}." }
                     }
                 }
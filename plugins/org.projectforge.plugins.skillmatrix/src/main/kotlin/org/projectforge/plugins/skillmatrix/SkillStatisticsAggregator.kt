@@ -0,0 +1,209 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.skillmatrix
+
+import org.projectforge.plugins.skillmatrix.SkillStatisticsCache.SkillStatistic
+import java.math.BigDecimal
+import java.math.RoundingMode
+import java.util.*
+
+/**
+ * Running aggregates (counters, sums and distributions of ratings and interests) of all skills. Every skill entry
+ * contributes to the aggregate of its normalized skill. The contribution of each entry is remembered, so an update or
+ * deletion of a single entry is applied by subtracting the old and adding the new contribution (without recomputing
+ * all entries).
+ * Not thread safe, the caller has to synchronize.
+ */
+internal class SkillStatisticsAggregator {
+    /**
+     * The values of a skill entry contributing to the aggregate of its skill.
+     */
+    private class Contribution(
+        val normalizedSkill: String,
+        val skill: String,
+        val rating: Int?,
+        val interest: Int?,
+        val lastUpdate: Long,
+    )
+
+    private class Aggregate(var skill: String) {
+        /**
+         * The skill syntax of the last edited entry is used (older ones will be normalized).
+         */
+        var skillLastUpdate = Long.MIN_VALUE
+        var totalCounter = 0
+        var ratingSum = 0
+        var ratingCounter = 0
+        var interestSum = 0
+        var interestCounter = 0
+        val ratingDistribution = IntArray(SkillEntryDO.MAX_VAL_RATING - SkillEntryDO.MIN_VAL_RATING + 1)
+        val interestDistribution = IntArray(SkillEntryDO.MAX_VAL_INTEREST - SkillEntryDO.MIN_VAL_INTEREST + 1)
+        private var statistic: SkillStatistic? = null
+
+        /**
+         * @param sign 1 for adding, -1 for removing the contribution.
+         */
+        fun add(contribution: Contribution, sign: Int) {
+            statistic = null
+            totalCounter += sign
+            contribution.rating?.let {
+                ratingSum += sign * it
+                ratingCounter += sign
+                addToDistribution(ratingDistribution, it - SkillEntryDO.MIN_VAL_RATING, sign)
+            }
+            contribution.interest?.let {
+                interestSum += sign * it
+                interestCounter += sign
+                addToDistribution(interestDistribution, it - SkillEntryDO.MIN_VAL_INTEREST, sign)
+            }
+            if (sign > 0 && contribution.lastUpdate >= skillLastUpdate) {
+                skill = contribution.skill
+                skillLastUpdate = contribution.lastUpdate
+            }
+        }
+
+        fun getStatistic(): SkillStatistic {
+            return statistic ?: SkillStatistic(
+                skill,
+                totalCounter,
+                meanValue(ratingSum, ratingCounter),
+                meanValue(interestSum, interestCounter),
+                ratingDistribution.toList(),
+                interestDistribution.toList(),
+            ).also { statistic = it }
+        }
+
+        fun hasSameValues(other: Aggregate): Boolean {
+            return totalCounter == other.totalCounter
+                    && ratingSum == other.ratingSum && ratingCounter == other.ratingCounter
+                    && interestSum == other.interestSum && interestCounter == other.interestCounter
+                    && ratingDistribution.contentEquals(other.ratingDistribution)
+                    && interestDistribution.contentEquals(other.interestDistribution)
+        }
+
+        private fun addToDistribution(distribution: IntArray, index: Int, sign: Int) {
+            if (index in distribution.indices) {
+                distribution[index] += sign
+            }
+        }
+
+        private fun meanValue(sum: Int, counter: Int): BigDecimal {
+            return if (counter > 0)
+                BigDecimal(sum).divide(BigDecimal(counter), 1, RoundingMode.HALF_UP)
+            else
+                BigDecimal.ZERO
+        }
+    }
+
+    private val contributions = mutableMapOf<Long, Contribution>()
+
+    private val aggregates = mutableMapOf<String, Aggregate>()
+
+    private var sortedStatistics: List<SkillStatistic>? = null
+
+    /**
+     * Statistics of all skills sorted by skill name.
+     */
+    val statistics: List<SkillStatistic>
+        get() = sortedStatistics ?: aggregates.values
+            .sortedBy { it.skill.lowercase() }
+            .map { it.getStatistic() }
+            .also { sortedStatistics = it }
+
+    /**
+     * Adds the given entry or replaces its previous contribution. Deleted entries are removed.
+     */
+    fun put(entry: SkillEntryDO) {
+        val id = entry.id ?: return
+        remove(id)
+        if (entry.deleted) {
+            return
+        }
+        val contribution = Contribution(
+            entry.normalizedSkill,
+            entry.skill ?: "",
+            entry.rating,
+            entry.interest,
+            entry.lastUpdate?.time ?: 0L,
+        )
+        contributions[id] = contribution
+        aggregates.getOrPut(contribution.normalizedSkill) { Aggregate(contribution.skill) }.add(contribution, 1)
+        sortedStatistics = null
+    }
+
+    fun remove(id: Long?) {
+        val contribution = contributions.remove(id ?: return) ?: return
+        val aggregate = aggregates[contribution.normalizedSkill] ?: return
+        aggregate.add(contribution, -1)
+        if (aggregate.totalCounter <= 0) {
+            aggregates.remove(contribution.normalizedSkill)
+        }
+        sortedStatistics = null
+    }
+
+    /**
+     * @param skill The skill (will be normalized).
+     */
+    fun getStatistic(skill: String?): SkillStatistic? {
+        return aggregates[SkillEntryDO.getNormalizedSkill(skill)]?.getStatistic()
+    }
+
+    /**
+     * @return The first skills in order of the given comparator (e. g. highest rating mean first).
+     */
+    fun getTop(limit: Int, comparator: Comparator<SkillStatistic>): List<SkillStatistic> {
+        if (limit <= 0) {
+            return emptyList()
+        }
+        // Min heap of the best skills, the worst of them on top:
+        val heap = PriorityQueue(limit + 1, comparator.reversed())
+        aggregates.values.forEach { aggregate ->
+            heap.add(aggregate.getStatistic())
+            if (heap.size > limit) {
+                heap.poll()
+            }
+        }
+        return heap.sortedWith(comparator)
+    }
+
+    /**
+     * @return The normalized names of all skills with different values in the other aggregator.
+     */
+    fun getDifferences(other: SkillStatisticsAggregator): List<String> {
+        return (aggregates.keys + other.aggregates.keys).filter { skill ->
+            val aggregate = aggregates[skill]
+            val otherAggregate = other.aggregates[skill]
+            aggregate == null || otherAggregate == null || !aggregate.hasSameValues(otherAggregate)
+        }
+    }
+
+    companion object {
+        fun create(entries: Collection<SkillEntryDO>): SkillStatisticsAggregator {
+            val aggregator = SkillStatisticsAggregator()
+            entries.forEach { aggregator.put(it) }
+            return aggregator
+        }
+    }
+}
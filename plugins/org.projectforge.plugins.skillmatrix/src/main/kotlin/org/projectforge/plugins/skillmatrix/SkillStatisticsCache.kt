@@ -32,89 +32,83 @@ import org.projectforge.framework.persistence.jpa.PfPersistenceService
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
 import java.math.BigDecimal
-import java.math.RoundingMode
 
 private val log = KotlinLogging.logger {}
 
 /**
  * Skill statistics cache holds ratings of all skills stored in the data base.
+ * The statistics are updated incrementally on every insert, update or deletion of a skill entry. All skill entries are
+ * only loaded on startup and once a day for checking the consistency of the incremental updates.
  *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 @Service
-open class SkillStatisticsCache : AbstractCache(), BaseDOModifiedListener<SkillEntryDO> {
+open class SkillStatisticsCache : AbstractCache(TICKS_PER_DAY), BaseDOModifiedListener<SkillEntryDO> {
     @Autowired
     private lateinit var persistenceService: PfPersistenceService
 
     @Autowired
     private lateinit var skillEntryDao: SkillEntryDao
 
+    /**
+     * @param ratingDistribution Number of ratings per value (index 0 is [SkillEntryDO.MIN_VAL_RATING]).
+     * @param interestDistribution Number of interests per value (index 0 is [SkillEntryDO.MIN_VAL_INTEREST]).
+     */
     class SkillStatistic(
         val skill: String,
         val totalCounter: Int,
         val ratingMean: BigDecimal,
-        val interestsMean: BigDecimal
+        val interestsMean: BigDecimal,
+        val ratingDistribution: List<Int> = emptyList(),
+        val interestDistribution: List<Int> = emptyList(),
     )
 
-    private data class Entry(
-        var skill: String,
-        var totalCounter: Int = 0,
-        /**
-         * Sum of all skill ratings.
-         */
-        var ratingSum: Int = 0,
-        /**
-         * Counter of ratings (not null) for getting average.
-         */
-        var ratingCounter: Int = 0,
-        /**
-         * Sum of all interest ratings.
-         */
-        var interestSum: Int = 0,
-        /**
-         * Counter of ratings (not null) for getting average.
-         */
-        var interstCounter: Int = 0
-    ) {
-        val ratingMean: BigDecimal
-            get() {
-                return meanValue(ratingSum, ratingCounter)
-            }
+    private var aggregator: SkillStatisticsAggregator? = null
 
-        val interestMean: BigDecimal
-            get() {
-                return meanValue(interestSum, interstCounter)
-            }
+    /**
+     * True, if the statistics are known to be outdated (see [reload]), so the consistency check would fail anyway.
+     */
+    private var reloadRequired = false
 
-        fun add(skillEntry: SkillEntryDO) {
-            totalCounter++
-            skillEntry.rating?.let {
-                // rating is 0..3
-                ratingSum += it
-                ratingCounter++
-            }
-            skillEntry.interest?.let {
-                // interest is 0..3
-                interestSum += it
-                interstCounter++
-            }
+    /**
+     * Statistics of all skills sorted by skill name.
+     */
+    val statistics: List<SkillStatistic>
+        get() = synchronized(this) {
+            checkRefresh()
+            aggregator?.statistics ?: emptyList()
         }
 
-        fun meanValue(sum: Int, counter: Int): BigDecimal {
-            return if (counter > 0)
-                BigDecimal(sum).divide(BigDecimal(counter), 1, RoundingMode.HALF_UP)
-            else
-                BigDecimal.ZERO
+    /**
+     * @param skill The skill (normalized before lookup).
+     */
+    fun getStatistic(skill: String?): SkillStatistic? {
+        synchronized(this) {
+            checkRefresh()
+            return aggregator?.getStatistic(skill)
         }
     }
 
-    private lateinit var skillStatistics: List<SkillStatistic>
+    /**
+     * @return The skills with the highest rating mean.
+     */
+    fun getTopRated(limit: Int): List<SkillStatistic> {
+        return getTop(limit, compareByDescending<SkillStatistic> { it.ratingMean }.thenByDescending { it.totalCounter })
+    }
 
-    val statistics: List<SkillStatistic>
-        get() {
+    /**
+     * @return The skills with the highest interest mean.
+     */
+    fun getTopInterests(limit: Int): List<SkillStatistic> {
+        return getTop(limit, compareByDescending<SkillStatistic> { it.interestsMean }.thenByDescending { it.totalCounter })
+    }
+
+    fun getTop(limit: Int, comparator: Comparator<SkillStatistic>): List<SkillStatistic> {
+        synchronized(this) {
             checkRefresh()
-            return skillStatistics
+            return aggregator?.getTop(limit, comparator) ?: emptyList()
         }
+    }
 
     @PostConstruct
     private fun postConstruct() {
@@ -122,30 +116,62 @@ open class SkillStatisticsCache : AbstractCache(), BaseDOModifiedListener<SkillE
     }
 
     override fun afterInsertOrModify(obj: SkillEntryDO, operationType: OperationType) {
-        setExpired()
+        synchronized(this) {
+            val aggregator = aggregator ?: return // Not yet loaded, refresh will load all entries.
+            if (operationType == OperationType.DELETE) {
+                aggregator.remove(obj.id)
+            } else {
+                aggregator.put(obj) // Deleted entries (marked as deleted) are removed.
+            }
+        }
+    }
+
+    /**
+     * Recomputes the statistics of all skill entries and compares them with the incrementally updated ones.
+     * The lock is held while loading, so no incremental update can get lost between loading and replacing the
+     * statistics.
+     * @return true, if no differences were found.
+     */
+    fun checkConsistency(): Boolean {
+        synchronized(this) {
+            val recomputed = load()
+            val differences = aggregator?.getDifferences(recomputed)
+            aggregator = recomputed
+            if (!differences.isNullOrEmpty()) {
+                log.warn { "Incrementally updated skill statistics differ from full recompute (fixed now): ${differences.joinToString()}" }
+                return false
+            }
+            return true
+        }
+    }
+
+    /**
+     * Forces a reload of all skill entries on next usage without consistency check, e. g. after bulk modifications not
+     * seen by this listener.
+     */
+    fun reload() {
+        synchronized(this) {
+            reloadRequired = true
+            setExpired()
+        }
     }
 
     override fun refresh() {
         log.info("Refreshing SkillMatrixCache ...")
-        persistenceService.runIsolatedReadOnly {
-            val skillStatisticsMap = mutableMapOf<String, Entry>()
-            skillEntryDao.selectAll(checkAccess = false)
-                .filter { !it.deleted } // Ignore deleted skill entries.
-                .sortedByDescending { it.lastUpdate } // Use skill syntax of last edited one (older ones will be normalized)
-                .forEach { skillEntry ->
-                    val skillName = skillEntry.skill ?: ""
-                    val normalizedSkillName = skillEntry.normalizedSkill
-                    val entry = skillStatisticsMap[normalizedSkillName] ?: run {
-                        val newEntry = Entry(skillName)
-                        skillStatisticsMap[normalizedSkillName] = newEntry
-                        newEntry
-                    }
-                    entry.add(skillEntry)
-                }
-            skillStatistics = skillStatisticsMap.values
-                .sortedBy { it.skill.lowercase() }
-                .map { SkillStatistic(it.skill, it.totalCounter, it.ratingMean, it.interestMean) }
+        synchronized(this) {
+            if (aggregator == null || reloadRequired) {
+                aggregator = load()
+                reloadRequired = false
+            } else {
+                checkConsistency()
+            }
         }
         log.info("Refreshing SkillMatrixCache done.")
     }
+
+    private fun load(): SkillStatisticsAggregator {
+        return persistenceService.runIsolatedReadOnly {
+            SkillStatisticsAggregator.create(skillEntryDao.selectAll(checkAccess = false))
+        }
+    }
 }
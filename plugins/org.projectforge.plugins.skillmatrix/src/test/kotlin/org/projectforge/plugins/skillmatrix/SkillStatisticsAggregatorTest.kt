@@ -0,0 +1,102 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.skillmatrix
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.math.BigDecimal
+import java.util.*
+
+class SkillStatisticsAggregatorTest {
+    @Test
+    fun incrementalUpdateTest() {
+        val entries = mutableListOf(
+            createEntry(1, "Java", 3, 2),
+            createEntry(2, "java", 1, null, lastUpdate = 500),
+            createEntry(3, "Kotlin", 2, 3),
+            createEntry(4, "Kotlin", null, 1),
+        )
+        val aggregator = SkillStatisticsAggregator.create(entries)
+        var java = aggregator.getStatistic("JAVA")!!
+        Assertions.assertEquals(2, java.totalCounter)
+        Assertions.assertEquals(BigDecimal("2.0"), java.ratingMean)
+        Assertions.assertEquals(BigDecimal("2.0"), java.interestsMean)
+        Assertions.assertEquals(listOf(0, 1, 0, 1), java.ratingDistribution)
+        Assertions.assertEquals(listOf("Java", "Kotlin"), aggregator.statistics.map { it.skill })
+
+        // Update: rating and skill name modified.
+        entries[1] = createEntry(2, "Java", 2, 3, lastUpdate = 2000)
+        aggregator.put(entries[1])
+        java = aggregator.getStatistic("java")!!
+        Assertions.assertEquals(BigDecimal("2.5"), java.ratingMean)
+        Assertions.assertEquals(BigDecimal("2.5"), java.interestsMean)
+        Assertions.assertEquals(listOf(0, 0, 1, 1), java.ratingDistribution)
+
+        // Skill of entry changed:
+        entries[0] = createEntry(1, "Scala", 3, 2, lastUpdate = 3000)
+        aggregator.put(entries[0])
+        Assertions.assertEquals(1, aggregator.getStatistic("java")!!.totalCounter)
+        Assertions.assertEquals(1, aggregator.getStatistic("scala")!!.totalCounter)
+
+        // Marked as deleted and deleted:
+        entries[2] = createEntry(3, "Kotlin", 2, 3).also { it.deleted = true }
+        aggregator.put(entries[2])
+        aggregator.remove(4)
+        entries.removeAt(3)
+        Assertions.assertNull(aggregator.getStatistic("kotlin"))
+        Assertions.assertEquals(listOf("Java", "Scala"), aggregator.statistics.map { it.skill })
+
+        // Consistency check against full recompute:
+        Assertions.assertTrue(aggregator.getDifferences(SkillStatisticsAggregator.create(entries)).isEmpty())
+        entries.add(createEntry(5, "Scala", 1, 1))
+        Assertions.assertEquals(listOf("scala"), aggregator.getDifferences(SkillStatisticsAggregator.create(entries)))
+    }
+
+    @Test
+    fun topTest() {
+        val aggregator = SkillStatisticsAggregator.create(
+            listOf(
+                createEntry(1, "A", 1, 3),
+                createEntry(2, "B", 3, 2),
+                createEntry(3, "C", 2, 1),
+                createEntry(4, "D", 0, 0),
+            )
+        )
+        val byRating = compareByDescending<SkillStatisticsCache.SkillStatistic> { it.ratingMean }
+        Assertions.assertEquals(listOf("B", "C"), aggregator.getTop(2, byRating).map { it.skill })
+        Assertions.assertEquals(listOf("B", "C", "A", "D"), aggregator.getTop(10, byRating).map { it.skill })
+        Assertions.assertTrue(aggregator.getTop(0, byRating).isEmpty())
+    }
+
+    private fun createEntry(id: Long, skill: String, rating: Int?, interest: Int?, lastUpdate: Long = 1000): SkillEntryDO {
+        return SkillEntryDO().also {
+            it.id = id
+            it.skill = skill
+            it.rating = rating
+            it.interest = interest
+            it.lastUpdate = Date(lastUpdate)
+        }
+    }
+}
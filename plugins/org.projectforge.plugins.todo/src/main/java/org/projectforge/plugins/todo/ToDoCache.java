@@ -23,15 +23,22 @@
 
 package org.projectforge.plugins.todo;
 
+import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.cache.AbstractCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
- * The number of open to-do entries is cached. Accessible via ToDoDao.
+ * The number of open to-do entries is cached. Accessible via ToDoDao.<br/>
+ * All open entries are loaded once, afterwards the counters are updated incrementally on every insert, update and
+ * deletion of a to-do, so the menu badge never needs a database access. The counters are reconciled periodically with
+ * the database by {@link ToDoCacheReconciliationJob}.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public class ToDoCache extends AbstractCache
@@ -41,29 +48,123 @@ public class ToDoCache extends AbstractCache
   /** The key is the user id and the value is the number of open to-do entries. */
   private Map<Long, Integer> openEntriesMap;
 
+  /** The key is the id of an open to-do entry and the value is the id of its assignee. */
+  private Map<Long, Long> openEntries;
+
+  /** Incremented on every modification, for detecting modifications while loading all entries. */
+  private long modificationCounter;
+
+  /** The key is the user id and the value is the modification counter of the last modification of the user's entries. */
+  private final Map<Long, Long> lastModificationOfUsers = new HashMap<>();
+
   private ToDoDao toDoDao;
 
   /**
-   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed.
+   * The counters are updated on modifications via ToDoDao, a full reload is only done once a day (or by reconciling).
    */
   public ToDoCache(final ToDoDao toDoDao)
   {
-    super(30 * TICKS_PER_MINUTE);
+    super(TICKS_PER_DAY);
     this.toDoDao = toDoDao;
   }
 
   int getOpenToDoEntries(final Long userId)
   {
     checkRefresh();
-    final Integer result = openEntriesMap.get(userId);
-    if (result != null) {
-      return result;
+    synchronized (this) {
+      final Integer result = openEntriesMap != null ? openEntriesMap.get(userId) : null;
+      return result != null ? result : 0;
+    }
+  }
+
+  /**
+   * Updates the counters of the previous and the current assignee of the given to-do. Must be called after the commit
+   * of the modification, otherwise a reconciliation might revert it.
+   */
+  void update(final ToDoDO toDo, final OperationType operationType)
+  {
+    final Long id = toDo.getId();
+    if (id == null) {
+      return;
+    }
+    synchronized (this) {
+      ++modificationCounter;
+      final Long assigneeId = toDo.getAssigneeId();
+      if (assigneeId != null) {
+        lastModificationOfUsers.put(assigneeId, modificationCounter);
+      }
+      if (openEntries == null) {
+        return; // Not yet loaded.
+      }
+      final Long oldAssigneeId = openEntries.remove(id);
+      if (oldAssigneeId != null) {
+        lastModificationOfUsers.put(oldAssigneeId, modificationCounter);
+        add(openEntriesMap, oldAssigneeId, -1);
+      }
+      if (operationType != OperationType.DELETE && !toDo.getDeleted() && toDo.getRecent() && assigneeId != null) {
+        openEntries.put(id, assigneeId);
+        add(openEntriesMap, assigneeId, 1);
+      }
+    }
+  }
+
+  /**
+   * Loads all open entries from the database (outside the lock, so readers aren't blocked) and compares the counters
+   * with the incrementally updated ones. Only the counters of users whose entries weren't modified while loading are
+   * reconciled, the counters of the other users are kept (the loaded entries might be outdated for them).
+   * @return true, if the reconciled counters were consistent, otherwise false (counters are fixed).
+   */
+  boolean reconcile()
+  {
+    final long counter;
+    synchronized (this) {
+      counter = modificationCounter;
+    }
+    final Map<Long, Long> entries = toDoDao.internalGetOpenEntries();
+    synchronized (this) {
+      final Set<Long> modifiedUsers = new HashSet<>();
+      lastModificationOfUsers.forEach((userId, modification) -> {
+        if (modification > counter) {
+          modifiedUsers.add(userId);
+        }
+      });
+      lastModificationOfUsers.clear(); // Only modifications while loading are of interest.
+      if (!modifiedUsers.isEmpty()) {
+        log.info("To-do entries of " + modifiedUsers.size() + " users modified while reconciling, keeping their counters.");
+        if (openEntries != null) {
+          entries.values().removeIf(modifiedUsers::contains);
+          openEntries.forEach((id, assigneeId) -> {
+            if (modifiedUsers.contains(assigneeId)) {
+              entries.put(id, assigneeId);
+            }
+          });
+        }
+      }
+      return set(entries);
+    }
+  }
+
+  private boolean set(final Map<Long, Long> entries)
+  {
+    final Map<Long, Integer> counters = new HashMap<>();
+    entries.values().forEach(assigneeId -> add(counters, assigneeId, 1));
+    final boolean consistent = openEntriesMap == null || Objects.equals(openEntriesMap, counters);
+    if (!consistent) {
+      log.warn("Counters of open to-do entries differ from database (fixed now): " + openEntriesMap + " != " + counters);
     }
-    final int counter = toDoDao.internalGetOpenEntries(userId);
-    synchronized (openEntriesMap) {
-      openEntriesMap.put(userId, counter);
+    openEntries = entries;
+    openEntriesMap = counters;
+    return consistent;
+  }
+
+  private static void add(final Map<Long, Integer> counters, final Long userId, final int value)
+  {
+    final int result = counters.getOrDefault(userId, 0) + value;
+    if (result > 0) {
+      counters.put(userId, result);
+    } else {
+      counters.remove(userId);
     }
-    return counter;
   }
 
   /**
@@ -72,7 +173,7 @@ public class ToDoCache extends AbstractCache
   @Override
   protected void refresh()
   {
-    log.info("Clearing cache with open to-do entries.");
-    openEntriesMap = new HashMap<>();
+    log.info("Loading open to-do entries.");
+    set(toDoDao.internalGetOpenEntries());
   }
 }
@@ -23,6 +23,7 @@
 
 package org.projectforge.plugins.todo;
 
+import kotlin.Unit;
 import org.projectforge.business.configuration.ConfigurationService;
 import org.projectforge.business.task.TaskDO;
 import org.projectforge.business.task.TaskNode;
@@ -241,7 +242,11 @@ public class ToDoDao extends BaseDao<ToDoDO> {
 
     @Override
     public void afterInsertOrModify(final ToDoDO obj, final OperationType operationType) {
-        toDoCache.setExpired(); // Force reload of the menu item counters for open to-do entrie.
+        // Update the menu item counters for open to-do entries (after commit, so a reconciliation sees the modification):
+        getPersistenceService().runAfterCommit(() -> {
+            toDoCache.update(obj, operationType);
+            return Unit.INSTANCE;
+        });
     }
 
     public void setAssignee(final ToDoDO todo, final Long userId) {
@@ -280,22 +285,27 @@ public class ToDoDao extends BaseDao<ToDoDO> {
     }
 
     /**
-     * Called by ToDoCache to get the number of open entries for the given users.
+     * Reloads the open to-do entries of all users and fixes the cached counters, if they differ.
      *
-     * @param userId
-     * @return Number of open to-do entries.
+     * @return true, if the cached counters were consistent.
      */
-    int internalGetOpenEntries(final Long userId) {
+    public boolean reconcileOpenToDoEntries() {
+        return toDoCache.reconcile();
+    }
+
+    /**
+     * Called by ToDoCache to get the open entries of all users.
+     *
+     * @return The ids of all open to-do entries mapped to the ids of their assignees.
+     */
+    Map<Long, Long> internalGetOpenEntries() {
         final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
-        try {
-            return jdbc.queryForObject("SELECT COUNT(*) FROM T_PLUGIN_TODO"
-                    + " where assignee_fk="
-                    + userId
-                    + " and recent=true and deleted=false", Integer.class);
-        } catch (final Exception ex) {
-            log.error(ex.getMessage(), ex);
-            return 0;
-        }
+        final Map<Long, Long> result = new HashMap<>();
+        jdbc.query("SELECT pk, assignee_fk FROM T_PLUGIN_TODO"
+                + " where assignee_fk is not null and recent=true and deleted=false", rs -> {
+            result.put(rs.getLong(1), rs.getLong(2));
+        });
+        return result;
     }
 
     @Override
@@ -0,0 +1,62 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.todo
+
+import mu.KotlinLogging
+import org.projectforge.Constants
+import org.projectforge.plugins.core.PluginAdminService
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * The counters of open to-do entries (menu badge) are updated incrementally. This job compares them every 30 minutes
+ * with the database and fixes them, if necessary.
+ */
+@Component
+class ToDoCacheReconciliationJob {
+    @Autowired
+    private lateinit var pluginAdminService: PluginAdminService
+
+    @Autowired
+    private lateinit var toDoDao: ToDoDao
+
+    // Every 30 minutes, starting 10 minutes after starting.
+    @Scheduled(fixedDelay = 30 * Constants.MILLIS_PER_MINUTE, initialDelay = 10 * Constants.MILLIS_PER_MINUTE)
+    fun execute() {
+        if (!pluginAdminService.activePlugins.any { it.id == PluginAdminService.PLUGIN_TODO_ID }) {
+            return
+        }
+        try {
+            if (!toDoDao.reconcileOpenToDoEntries()) {
+                log.warn { "Counters of open to-do entries were inconsistent and are fixed." }
+            }
+        } catch (ex: Exception) {
+            log.error(ex) { "Error while reconciling counters of open to-do entries: ${ex.message}" }
+        }
+    }
+}
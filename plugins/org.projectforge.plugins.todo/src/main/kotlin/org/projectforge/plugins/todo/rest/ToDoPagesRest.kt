@@ -29,6 +29,7 @@ import org.projectforge.plugins.todo.ToDoDao
 import org.projectforge.rest.config.Rest
 import org.projectforge.rest.core.AbstractDOPagesRest
 import org.projectforge.ui.*
+import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RestController
 import jakarta.servlet.http.HttpServletRequest
@@ -44,6 +45,14 @@ class ToDoPagesRest() : AbstractDOPagesRest<ToDoDO, ToDoDao>(ToDoDao::class.java
         return toDo
     }
 
+    /**
+     * @return The number of open to-do entries of the logged-in user (served by the cache without database access).
+     */
+    @GetMapping("openCount")
+    fun getOpenCount(): Int {
+        return baseDao.getOpenToDoEntries(null)
+    }
+
     /**
      * LAYOUT List page
      */
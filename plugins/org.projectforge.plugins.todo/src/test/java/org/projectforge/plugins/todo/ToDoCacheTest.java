@@ -0,0 +1,137 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.todo;
+
+import org.junit.jupiter.api.Test;
+import org.projectforge.framework.access.OperationType;
+import org.projectforge.framework.persistence.user.entities.PFUserDO;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ToDoCacheTest {
+  @Test
+  public void incrementalUpdateTest() {
+    final TestToDoDao dao = new TestToDoDao();
+    dao.dbEntries.put(1L, 10L);
+    final ToDoCache cache = new ToDoCache(dao);
+    assertEquals(1, cache.getOpenToDoEntries(10L));
+    assertEquals(0, cache.getOpenToDoEntries(11L));
+
+    final ToDoDO toDo = createToDo(2L, 10L);
+    update(cache, dao, toDo, OperationType.INSERT);
+    assertEquals(2, cache.getOpenToDoEntries(10L));
+
+    // Reassigned:
+    toDo.setAssignee(createUser(11L));
+    update(cache, dao, toDo, OperationType.UPDATE);
+    assertEquals(1, cache.getOpenToDoEntries(10L));
+    assertEquals(1, cache.getOpenToDoEntries(11L));
+
+    // Viewed by assignee (not recent anymore):
+    toDo.setRecent(false);
+    update(cache, dao, toDo, OperationType.UPDATE);
+    assertEquals(0, cache.getOpenToDoEntries(11L));
+
+    toDo.setRecent(true);
+    update(cache, dao, toDo, OperationType.UPDATE);
+    assertEquals(1, cache.getOpenToDoEntries(11L));
+
+    update(cache, dao, toDo, OperationType.DELETE);
+    assertEquals(0, cache.getOpenToDoEntries(11L));
+    assertEquals(1, cache.getOpenToDoEntries(10L));
+
+    assertTrue(cache.reconcile(), "Counters should be consistent with the database.");
+  }
+
+  @Test
+  public void reconcileTest() {
+    final TestToDoDao dao = new TestToDoDao();
+    dao.dbEntries.put(1L, 10L);
+    final ToDoCache cache = new ToDoCache(dao);
+    assertEquals(1, cache.getOpenToDoEntries(10L));
+
+    // Inconsistent counters are fixed:
+    dao.dbEntries.put(2L, 12L);
+    assertFalse(cache.reconcile());
+    assertEquals(1, cache.getOpenToDoEntries(12L));
+
+    // Entries of user 11 are modified while loading (the loaded entries don't contain the modification yet):
+    dao.dbEntries.put(3L, 12L);
+    dao.whileLoading = () -> cache.update(createToDo(4L, 11L), OperationType.INSERT);
+    assertFalse(cache.reconcile());
+    assertEquals(1, cache.getOpenToDoEntries(11L), "Counter of user modified while loading should be kept.");
+    assertEquals(2, cache.getOpenToDoEntries(12L), "Counter of unmodified user should be reconciled.");
+    assertEquals(1, cache.getOpenToDoEntries(10L));
+
+    dao.whileLoading = null;
+    dao.dbEntries.put(4L, 11L);
+    assertTrue(cache.reconcile());
+    assertEquals(1, cache.getOpenToDoEntries(11L));
+  }
+
+  /**
+   * Simulates the commit of the modification before updating the cache (as done by ToDoDao).
+   */
+  private void update(final ToDoCache cache, final TestToDoDao dao, final ToDoDO toDo, final OperationType operationType) {
+    if (operationType == OperationType.DELETE || !toDo.getRecent()) {
+      dao.dbEntries.remove(toDo.getId());
+    } else {
+      dao.dbEntries.put(toDo.getId(), toDo.getAssigneeId());
+    }
+    cache.update(toDo, operationType);
+  }
+
+  private ToDoDO createToDo(final Long id, final Long assigneeId) {
+    final ToDoDO toDo = new ToDoDO();
+    toDo.setId(id);
+    toDo.setAssignee(createUser(assigneeId));
+    toDo.setRecent(true);
+    return toDo;
+  }
+
+  private PFUserDO createUser(final Long id) {
+    final PFUserDO user = new PFUserDO();
+    user.setId(id);
+    return user;
+  }
+
+  private static class TestToDoDao extends ToDoDao {
+    private final Map<Long, Long> dbEntries = new HashMap<>();
+
+    private Runnable whileLoading;
+
+    @Override
+    Map<Long, Long> internalGetOpenEntries() {
+      final Map<Long, Long> result = new HashMap<>(dbEntries);
+      if (whileLoading != null) {
+        whileLoading.run();
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.plugins.todo;
+
+import org.junit.jupiter.api.Test;
+import org.projectforge.business.test.AbstractTestBase;
+import org.projectforge.framework.persistence.jpa.MyJpaWithExtLibrariesScanner;
+import org.projectforge.plugins.todo.rest.ToDoPagesRest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ToDoOpenCountTest extends AbstractTestBase {
+  static {
+    MyJpaWithExtLibrariesScanner.addPluginEntitiesForTestMode(ToDoDO.class.getCanonicalName());
+  }
+
+  @Autowired
+  private ToDoDao toDoDao;
+
+  @Autowired
+  private ToDoPagesRest toDoPagesRest;
+
+  @Test
+  public void openCountTest() {
+    logon(TEST_USER);
+    final int openCount = toDoPagesRest.getOpenCount();
+
+    // To-do of other user is recent for the assignee:
+    logon(TEST_ADMIN_USER);
+    final ToDoDO toDo = new ToDoDO();
+    toDo.setSubject("Test open count");
+    toDo.setAssignee(getUser(TEST_USER));
+    toDo.setReporter(getUser(TEST_ADMIN_USER));
+    toDoDao.insert(toDo, false);
+    assertEquals(openCount + 1, toDoDao.getOpenToDoEntries(getUserId(TEST_USER)));
+
+    logon(TEST_USER);
+    assertEquals(openCount + 1, toDoPagesRest.getOpenCount());
+
+    toDoDao.markAsDeleted(toDo, false);
+    assertEquals(openCount, toDoPagesRest.getOpenCount());
+    assertTrue(toDoDao.reconcileOpenToDoEntries(), "Incrementally updated counters should match the database.");
+  }
+}
@@ -126,6 +126,7 @@ dependencies {
     api(libs.com.fasterxml.jackson.core.annotations)
     api(libs.com.fasterxml.jackson.core.databind)
     api(libs.com.fasterxml.jackson.datatype.jsr310)
+    api(libs.com.fasterxml.jackson.dataformat.cbor)
     api(libs.se.sawano.java.alphanumeric.comparator)
     api(libs.com.webauthn4j.core)
     /*api(libs.com.webauthn4j.spring.security.core) {
@@ -69,6 +69,8 @@ public class GanttChart {
 
   private transient Map<GanttTask, ObjectInfo> objectMap = new HashMap<>();
 
+  private transient GanttScheduler scheduler;
+
   private class ObjectInfo {
     final LocalDate fromDate;
 
@@ -157,6 +159,17 @@ public class GanttChart {
     return rootNode;
   }
 
+  /**
+   * If a scheduler is given (e. g. by the Gantt editor), {@link #recalculate()} recalculates only the nodes modified
+   * since the last calculation of this scheduler. Otherwise all nodes are recalculated.
+   *
+   * @param scheduler The scheduler of the root node of this chart.
+   */
+  public GanttChart setScheduler(final GanttScheduler scheduler) {
+    this.scheduler = scheduler;
+    return this;
+  }
+
   /**
    * Usage:
    *
@@ -306,7 +319,11 @@ public class GanttChart {
    * @return All visible nodes.
    */
   public Collection<GanttTask> recalculate() {
-    rootNode.recalculate();
+    if (scheduler != null && scheduler.getRootNode() == rootNode) {
+      scheduler.recalculateModified();
+    } else {
+      new GanttScheduler(rootNode).recalculate();
+    }
     fromDate = toDate = null;
     final Collection<GanttTask> allVisibleGanttObjects = getAllVisibleGanttObjects(new ArrayList<>(), rootNode);
     for (final GanttTask node : allVisibleGanttObjects) {
@@ -0,0 +1,330 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.business.gantt;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Calculates the start and end dates of all Gantt objects of a tree in dependency order, so every date is calculated
+ * exactly once (instead of walking the predecessors and children recursively for every node).<br/>
+ * A node depends on its predecessor and, if its dates aren't fixed by start/end date and duration, on its children
+ * (see {@link GanttUtils#getCalculatedStartDate(GanttTask)}). Nodes which are part of a cyclic dependency can't be
+ * sorted; they are reported by {@link #getCyclicNodes()} and calculated by the recursive (cycle detecting) algorithm
+ * of {@link GanttUtils}.<br/>
+ * The scheduler remembers the scheduling relevant values of every node, so {@link #recalculateModified()} recalculates
+ * only the nodes which were modified since the last calculation and all nodes depending on them (used by the Gantt
+ * editor, where typically only the duration or the predecessor of a single task is changed).
+ */
+public class GanttScheduler {
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GanttScheduler.class);
+
+  private final GanttTask rootNode;
+
+  /**
+   * The scheduling relevant values of all nodes of the last calculation.
+   */
+  private Map<GanttTask, NodeState> states;
+
+  private List<GanttTask> cyclicNodes = new ArrayList<>();
+
+  private int calculatedNodesCounter;
+
+  public GanttScheduler(final GanttTask rootNode) {
+    this.rootNode = rootNode;
+  }
+
+  public GanttTask getRootNode() {
+    return rootNode;
+  }
+
+  /**
+   * @return The nodes of the last calculation which couldn't be sorted, because they are part of (or between)
+   * cyclic dependencies. Empty, if no cycles were found.
+   */
+  public List<GanttTask> getCyclicNodes() {
+    return Collections.unmodifiableList(cyclicNodes);
+  }
+
+  /**
+   * @return The number of nodes (re-)calculated by the last run (useful for checking incremental calculations).
+   */
+  public int getCalculatedNodesCounter() {
+    return calculatedNodesCounter;
+  }
+
+  /**
+   * Recalculates the start and end dates of all nodes.
+   *
+   * @return this for chaining.
+   */
+  public GanttScheduler recalculate() {
+    final Collection<GanttTask> nodes = collectNodes();
+    for (final GanttTask node : nodes) {
+      reset(node);
+    }
+    calculate(nodes, nodes);
+    return this;
+  }
+
+  /**
+   * Recalculates only the given node and all nodes depending on it (parents and successors, transitively). Use this
+   * method after modifying the duration, dates or predecessor of a single node.
+   *
+   * @param node The modified node.
+   * @return this for chaining.
+   */
+  public GanttScheduler recalculate(final GanttTask node) {
+    if (states == null) {
+      return recalculate();
+    }
+    return recalculate(Collections.singleton(node));
+  }
+
+  /**
+   * Detects all nodes modified since the last calculation (by comparing the scheduling relevant values) and
+   * recalculates only them and the nodes depending on them. If no calculation was done before or if nodes were
+   * removed from the tree, all nodes will be recalculated.
+   *
+   * @return this for chaining.
+   */
+  public GanttScheduler recalculateModified() {
+    if (states == null) {
+      return recalculate();
+    }
+    final Collection<GanttTask> nodes = collectNodes();
+    if (!nodes.containsAll(states.keySet())) {
+      log.debug("Nodes were removed from Gantt chart, recalculating all nodes.");
+      return recalculate();
+    }
+    final Set<GanttTask> modified = newIdentitySet();
+    for (final GanttTask node : nodes) {
+      if (!new NodeState(node).equals(states.get(node))) {
+        modified.add(node);
+      }
+    }
+    return recalculate(modified);
+  }
+
+  private GanttScheduler recalculate(final Collection<GanttTask> modified) {
+    final Collection<GanttTask> nodes = collectNodes();
+    final Map<GanttTask, List<GanttTask>> dependents = new IdentityHashMap<>();
+    for (final GanttTask node : nodes) {
+      for (final GanttTask dependency : getDependencies(node)) {
+        dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(node);
+      }
+    }
+    // Collect all nodes depending transitively on the modified nodes:
+    final Set<GanttTask> affected = newIdentitySet();
+    final Deque<GanttTask> stack = new ArrayDeque<>(modified);
+    while (!stack.isEmpty()) {
+      final GanttTask node = stack.pop();
+      if (affected.add(node)) {
+        final List<GanttTask> list = dependents.get(node);
+        if (list != null) {
+          stack.addAll(list);
+        }
+      }
+    }
+    for (final GanttTask node : affected) {
+      reset(node);
+    }
+    calculate(nodes, affected);
+    return this;
+  }
+
+  /**
+   * Sorts the nodes to calculate topologically (Kahn's algorithm) and calculates them in this order. Dependencies
+   * outside of nodesToCalculate are already calculated.
+   */
+  private void calculate(final Collection<GanttTask> nodes, final Collection<GanttTask> nodesToCalculate) {
+    final Map<GanttTask, Integer> inDegree = new IdentityHashMap<>();
+    final Map<GanttTask, List<GanttTask>> dependents = new IdentityHashMap<>();
+    for (final GanttTask node : nodesToCalculate) {
+      int counter = 0;
+      for (final GanttTask dependency : getDependencies(node)) {
+        if (nodesToCalculate.contains(dependency)) {
+          dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(node);
+          ++counter;
+        }
+      }
+      inDegree.put(node, counter);
+    }
+    final Deque<GanttTask> queue = new ArrayDeque<>();
+    for (final Map.Entry<GanttTask, Integer> entry : inDegree.entrySet()) {
+      if (entry.getValue() == 0) {
+        queue.add(entry.getKey());
+      }
+    }
+    calculatedNodesCounter = 0;
+    while (!queue.isEmpty()) {
+      final GanttTask node = queue.poll();
+      calculate(node);
+      inDegree.remove(node);
+      final List<GanttTask> list = dependents.get(node);
+      if (list != null) {
+        for (final GanttTask dependent : list) {
+          final int degree = inDegree.get(dependent) - 1;
+          inDegree.put(dependent, degree);
+          if (degree == 0) {
+            queue.add(dependent);
+          }
+        }
+      }
+    }
+    cyclicNodes = new ArrayList<>(inDegree.keySet());
+    if (!cyclicNodes.isEmpty()) {
+      final StringBuilder sb = new StringBuilder();
+      for (final GanttTask node : cyclicNodes) {
+        sb.append(sb.length() > 0 ? ", " : "").append("'").append(node.getTitle()).append("' (").append(node.getId()).append(")");
+      }
+      log.warn("Cyclic dependencies detected, dates of the following Gantt objects can't be calculated in dependency order: " + sb);
+      // Let the recursive algorithm calculate what's possible (it detects the circular references itself):
+      for (final GanttTask node : cyclicNodes) {
+        calculate(node);
+      }
+    }
+    final Map<GanttTask, NodeState> newStates = new IdentityHashMap<>();
+    for (final GanttTask node : nodes) {
+      newStates.put(node, new NodeState(node));
+    }
+    states = newStates;
+  }
+
+  private void calculate(final GanttTask node) {
+    GanttUtils.getCalculatedStartDate(node);
+    GanttUtils.getCalculatedEndDate(node);
+    ++calculatedNodesCounter;
+  }
+
+  private void reset(final GanttTask node) {
+    node.setCalculatedStartDate(null).setStartDateCalculated(false);
+    node.setCalculatedEndDate(null).setEndDateCalculated(false);
+  }
+
+  /**
+   * @return All nodes of the tree including external predecessors (not part of the tree).
+   */
+  private Collection<GanttTask> collectNodes() {
+    final Set<GanttTask> nodes = newIdentitySet();
+    final Deque<GanttTask> stack = new ArrayDeque<>();
+    stack.push(rootNode);
+    while (!stack.isEmpty()) {
+      final GanttTask node = stack.pop();
+      if (node == null || !nodes.add(node)) {
+        continue;
+      }
+      if (node.getPredecessor() != null) {
+        stack.push(node.getPredecessor());
+      }
+      if (node.getChildren() != null) {
+        for (final GanttTask child : node.getChildren()) {
+          stack.push(child);
+        }
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * The nodes used by {@link GanttUtils} for calculating the start and end date of the given node.
+   */
+  static List<GanttTask> getDependencies(final GanttTask node) {
+    final boolean hasDuration = node.getDuration() != null;
+    final boolean startFixed = node.getStartDate() != null || (hasDuration && node.getEndDate() != null);
+    final boolean endFixed = node.getEndDate() != null || (hasDuration && node.getStartDate() != null);
+    if (startFixed && endFixed) {
+      return Collections.emptyList();
+    }
+    final List<GanttTask> result = new ArrayList<>();
+    final GanttTask predecessor = node.getPredecessor();
+    if (predecessor != null) {
+      result.add(predecessor);
+    }
+    if (node.getChildren() != null) {
+      final boolean finishRelation = node.getRelationType() != null
+              && node.getRelationType().isIn(GanttRelationType.FINISH_FINISH, GanttRelationType.START_FINISH);
+      if ((!startFixed && (predecessor == null || finishRelation))
+              || (!endFixed && (predecessor == null || !finishRelation) && !hasDuration)) {
+        result.addAll(node.getChildren());
+      }
+    }
+    return result;
+  }
+
+  private static Set<GanttTask> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * The values of a node used for calculating its dates.
+   */
+  private static class NodeState {
+    private final LocalDate startDate, endDate;
+
+    private final BigDecimal duration;
+
+    private final GanttTask predecessor;
+
+    private final Integer predecessorOffset;
+
+    private final GanttRelationType relationType;
+
+    private final Set<GanttTask> children;
+
+    NodeState(final GanttTask node) {
+      this.startDate = node.getStartDate();
+      this.endDate = node.getEndDate();
+      this.duration = node.getDuration();
+      this.predecessor = node.getPredecessor();
+      this.predecessorOffset = node.getPredecessorOffset();
+      this.relationType = node.getRelationType();
+      this.children = newIdentitySet();
+      if (node.getChildren() != null) {
+        this.children.addAll(node.getChildren());
+      }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof NodeState)) {
+        return false;
+      }
+      final NodeState other = (NodeState) o;
+      return Objects.equals(startDate, other.startDate)
+              && Objects.equals(endDate, other.endDate)
+              && (duration == null ? other.duration == null : other.duration != null && duration.compareTo(other.duration) == 0)
+              && predecessor == other.predecessor
+              && Objects.equals(predecessorOffset, other.predecessorOffset)
+              && relationType == other.relationType
+              && children.equals(other.children);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(startDate, endDate, predecessorOffset, relationType);
+    }
+  }
+}
@@ -91,6 +91,11 @@ public class TaskNode implements IdObject<Long>, Serializable {
 
   boolean bookableForTimesheets;
 
+  /**
+   * Precalculated by the task tree.
+   */
+  volatile TaskBookability bookability;
+
   /**
    * For every group with access to this node the permissions will be stored here.
    */
@@ -213,6 +218,13 @@ public class TaskNode implements IdObject<Long>, Serializable {
     return bookableForTimesheets;
   }
 
+  /**
+   * @return The bookability for time sheets including the reason, if not bookable.
+   */
+  public TaskBookability getBookability() {
+    return bookability;
+  }
+
   public List<Long> getDescendantIds() {
     final List<Long> descendants = new ArrayList<>();
     getDescendantIds(descendants);
@@ -34,12 +34,13 @@ import org.hibernate.Hibernate
 import org.projectforge.business.fibu.*
 import org.projectforge.business.fibu.kost.Kost2DO
 import org.projectforge.business.fibu.kost.KostCache
-import org.projectforge.business.timesheet.TimesheetDO
-import org.projectforge.business.timesheet.TimesheetDao
 import org.projectforge.common.logging.LogDuration
+import org.projectforge.common.task.TaskStatus
+import org.projectforge.common.task.TimesheetBookingStatus
 import org.projectforge.framework.access.AccessDao
 import org.projectforge.framework.access.GroupTaskAccessDO
 import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.persistence.api.BaseDOModifiedListener
 import org.projectforge.framework.cache.AbstractCache
 import org.projectforge.framework.i18n.InternalErrorException
 import org.projectforge.framework.persistence.jpa.PfPersistenceService
@@ -54,6 +55,7 @@ import java.io.StringWriter
 import java.math.BigDecimal
 import java.math.RoundingMode
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.collections.set
 
 private val log = KotlinLogging.logger {}
@@ -89,9 +91,6 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
     @Autowired
     private lateinit var taskDao: TaskDao
 
-    @Autowired
-    private lateinit var timesheetDao: TimesheetDao
-
     @PostConstruct
     private fun postConstruct() {
         if (backingInstance != null) {
@@ -100,6 +99,11 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
         }
         backingInstance = this
         auftragDao.registerTaskTree(this)
+        projektDao.register(object : BaseDOModifiedListener<ProjektDO> {
+            override fun afterInsertOrModify(obj: ProjektDO, operationType: OperationType) {
+                kost2Cache.clear() // Kost2 entries of tasks depend on the project numbers.
+            }
+        })
     }
 
     /**
@@ -125,6 +129,21 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
 
     private var orderPositionReferencesDirty = true
 
+    /**
+     * True, if the bookability of all task nodes has to be recalculated before next usage (e. g. after modification of
+     * order positions).
+     */
+    @Volatile
+    private var bookabilityDirty = true
+
+    private class Kost2Entry(val kostCacheVersion: Long, val kost2List: List<Kost2DO>?, val kost2Ids: Set<Long>?)
+
+    /**
+     * The available kost2 entries by task id (see [getKost2List]), calculated on first usage. Cleared on any task or
+     * project modification, outdated entries of modified kost2 entries are detected by [KostCache.version].
+     */
+    private val kost2Cache = ConcurrentHashMap<Long, Kost2Entry>()
+
     val rootTaskNode: TaskNode
         get() {
             checkRefresh()
@@ -165,14 +184,9 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
         synchronized(taskMap) {
             taskMap[node.id!!] = node
         }
-        val timesheet = TimesheetDO()
-        timesheet.task = task
-        val bookable = timesheetDao.checkTaskBookable(
-            timesheet, oldTimesheet = null, OperationType.INSERT, throwException = false,
-            checkTaskTreeRefresh = false,
-        )
-        node.bookableForTimesheets = bookable
-        return addTaskNode(node, parent)
+        addTaskNode(node, parent)
+        updateBookability(parent ?: node) // The parent node may not be bookable anymore, if it isn't a leaf anymore.
+        return node
     }
 
     /**
@@ -297,6 +311,7 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
         val node = getTaskNodeById(taskId)
             ?: throw InternalErrorException("Could not found task with id $taskId in internalSetProject")
         node.projekt = projekt
+        kost2Cache.clear()
     }
 
     /**
@@ -307,8 +322,28 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
      * @see .getKost2List
      */
     fun getKost2List(taskId: Long?): List<Kost2DO>? {
-        val node = getTaskNodeById(taskId)
-        return getKost2List(node, true)
+        return getKost2Entry(taskId)?.kost2List
+    }
+
+    /**
+     * @return The ids of the kost2 entries of [getKost2List] (for fast validation of time sheets).
+     */
+    fun getKost2Ids(taskId: Long?): Set<Long>? {
+        return getKost2Entry(taskId)?.kost2Ids
+    }
+
+    private fun getKost2Entry(taskId: Long?): Kost2Entry? {
+        val node = getTaskNodeById(taskId) ?: return null
+        val version = kostCache.version
+        kost2Cache[node.taskId]?.let { entry ->
+            if (entry.kostCacheVersion == version) {
+                return entry
+            }
+        }
+        val list = getKost2List(node, true)
+        val entry = Kost2Entry(version, list, list?.mapNotNull { it.id }?.toSet())
+        kost2Cache[node.taskId] = entry
+        return entry
     }
 
     /**
@@ -444,6 +479,7 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
     fun addOrUpdateTaskNode(task: TaskDO): TaskNode {
         checkRefresh()
         requireNotNull(task.id)
+        kost2Cache.clear()
         val node = getTaskNodeById(task.id) ?: return addTaskNode(task)
         node.setTask(task)
         if (task.parentTaskId != null && task.parentTaskId != node.getParent().id) {
@@ -454,11 +490,102 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
             val newParent = getTaskNodeById(task.parentTaskId)
             node.setParent(newParent)
             newParent!!.addChild(node)
+            // Order positions and leaf status of the old and new ancestors are affected:
+            bookabilityDirty = true
         }
+        updateBookability(node)
         updateTimeOfLastModification()
         return node
     }
 
+    /**
+     * @param checkRefresh If false, the task tree won't be refreshed, even if expired.
+     * @return The bookability for time sheets of the given task or null, if the task doesn't exist.
+     */
+    fun getBookability(taskId: Long?, checkRefresh: Boolean = true): TaskBookability? {
+        val node = getTaskNodeById(taskId, checkRefresh) ?: return null
+        if (bookabilityDirty) {
+            synchronized(this) {
+                if (bookabilityDirty) {
+                    updateBookability(root!!)
+                }
+            }
+        }
+        return node.bookability
+    }
+
+    /**
+     * Recalculates the bookability of the given node and all its descendants. If the bookability is dirty, all nodes
+     * are recalculated.
+     */
+    private fun updateBookability(node: TaskNode) {
+        synchronized(this) {
+            val startNode = if (bookabilityDirty) root!! else node
+            val parentBookability = startNode.parent?.bookability
+            updateBookability(startNode, parentBookability, orderPositionEntries)
+            if (startNode == root) {
+                bookabilityDirty = false
+            }
+        }
+    }
+
+    /**
+     * Calculates the bookability of the given node and all descendants in one pass: the states inherited from the
+     * ancestors are passed top-down, the order positions of the sub trees are collected bottom-up.
+     * @return true, if the node or any descendant node has assigned order positions.
+     */
+    private fun updateBookability(
+        node: TaskNode,
+        parent: TaskBookability?,
+        orderPositions: Map<Long, Set<OrderPositionInfo>>?,
+    ): Boolean {
+        val task = node.task
+        // 1. Is the task or any of the ancestor tasks closed, deleted or has the booking status TREE_CLOSED?
+        val ownClosedReason = if (task.deleted) {
+            "timesheet.error.taskNotBookable.taskDeleted"
+        } else if (!task.status.isIn(TaskStatus.O, TaskStatus.N)) {
+            "timesheet.error.taskNotBookable.taskNotOpened"
+        } else if (task.timesheetBookingStatus == TimesheetBookingStatus.TREE_CLOSED) {
+            "timesheet.error.taskNotBookable.treeClosedForBooking"
+        } else {
+            null
+        }
+        val closedReason = ownClosedReason ?: parent?.closedReason
+        val closedTask = if (ownClosedReason != null) task else parent?.closedTask
+        val bookingStatus = if (task.timesheetBookingStatus == TimesheetBookingStatus.INHERIT && parent != null) {
+            parent.bookingStatus
+        } else {
+            task.timesheetBookingStatus
+        }
+        val onlyLeafs = task.timesheetBookingStatus == TimesheetBookingStatus.ONLY_LEAFS || parent?.onlyLeafs == true
+        val inherited = TaskBookability(null, null, closedReason, closedTask, bookingStatus, onlyLeafs)
+        var orderPositionsInSubTasks = false
+        node.children?.forEach { child ->
+            if (updateBookability(child, inherited, orderPositions)) {
+                orderPositionsInSubTasks = true
+            }
+        }
+        val notBookableReason = if (closedReason != null) {
+            closedReason
+        } else if (bookingStatus == TimesheetBookingStatus.NO_BOOKING) {
+            // 2. Has the task the booking status NO_BOOKING?
+            "timesheet.error.taskNotBookable.taskClosedForBooking"
+        } else if (node.hasChildren() && onlyLeafs) {
+            // 3. Is the task not a leaf node and has this task or ancestor task the booking status ONLY_LEAFS?
+            "timesheet.error.taskNotBookable.onlyLeafsAllowedForBooking"
+        } else if (node.hasChildren() && orderPositionsInSubTasks) {
+            // 4. Does any of the descendant task node has an assigned order position?
+            "timesheet.error.taskNotBookable.orderPositionsFoundInSubTasks"
+        } else {
+            null
+        }
+        val causingTask = if (notBookableReason == null) null else if (closedReason != null) closedTask else task
+        node.bookability =
+            TaskBookability(notBookableReason, causingTask, closedReason, closedTask, bookingStatus, onlyLeafs)
+        node.bookableForTimesheets = notBookableReason == null
+        return orderPositionsInSubTasks || !orderPositions?.get(node.taskId).isNullOrEmpty()
+    }
+
     /**
      * Sets an explicit task group access for the given task (stored in the given groupTaskAccess). This method will be
      * called by AccessDao after inserting or updating GroupTaskAccess to the database.
@@ -555,6 +682,7 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
     fun refreshOrderPositionReferences() {
         synchronized(this) {
             this.orderPositionReferencesDirty = true
+            this.bookabilityDirty = true
         }
     }
 
@@ -878,21 +1006,10 @@ class TaskTree : AbstractCache(TICKS_PER_HOUR),
             log.debug { this.toString() }
             this.taskMap = nTaskMap
             readTotalDurations()
+            kost2Cache.clear()
             refreshOrderPositionReferences()
             // Now update the status: bookable for time sheets:
-            val timesheet = TimesheetDO()
-            taskList.forEach { task ->
-                val node = nTaskMap[task.id]
-                timesheet.task = task
-                val bookable = timesheetDao.checkTaskBookable(
-                    timesheet,
-                    oldTimesheet = null,
-                    OperationType.INSERT,
-                    throwException = false,
-                    checkTaskTreeRefresh = false,
-                )
-                node!!.bookableForTimesheets = bookable
-            }
+            updateBookability(newRoot!!)
             log.info { "Initializing task tree done. ${context.formatStats()}" }
         }
     }
@@ -52,6 +52,7 @@ import org.projectforge.framework.persistence.api.SortProperty.Companion.desc
 import org.projectforge.framework.persistence.api.impl.DBPredicate
 import org.projectforge.framework.persistence.history.FlatHistoryFormatService
 import org.projectforge.framework.persistence.history.HistoryLoadContext
+import org.projectforge.framework.persistence.numbers.NumberAllocationService
 import org.projectforge.framework.persistence.utils.SQLHelper.getYearsByTupleOfLocalDate
 import org.projectforge.framework.utils.NumberHelper.parseInteger
 import org.projectforge.framework.utils.NumberHelper.parseShort
@@ -74,6 +75,9 @@ open class AuftragDao : BaseDao<AuftragDO>(AuftragDO::class.java) {
     @Autowired
     private lateinit var configurationService: ConfigurationService
 
+    @Autowired
+    private lateinit var numberAllocationService: NumberAllocationService
+
     @Autowired
     private lateinit var flatHistoryFormatService: FlatHistoryFormatService
 
@@ -428,6 +432,15 @@ open class AuftragDao : BaseDao<AuftragDO>(AuftragDO::class.java) {
         }
         validateDatesInPaymentScheduleWithinPeriodOfPerformanceOfPosition(obj)
         validateAmountsInPaymentScheduleNotGreaterThanNetSumOfPosition(obj)
+        if (obj.id == null) {
+            // Reserve the number not before all validations passed, the counter is incremented on commit.
+            if (!numberAllocationService.reserve(NUMBER_SERIES, obj.nummer!!, ::getInitialLastNumber)) {
+                throw UserException("fibu.auftrag.error.nummerIstNichtFortlaufend")
+            }
+        } else {
+            // The order may be renumbered: the number mustn't be allocated again.
+            numberAllocationService.raiseTo(NUMBER_SERIES, obj.nummer!!, ::getInitialLastNumber)
+        }
     }
 
     fun validateDatesInPaymentScheduleWithinPeriodOfPerformanceOfPosition(auftrag: AuftragDO) {
@@ -597,8 +610,14 @@ open class AuftragDao : BaseDao<AuftragDO>(AuftragDO::class.java) {
                 return orig.nummer!!
             }
         }
-        // val list: List<Int?> = em.createQuery("select max(t.nummer) from AuftragDO t").getResultList()
-        return persistenceService.getNextNumber("AuftragDO", "nummer", START_NUMBER)
+        return numberAllocationService.getNextNumber(NUMBER_SERIES, ::getInitialLastNumber)
+    }
+
+    /**
+     * Initializes the number series (only called once, if the series has no counter yet).
+     */
+    private fun getInitialLastNumber(): Int {
+        return persistenceService.getNextNumber("AuftragDO", "nummer", START_NUMBER) - 1
     }
 
     override fun addOwnHistoryEntries(
@@ -656,6 +675,11 @@ open class AuftragDao : BaseDao<AuftragDO>(AuftragDO::class.java) {
 
         const val START_NUMBER: Int = 1
 
+        /**
+         * Name of the number series of order numbers, see [NumberAllocationService].
+         */
+        const val NUMBER_SERIES = "AuftragDO"
+
         private val log: Logger = LoggerFactory.getLogger(AuftragDao::class.java)
 
         val ADDITIONAL_HISTORY_SEARCH_DOS: Array<Class<*>> = arrayOf(AuftragsPositionDO::class.java)
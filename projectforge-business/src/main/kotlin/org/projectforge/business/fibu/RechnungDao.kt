@@ -39,6 +39,7 @@ import org.projectforge.framework.persistence.api.BaseSearchFilter
 import org.projectforge.framework.persistence.api.SortProperty.Companion.desc
 import org.projectforge.framework.persistence.api.impl.DBPredicate
 import org.projectforge.framework.persistence.history.HistoryLoadContext
+import org.projectforge.framework.persistence.numbers.NumberAllocationService
 import org.projectforge.framework.persistence.utils.SQLHelper.getYearsByTupleOfLocalDate
 import org.projectforge.framework.time.PFDateTime.Companion.from
 import org.projectforge.framework.time.PFDateTime.Companion.now
@@ -66,6 +67,9 @@ open class RechnungDao : BaseDao<RechnungDO>(RechnungDO::class.java) {
     @Autowired
     private lateinit var rechnungCache: RechnungCache
 
+    @Autowired
+    private lateinit var numberAllocationService: NumberAllocationService
+
     override val additionalSearchFields: Array<String>
         get() = ADDITIONAL_SEARCH_FIELDS
 
@@ -154,9 +158,11 @@ open class RechnungDao : BaseDao<RechnungDO>(RechnungDO::class.java) {
      * wird.
      */
     override fun onInsertOrModify(obj: RechnungDO, operationType: OperationType) {
+        var allocateNumber = false // True, if a planned invoice gets its number.
         if (RechnungTyp.RECHNUNG == obj.typ && obj.id != null) {
             val originValue = find(obj.id, checkAccess = false)
             if (RechnungStatus.GEPLANT == originValue!!.status && RechnungStatus.GEPLANT != obj.status) {
+                allocateNumber = originValue.nummer == null
                 obj.nummer = getNextNumber(obj)
 
                 val day = now()
@@ -222,6 +228,17 @@ open class RechnungDao : BaseDao<RechnungDO>(RechnungDO::class.java) {
                 break
             }
         }
+        if (allocateNumber) {
+            obj.nummer = numberAllocationService.allocateNext(NUMBER_SERIES, ::getInitialLastNumber)
+        } else if (obj.id == null && obj.nummer != null && RechnungStatus.GEPLANT != obj.status) {
+            // Reserve the number not before all validations passed, the counter is incremented on commit.
+            if (!numberAllocationService.reserve(NUMBER_SERIES, obj.nummer!!, ::getInitialLastNumber)) {
+                throw UserException("fibu.rechnung.error.rechnungsNummerIstNichtFortlaufend")
+            }
+        } else if (obj.nummer != null) {
+            // Renumbered invoice or planned invoice with number: the number mustn't be allocated again.
+            numberAllocationService.raiseTo(NUMBER_SERIES, obj.nummer!!, ::getInitialLastNumber)
+        }
         writeUiStatusToXml(obj)
     }
 
@@ -337,7 +354,14 @@ open class RechnungDao : BaseDao<RechnungDO>(RechnungDO::class.java) {
                 return orig.nummer!!
             }
         }
-        return persistenceService.getNextNumber("RechnungDO", "nummer", START_NUMBER)
+        return numberAllocationService.getNextNumber(NUMBER_SERIES, ::getInitialLastNumber)
+    }
+
+    /**
+     * Initializes the number series (only called once, if the series has no counter yet).
+     */
+    private fun getInitialLastNumber(): Int {
+        return persistenceService.getNextNumber("RechnungDO", "nummer", START_NUMBER) - 1
     }
 
     /**
@@ -390,6 +414,11 @@ open class RechnungDao : BaseDao<RechnungDO>(RechnungDO::class.java) {
 
         const val START_NUMBER: Int = 1000
 
+        /**
+         * Name of the number series of invoice numbers, see [NumberAllocationService].
+         */
+        const val NUMBER_SERIES = "RechnungDO"
+
         val ADDITIONAL_HISTORY_SEARCH_DOS = arrayOf<Class<*>>(
             RechnungsPositionDO::class.java
         )
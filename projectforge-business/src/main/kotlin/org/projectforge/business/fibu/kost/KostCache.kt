@@ -39,6 +39,7 @@ import org.projectforge.reporting.Kost2Art
 import org.projectforge.reporting.impl.Kost2ArtImpl
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Component
+import java.util.concurrent.atomic.AtomicLong
 
 private val log = KotlinLogging.logger {}
 
@@ -74,6 +75,19 @@ class KostCache : AbstractCache() {
 
     private var kost2EntriesExists = false
 
+    private val versionCounter = AtomicLong()
+
+    /**
+     * Incremented on every refresh and modification of kost2 entries or kost2 arts. Used by dependent caches (e. g. the
+     * kost2 lists of [org.projectforge.business.task.TaskTree]) for detecting outdated entries. The cache is refreshed
+     * first, if expired (e. g. after modifications of customers), so the returned version is up-to-date.
+     */
+    val version: Long
+        get() {
+            checkRefresh()
+            return versionCounter.get()
+        }
+
     @PostConstruct
     private fun postConstruct() {
         kundeDao.register(object : BaseDOModifiedListener<KundeDO> {
@@ -263,6 +277,7 @@ class KostCache : AbstractCache() {
         synchronized(kost2Map) {
             kost2Map[kost2Id] = kost2
         }
+        versionCounter.incrementAndGet()
     }
 
     /**
@@ -284,6 +299,7 @@ class KostCache : AbstractCache() {
         )
         this.allKost2Arts = kost2Arts.map { Kost2ArtImpl(it) }
         kost2ArtMap = kost2Arts.associateBy { it.id!! }
+        versionCounter.incrementAndGet()
     }
 
     /**
@@ -304,7 +320,7 @@ class KostCache : AbstractCache() {
                 .associateBy { it.id!! }
                 .toMutableMap()
             kost2EntriesExists = kost2Map.values.any { !it.deleted }
-            updateKost2Arts()
+            updateKost2Arts() // Increments also the version.
             log.info { "Initializing of KostCache done. ${context.formatStats()}" }
         }
     }
@@ -23,7 +23,6 @@
 
 package org.projectforge.business.fibu.orderbookstorage
 
-import com.fasterxml.jackson.core.type.TypeReference
 import jakarta.persistence.Tuple
 import mu.KotlinLogging
 import org.jetbrains.kotlin.ir.types.IdSignatureValues.result
@@ -34,6 +33,7 @@ import org.projectforge.framework.persistence.database.TupleUtils
 import org.projectforge.framework.persistence.jpa.PfPersistenceService
 import org.projectforge.framework.time.PFDateTimeUtils
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
@@ -58,6 +58,28 @@ class OrderbookStorageService {
     @Autowired
     private lateinit var persistenceService: PfPersistenceService
 
+    /**
+     * Maximum number of decoded orderbooks (by date) held in memory.
+     */
+    @Value("\${projectforge.fibu.orderbook.snapshotCacheSize:10}")
+    internal var snapshotCacheSize: Int = 10
+
+    /**
+     * Maximum number of incremental entries in a row. If an incremental entry would exceed this length, a full
+     * orderbook is stored instead, so restoring a date never has to decode more than this number of deltas.
+     */
+    @Value("\${projectforge.fibu.orderbook.maxIncrementalChainLength:7}")
+    internal var maxIncrementalChainLength: Int = 7
+
+    /**
+     * Decoded orderbooks by date (LRU). The maps are never modified, restoring incremental entries works on copies.
+     */
+    private val snapshotCache = object : LinkedHashMap<LocalDate, Map<Long, Order>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<LocalDate, Map<Long, Order>>?): Boolean {
+            return size > snapshotCacheSize
+        }
+    }
+
     /**
      * Stores the current orderbook in the database.
      * If there are no orders, nothing is stored.
@@ -82,10 +104,16 @@ class OrderbookStorageService {
         log.info { "Storing orderbook (incrementalBasedOn=$incrementalBasedOn)..." }
         // First, select all orders that are not deleted:
         val auftragList = auftragDao.select(deleted = false, checkAccess = false)
+        var basedOnDate = incrementalBasedOn
         val incrementList = if (incrementalBasedOn != null) {
             val basedOn = selectMeta(incrementalBasedOn)
             if (basedOn == null) {
                 log.error { "No orderbook found, which based on given date: $incrementalBasedOn. Falling back to full backup." }
+                basedOnDate = null
+                auftragList
+            } else if (getChainLength(incrementalBasedOn) >= maxIncrementalChainLength) {
+                log.info { "Maximum length of incremental backups ($maxIncrementalChainLength) reached. Storing full backup." }
+                basedOnDate = null
                 auftragList
             } else {
                 val basedOnDate = PFDateTimeUtils.getBeginOfDateAsUtildate(incrementalBasedOn)
@@ -110,56 +138,123 @@ class OrderbookStorageService {
         OrderbookStorageDO().also {
             it.date = today
             it.serializedOrderBook = gzipBytes
-            it.incrementalBasedOn = incrementalBasedOn
+            it.incrementalBasedOn = basedOnDate
         }.let {
             persistenceService.runInTransaction { context ->
                 val entry = selectMeta(today)
                 if (entry != null) {
                     entry.serializedOrderBook = it.serializedOrderBook
+                    entry.incrementalBasedOn = it.incrementalBasedOn
                     context.em.merge(entry)
                 } else {
                     context.em.persist(it)
                 }
             }
         }
+        synchronized(snapshotCache) {
+            // The stored entry and all entries based on it (later dates) may be outdated:
+            snapshotCache.keys.removeIf { it >= today }
+        }
         log.info { "Storing orderbook done." }
         return Stats(today, count, if (returnGZipBytes) gzipBytes else null)
     }
 
     fun restoreOrderbook(date: LocalDate): List<AuftragDO>? {
-        val orderbook = mutableMapOf<Long, Order>()
-        restoreOrderbook(date, orderbook)
+        val orderbook = restoreSnapshot(date) ?: emptyMap()
         return orderConverterService.convertFromOrder(orderbook.values)
     }
 
-    private fun restoreOrderbook(date: LocalDate, orderbook: MutableMap<Long, Order>) {
-        val entry = findEntry(date)
-        if (entry == null) {
-            log.error { "No orderbook found for date: $date" }
-            return
+    /**
+     * Restores the orderbook of the given date: the chain of incremental entries is followed back to the latest
+     * cached or full orderbook and the deltas are applied in chronological order on a copy of it.
+     * @return The decoded orderbook (unmodifiable, shared by the cache) or null, if no entry exists for the given date.
+     */
+    private fun restoreSnapshot(date: LocalDate): Map<Long, Order>? {
+        getCachedSnapshot(date)?.let {
+            log.info { "Restoring orderbook for date $date from cache." }
+            return it
         }
-        if (entry.incremental) {
-            log.info { "Restoring orderbook for date $date (incremental based on ${entry.incrementalBasedOn})..." }
-        } else {
-            log.info { "Restoring orderbook for date $date..." }
+        val chain = mutableListOf<OrderbookStorageDO>()
+        var base: Map<Long, Order>? = null
+        var current: LocalDate? = date
+        while (current != null) {
+            if (current != date) {
+                base = getCachedSnapshot(current)
+                if (base != null) {
+                    break
+                }
+            }
+            val meta = selectMeta(current)
+            if (meta == null) {
+                if (current == date) {
+                    log.error { "No orderbook found for date: $date" }
+                    return null
+                }
+                log.error { "No orderbook found for date $current, the base of an incremental backup." }
+                break
+            }
+            chain.add(meta)
+            val incrementalBasedOn = meta.incrementalBasedOn
+            if (incrementalBasedOn != null && current <= incrementalBasedOn) {
+                log.error { "Internal error: Incremental based on date is greater than the date of the orderbook: $incrementalBasedOn > $current" }
+                break
+            }
+            current = incrementalBasedOn
         }
-        entry.incrementalBasedOn?.let { incrementalBasedOn ->
-            log.info { "Restoring orderbook from previous backup first: date=$date..." }
-            if (date <= incrementalBasedOn) {
-                log.error { "Internal error: Incremental based on date is greater than the date of the orderbook: $incrementalBasedOn > $date" }
+        chain.reverse()
+        log.info { "Restoring orderbook for date $date (${chain.size} backups to decode, base=${chain.firstOrNull()?.incrementalBasedOn ?: "full backup"})..." }
+        val orderbook = HashMap(base ?: emptyMap())
+        chain.forEach { meta ->
+            val entry = findEntry(meta.date!!) ?: return@forEach
+            entry.serializedOrderBook?.let { decode(it, orderbook) }
+            if (!meta.incremental && meta.date != date) {
+                putCachedSnapshot(meta.date!!, HashMap(orderbook)) // Full backups are used as base by other dates.
             }
-            // Load orderbook from the incremental based on date first:
-            restoreOrderbook(incrementalBasedOn, orderbook)
-        }
-        val serialized = entry.serializedOrderBook ?: return
-        val json = gunzip(serialized)
-        JsonUtils.fromJson(json, object : TypeReference<List<Order?>?>() {})?.forEach { order ->
-            order?.id?.let { id ->
-                orderbook[id] = order
+        }
+        return putCachedSnapshot(date, orderbook)
+    }
+
+    /**
+     * Decodes the orders of the gzipped json array directly from the stream and puts them into the given orderbook
+     * (orders of incremental backups overwrite the previous ones).
+     */
+    private fun decode(serialized: ByteArray, orderbook: MutableMap<Long, Order>) {
+        GZIPInputStream(ByteArrayInputStream(serialized)).use { gzipStream ->
+            JsonUtils.readArray(gzipStream, Order::class.java) { order ->
+                order?.id?.let { id ->
+                    orderbook[id] = order
+                }
             }
         }
     }
 
+    /**
+     * @return The number of incremental backups in a row up to the given date (0 for full backups).
+     */
+    internal fun getChainLength(date: LocalDate): Int {
+        var length = 0
+        var current = selectMeta(date)
+        while (current?.incrementalBasedOn != null && length <= maxIncrementalChainLength) {
+            ++length
+            current = selectMeta(current.incrementalBasedOn!!)
+        }
+        return length
+    }
+
+    private fun getCachedSnapshot(date: LocalDate): Map<Long, Order>? {
+        synchronized(snapshotCache) {
+            return snapshotCache[date]
+        }
+    }
+
+    private fun putCachedSnapshot(date: LocalDate, orderbook: Map<Long, Order>): Map<Long, Order> {
+        val snapshot = Collections.unmodifiableMap(orderbook)
+        synchronized(snapshotCache) {
+            snapshotCache[date] = snapshot
+        }
+        return snapshot
+    }
+
     private fun selectMeta(date: LocalDate): OrderbookStorageDO? {
         return persistenceService.selectNamedSingleResult(
             OrderbookStorageDO.FIND_META_BY_DATE,
@@ -34,12 +34,32 @@ import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.springframework.context.annotation.DependsOn
 import java.time.LocalDate
+import java.time.LocalDateTime
 import jakarta.persistence.*
 
 
 @Entity
 @Indexed
-@Table(name = "t_poll")
+@Table(
+    name = "t_poll",
+    indexes = [Index(name = "idx_t_poll_deadline", columnList = "deadline")]
+)
+@NamedQueries(
+    NamedQuery(
+        name = PollDO.SELECT_POLLS_TO_FINISH,
+        query = "from PollDO where deleted=false and deadline<:today and state<>:finishedState"
+                + " and (resultMailAttempts is null or resultMailAttempts<:maxAttempts)"
+                + " and (resultMailNextAttempt is null or resultMailNextAttempt<=:now)"
+    ),
+    NamedQuery(
+        name = PollDO.SELECT_POLLS_BY_DEADLINES,
+        query = "from PollDO where deleted=false and deadline in :deadlines"
+    ),
+    NamedQuery(
+        name = PollDO.SELECT_POLLS_WITH_DEADLINE_BEFORE,
+        query = "from PollDO where deleted=false and deadline<:deadline"
+    ),
+)
 @AUserRightId(value = "poll", checkAccess = false)
 @DependsOn("org.projectforge.framework.persistence.user.entities.PFUserDO")
 open class PollDO : DefaultBaseDO() {
@@ -90,6 +110,18 @@ open class PollDO : DefaultBaseDO() {
     @get:Column(name = "state", nullable = false)
     open var state: State = State.RUNNING
 
+    /**
+     * Number of failed attempts of sending the result mail after the deadline (null, if not yet tried).
+     */
+    @get:Column(name = "result_mail_attempts")
+    open var resultMailAttempts: Int? = null
+
+    /**
+     * The result mail will not be sent again before this time (for retrying after failures).
+     */
+    @get:Column(name = "result_mail_next_attempt")
+    open var resultMailNextAttempt: LocalDateTime? = null
+
     @Transient
     fun getPollAssignment(): MutableList<PollAssignment> {
         val currentUserId = ThreadLocalUserContext.loggedInUserId!!
@@ -127,6 +159,12 @@ open class PollDO : DefaultBaseDO() {
     }
 
     companion object {
+        internal const val SELECT_POLLS_TO_FINISH = "PollDO_SelectPollsToFinish"
+
+        internal const val SELECT_POLLS_BY_DEADLINES = "PollDO_SelectPollsByDeadlines"
+
+        internal const val SELECT_POLLS_WITH_DEADLINE_BEFORE = "PollDO_SelectPollsWithDeadlineBefore"
+
         fun toLongArray(str: String?): LongArray? {
             if (str.isNullOrBlank()) return null
             return StringHelper.splitToLongs(str, ",", false)
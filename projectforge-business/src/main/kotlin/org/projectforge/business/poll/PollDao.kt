@@ -30,6 +30,8 @@ import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
+import java.time.LocalDate
+import java.time.LocalDateTime
 
 @Service
 open class PollDao : BaseDao<PollDO>(PollDO::class.java) {
@@ -89,4 +91,44 @@ open class PollDao : BaseDao<PollDO>(PollDO::class.java) {
     fun isAttendee(obj: PollDO, user: Long): Boolean {
         return PollDO.toLongArray(obj.attendeeIds)?.contains(user) == true
     }
+
+    /**
+     * Polls with deadline before today, whose result mail wasn't yet sent and is due (respecting the retry state).
+     * No access checking.
+     */
+    fun selectPollsToFinish(today: LocalDate, now: LocalDateTime, maxAttempts: Int): List<PollDO> {
+        return persistenceService.executeNamedQuery(
+            PollDO.SELECT_POLLS_TO_FINISH,
+            PollDO::class.java,
+            Pair("today", today),
+            Pair("finishedState", PollDO.State.FINISHED_AND_MAIL_SENT),
+            Pair("maxAttempts", maxAttempts),
+            Pair("now", now),
+        )
+    }
+
+    /**
+     * Not deleted polls with one of the given deadlines. No access checking.
+     */
+    fun selectPollsByDeadlines(deadlines: Collection<LocalDate>): List<PollDO> {
+        if (deadlines.isEmpty()) {
+            return emptyList()
+        }
+        return persistenceService.executeNamedQuery(
+            PollDO.SELECT_POLLS_BY_DEADLINES,
+            PollDO::class.java,
+            Pair("deadlines", deadlines),
+        )
+    }
+
+    /**
+     * Not deleted polls with deadline before the given date. No access checking.
+     */
+    fun selectPollsWithDeadlineBefore(deadline: LocalDate): List<PollDO> {
+        return persistenceService.executeNamedQuery(
+            PollDO.SELECT_POLLS_WITH_DEADLINE_BEFORE,
+            PollDO::class.java,
+            Pair("deadline", deadline),
+        )
+    }
 }
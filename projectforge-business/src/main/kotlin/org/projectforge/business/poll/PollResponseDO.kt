@@ -33,7 +33,16 @@ import jakarta.persistence.*
 
 @Entity
 @Indexed
-@Table(name = "t_poll_response")
+@Table(
+    name = "t_poll_response",
+    indexes = [Index(name = "idx_fk_t_poll_response_poll_fk", columnList = "poll_fk")]
+)
+@NamedQueries(
+    NamedQuery(
+        name = PollResponseDO.MARK_AS_DELETED_BY_POLL_IDS,
+        query = "update PollResponseDO set deleted=true,lastUpdate=:lastUpdate where poll.id in :pollIds and deleted=false"
+    ),
+)
 @AUserRightId(value = "poll.response", checkAccess = false)
 @DependsOn("org.projectforge.framework.persistence.user.entities.PFUserDO")
 open class PollResponseDO : DefaultBaseDO() {
@@ -51,4 +60,8 @@ open class PollResponseDO : DefaultBaseDO() {
     @PropertyInfo(i18nKey = "poll.responses")
     @get:Column(name = "responses", nullable = true, length = 1000)
     open var responses: String? = null
+
+    companion object {
+        internal const val MARK_AS_DELETED_BY_POLL_IDS = "PollResponseDO_MarkAsDeletedByPollIds"
+    }
 }
@@ -27,6 +27,7 @@ import org.projectforge.framework.access.OperationType
 import org.projectforge.framework.persistence.api.BaseDao
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.springframework.stereotype.Service
+import java.util.*
 
 @Service
 open class PollResponseDao : BaseDao<PollResponseDO>(PollResponseDO::class.java) {
@@ -43,4 +44,21 @@ open class PollResponseDao : BaseDao<PollResponseDO>(PollResponseDO::class.java)
     ): Boolean {
         return true
     }
+
+    /**
+     * Marks all responses of the given polls as deleted by one statement (without history entries).
+     * @return The number of responses marked as deleted.
+     */
+    fun markAsDeletedByPollIds(pollIds: Collection<Long>): Int {
+        if (pollIds.isEmpty()) {
+            return 0
+        }
+        return persistenceService.runInTransaction { context ->
+            context.executeNamedUpdate(
+                PollResponseDO.MARK_AS_DELETED_BY_POLL_IDS,
+                Pair("lastUpdate", Date()),
+                Pair("pollIds", pollIds),
+            )
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.task
+
+import org.projectforge.common.task.TimesheetBookingStatus
+
+/**
+ * The bookability of a task for time sheets, precalculated by the [TaskTree] for every task node, so
+ * [org.projectforge.business.timesheet.TimesheetDao.checkTaskBookable] is a single lookup.
+ */
+class TaskBookability internal constructor(
+    /**
+     * The i18n key of the reason, why the task isn't bookable, or null if the task is bookable.
+     */
+    val notBookableReason: String?,
+    /**
+     * The task causing [notBookableReason]: the task itself or an ancestor task (if closed or deleted).
+     */
+    val causingTask: TaskDO?,
+    /**
+     * Reason of the nearest closed, deleted or not opened task of the path to root (inherited by the descendants).
+     */
+    internal val closedReason: String?,
+    internal val closedTask: TaskDO?,
+    /**
+     * The effective booking status (INHERIT resolved by the ancestors).
+     */
+    internal val bookingStatus: TimesheetBookingStatus?,
+    /**
+     * True, if this or any ancestor task has the booking status ONLY_LEAFS.
+     */
+    internal val onlyLeafs: Boolean,
+) {
+    val bookable: Boolean
+        get() = notBookableReason == null
+}
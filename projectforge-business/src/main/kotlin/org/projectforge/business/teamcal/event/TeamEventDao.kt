@@ -94,6 +94,8 @@ open class TeamEventDao : BaseDao<TeamEventDO>(TeamEventDO::class.java) {
     @Autowired
     private lateinit var teamEventExternalSubscriptionCache: TeamEventExternalSubscriptionCache
 
+    private val recurrenceCache = TeamEventRecurrenceCache()
+
     override val additionalSearchFields: Array<String>
         get() = ADDITIONAL_SEARCH_FIELDS
 
@@ -655,6 +657,16 @@ open class TeamEventDao : BaseDao<TeamEventDO>(TeamEventDO::class.java) {
         return false
     }
 
+    /**
+     * Removes the cached occurrences of updated or deleted events (modified recurrences are detected by the cache
+     * itself, but the entries of deleted events would remain until they're evicted).
+     */
+    override fun afterInsertOrModify(obj: TeamEventDO, operationType: OperationType) {
+        if (operationType != OperationType.INSERT) {
+            recurrenceCache.remove(obj)
+        }
+    }
+
     override fun newInstance(): TeamEventDO {
         return TeamEventDO()
     }
@@ -686,32 +698,44 @@ open class TeamEventDao : BaseDao<TeamEventDO>(TeamEventDO::class.java) {
         val startDateTime = PFDateTime.fromOrNow(startDate, useTimeZone)
         val endDateTime = PFDateTime.fromOrNow(endDate, useTimeZone)
         val seedDate = PFDateTime.fromOrNow(eventStartDate, useTimeZone)
-
-        // get ex dates of event
-        val exDates = RRuleUtils.parseExcludeDates(event.recurrenceExDate)
-
-        // get events in time range
-        val dateList = recur.getDates(seedDate.dateTime, startDateTime.dateTime, endDateTime.dateTime)
-
-        // remove ex range values
-        val col: MutableCollection<ICalendarEvent> = ArrayList()
-        if (dateList != null) {
-            for (dateTime in dateList) {
-                val day = ICalDateUtils.extractLocalDate(dateTime)
-                if (RRuleUtils.isEventExcluded(day, exDates)) {
+        // Same zone for the period bounds and the occurrences, otherwise occurrences near the bounds may be lost:
+        val zoneId = useTimeZone.toZoneId()
+
+        val occurrences = recurrenceCache.getOccurrences(
+            event,
+            useTimeZone.id,
+            startDateTime.epochMilli,
+            endDateTime.epochMilli,
+        ) { from, to ->
+            // get ex dates of event
+            val exDates = RRuleUtils.parseExcludeDates(event.recurrenceExDate)
+            // get events in time range
+            val periodStart = PFDateTime.from(Date(from), useTimeZone).dateTime
+            val periodEnd = PFDateTime.from(Date(to), useTimeZone).dateTime
+            val dateList = recur.getDates(seedDate.dateTime, periodStart, periodEnd)
+            // remove ex range values
+            dateList?.mapNotNull { dateTime ->
+                if (RRuleUtils.isEventExcluded(ICalDateUtils.extractLocalDate(dateTime), exDates)) {
                     log.debug { "= ${dateTime} included in exdates: ${exDates?.joinToString()}" }
                     // this date is part of ex dates, so don't use it.
-                    continue
-                }
-                if (seedDate.localDate == day) {
-                    // Put event itself to the list.
-                    col.add(event)
+                    null
                 } else {
-                    // Now we need this event as date with the user's time-zone.
-                    val date = fromTemporal(dateTime, timeZone.toZoneId())
-                    val recurEvent = TeamRecurrenceEvent(event, date)
-                    col.add(recurEvent)
+                    TeamEventRecurrenceCache.Occurrence(dateTime, fromTemporal(dateTime, zoneId).epochMilli)
                 }
+            }?.sortedBy { it.epochMillis } ?: emptyList()
+        }
+        val col: MutableCollection<ICalendarEvent> = ArrayList()
+        for (occurrence in occurrences) {
+            val dateTime = occurrence.dateTime
+            val day = ICalDateUtils.extractLocalDate(dateTime)
+            if (seedDate.localDate == day) {
+                // Put event itself to the list.
+                col.add(event)
+            } else {
+                // Now we need this event as date with the user's time-zone.
+                val date = fromTemporal(dateTime, zoneId)
+                val recurEvent = TeamRecurrenceEvent(event, date)
+                col.add(recurEvent)
             }
         }
         if (log.isDebugEnabled) {
@@ -0,0 +1,154 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.business.teamcal.event
+
+import org.projectforge.business.teamcal.event.model.TeamEventDO
+import java.time.temporal.Temporal
+
+/**
+ * Caches the rolled out occurrences of recurring events, so calendar queries (e.g. scrolling through a calendar view)
+ * don't have to expand the recurrence rule of an event again and again.
+ *
+ * For every event (and time zone) a window of occurrences is cached. Queries inside the window are answered by the
+ * cache, queries outside the window extend it by calculating only the missing periods. An entry is only valid as long
+ * as the recurrence relevant values of the event (start date, recurrence rule and exception dates) are unchanged (they
+ * are part of the entry's signature), so modified events are calculated again automatically.
+ *
+ * The cache is bounded (least recently used events are removed) and also the number of occurrences per event is
+ * limited.
+ *
+ * All periods are half-open ([from, to), as the periods of ical4j), calculated and cached occurrences are filtered the
+ * same way, so cached and calculated results are identical.
+ */
+internal class TeamEventRecurrenceCache(
+    private val maxSize: Int = MAX_SIZE,
+    private val maxOccurrencesPerEvent: Int = MAX_OCCURRENCES_PER_EVENT,
+) {
+    /**
+     * @param dateTime The occurrence as returned by ical4j.
+     * @param epochMillis The occurrence in epoch millis (for sorting and filtering).
+     */
+    class Occurrence(val dateTime: Temporal, val epochMillis: Long)
+
+    /**
+     * @param occurrences The occurrences inside [from, to), sorted by date.
+     */
+    private class Entry(val signature: String, val from: Long, val to: Long, val occurrences: List<Occurrence>) {
+        fun getOccurrences(from: Long, to: Long): List<Occurrence> {
+            return filter(occurrences, from, to)
+        }
+    }
+
+    private val entries = object : LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean {
+            return size > maxSize
+        }
+    }
+
+    /**
+     * @param from Start of the period (epoch millis, inclusive).
+     * @param to End of the period (epoch millis, exclusive).
+     * @param calculate Calculates the occurrences of the given period, exception dates already removed.
+     * @return The occurrences of the given period, sorted by date.
+     */
+    fun getOccurrences(
+        event: TeamEventDO,
+        timeZoneId: String,
+        from: Long,
+        to: Long,
+        calculate: (from: Long, to: Long) -> List<Occurrence>,
+    ): List<Occurrence> {
+        val key = getKey(event, timeZoneId) ?: return filter(calculate(from, to), from, to)
+        val signature = getSignature(event)
+        val entry = synchronized(entries) { entries[key] }?.takeIf { it.signature == signature }
+        if (entry != null && from >= entry.from && to <= entry.to) {
+            return entry.getOccurrences(from, to)
+        }
+        val newEntry = if (entry != null && from <= entry.to + MAX_GAP_MILLIS && to >= entry.from - MAX_GAP_MILLIS) {
+            // Extend the cached window by the missing periods:
+            val before = if (from < entry.from) filter(calculate(from, entry.from), from, entry.from) else emptyList()
+            val after = if (to > entry.to) filter(calculate(entry.to, to), entry.to, to) else emptyList()
+            Entry(signature, minOf(from, entry.from), maxOf(to, entry.to), before + entry.occurrences + after)
+        } else {
+            Entry(signature, from, to, filter(calculate(from, to), from, to))
+        }
+        if (newEntry.occurrences.size <= maxOccurrencesPerEvent) {
+            synchronized(entries) {
+                entries[key] = newEntry
+            }
+        }
+        return newEntry.getOccurrences(from, to)
+    }
+
+    fun remove(event: TeamEventDO) {
+        val eventKey = getEventKey(event) ?: return
+        synchronized(entries) {
+            entries.keys.removeIf { it.startsWith("$eventKey|") }
+        }
+    }
+
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+        }
+    }
+
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    private fun getKey(event: TeamEventDO, timeZoneId: String): String? {
+        val eventKey = getEventKey(event) ?: return null
+        return "$eventKey|$timeZoneId"
+    }
+
+    /**
+     * Events of external subscriptions have no id, so the uid is used.
+     */
+    private fun getEventKey(event: TeamEventDO): String? {
+        val id = event.id?.toString() ?: event.uid ?: return null
+        return "${event.calendar?.id}:$id"
+    }
+
+    private fun getSignature(event: TeamEventDO): String {
+        return "${event.startDate?.time}|${event.allDay}|${event.recurrenceRule}|${event.recurrenceExDate}"
+    }
+
+    companion object {
+        /**
+         * @return The occurrences inside the half-open period [from, to).
+         */
+        private fun filter(occurrences: List<Occurrence>, from: Long, to: Long): List<Occurrence> {
+            return occurrences.filter { it.epochMillis >= from && it.epochMillis < to }
+        }
+
+        const val MAX_SIZE = 10_000
+
+        const val MAX_OCCURRENCES_PER_EVENT = 5_000
+
+        /**
+         * Queries far away from the cached window replace the window instead of extending it.
+         */
+        const val MAX_GAP_MILLIS = 366 * 24 * 60 * 60 * 1000L
+    }
+}
@@ -0,0 +1,245 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.timesheet
+
+import jakarta.persistence.Tuple
+import mu.KotlinLogging
+import org.projectforge.business.common.AutoCompletionUtils
+import org.projectforge.business.task.TaskTree
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.cache.AbstractCache
+import org.projectforge.framework.persistence.jpa.PfPersistenceService
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Autocompletion of locations (per user) and references (per task) of time sheets without database queries on every
+ * keystroke. The usages are loaded once per user or task and kept up to date on saving time sheets (see
+ * [TimesheetDao.afterInsertOrModify] and [TimesheetDao.onUpdate]): inserts are added, other modifications invalidate
+ * the affected indexes. The proposals are ranked by frequency and recency of usage.
+ * The whole cache expires every hour, so modifications not seen by this cache (e. g. by other nodes or rollbacks) are
+ * considered after one hour at the latest.
+ */
+@Service
+class TimesheetAutoCompletionCache : AbstractCache(TICKS_PER_HOUR) {
+    @Autowired
+    private lateinit var persistenceService: PfPersistenceService
+
+    @Autowired
+    private lateinit var taskTree: TaskTree
+
+    private val locationsByUser = ConcurrentHashMap<Long, AutoCompletionIndex>()
+
+    private val referencesByTask = ConcurrentHashMap<Long, AutoCompletionIndex>()
+
+    /**
+     * Incremented on every update. Indexes loaded while time sheets were saved may miss these modifications, so they're
+     * used but not cached.
+     */
+    private val modificationCounter = AtomicLong()
+
+    /**
+     * @return The locations used by the given user in the last year, matching the search string.
+     */
+    fun getLocations(userId: Long, search: String?): List<String> {
+        checkRefresh()
+        locationsByUser[userId]?.let { return it.search(search) }
+        // Query outside the map's lock:
+        val counter = modificationCounter.get()
+        val index = loadLocations(userId)
+        if (counter == modificationCounter.get()) {
+            locationsByUser.putIfAbsent(userId, index)
+        }
+        return index.search(search)
+    }
+
+    /**
+     * @return The references used by time sheets of the given task or of any ancestor or descendant task, matching the
+     * search string.
+     */
+    fun getReferences(taskId: Long, search: String?): List<String> {
+        checkRefresh()
+        val taskIds = taskTree.getAncestorAndDescendantTaskIs(taskId, true).filterNotNull()
+        val indexes = mutableListOf<AutoCompletionIndex>()
+        val missingTaskIds = mutableListOf<Long>()
+        taskIds.forEach { id ->
+            referencesByTask[id]?.let { indexes.add(it) } ?: missingTaskIds.add(id)
+        }
+        if (missingTaskIds.isNotEmpty()) {
+            val counter = modificationCounter.get()
+            val loaded = loadReferences(missingTaskIds)
+            if (counter == modificationCounter.get()) {
+                loaded.forEach { (taskId, index) -> referencesByTask.putIfAbsent(taskId, index) }
+            }
+            indexes.addAll(loaded.values)
+        }
+        return AutoCompletionIndex.search(indexes, search)
+    }
+
+    /**
+     * Updates the indexes after saving the given time sheet. Only inserted time sheets are added incrementally. For all
+     * other modifications the usage counters of the former values can't be decremented, so the indexes of the affected
+     * users and tasks are removed and reloaded on next usage.
+     * @param oldUserId The user of the time sheet before an update (if changed).
+     * @param oldTaskId The task of the time sheet before an update (if changed).
+     */
+    fun update(timesheet: TimesheetDO, operationType: OperationType, oldUserId: Long? = null, oldTaskId: Long? = null) {
+        modificationCounter.incrementAndGet()
+        val userId = timesheet.user?.id
+        val taskId = timesheet.taskId
+        if (operationType == OperationType.INSERT && !timesheet.deleted) {
+            val now = System.currentTimeMillis()
+            userId?.let { locationsByUser[it]?.add(timesheet.location, now) }
+            taskId?.let { referencesByTask[it]?.add(timesheet.reference, now) }
+            return
+        }
+        listOfNotNull(userId, oldUserId).forEach { locationsByUser.remove(it) }
+        listOfNotNull(taskId, oldTaskId).forEach { referencesByTask.remove(it) }
+    }
+
+    private fun loadLocations(userId: Long): AutoCompletionIndex {
+        val index = AutoCompletionIndex()
+        val oneYearAgo = Date(System.currentTimeMillis() - 365 * TICKS_PER_DAY)
+        persistenceService.executeNamedQuery(
+            TimesheetDO.SELECT_LOCATION_USAGE_BY_USER,
+            Tuple::class.java,
+            Pair("userId", userId),
+            Pair("lastUpdate", oneYearAgo),
+        ).forEach { tuple ->
+            val lastUsage = (tuple[2] as Date?)?.time ?: 0L
+            index.add(tuple[0] as String?, lastUsage, (tuple[1] as Number).toInt())
+        }
+        return index
+    }
+
+    private fun loadReferences(taskIds: List<Long>): Map<Long, AutoCompletionIndex> {
+        val indexes = taskIds.associateWith { AutoCompletionIndex() }
+        persistenceService.executeNamedQuery(
+            TimesheetDO.SELECT_REFERENCE_USAGE_BY_TASK_IDS,
+            Tuple::class.java,
+            Pair("taskIds", taskIds),
+        ).forEach { tuple ->
+            val lastUsage = (tuple[3] as Date?)?.time ?: 0L
+            indexes[tuple[0] as Long]?.add(tuple[1] as String?, lastUsage, (tuple[2] as Number).toInt())
+        }
+        return indexes
+    }
+
+    /**
+     * Clears all indexes, they will be reloaded on demand.
+     */
+    override fun refresh() {
+        log.info {
+            "Clearing autocompletion indexes of time sheets (${locationsByUser.size} users, ${referencesByTask.size} " +
+                    "tasks)."
+        }
+        locationsByUser.clear()
+        referencesByTask.clear()
+    }
+}
+
+/**
+ * The used values of one user or task with their usage counters and time of last usage.
+ */
+internal class AutoCompletionIndex {
+    private class Usage(val value: String, @Volatile var counter: Int, @Volatile var lastUsage: Long)
+
+    /**
+     * Key is the value in lower case, so values differing only in case are handled as one.
+     */
+    private val usages = ConcurrentHashMap<String, Usage>()
+
+    val size: Int
+        get() = usages.size
+
+    fun add(value: String?, lastUsage: Long, counter: Int = 1) {
+        val str = value?.trim()
+        if (str.isNullOrEmpty()) {
+            return
+        }
+        usages.compute(str.lowercase()) { _, usage ->
+            if (usage == null) {
+                Usage(str, counter, lastUsage)
+            } else {
+                usage.counter += counter
+                usage.lastUsage = maxOf(usage.lastUsage, lastUsage)
+                usage
+            }
+        }
+    }
+
+    fun search(search: String?): List<String> {
+        return search(listOf(this), search)
+    }
+
+    companion object {
+        /**
+         * Searches all given indexes: all words of the search string must be part of a value (see
+         * [AutoCompletionUtils]). Values starting with the search string are proposed first, then ordered by their
+         * score.
+         */
+        internal fun search(
+            indexes: List<AutoCompletionIndex>,
+            search: String?,
+            now: Long = System.currentTimeMillis(),
+        ): List<String> {
+            val words = search?.trim()?.split(" ")?.filter { it.isNotEmpty() } ?: emptyList()
+            val prefix = search?.trim()?.lowercase() ?: ""
+            val matches = mutableMapOf<String, Usage>()
+            indexes.forEach { index ->
+                index.usages.forEach { (key, usage) ->
+                    if (words.isNotEmpty() && !AutoCompletionUtils.containsAll(usage.value, words)) {
+                        return@forEach
+                    }
+                    val existing = matches[key]
+                    if (existing == null) {
+                        matches[key] = Usage(usage.value, usage.counter, usage.lastUsage)
+                    } else {
+                        existing.counter += usage.counter
+                        existing.lastUsage = maxOf(existing.lastUsage, usage.lastUsage)
+                    }
+                }
+            }
+            return matches.entries
+                .sortedWith(compareBy<Map.Entry<String, Usage>> { !it.key.startsWith(prefix) }
+                    .thenByDescending { score(it.value, now) }
+                    .thenBy { it.key })
+                .map { it.value.value }
+        }
+
+        /**
+         * Frequency of usage, decreasing with the time since last usage (halved after 30 days).
+         */
+        private fun score(usage: Usage, now: Long): Double {
+            val ageInDays = maxOf(0L, now - usage.lastUsage).toDouble() / AbstractCache.TICKS_PER_DAY
+            return usage.counter / (1.0 + ageInDays / 30.0)
+        }
+    }
+}
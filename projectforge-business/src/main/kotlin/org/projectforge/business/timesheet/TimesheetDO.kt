@@ -56,21 +56,25 @@ import java.util.*
         name = TimesheetDO.FIND_START_STOP_BY_TASKID,
         query = "select startTime, stopTime from TimesheetDO where task.id = :taskId and deleted = false"
     ),
+    NamedQuery(
+        name = TimesheetDO.SELECT_PERIODS_BY_USER_AND_TIME_PERIOD,
+        query = "select id, startTime, stopTime from TimesheetDO where user.id=:userId and deleted=false and startTime<:stopTime and stopTime>:startTime"
+    ),
     NamedQuery(
         name = TimesheetDO.SELECT_MIN_MAX_DATE_FOR_USER,
         query = "select min(startTime), max(startTime) from TimesheetDO where user.id=:userId and deleted=false"
     ),
     NamedQuery(
-        name = TimesheetDO.SELECT_USED_LOCATIONS_BY_USER_AND_LOCATION_SEARCHSTRING,
-        query = "select distinct location from TimesheetDO where deleted=false and user.id=:userId and lastUpdate>:lastUpdate and lower(location) like :locationSearch order by location"
+        name = TimesheetDO.SELECT_LOCATION_USAGE_BY_USER,
+        query = "select location, count(*), max(lastUpdate) from TimesheetDO where deleted=false and user.id=:userId and lastUpdate>:lastUpdate and location is not null and location!='' group by location"
     ),
     NamedQuery(
         name = TimesheetDO.SELECT_RECENT_USED_LOCATIONS_BY_USER_AND_LAST_UPDATE,
         query = "select distinct location from TimesheetDO where deleted=false and user.id=:userId and lastUpdate>:lastUpdate and location!=null and location!='' order by location"
     ),
     NamedQuery(
-        name = TimesheetDO.SELECT_REFERENCES_BY_TASK_ID,
-        query = "select distinct reference from TimesheetDO where deleted=false and task.id in :taskIds and reference is not NULL"
+        name = TimesheetDO.SELECT_REFERENCE_USAGE_BY_TASK_IDS,
+        query = "select task.id, reference, count(*), max(lastUpdate) from TimesheetDO where deleted=false and task.id in :taskIds and reference is not null and reference!='' group by task.id, reference"
     )
 )
 open class TimesheetDO : DefaultBaseDO(), Comparable<TimesheetDO> {
@@ -278,11 +282,11 @@ open class TimesheetDO : DefaultBaseDO(), Comparable<TimesheetDO> {
 
     companion object {
         const val FIND_START_STOP_BY_TASKID = "TimesheetDO_FindStartStopByTaskId"
+        internal const val SELECT_PERIODS_BY_USER_AND_TIME_PERIOD = "TimesheetDO_SelectPeriodsByUserAndTimePeriod"
         internal const val SELECT_MIN_MAX_DATE_FOR_USER = "TimesheetDO_SelectMinMaxDateForUser"
-        internal const val SELECT_USED_LOCATIONS_BY_USER_AND_LOCATION_SEARCHSTRING =
-            "TimesheetDO_SelectLocationsByUserAndLocationSearchstring"
+        internal const val SELECT_LOCATION_USAGE_BY_USER = "TimesheetDO_SelectLocationUsageByUser"
         internal const val SELECT_RECENT_USED_LOCATIONS_BY_USER_AND_LAST_UPDATE =
             "TimesheetDO_SelectRecentUsedLocationsByUserAndLastUpdate"
-        internal const val SELECT_REFERENCES_BY_TASK_ID = "TimesheetDO_SelectReferencesByTaskId"
+        internal const val SELECT_REFERENCE_USAGE_BY_TASK_IDS = "TimesheetDO_SelectReferenceUsageByTaskIds"
     }
 }
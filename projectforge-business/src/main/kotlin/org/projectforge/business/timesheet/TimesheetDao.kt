@@ -29,17 +29,14 @@ import org.apache.commons.collections4.CollectionUtils
 import org.apache.commons.lang3.Validate
 import org.apache.commons.lang3.builder.ToStringBuilder
 import org.hibernate.Hibernate
-import org.projectforge.business.common.AutoCompletionUtils
 import org.projectforge.business.fibu.kost.Kost2DO
 import org.projectforge.business.fibu.kost.Kost2Dao
-import org.projectforge.business.task.TaskNode
 import org.projectforge.business.task.TaskTree
 import org.projectforge.business.user.ProjectForgeGroup
 import org.projectforge.business.user.UserDao
 import org.projectforge.common.i18n.MessageParam
+import org.projectforge.common.i18n.MessageParamType
 import org.projectforge.common.i18n.UserException
-import org.projectforge.common.task.TaskStatus
-import org.projectforge.common.task.TimesheetBookingStatus
 import org.projectforge.framework.access.AccessException
 import org.projectforge.framework.access.AccessType
 import org.projectforge.framework.access.OperationType
@@ -51,11 +48,8 @@ import org.projectforge.framework.persistence.api.QueryFilter
 import org.projectforge.framework.persistence.api.QueryFilter.Companion.and
 import org.projectforge.framework.persistence.api.QueryFilter.Companion.eq
 import org.projectforge.framework.persistence.api.QueryFilter.Companion.ge
-import org.projectforge.framework.persistence.api.QueryFilter.Companion.gt
 import org.projectforge.framework.persistence.api.QueryFilter.Companion.isIn
 import org.projectforge.framework.persistence.api.QueryFilter.Companion.le
-import org.projectforge.framework.persistence.api.QueryFilter.Companion.lt
-import org.projectforge.framework.persistence.api.QueryFilter.Companion.ne
 import org.projectforge.framework.persistence.api.SortProperty.Companion.asc
 import org.projectforge.framework.persistence.api.SortProperty.Companion.desc
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
@@ -63,8 +57,6 @@ import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.projectforge.framework.persistence.utils.SQLHelper.getYearsByTupleOfDate
 import org.projectforge.framework.time.DateHelper
 import org.projectforge.framework.time.PFDateTime.Companion.from
-import org.projectforge.framework.time.PFDateTime.Companion.now
-import org.projectforge.framework.utils.NumberHelper.isEqual
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
 import java.util.*
@@ -85,6 +77,14 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
     @Autowired
     private lateinit var taskTree: TaskTree
 
+    @Autowired
+    private lateinit var autoCompletionCache: TimesheetAutoCompletionCache
+
+    /**
+     * Time sheets of the current bulk insert (see [insertBulk]), already validated.
+     */
+    private val bulkValidatedTimesheets = ThreadLocal<Set<TimesheetDO>>()
+
     /**
      * Return list of configured tags including any already given tag in time sheet.
      */
@@ -269,6 +269,9 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
      */
     override fun afterInsertOrModify(obj: TimesheetDO, operationType: OperationType) {
         taskTree.resetTotalDuration(obj.taskId!!)
+        if (operationType != OperationType.UPDATE) {
+            autoCompletionCache.update(obj, operationType) // Updates are handled by onUpdate (old user and task needed).
+        }
     }
 
     /**
@@ -305,14 +308,7 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
                 if (kost2Id == null) {
                     throw UserException("timesheet.error.kost2Required")
                 }
-                var kost2IdFound = false
-                kost2List.forEach { kost2 ->
-                    if (isEqual(kost2Id, kost2.id)) {
-                        kost2IdFound = true
-                        return@forEach
-                    }
-                }
-                if (!kost2IdFound) {
+                if (taskTree.getKost2Ids(obj.taskId)?.contains(kost2Id) != true) {
                     throw UserException("timesheet.error.invalidKost2") // Kost2Id of time sheet is not available in the task's kost2 list!
                 }
             } else {
@@ -324,6 +320,9 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
     }
 
     override fun onUpdate(obj: TimesheetDO, dbObj: TimesheetDO) {
+        val oldUserId = dbObj.user?.id
+        val oldTaskId = dbObj.taskId
+        persistenceService.runAfterCommit { autoCompletionCache.update(obj, OperationType.UPDATE, oldUserId, oldTaskId) }
         if (compareValues(obj.taskId, dbObj.taskId) != 0) {
             taskTree.resetTotalDuration(dbObj.taskId!!)
         }
@@ -355,41 +354,124 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
     /**
      * Checks if the time sheet overlaps with another time sheet of the same user. Should be checked on every insert or
      * update (also undelete). For time collision detection deleted time sheets are ignored.
+     * Only the ids and time periods of the colliding time sheets are selected (no entities, no access checks).
      *
      * @return The existing time sheet with the time period collision.
      */
     open fun hasTimeOverlap(timesheet: TimesheetDO, throwException: Boolean): Boolean {
+        val userId = requireNotNull(timesheet.userId)
+        val startTime = timesheet.startTime ?: return false // Invalid time sheet, will be rejected by onInsertOrModify.
+        val stopTime = timesheet.stopTime ?: return false
+        val begin = System.currentTimeMillis()
+        val collision = selectPeriods(userId, startTime, stopTime).firstOrNull { it.id != timesheet.id }
+        log.debug { "TimesheetDao.hasTimeOverlap took: ${System.currentTimeMillis() - begin} ms." }
+        collision ?: return false
+        if (throwException) {
+            log.info("Time sheet collision detected of time sheet $timesheet with existing time sheet #${collision.id}")
+            throwTimeOverlapException(collision)
+        }
+        return true
+    }
+
+    /**
+     * Inserts the given time sheets (bulk booking, e. g. imports or copying of weeks) in a single transaction.
+     * Time overlaps (with existing time sheets and inside the batch) are validated for the whole batch before any time
+     * sheet is persisted: the time periods of the existing time sheets near the batch are selected only once per user
+     * into a [TimesheetIntervalIndex] instead of querying the database for every time sheet. If access is checked, the
+     * time sheet protection and the bookability of the tasks are validated for the whole batch as well.
+     *
+     * @return The ids of the inserted time sheets (in the order of the given list).
+     * @throws UserException or [AccessException] of the first invalid time sheet, nothing is inserted in this case.
+     */
+    @Throws(AccessException::class)
+    @JvmOverloads
+    open fun insertBulk(timesheets: List<TimesheetDO>, checkAccess: Boolean = true): List<Long> {
+        if (timesheets.isEmpty()) {
+            return emptyList()
+        }
         val begin = System.currentTimeMillis()
-        requireNotNull(timesheet.user)
-        val queryFilter = QueryFilter()
-        queryFilter.add(eq("user", timesheet.user!!))
-        queryFilter.add(eq("deleted", false))
-        timesheet.stopTime?.let { queryFilter.add(lt("startTime", it)) }
-        timesheet.startTime?.let { queryFilter.add(gt("stopTime", it)) }
-        if (timesheet.id != null) {
-            // Update time sheet, do not compare with itself.
-            queryFilter.add(ne("id", timesheet.id!!))
-        }
-        val list = select(queryFilter)
-        if (list.isNotEmpty()) {
-            val ts = list[0]
-            if (throwException) {
-                log.info("Time sheet collision detected of time sheet $timesheet with existing time sheet $ts")
-                val startTime = DateHelper.formatIsoTimestamp(ts.startTime)
-                val stopTime = DateHelper.formatIsoTimestamp(ts.stopTime)
+        val result = persistenceService.runInTransaction { _ ->
+            validateBulk(timesheets, checkAccess)
+            val validated = Collections.newSetFromMap(IdentityHashMap<TimesheetDO, Boolean>())
+            validated.addAll(timesheets)
+            bulkValidatedTimesheets.set(validated)
+            try {
+                timesheets.map { insert(it, checkAccess) }
+            } finally {
+                bulkValidatedTimesheets.remove()
+            }
+        }
+        log.info { "${timesheets.size} time sheets inserted (bulk) in ${System.currentTimeMillis() - begin} ms." }
+        return result
+    }
+
+    private fun validateBulk(timesheets: List<TimesheetDO>, checkAccess: Boolean) {
+        val index = TimesheetIntervalIndex()
+        timesheets.groupBy { requireValue(it.userId, "timesheet.user") }.forEach { (userId, list) ->
+            val startTime = list.mapNotNull { it.startTime }.minOrNull() ?: return@forEach
+            val stopTime = list.mapNotNull { it.stopTime }.maxOrNull() ?: return@forEach
+            selectPeriods(userId, startTime, stopTime).forEach { index.add(userId, it) }
+        }
+        val user = ThreadLocalUserContext.loggedInUser
+        timesheets.forEachIndexed { idx, timesheet ->
+            val position = idx + 1
+            val startTime = requireValue(timesheet.startTime, "timesheet.startTime").time
+            val stopTime = requireValue(timesheet.stopTime, "timesheet.stopTime").time
+            val userId = timesheet.userId!!
+            index.findOverlap(userId, startTime, stopTime)?.let { collision ->
+                val batchPosition = collision.batchPosition
+                if (batchPosition == null) {
+                    log.info("Time sheet collision detected of time sheet $timesheet with time sheet #${collision.id} (bulk).")
+                    throwTimeOverlapException(collision)
+                }
+                // Collision inside the batch, the colliding time sheet has no id yet:
+                log.info("Time sheet collision detected of time sheet $timesheet with time sheet no. $batchPosition of the batch (bulk).")
                 throw UserException(
-                    "timesheet.error.timeperiodOverlapDetection", MessageParam(
-                        ts.id
-                    ), MessageParam(startTime), MessageParam(stopTime)
+                    "timesheet.error.timeperiodOverlapDetection.bulk",
+                    MessageParam(position),
+                    MessageParam(batchPosition),
+                    MessageParam(DateHelper.formatIsoTimestamp(Date(collision.startTime))),
+                    MessageParam(DateHelper.formatIsoTimestamp(Date(collision.stopTime))),
                 )
             }
-            val end = System.currentTimeMillis()
-            log.info("TimesheetDao.hasTimeOverlap took: " + (end - begin) + " ms.")
-            return true
+            index.add(userId, TimesheetIntervalIndex.Interval(null, startTime, stopTime, position))
+            if (checkAccess && user != null) {
+                checkTimesheetProtection(user, timesheet, null, OperationType.INSERT, true)
+                checkTaskBookable(timesheet, null, OperationType.INSERT, true)
+            }
         }
-        val end = System.currentTimeMillis()
-        log.info("TimesheetDao.hasTimeOverlap took: " + (end - begin) + " ms.")
-        return false
+    }
+
+    /**
+     * @throws UserException (validation.required.valueNotPresent) if the value is missing.
+     */
+    private fun <T> requireValue(value: T?, i18nKey: String): T {
+        return value ?: throw UserException(
+            "validation.required.valueNotPresent",
+            MessageParam(i18nKey, MessageParamType.I18N_KEY)
+        )
+    }
+
+    /**
+     * @return The periods of all (not deleted) time sheets of the given user overlapping the given time period.
+     */
+    private fun selectPeriods(userId: Long, startTime: Date, stopTime: Date): List<TimesheetIntervalIndex.Interval> {
+        return persistenceService.executeNamedQuery(
+            TimesheetDO.SELECT_PERIODS_BY_USER_AND_TIME_PERIOD,
+            Tuple::class.java,
+            Pair("userId", userId),
+            Pair("startTime", startTime),
+            Pair("stopTime", stopTime),
+        ).map { TimesheetIntervalIndex.Interval(it[0] as Long, (it[1] as Date).time, (it[2] as Date).time) }
+    }
+
+    private fun throwTimeOverlapException(collision: TimesheetIntervalIndex.Interval): Nothing {
+        throw UserException(
+            "timesheet.error.timeperiodOverlapDetection",
+            MessageParam(collision.id),
+            MessageParam(DateHelper.formatIsoTimestamp(Date(collision.startTime))),
+            MessageParam(DateHelper.formatIsoTimestamp(Date(collision.stopTime))),
+        )
     }
 
     /**
@@ -508,6 +590,9 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
         if (!hasAccess(user, obj, null, OperationType.INSERT, throwException)) {
             return false
         }
+        if (bulkValidatedTimesheets.get()?.contains(obj) == true) {
+            return true // Overlaps, protection and bookability are already validated for the whole batch by insertBulk.
+        }
         if (hasTimeOverlap(obj, throwException)) {
             return false
         }
@@ -547,73 +632,14 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
                 return true
             }
         }
-        val taskNode = taskTree.getTaskNodeById(timesheet.taskId, checkTaskTreeRefresh)
-        // 1. Is the task or any of the ancestor tasks closed, deleted or has the booking status TREE_CLOSED?
-        var node: TaskNode? = taskNode
-        do {
-            val task = node!!.task
-            var errorMessage: String? = null
-            if (task.deleted) {
-                errorMessage = "timesheet.error.taskNotBookable.taskDeleted"
-            } else if (!task.status.isIn(TaskStatus.O, TaskStatus.N)) {
-                errorMessage = "timesheet.error.taskNotBookable.taskNotOpened"
-            } else if (task.timesheetBookingStatus == TimesheetBookingStatus.TREE_CLOSED) {
-                errorMessage = "timesheet.error.taskNotBookable.treeClosedForBooking"
-            }
-            if (errorMessage != null) {
-                if (throwException) {
-                    throw AccessException(errorMessage, task.title + " (#" + task.id + ")")
-                }
-                return false
-            }
-            node = node.parent
-        } while (node != null)
-        // 2. Has the task the booking status NO_BOOKING?
-        var bookingStatus = taskNode!!.task.timesheetBookingStatus
-        node = taskNode
-        while (bookingStatus == TimesheetBookingStatus.INHERIT && node?.parent != null) {
-            node = node.parent
-            bookingStatus = node.task.timesheetBookingStatus
-        }
-        if (bookingStatus == TimesheetBookingStatus.NO_BOOKING) {
-            if (throwException) {
-                throw AccessException(
-                    "timesheet.error.taskNotBookable.taskClosedForBooking",
-                    taskNode.task.title + " (#" + taskNode.id + ")"
-                )
-            }
-            return false
-        }
-        if (taskNode.hasChildren()) {
-            // 3. Is the task not a leaf node and has this task or ancestor task the booking status ONLY_LEAFS?
-            node = taskNode
-            do {
-                val task = node!!.task
-                if (task.timesheetBookingStatus == TimesheetBookingStatus.ONLY_LEAFS) {
-                    if (throwException) {
-                        throw AccessException(
-                            "timesheet.error.taskNotBookable.onlyLeafsAllowedForBooking",
-                            taskNode.task.title + " (#" + taskNode.id + ")"
-                        )
-                    }
-                    return false
-                }
-                node = node.parent
-            } while (node != null)
-            // 4. Does any of the descendant task node has an assigned order position?
-            for (child in taskNode.children) {
-                if (taskTree.hasOrderPositions(child.id, true)) {
-                    if (throwException) {
-                        throw AccessException(
-                            "timesheet.error.taskNotBookable.orderPositionsFoundInSubTasks",
-                            taskNode.task.title + " (#" + taskNode.id + ")"
-                        )
-                    }
-                    return false
-                }
-            }
+        // The rules are evaluated for the whole task tree at once (see TaskTree.getBookability):
+        val bookability = taskTree.getBookability(timesheet.taskId, checkTaskTreeRefresh)
+        val reason = bookability!!.notBookableReason ?: return true
+        if (throwException) {
+            val task = bookability.causingTask!!
+            throw AccessException(reason, task.title + " (#" + task.id + ")")
         }
-        return true
+        return false
     }
 
     /**
@@ -674,34 +700,28 @@ open class TimesheetDao : BaseDao<TimesheetDO>(TimesheetDO::class.java) {
     }
 
     /**
-     * Get all locations of the user's time sheet (not deleted ones) with modification date within last year.
+     * Get all locations of the user's time sheet (not deleted ones) with modification date within last year, ranked by
+     * frequency and recency of usage (served by [TimesheetAutoCompletionCache]).
      */
     open fun getLocationAutocompletion(searchString: String?): List<String> {
         checkLoggedInUserSelectAccess()
-        val oneYearAgo = now().minusDays(365)
-        return persistenceService.executeNamedQuery(
-            TimesheetDO.SELECT_USED_LOCATIONS_BY_USER_AND_LOCATION_SEARCHSTRING,
-            String::class.java,
-            Pair("lastUpdate", oneYearAgo.utilDate),
-            Pair("locationSearch", "%${searchString?.lowercase() ?: ""}%"),
-            Pair("userId", ThreadLocalUserContext.loggedInUserId),
-        )
+        return autoCompletionCache.getLocations(ThreadLocalUserContext.loggedInUserId!!, searchString)
     }
 
     /**
      * Get all used references of time sheets with given task id or used in any sub task.
      */
     open fun getUsedReferences(taskId: Long): List<String> {
-        checkLoggedInUserSelectAccess()
-        return persistenceService.executeNamedQuery(
-            TimesheetDO.SELECT_REFERENCES_BY_TASK_ID,
-            String::class.java,
-            Pair("taskIds", taskTree.getAncestorAndDescendantTaskIs(taskId, true)),
-        )
+        return getUsedReferences(taskId, null)
     }
 
+    /**
+     * Get all used references of time sheets with given task id or used in any ancestor or sub task matching the search
+     * string, ranked by frequency and recency of usage (served by [TimesheetAutoCompletionCache]).
+     */
     open fun getUsedReferences(taskId: Long, search: String?): List<String> {
-        return AutoCompletionUtils.filter(getUsedReferences(taskId), search)
+        checkLoggedInUserSelectAccess()
+        return autoCompletionCache.getReferences(taskId, search)
     }
 
     /**
@@ -0,0 +1,75 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.timesheet
+
+import java.util.*
+
+/**
+ * Index of the time periods of the time sheets of users, for detecting time overlaps of many time sheets (e. g. bulk
+ * booking) without querying the database for every single time sheet.
+ * Time sheets are limited in duration (see [TimesheetDao.MAXIMUM_DURATION]), so only the periods starting at most this
+ * duration before a given period have to be checked for overlaps.
+ */
+internal class TimesheetIntervalIndex {
+    /**
+     * @param id The id of the time sheet or null for new time sheets (not yet persisted).
+     * @param startTime Start time in epoch millis (inclusive).
+     * @param stopTime Stop time in epoch millis (exclusive).
+     * @param batchPosition The position (1-based) of a new time sheet in its bulk booking, null for persisted ones.
+     */
+    class Interval(val id: Long?, val startTime: Long, val stopTime: Long, val batchPosition: Int? = null)
+
+    /**
+     * Intervals by user id, sorted by start time (more than one interval may start at the same time).
+     */
+    private val intervalsByUser = mutableMapOf<Long, TreeMap<Long, MutableList<Interval>>>()
+
+    /**
+     * The maximum duration of all intervals, at least [TimesheetDao.MAXIMUM_DURATION] (older time sheets may be
+     * longer).
+     */
+    private var maxDuration = TimesheetDao.MAXIMUM_DURATION
+
+    fun add(userId: Long, interval: Interval) {
+        intervalsByUser.getOrPut(userId) { TreeMap() }.getOrPut(interval.startTime) { mutableListOf() }.add(interval)
+        maxDuration = maxOf(maxDuration, interval.stopTime - interval.startTime)
+    }
+
+    /**
+     * @param ignoreId Id of a time sheet to ignore (the updated time sheet itself).
+     * @return The first interval of the given user overlapping the given period or null, if no overlap exists.
+     */
+    fun findOverlap(userId: Long, startTime: Long, stopTime: Long, ignoreId: Long? = null): Interval? {
+        val intervals = intervalsByUser[userId] ?: return null
+        intervals.subMap(startTime - maxDuration, true, stopTime, false).values.forEach { list ->
+            list.forEach { interval ->
+                if (interval.stopTime > startTime && (ignoreId == null || interval.id != ignoreId)) {
+                    return interval
+                }
+            }
+        }
+        return null
+    }
+}
@@ -207,18 +207,21 @@ open class Favorites<T : AbstractFavorite>() {
     const val PREF_NAME_LIST = "favorites.list"
     const val PREF_NAME_CURRENT = "favorites.current"
 
+    /**
+     * The i18n keys needed by the favorites of the frontend.
+     */
+    val TRANSLATION_KEYS = arrayOf(
+      "favorites",
+      "delete",
+      "rename",
+      "favorite.addNew",
+      "favorite.untitled",
+      "favorites.saveModification",
+      "uptodate",
+    )
+
     fun addTranslations(translations: MutableMap<String, String>) {
-      addTranslations(
-        "favorites",
-        "delete",
-        "rename",
-        "favorites",
-        "favorite.addNew",
-        "favorite.untitled",
-        "favorites.saveModification",
-        "uptodate",
-        translations = translations
-      )
+      addTranslations(*TRANSLATION_KEYS, translations = translations)
     }
 
     fun deleteUserPref(userPrefDao: UserPrefDao, area: String, id: Long) {
@@ -27,8 +27,11 @@ import org.projectforge.business.user.UserLocale
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
 import java.text.MessageFormat
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * ThreadLocal context.
@@ -40,9 +43,64 @@ object I18nHelper {
   private val BUNDLE_NAMES: MutableSet<String> = HashSet()
   private lateinit var i18nService: I18nService
 
+  /**
+   * The translations of all bundles merged into one map per locale (built on first use of a locale).
+   */
+  private val translationsByLocale = ConcurrentHashMap<Locale, Translations>()
+
+  /**
+   * Incremented on every modification of the bundle names and on reload, for avoiding caching of outdated tables.
+   */
+  @Volatile
+  private var bundlesVersion = 0L
+
+  /**
+   * All translations of all bundles for one locale. If a key is defined in multiple bundles, the translation of the
+   * first bundle (in order of [BUNDLE_NAMES]) wins, as before.
+   */
+  private class Translations(val messages: Map<String, String>) {
+    /**
+     * Compiled message formats by i18n key. MessageFormat isn't thread safe, so usage must be synchronized.
+     */
+    val messageFormats = ConcurrentHashMap<String, MessageFormat>()
+
+    /**
+     * Hash over all keys and translations, changes only if the translations change (e. g. after reload).
+     */
+    val version: String by lazy {
+      val md = MessageDigest.getInstance("SHA-256")
+      messages.toSortedMap().forEach { (key, value) ->
+        md.update(key.toByteArray(StandardCharsets.UTF_8))
+        md.update(0)
+        md.update(value.toByteArray(StandardCharsets.UTF_8))
+        md.update(0)
+      }
+      md.digest().take(16).joinToString("") { "%02x".format(it) }
+    }
+  }
+
   @JvmStatic
   fun addBundleName(bundleName: String) {
-    BUNDLE_NAMES.add(bundleName)
+    synchronized(BUNDLE_NAMES) {
+      if (BUNDLE_NAMES.add(bundleName)) {
+        ++bundlesVersion
+        translationsByLocale.clear() // Merge the new bundle on next use.
+      }
+    }
+  }
+
+  /**
+   * Clears all merged translation tables and the resource bundle cache of the JVM, so modified properties files are
+   * reloaded on next use (useful in development mode).
+   */
+  @JvmStatic
+  fun reload() {
+    log.info("Reloading i18n resource bundles.")
+    synchronized(BUNDLE_NAMES) {
+      ++bundlesVersion
+      ResourceBundle.clearCache()
+      translationsByLocale.clear()
+    }
   }
 
   @JvmStatic
@@ -78,42 +136,74 @@ object I18nHelper {
   @JvmStatic
   fun getLocalizedMessage(locale: Locale?, i18nKey: String?, vararg params: Any?): String {
     i18nKey ?: return "???"
-    val localized = getLocalizedString(locale, i18nKey)
+    val translations = getTranslations(locale)
+    val translation = translations.messages[i18nKey]
+    // Is already translated (or key not found):
+    val localized = translation ?: i18nKey
     if (params.isEmpty()) {
       return localized
     }
-    return if (localized.startsWith("???")) {
+    if (localized.startsWith("???")) {
       // I18n-key not found (e. g. in test cases).
-      "$localized (${params.joinToString { it.toString() }})???"
-    } else MessageFormat.format(localized, *params)
+      return "$localized (${params.joinToString { it.toString() }})???"
+    }
+    if (translation == null) {
+      return MessageFormat.format(localized, *params) // Not cached, because the unknown key may be any text.
+    }
+    val messageFormat = translations.messageFormats.computeIfAbsent(i18nKey) { MessageFormat(localized) }
+    synchronized(messageFormat) {
+      return messageFormat.format(params)
+    }
+  }
+
+  /**
+   * @param locale If null, then the context user's locale is assumed.
+   * @return All translations of all bundles for the given locale (unmodifiable).
+   */
+  @JvmStatic
+  fun getAllTranslations(locale: Locale?): Map<String, String> {
+    return getTranslations(locale).messages
   }
 
-  private fun getLocalizedString(locale: Locale?, i18nKey: String): String {
+  /**
+   * The version of the translations of the given locale: a hash over all translations, so clients may cache the
+   * translations (see [getAllTranslations]) as long as the version doesn't change.
+   * @param locale If null, then the context user's locale is assumed.
+   */
+  @JvmStatic
+  fun getTranslationsVersion(locale: Locale?): String {
+    return getTranslations(locale).version
+  }
+
+  private fun getTranslations(locale: Locale?): Translations {
     val lc = locale ?: ThreadLocalUserContext.locale!!
-    for (bundleName in BUNDLE_NAMES) {
-      val translation = getLocalizedString(bundleName, lc, i18nKey)
-      if (translation != null) {
-        return translation
+    translationsByLocale[lc]?.let { return it }
+    val version: Long
+    val bundleNames = synchronized(BUNDLE_NAMES) {
+      version = bundlesVersion
+      BUNDLE_NAMES.toList()
+    }
+    val messages = mutableMapOf<String, String>()
+    for (bundleName in bundleNames) {
+      try {
+        val bundle = getResourceBundle(bundleName, lc)
+        for (key in bundle.keySet()) {
+          if (!messages.containsKey(key)) {
+            messages[key] = bundle.getString(key)
+          }
+        }
+      } catch (ex: Exception) {
+        log.warn("Exception while trying to load bundle '$bundleName' for locale '$lc': ${ex.message}")
       }
     }
-    // log.warn("Resource key '$i18nKey' not found for locale '$locale' in bundles ${BUNDLE_NAMES.joinToString { it }}")
-    // Is already translated (or key not found):
-    return i18nKey
-  }
-
-  private fun getLocalizedString(bundleName: String, locale: Locale, i18nKey: String): String? {
-    try {
-      val bundle = getResourceBundle(bundleName, locale)
-      return if (bundle.containsKey(i18nKey)) {
-        bundle.getString(i18nKey)
-      } else {
-        null
-        //i18nService.getAdditionalString(i18nKey, locale)
+    log.info("Translations of ${bundleNames.size} bundles merged for locale '$lc': ${messages.size} keys.")
+    val translations = Translations(Collections.unmodifiableMap(messages))
+    synchronized(BUNDLE_NAMES) {
+      if (version != bundlesVersion) {
+        return translations // Bundles were added or reloaded meanwhile, don't cache the outdated translations.
       }
-    } catch (ex: Exception) {
-      log.warn("Exception while trying to access key '$i18nKey' for locale '$locale' and bundle '$bundleName': ${ex.message}")
+      return translationsByLocale.putIfAbsent(lc, translations) ?: translations
     }
-    return null
   }
 
   /**
@@ -134,6 +134,25 @@ open class AttachmentsService {
     return asAttachment(fileObject)
   }
 
+  /**
+   * Checks the download access of the logged-in user (as [getAttachmentInputStream] does) without opening the content.
+   * Must be called before serving conditional requests (e. g. If-None-Match), which don't read the content.
+   * @param path Unique path of data object.
+   * @param id Id of data object.
+   * @return The attachment or null, if not found.
+   */
+  @JvmOverloads
+  open fun getAttachmentInfoForDownload(
+    path: String,
+    id: Any,
+    fileId: String,
+    accessChecker: AttachmentsAccessChecker,
+    subPath: String? = null
+  ): Attachment? {
+    val fileObject = getFileInfoForDownload(path, id, fileId, accessChecker, subPath) ?: return null
+    return asAttachment(fileObject)
+  }
+
   /**
    * @param path Unique path of data object.
    * @param id Id of data object.
@@ -146,19 +165,7 @@ open class AttachmentsService {
     accessChecker: AttachmentsAccessChecker,
     subPath: String? = null
   ): ByteArray? {
-    val fileObject = repoService.getFileInfo(
-      getPath(path, id),
-      subPath ?: DEFAULT_NODE,
-      fileId = fileId
-    )
-      ?: return null
-    accessChecker.checkDownloadAccess(
-      ThreadLocalUserContext.loggedInUser,
-      path = path,
-      id = id,
-      file = fileObject,
-      subPath = subPath
-    )
+    val fileObject = getFileInfoForDownload(path, id, fileId, accessChecker, subPath) ?: return null
     return if (repoService.retrieveFile(fileObject)) {
       fileObject.content
     } else {
@@ -187,21 +194,15 @@ open class AttachmentsService {
      */
     userString: String? = null,
     baseDao: BaseDao<out ExtendedBaseDO<Long>>? = null,
+    /**
+     * Skips the first bytes of the content (for serving http range requests). The download event is only fired for
+     * downloads starting at position 0, so continued downloads aren't audited and notified again.
+     */
+    startPosition: Long = 0,
     )
       : Pair<FileObject, InputStream>? {
-    val fileObject = repoService.getFileInfo(
-      getPath(path, id),
-      subPath ?: DEFAULT_NODE,
-      fileId = fileId
-    ) ?: return null
-    accessChecker.checkDownloadAccess(
-      ThreadLocalUserContext.loggedInUser,
-      path = path,
-      id = id,
-      file = fileObject,
-      subPath = subPath
-    )
-    val inputStream = repoService.retrieveFileInputStream(fileObject)
+    val fileObject = getFileInfoForDownload(path, id, fileId, accessChecker, subPath) ?: return null
+    val inputStream = repoService.retrieveFileInputStream(fileObject, startPosition = startPosition)
     if (inputStream == null) {
       log.error {
         "Can't download file of ${
@@ -213,6 +214,10 @@ open class AttachmentsService {
       }
       return null
     }
+    if (startPosition > 0L) {
+      // Continuation of a download (http range request): the download event was already fired for the first part.
+      return Pair(fileObject, inputStream)
+    }
     baseDao?.let {
       var dbObj = data
       if (dbObj == null && id is java.io.Serializable) {
@@ -629,6 +634,32 @@ open class AttachmentsService {
     }
   }
 
+  /**
+   * Gets the file info and checks the download access of the logged-in user.
+   * @return The file info or null, if not found.
+   */
+  private fun getFileInfoForDownload(
+    path: String,
+    id: Any,
+    fileId: String,
+    accessChecker: AttachmentsAccessChecker,
+    subPath: String?,
+  ): FileObject? {
+    val fileObject = repoService.getFileInfo(
+      getPath(path, id),
+      subPath ?: DEFAULT_NODE,
+      fileId = fileId
+    ) ?: return null
+    accessChecker.checkDownloadAccess(
+      ThreadLocalUserContext.loggedInUser,
+      path = path,
+      id = id,
+      file = fileObject,
+      subPath = subPath
+    )
+    return fileObject
+  }
+
   private fun asAttachment(fileObject: FileObject): Attachment {
     val attachment = Attachment(fileObject)
     NumberHelper.parseLong(fileObject.createdByUser, false)?.let {
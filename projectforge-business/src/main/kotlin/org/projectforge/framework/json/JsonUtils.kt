@@ -25,6 +25,7 @@ package org.projectforge.framework.json
 
 import com.fasterxml.jackson.annotation.JsonInclude
 import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.core.JsonToken
 import com.fasterxml.jackson.core.type.TypeReference
 import com.fasterxml.jackson.databind.DeserializationFeature
 import com.fasterxml.jackson.databind.ObjectMapper
@@ -33,6 +34,7 @@ import com.fasterxml.jackson.module.kotlin.KotlinModule
 import mu.KotlinLogging
 import org.projectforge.framework.time.PFDateTime
 import java.io.IOException
+import java.io.InputStream
 import java.sql.Timestamp
 import java.time.LocalDate
 import java.time.LocalTime
@@ -102,6 +104,27 @@ object JsonUtils {
     }
   }
 
+  /**
+   * Reads a json array element by element without holding the whole document (as string) in memory.
+   * @param handle Called for every element of the array.
+   */
+  @JvmStatic
+  @Throws(IOException::class)
+  fun <T> readArray(inputStream: InputStream, classOfT: Class<T>, handle: (T?) -> Unit) {
+    objectMapper.factory.createParser(inputStream).use { parser ->
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        return // Empty document or null.
+      }
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (parser.currentToken == JsonToken.VALUE_NULL) {
+          handle(null)
+        } else {
+          handle(objectMapper.readValue(parser, classOfT))
+        }
+      }
+    }
+  }
+
   fun initializeMapper(module: SimpleModule) {
     module.addSerializer(LocalDate::class.java, LocalDateSerializer())
     module.addDeserializer(LocalDate::class.java, LocalDateDeserializer())
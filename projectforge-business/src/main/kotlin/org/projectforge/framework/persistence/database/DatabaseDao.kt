@@ -23,20 +23,25 @@
 
 package org.projectforge.framework.persistence.database
 
+import jakarta.persistence.EntityManager
 import jakarta.persistence.EntityManagerFactory
 import mu.KotlinLogging
 import org.apache.commons.lang3.ClassUtils
 import org.hibernate.search.mapper.orm.Search
-import org.hibernate.search.mapper.orm.session.SearchSession
+import org.hibernate.search.mapper.orm.massindexing.MassIndexer
 import org.hibernate.search.mapper.pojo.massindexing.MassIndexingMonitor
+import org.hibernate.search.mapper.orm.session.SearchSession
 import org.projectforge.framework.persistence.api.ReindexSettings
+import org.projectforge.framework.persistence.search.ReindexProgress
 import org.projectforge.framework.time.DateHelper
 import org.projectforge.framework.time.DateTimeFormatter
 import org.projectforge.framework.time.DayHolder
 import org.projectforge.framework.utils.NumberFormatter
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 private val log = KotlinLogging.logger {}
 
@@ -49,16 +54,35 @@ private val log = KotlinLogging.logger {}
 // SELECT backend_start, query_start, state_change, wait_event_type, state, query  FROM pg_stat_activity where state <> 'idle';
 @Service
 open class DatabaseDao {
-    private var currentReindexRun: Date? = null
+    /**
+     * Start dates of the currently running re-index jobs by entity class. Different entities may be re-indexed
+     * concurrently, but not the same entity twice.
+     */
+    private val currentReindexRuns = ConcurrentHashMap<Class<*>, Date>()
 
     @Autowired
     private lateinit var entityManagerFactory: EntityManagerFactory
 
+    @Value("\${projectforge.search.reindex.threadsToLoadObjects:4}")
+    private var threadsToLoadObjects: Int = 4
+
+    @Value("\${projectforge.search.reindex.batchSizeToLoadObjects:25}")
+    private var batchSizeToLoadObjects: Int = 25
+
+    @Value("\${projectforge.search.reindex.idFetchSize:150}")
+    private var idFetchSize: Int = 150
+
+    /**
+     * Number of entities per chunk for resumable re-indexing. After each chunk the progress is saved.
+     */
+    @Value("\${projectforge.search.reindex.chunkSize:100000}")
+    private var chunkSize: Int = 100_000
+
     @JvmOverloads
     fun <T> rebuildDatabaseSearchIndices(clazz: Class<T>, settings: ReindexSettings = ReindexSettings()): String {
-        if (currentReindexRun != null) {
+        currentReindexRuns[clazz]?.let { started ->
             val otherJobStarted =
-                DateTimeFormatter.instance().getFormattedDateTime(currentReindexRun, Locale.ENGLISH, DateHelper.UTC)
+                DateTimeFormatter.instance().getFormattedDateTime(started, Locale.ENGLISH, DateHelper.UTC)
             return ("Another re-index job is already running. The job was started at: $otherJobStarted (UTC)")
         }
         val sb = StringBuilder()
@@ -67,20 +91,104 @@ open class DatabaseDao {
     }
 
     fun <T> reindex(clazz: Class<T>, settings: ReindexSettings, sb: StringBuilder) {
-        if (currentReindexRun != null) {
+        if (currentReindexRuns.putIfAbsent(clazz, Date()) != null) {
             sb.append(" (cancelled due to another running index-job)")
             return
         }
-        synchronized(this) {
-            try {
-                currentReindexRun = Date()
-                sb.append(ClassUtils.getShortClassName(clazz))
-                reindex(clazz, settings)
-                sb.append(", ")
-            } finally {
-                currentReindexRun = null
+        try {
+            sb.append(ClassUtils.getShortClassName(clazz))
+            reindex(clazz, settings)
+            sb.append(", ")
+        } finally {
+            currentReindexRuns.remove(clazz)
+        }
+    }
+
+    /**
+     * Re-indexes all entities of the given class in chunks of [chunkSize] entities ordered by id. After each indexed
+     * chunk [chunkCompleted] is called with the highest id of the chunk, so an interrupted run may be resumed by setting
+     * [ReindexProgress.lastCompletedId] before calling this method again.
+     * Entities without numeric ids are re-indexed in one go.
+     * @param progress The progress of this entity, lastCompletedId is used for resuming.
+     * @param isActive Checked before each chunk, the re-indexing is cancelled, if false.
+     * @param chunkCompleted Called after each indexed chunk (e. g. for persisting the progress).
+     * @return false, if another re-index job of this entity is already running or if the job was cancelled.
+     */
+    fun reindexResumable(
+        clazz: Class<*>,
+        progress: ReindexProgress,
+        isActive: () -> Boolean = { true },
+        chunkCompleted: (lastId: Long) -> Unit = {},
+    ): Boolean {
+        if (currentReindexRuns.putIfAbsent(clazz, Date()) != null) {
+            log.warn { "${clazz.simpleName}: Re-indexing not started, another index-job of this entity is running." }
+            return false
+        }
+        try {
+            entityManagerFactory.createEntityManager().use { em ->
+                val searchSession = Search.session(em)
+                val resume = progress.lastCompletedId != null
+                val numericIds = try {
+                    val minId = em.createQuery("select min(e.id) from ${clazz.name} e").singleResult
+                    minId == null || minId is Number
+                } catch (ex: Exception) {
+                    log.info { "${clazz.simpleName}: Can't determine ids, re-indexing all entities: ${ex.message}" }
+                    false
+                }
+                if (!numericIds) {
+                    // No numeric ids: re-index all entities (purges the index on start).
+                    progress.lastCompletedId = null
+                    createMassIndexer(searchSession, clazz, progress, false).startAndWait()
+                    return true
+                }
+                if (!resume) {
+                    searchSession.workspace(clazz).purge()
+                    progress.totalEntities =
+                        em.createQuery("select count(e) from ${clazz.name} e", java.lang.Long::class.java)
+                            .singleResult.toLong()
+                }
+                var lastId = progress.lastCompletedId
+                while (true) {
+                    if (!isActive()) {
+                        log.info { "${clazz.simpleName}: Re-indexing cancelled." }
+                        return false
+                    }
+                    val toId = getChunkEndId(em, clazz, lastId) ?: break // No more entities.
+                    val typeStep = createMassIndexer(searchSession, clazz, progress, true).type(clazz)
+                    val massIndexer = if (lastId == null) {
+                        typeStep.reindexOnly("e.id <= :toId")
+                    } else {
+                        typeStep.reindexOnly("e.id > :fromId and e.id <= :toId").param("fromId", lastId)
+                    }
+                    massIndexer.param("toId", toId).startAndWait()
+                    progress.lastCompletedId = toId
+                    progress.indexedEntitiesOfCompletedChunks = progress.indexedEntities
+                    chunkCompleted(toId)
+                    lastId = toId
+                }
             }
+            return true
+        } finally {
+            currentReindexRuns.remove(clazz)
+        }
+    }
+
+    /**
+     * Pages through the ordered ids, so sparse ids don't result in empty chunks.
+     * @return The highest id of the next chunk of [chunkSize] entities with ids greater than [lastId], or null if
+     * no entities are left.
+     */
+    private fun getChunkEndId(em: EntityManager, clazz: Class<*>, lastId: Long?): Long? {
+        val where = if (lastId == null) "" else " where e.id > :lastId"
+        val query = em.createQuery("select e.id from ${clazz.name} e$where order by e.id")
+        lastId?.let { query.setParameter("lastId", it) }
+        (query.setFirstResult(chunkSize - 1).setMaxResults(1).resultList.firstOrNull() as? Number)?.let {
+            return it.toLong()
         }
+        // Less than chunkSize entities are left, so the chunk ends with the highest id:
+        val maxQuery = em.createQuery("select max(e.id) from ${clazz.name} e$where")
+        lastId?.let { maxQuery.setParameter("lastId", it) }
+        return (maxQuery.singleResult as? Number)?.toLong()
     }
 
     /**
@@ -101,11 +209,7 @@ open class DatabaseDao {
             val searchSession: SearchSession = Search.session(em)
             try {
                 // Starte den MassIndexer für eine bestimmte Entität (z.B. EmployeeDO)
-                searchSession.massIndexer(clazz)
-                    .threadsToLoadObjects(4) // Anzahl der Threads zum Laden von Entitäten
-                    .batchSizeToLoadObjects(25) // Batch-Größe
-                    .idFetchSize(150) // Größe des ID-Fetch
-                    .monitor(IndexProgressMonitor(clazz)) // Fortschrittsmonitor hinzufügen
+                createMassIndexer(searchSession, clazz)
                     .startAndWait() // Blockiert, bis die Indizierung abgeschlossen ist
             } catch (ex: InterruptedException) {
                 log.error(ex.message, ex)
@@ -113,6 +217,20 @@ open class DatabaseDao {
         }
     }
 
+    private fun createMassIndexer(
+        searchSession: SearchSession,
+        clazz: Class<*>,
+        progress: ReindexProgress? = null,
+        chunk: Boolean = false,
+    ): MassIndexer {
+        return searchSession.massIndexer(clazz)
+            .purgeAllOnStart(!chunk) // Chunks are purged by the caller once before the first chunk.
+            .threadsToLoadObjects(threadsToLoadObjects) // Anzahl der Threads zum Laden von Entitäten
+            .batchSizeToLoadObjects(batchSizeToLoadObjects) // Batch-Größe
+            .idFetchSize(idFetchSize) // Größe des ID-Fetch
+            .monitor(IndexProgressMonitor(clazz, progress, chunk)) // Fortschrittsmonitor hinzufügen
+    }
+
     companion object {
         /**
          * Since yesterday and 1,000 newest entries at maximum.
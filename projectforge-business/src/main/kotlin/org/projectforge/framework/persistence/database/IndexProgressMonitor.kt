@@ -27,11 +27,20 @@ import mu.KotlinLogging
 import org.hibernate.search.mapper.pojo.massindexing.MassIndexingMonitor
 import org.projectforge.common.extensions.format
 import org.projectforge.common.extensions.formatMillis
+import org.projectforge.framework.persistence.search.ReindexProgress
 import org.projectforge.framework.utils.NumberFormatter
 
 private val log = KotlinLogging.logger {}
 
-class IndexProgressMonitor(val entityClass: Class<*>) : MassIndexingMonitor {
+/**
+ * @param progress If given, the number of indexed entities is added to the progress.
+ * @param chunk If true, only a part (id range) of the entities is indexed, the completion is logged by the caller.
+ */
+class IndexProgressMonitor(
+    val entityClass: Class<*>,
+    private val progress: ReindexProgress? = null,
+    private val chunk: Boolean = false,
+) : MassIndexingMonitor {
     private var totalEntities: Long = 0
     private var indexedEntities: Long = 0
     private var lastReportedProgress = 0
@@ -39,14 +48,19 @@ class IndexProgressMonitor(val entityClass: Class<*>) : MassIndexingMonitor {
     private var started = System.currentTimeMillis()
 
     init {
-        log.info { "${entityClass.simpleName}: Starting indexing..." }
+        if (!chunk) {
+            log.info { "${entityClass.simpleName}: Starting indexing..." }
+        }
     }
 
     override fun documentsAdded(increment: Long) {
         synchronized(this) {
             indexedEntities += increment
         }
-        printProgress()
+        progress?.addIndexed(increment)
+        if (!chunk) {
+            printProgress()
+        }
     }
 
     override fun entitiesLoaded(increment: Long) {
@@ -57,6 +71,9 @@ class IndexProgressMonitor(val entityClass: Class<*>) : MassIndexingMonitor {
         synchronized(this) {
             totalEntities += count
         }
+        if (!chunk) {
+            progress?.totalEntities = totalEntities
+        }
         step = when { // 2.500 Entities per seconde:
             totalEntities > 5_000_000 -> 1    // 1% steps
             totalEntities > 2_000_000 -> 2    // 2% steps
@@ -70,6 +87,10 @@ class IndexProgressMonitor(val entityClass: Class<*>) : MassIndexingMonitor {
     }
 
     override fun indexingCompleted() {
+        if (chunk) {
+            log.debug { "${entityClass.simpleName}: Indexing of id range completed (${indexedEntities.format()} entities)." }
+            return
+        }
         val duration = System.currentTimeMillis() - started
         val speed = totalEntities * 1000L / duration
         log.info { "${entityClass.simpleName}: Indexing completed (${duration.formatMillis()}, ${speed.format()}/s)." }
@@ -1,54 +0,0 @@
-/////////////////////////////////////////////////////////////////////////////
-//
-// Project ProjectForge Community Edition
-//         www.projectforge.org
-//
-// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
-//
-// ProjectForge is dual-licensed.
-//
-// This community edition is free software; you can redistribute it and/or
-// modify it under the terms of the GNU General Public License as published
-// by the Free Software Foundation; version 3 of the License.
-//
-// This community edition is distributed in the hope that it will be useful,
-// but WITHOUT ANY WARRANTY; without even the implied warranty of
-// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
-// Public License for more details.
-//
-// You should have received a copy of the GNU General Public License along
-// with this program; if not, see http://www.gnu.org/licenses/.
-//
-/////////////////////////////////////////////////////////////////////////////
-
-package org.projectforge.framework.persistence.database.json
-
-import com.fasterxml.jackson.core.JsonGenerator
-import com.fasterxml.jackson.core.JsonProcessingException
-import com.fasterxml.jackson.databind.JsonSerializer
-import com.fasterxml.jackson.databind.SerializerProvider
-import org.projectforge.framework.persistence.entities.AbstractBaseDO
-import java.io.IOException
-
-/**
- * WIP: Trying to export and import whole database as json (for db migration and for creating test data).
- *
- * @author Kai Reinhard (k.reinhard@micromata.de)
- */
-internal class AbstractBaseDOSerializer(private val defaultSerializer: JsonSerializer<Any>, val objectIdRegistry: ObjectIdRegistry) : JsonSerializer<AbstractBaseDO<*>>() {
-
-    @Throws(IOException::class, JsonProcessingException::class)
-    override fun serialize(value: AbstractBaseDO<*>, jgen: JsonGenerator, provider: SerializerProvider) {
-        if (objectIdRegistry.wasWritten(value)) {
-            val id = value.id
-            if (id is Int) {
-                jgen.writeNumber(id)
-            } else {
-                jgen.writeString("$id")
-            }
-        } else {
-            objectIdRegistry.markAsWritten(value)
-            defaultSerializer.serialize(value, jgen, provider)
-        }
-    }
-}
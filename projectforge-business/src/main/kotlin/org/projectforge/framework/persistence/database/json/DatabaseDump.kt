@@ -21,41 +21,62 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.framework.persistence.database.json
 
-import org.hibernate.SessionFactory
-import org.slf4j.LoggerFactory
+import mu.KotlinLogging
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
+import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
-import jakarta.annotation.PostConstruct
-import jakarta.persistence.EntityManagerFactory
+import javax.sql.DataSource
+
+private val log = KotlinLogging.logger {}
 
 /**
- * WIP: Trying to export and import whole database as json (for db migration and for creating test data).
+ * Exports and imports the whole database as zip file containing JSON or CBOR streams of all tables (for db migration
+ * and for creating test systems from production data).
  *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 @Service
 class DatabaseDump {
-    private val log = LoggerFactory.getLogger(DatabaseDump::class.java)
-
     @Autowired
-    private lateinit var emgrFactory: EntityManagerFactory
+    private lateinit var dataSource: DataSource
 
-    @PostConstruct
-    fun init() {
+    /**
+     * @param out The dump (zip file) is written to this stream.
+     */
+    @JvmOverloads
+    fun dump(out: OutputStream, format: DumpFormat = DumpFormat.JSON): DumpStatistics {
+        return DatabaseWriter(dataSource).dump(out, format)
     }
 
     /**
-     * @param out
+     * The tables of the target database must be empty, if purge isn't set.
+     * @param purge If true, all rows of the restored tables are deleted before restoring.
+     * @param threads Number of tables restored in parallel.
      */
-    fun dump(out: OutputStream) {
-        DatabaseWriter(emgrFactory).dump(out)
+    @JvmOverloads
+    fun restore(file: File, purge: Boolean = false, threads: Int = DatabaseRestorer.DEFAULT_THREADS): DumpStatistics {
+        return DatabaseRestorer(dataSource, threads).restore(file, purge)
     }
 
-    fun restore(inputStream: InputStream) {
-        DatabaseWriter(emgrFactory).restore(inputStream)
+    /**
+     * The dump is stored in a temporary file, because the tables are read in parallel.
+     * @see restore
+     */
+    @JvmOverloads
+    fun restore(inputStream: InputStream, purge: Boolean = false): DumpStatistics {
+        val file = File.createTempFile("projectforge-dump", ".zip")
+        try {
+            file.outputStream().use { inputStream.copyTo(it) }
+            return restore(file, purge)
+        } finally {
+            if (!file.delete()) {
+                log.warn { "Can't delete temporary file '${file.absolutePath}'." }
+            }
+        }
     }
 }
@@ -0,0 +1,357 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.database.json
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import mu.KotlinLogging
+import org.projectforge.framework.json.JsonUtils
+import java.io.File
+import java.sql.PreparedStatement
+import java.sql.Statement
+import java.sql.Types
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+import java.time.OffsetDateTime
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.zip.ZipFile
+import javax.sql.DataSource
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Restores a database dump written by [DatabaseWriter]. The tables are restored in foreign key order, the tables of one
+ * level (depending only on already restored tables) in parallel, each one with its own connection and JDBC batch
+ * inserts. Rows are streamed, so the memory usage is bounded independent of the table sizes.
+ * The target database schema must exist (e. g. created by Flyway) and the tables must be empty (see purge).
+ *
+ * Please note: the restore isn't done in one transaction (the tables are restored in parallel by several connections and
+ * committed in batches). If the restore fails, the database is left partially restored and the restore should be
+ * repeated with purge.
+ */
+class DatabaseRestorer(val dataSource: DataSource, val threads: Int = DEFAULT_THREADS) {
+    /**
+     * @param purge If true, all rows of the restored tables are deleted before restoring.
+     * Must be used for repeating a failed restore, because a failed restore leaves the database partially restored.
+     */
+    fun restore(file: File, purge: Boolean = false): DumpStatistics {
+        val statistics = DumpStatistics("Restore")
+        statistics.bytes = file.length()
+        ZipFile(file).use { zip ->
+            val infoEntry = zip.getEntry(DumpInfo.FILENAME)
+                ?: throw IllegalArgumentException("File '${file.absolutePath}' isn't a database dump (${DumpInfo.FILENAME} not found).")
+            val info = zip.getInputStream(infoEntry).use {
+                JsonUtils.fromJson(it.readBytes().toString(Charsets.UTF_8), DumpInfo::class.java, false)
+            }!!
+            log.info { "Restoring dump of ${info.app} ${info.version} from ${info.date} (${info.tables.size} tables, ${info.format})." }
+            val tables = dataSource.connection.use { DatabaseTables(it) }
+            val dumpTables = mutableMapOf<DatabaseTables.Table, DumpInfo.Table>()
+            info.tables.forEach { dumpTable ->
+                val table = tables.get(dumpTable.name)
+                if (table == null) {
+                    log.warn { "Table '${dumpTable.name}' doesn't exist in target database, skipping ${dumpTable.rows} rows." }
+                } else {
+                    dumpTables[table] = dumpTable
+                }
+            }
+            val levels = tables.getLevels(dumpTables.keys)
+            if (purge) {
+                purge(tables, levels)
+            }
+            val factory = info.format.createFactory()
+            val executor = Executors.newFixedThreadPool(threads.coerceAtLeast(1))
+            try {
+                levels.forEach { level ->
+                    runParallel(executor, level) { table ->
+                        val started = System.currentTimeMillis()
+                        val rows = insert(zip, factory, tables, table, dumpTables[table]!!)
+                        log.info { DumpStatistics.toString(statistics.add(table.name, rows, System.currentTimeMillis() - started)) }
+                    }
+                }
+                runParallel(executor, levels.flatten().filter { it.deferredColumns.isNotEmpty() }) { table ->
+                    update(zip, factory, tables, table, dumpTables[table]!!)
+                }
+            } finally {
+                executor.shutdown()
+            }
+            restartSequence(tables, dumpTables.keys)
+        }
+        log.info { statistics.toString() }
+        return statistics
+    }
+
+    private fun runParallel(
+        executor: ExecutorService,
+        tables: List<DatabaseTables.Table>,
+        block: (table: DatabaseTables.Table) -> Unit,
+    ) {
+        tables.map { table -> executor.submit(Callable { block(table) }) }.forEach {
+            try {
+                it.get()
+            } catch (ex: ExecutionException) {
+                throw ex.cause ?: ex
+            }
+        }
+    }
+
+    /**
+     * Deletes all rows of the given tables in reverse foreign key order.
+     */
+    private fun purge(tables: DatabaseTables, levels: List<List<DatabaseTables.Table>>) {
+        dataSource.connection.use { connection ->
+            connection.autoCommit = false
+            connection.createStatement().use { statement ->
+                levels.flatten().filter { it.deferredColumns.isNotEmpty() }.forEach { table ->
+                    val columns = table.deferredColumns.joinToString { "${tables.quote(it)} = null" }
+                    statement.executeUpdate("update ${tables.quote(table.name)} set $columns")
+                }
+                levels.reversed().flatten().forEach { table ->
+                    val count = statement.executeUpdate("delete from ${tables.quote(table.name)}")
+                    log.info { "Purged table ${table.name} ($count rows)." }
+                }
+            }
+            connection.commit()
+        }
+    }
+
+    /**
+     * @return The number of inserted rows.
+     */
+    private fun insert(
+        zip: ZipFile,
+        factory: JsonFactory,
+        tables: DatabaseTables,
+        table: DatabaseTables.Table,
+        dumpTable: DumpInfo.Table,
+    ): Long {
+        val columns = getColumns(table, dumpTable)
+        val targetColumns = columns.filterNotNull()
+        val sql = "insert into ${tables.quote(table.name)} (${targetColumns.joinToString { tables.quote(it.name) }}) " +
+                "values (${targetColumns.joinToString { "?" }})"
+        var rows = 0L
+        dataSource.connection.use { connection ->
+            connection.autoCommit = false
+            connection.prepareStatement(sql).use { statement ->
+                readRows(zip, factory, dumpTable) { parser ->
+                    var parameterIndex = 0
+                    columns.forEach { column ->
+                        parser.nextToken()
+                        if (column == null) {
+                            parser.skipChildren()
+                        } else {
+                            val value = readValue(parser, column.sqlType)
+                            setParameter(statement, ++parameterIndex, column, if (table.deferredColumns.contains(column.name)) null else value)
+                        }
+                    }
+                    statement.addBatch()
+                    if (++rows % BATCH_SIZE == 0L) {
+                        statement.executeBatch()
+                        connection.commit()
+                    }
+                }
+                statement.executeBatch()
+                connection.commit()
+            }
+        }
+        return rows
+    }
+
+    /**
+     * Sets the deferred columns (inserted as null) by primary key.
+     */
+    private fun update(
+        zip: ZipFile,
+        factory: JsonFactory,
+        tables: DatabaseTables,
+        table: DatabaseTables.Table,
+        dumpTable: DumpInfo.Table,
+    ) {
+        val columns = getColumns(table, dumpTable)
+        val deferredColumns = table.deferredColumns.mapNotNull { table.getColumn(it) }
+        val primaryKey = table.primaryKey.mapNotNull { table.getColumn(it) }
+        val sql = "update ${tables.quote(table.name)} set ${deferredColumns.joinToString { "${tables.quote(it.name)} = ?" }} " +
+                "where ${primaryKey.joinToString(" and ") { "${tables.quote(it.name)} = ?" }}"
+        var rows = 0L
+        dataSource.connection.use { connection ->
+            connection.autoCommit = false
+            connection.prepareStatement(sql).use { statement ->
+                readRows(zip, factory, dumpTable) { parser ->
+                    val values = mutableMapOf<String, Any?>()
+                    columns.forEach { column ->
+                        parser.nextToken()
+                        if (column == null) {
+                            parser.skipChildren()
+                        } else {
+                            values[column.name] = readValue(parser, column.sqlType)
+                        }
+                    }
+                    if (deferredColumns.any { values[it.name] != null }) {
+                        var parameterIndex = 0
+                        deferredColumns.forEach { setParameter(statement, ++parameterIndex, it, values[it.name]) }
+                        primaryKey.forEach { setParameter(statement, ++parameterIndex, it, values[it.name]) }
+                        statement.addBatch()
+                        if (++rows % BATCH_SIZE == 0L) {
+                            statement.executeBatch()
+                            connection.commit()
+                        }
+                    }
+                }
+                statement.executeBatch()
+                connection.commit()
+            }
+        }
+        log.info { "Updated deferred columns ${deferredColumns.joinToString { it.name }} of $rows rows of table ${table.name}." }
+    }
+
+    /**
+     * @return The target columns in the order of the dumped values (null for dumped columns not existing anymore).
+     */
+    private fun getColumns(table: DatabaseTables.Table, dumpTable: DumpInfo.Table): List<DatabaseTables.Column?> {
+        return dumpTable.columns.map { name ->
+            table.getColumn(name).also {
+                if (it == null) {
+                    log.warn { "Column '${table.name}.$name' doesn't exist in target database, values are ignored." }
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of the given table. The parser is positioned at the start of each row array.
+     */
+    private fun readRows(zip: ZipFile, factory: JsonFactory, dumpTable: DumpInfo.Table, handleRow: (parser: JsonParser) -> Unit) {
+        val entry = zip.getEntry(dumpTable.file)
+            ?: throw IllegalArgumentException("Entry '${dumpTable.file}' of table '${dumpTable.name}' not found in dump.")
+        zip.getInputStream(entry).buffered().use { istream ->
+            factory.createParser(istream).use { parser ->
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw IllegalArgumentException("Invalid format of entry '${dumpTable.file}', array of rows expected.")
+                }
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    handleRow(parser)
+                    if (parser.nextToken() != JsonToken.END_ARRAY) {
+                        throw IllegalArgumentException("Invalid format of entry '${dumpTable.file}', row with more values than columns.")
+                    }
+                }
+            }
+        }
+    }
+
+    private fun readValue(parser: JsonParser, sqlType: Int): Any? {
+        if (parser.currentToken == JsonToken.VALUE_NULL) {
+            return null
+        }
+        return when (sqlType) {
+            Types.BIT, Types.BOOLEAN -> parser.booleanValue
+            Types.TINYINT, Types.SMALLINT, Types.INTEGER -> parser.intValue
+            Types.BIGINT -> parser.longValue
+            Types.REAL, Types.FLOAT, Types.DOUBLE -> parser.doubleValue
+            Types.NUMERIC, Types.DECIMAL -> parser.decimalValue
+            Types.DATE -> LocalDate.parse(parser.text)
+            Types.TIME -> LocalTime.parse(parser.text)
+            Types.TIMESTAMP -> LocalDateTime.parse(parser.text)
+            Types.TIMESTAMP_WITH_TIMEZONE -> OffsetDateTime.parse(parser.text)
+            Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> parser.binaryValue
+            else -> parser.text
+        }
+    }
+
+    private fun setParameter(statement: PreparedStatement, index: Int, column: DatabaseTables.Column, value: Any?) {
+        if (value == null) {
+            statement.setNull(index, column.sqlType)
+        } else {
+            statement.setObject(index, value)
+        }
+    }
+
+    /**
+     * Restarts the sequence used for generating ids behind the highest restored id. The sequence is never moved
+     * backwards, because ids up to its current value may already be handed out (pooled optimizer of Hibernate or
+     * rolled back transactions).
+     */
+    private fun restartSequence(tables: DatabaseTables, restoredTables: Collection<DatabaseTables.Table>) {
+        try {
+            dataSource.connection.use { connection ->
+                var maxId = 0L
+                connection.createStatement().use { statement ->
+                    restoredTables.filter { table ->
+                        table.primaryKey.size == 1 && table.getColumn(table.primaryKey[0])?.sqlType.let { it == Types.BIGINT || it == Types.INTEGER }
+                    }.forEach { table ->
+                        statement.executeQuery("select max(${tables.quote(table.primaryKey[0])}) from ${tables.quote(table.name)}").use { rs ->
+                            if (rs.next()) {
+                                maxId = maxOf(maxId, rs.getLong(1))
+                            }
+                        }
+                    }
+                    // The sequence is used by Hibernate with pooled optimizer (increment by 50):
+                    val restartWith = maxId + SEQUENCE_GAP
+                    val currentValue = getCurrentSequenceValue(connection.metaData.databaseProductName, statement)
+                    if (currentValue == null) {
+                        log.warn { "Can't read current value of sequence $SEQUENCE, please check it manually (should be at least $restartWith)." }
+                        return
+                    }
+                    if (currentValue >= restartWith) {
+                        log.info { "Sequence $SEQUENCE is unchanged (current value $currentValue, highest restored id $maxId)." }
+                        return
+                    }
+                    statement.execute("alter sequence $SEQUENCE restart with $restartWith")
+                    log.info { "Sequence $SEQUENCE restarted with $restartWith (was $currentValue)." }
+                }
+            }
+        } catch (ex: Exception) {
+            log.warn { "Can't restart sequence $SEQUENCE, please check it manually: ${ex.message}" }
+        }
+    }
+
+    /**
+     * @return The current value of the sequence or null, if the database isn't supported.
+     */
+    private fun getCurrentSequenceValue(databaseProductName: String, statement: Statement): Long? {
+        val sql = when {
+            databaseProductName.contains("PostgreSQL", ignoreCase = true) -> "select last_value from $SEQUENCE"
+            databaseProductName.contains("HSQL", ignoreCase = true) ->
+                "select next_value from information_schema.sequences where lower(sequence_name) = '$SEQUENCE'"
+            else -> return null
+        }
+        statement.executeQuery(sql).use { rs ->
+            return if (rs.next()) rs.getLong(1) else null
+        }
+    }
+
+    companion object {
+        const val DEFAULT_THREADS = 4
+
+        private const val BATCH_SIZE = 1000
+
+        private const val SEQUENCE = "hibernate_sequence"
+
+        private const val SEQUENCE_GAP = 100L
+    }
+}
@@ -0,0 +1,239 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.database.json
+
+import mu.KotlinLogging
+import java.sql.Connection
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Meta data (columns, primary and foreign keys) of all tables of the current schema, read via JDBC.
+ * Table names are matched case-insensitive (PostgreSQL uses lower case, HSQLDB upper case names).
+ */
+internal class DatabaseTables(connection: Connection, excludedTables: Collection<String> = DEFAULT_EXCLUDED_TABLES) {
+    class Column(val name: String, val sqlType: Int, val nullable: Boolean)
+
+    class ForeignKey(val column: String, val referencedTable: String)
+
+    class Table(
+        val name: String,
+        val columns: List<Column>,
+        val primaryKey: List<String>,
+        val foreignKeys: List<ForeignKey>,
+    ) {
+        /**
+         * Nullable foreign key columns, which are inserted as null and updated after all tables are restored
+         * (self references, e. g. parent task, and references within cyclic dependencies).
+         */
+        var deferredColumns: Set<String> = emptySet()
+            internal set
+
+        fun getColumn(name: String): Column? {
+            return columns.find { it.name.equals(name, ignoreCase = true) }
+        }
+    }
+
+    private val tableMap = mutableMapOf<String, Table>()
+
+    private val quoteString: String
+
+    val tables: Collection<Table>
+        get() = tableMap.values
+
+    init {
+        val metaData = connection.metaData
+        quoteString = metaData.identifierQuoteString?.takeIf { it.isNotBlank() } ?: ""
+        val catalog = connection.catalog
+        val schema = connection.schema
+        val excluded = excludedTables.map { it.lowercase() }.toSet()
+        val tableNames = mutableListOf<String>()
+        metaData.getTables(catalog, schema, "%", arrayOf("TABLE")).use { rs ->
+            while (rs.next()) {
+                val name = rs.getString("TABLE_NAME")
+                if (!excluded.contains(name.lowercase())) {
+                    tableNames.add(name)
+                }
+            }
+        }
+        tableNames.forEach { name ->
+            val columns = mutableListOf<Column>()
+            metaData.getColumns(catalog, schema, name, "%").use { rs ->
+                while (rs.next()) {
+                    columns.add(
+                        Column(
+                            rs.getString("COLUMN_NAME"),
+                            rs.getInt("DATA_TYPE"),
+                            rs.getInt("NULLABLE") != java.sql.DatabaseMetaData.columnNoNulls,
+                        )
+                    )
+                }
+            }
+            val primaryKey = sortedMapOf<Int, String>()
+            metaData.getPrimaryKeys(catalog, schema, name).use { rs ->
+                while (rs.next()) {
+                    primaryKey[rs.getInt("KEY_SEQ")] = rs.getString("COLUMN_NAME")
+                }
+            }
+            val foreignKeys = mutableListOf<ForeignKey>()
+            metaData.getImportedKeys(catalog, schema, name).use { rs ->
+                while (rs.next()) {
+                    foreignKeys.add(ForeignKey(rs.getString("FKCOLUMN_NAME"), rs.getString("PKTABLE_NAME")))
+                }
+            }
+            tableMap[name.lowercase()] = Table(name, columns, primaryKey.values.toList(), foreignKeys)
+        }
+    }
+
+    /**
+     * Quotes the given name as read from the meta data (exact case, column names may be reserved words).
+     */
+    fun quote(name: String): String {
+        return "$quoteString$name$quoteString"
+    }
+
+    fun get(name: String?): Table? {
+        name ?: return null
+        return tableMap[name.lowercase()]
+    }
+
+    /**
+     * Sorts the given tables in foreign key order (Kahn's algorithm). All tables of a level depend only on tables of
+     * previous levels, so the tables of one level may be restored in parallel.
+     * The tables of a cycle (strongly connected component) are returned as one level as soon as all their other
+     * dependencies are restored, their foreign keys within the cycle and all self references are set as deferred
+     * columns. Tables depending on a cycle are sorted into the following levels.
+     */
+    fun getLevels(tables: Collection<Table>): List<List<Table>> {
+        val names = tables.map { it.name.lowercase() }.toSet()
+        val dependencies = tables.associateWith { table ->
+            table.foreignKeys.map { it.referencedTable.lowercase() }
+                .filter { it != table.name.lowercase() && names.contains(it) }
+                .toMutableSet()
+        }
+        tables.forEach { table ->
+            if (table.primaryKey.isEmpty()) {
+                return@forEach // Deferred columns are updated by primary key.
+            }
+            table.deferredColumns = table.foreignKeys.filter { it.referencedTable.equals(table.name, ignoreCase = true) }
+                .mapNotNull { fk -> table.getColumn(fk.column)?.takeIf { it.nullable }?.name }
+                .toSet()
+        }
+        val levels = mutableListOf<List<Table>>()
+        val remaining = tables.toMutableList()
+        val done = mutableSetOf<String>()
+        while (remaining.isNotEmpty()) {
+            val level = remaining.filter { done.containsAll(dependencies[it]!!) }
+            if (level.isNotEmpty()) {
+                levels.add(level)
+                remaining.removeAll(level)
+                level.forEach { done.add(it.name.lowercase()) }
+                continue
+            }
+            // Only cycles left (at least one of them depends only on restored tables): restore the tables of these
+            // cycles as one level and defer their foreign keys within the cycle. Tables depending on cycles are
+            // restored afterward as usual.
+            val cycles = getCycles(remaining, dependencies).filter { cycle ->
+                val cycleNames = cycle.map { it.name.lowercase() }.toSet()
+                cycle.all { table -> dependencies[table]!!.all { done.contains(it) || cycleNames.contains(it) } }
+            }
+            if (cycles.isEmpty()) {
+                break // Shouldn't occur.
+            }
+            cycles.forEach { cycle ->
+                log.info { "Cyclic dependencies found between tables: ${cycle.joinToString { it.name }}" }
+                val cycleNames = cycle.map { it.name.lowercase() }.toSet()
+                cycle.filter { it.primaryKey.isNotEmpty() }.forEach { table ->
+                    val deferred = table.foreignKeys.filter { cycleNames.contains(it.referencedTable.lowercase()) }
+                        .mapNotNull { fk ->
+                            val column = table.getColumn(fk.column)
+                            if (column?.nullable != true) {
+                                log.warn { "Foreign key column ${table.name}.${fk.column} of cyclic dependency isn't nullable, restore may fail." }
+                                null
+                            } else {
+                                column.name
+                            }
+                        }
+                    table.deferredColumns = table.deferredColumns + deferred
+                }
+            }
+            val level = cycles.flatten()
+            levels.add(level)
+            remaining.removeAll(level)
+            level.forEach { done.add(it.name.lowercase()) }
+        }
+        if (remaining.isNotEmpty()) {
+            log.error { "Can't sort tables by foreign keys, restoring them last: ${remaining.joinToString { it.name }}" }
+            levels.add(remaining)
+        }
+        return levels
+    }
+
+    /**
+     * @return The strongly connected components (Tarjan's algorithm) of the given tables with more than one table.
+     */
+    private fun getCycles(tables: List<Table>, dependencies: Map<Table, Set<String>>): List<List<Table>> {
+        val byName = tables.associateBy { it.name.lowercase() }
+        val indexes = mutableMapOf<Table, Int>()
+        val lowLinks = mutableMapOf<Table, Int>()
+        val stack = ArrayDeque<Table>()
+        val onStack = mutableSetOf<Table>()
+        val result = mutableListOf<List<Table>>()
+        fun visit(table: Table) {
+            indexes[table] = indexes.size
+            lowLinks[table] = indexes[table]!!
+            stack.addLast(table)
+            onStack.add(table)
+            dependencies[table]!!.mapNotNull { byName[it] }.forEach { dependency ->
+                if (!indexes.containsKey(dependency)) {
+                    visit(dependency)
+                    lowLinks[table] = minOf(lowLinks[table]!!, lowLinks[dependency]!!)
+                } else if (onStack.contains(dependency)) {
+                    lowLinks[table] = minOf(lowLinks[table]!!, indexes[dependency]!!)
+                }
+            }
+            if (lowLinks[table] == indexes[table]) {
+                val component = mutableListOf<Table>()
+                do {
+                    val member = stack.removeLast()
+                    onStack.remove(member)
+                    component.add(member)
+                } while (member != table)
+                if (component.size > 1) {
+                    result.add(component)
+                }
+            }
+        }
+        tables.forEach { if (!indexes.containsKey(it)) visit(it) }
+        return result
+    }
+
+    companion object {
+        /**
+         * Tables not to dump: the schema version is maintained by Flyway in the target database.
+         */
+        val DEFAULT_EXCLUDED_TABLES = listOf("flyway_schema_history")
+    }
+}
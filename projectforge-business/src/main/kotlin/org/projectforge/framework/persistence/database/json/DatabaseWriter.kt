@@ -21,113 +21,170 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.framework.persistence.database.json
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect
-import com.fasterxml.jackson.annotation.JsonInclude
-import com.fasterxml.jackson.annotation.PropertyAccessor
-import com.fasterxml.jackson.core.JsonEncoding
-import com.fasterxml.jackson.core.JsonFactory
 import com.fasterxml.jackson.core.JsonGenerator
-import com.fasterxml.jackson.databind.ObjectMapper
-import com.fasterxml.jackson.databind.SerializationFeature
-import com.fasterxml.jackson.module.kotlin.KotlinModule
-import jakarta.persistence.EntityManagerFactory
-import org.hibernate.Session
+import mu.KotlinLogging
 import org.projectforge.ProjectForgeVersion
-import org.projectforge.framework.ToStringUtil
-import org.projectforge.framework.json.TimestampSerializer
-import org.projectforge.framework.json.UtilDateFormat
-import org.projectforge.framework.json.UtilDateSerializer
+import org.projectforge.framework.json.JsonUtils
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.time.PFDateTime
-import org.slf4j.LoggerFactory
-import java.io.InputStream
 import java.io.OutputStream
-import java.io.Writer
-import java.sql.Timestamp
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.Types
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+import java.time.OffsetDateTime
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import javax.sql.DataSource
+
+private val log = KotlinLogging.logger {}
 
 /**
- * WIP: Trying to export and import whole database as json (for db migration and for creating test data).
+ * Dumps all tables of the database as zip file: one entry per table containing the rows as stream of arrays (JSON or
+ * CBOR) and a manifest ([DumpInfo]). The rows are streamed table by table with bounded memory (JDBC cursor with
+ * fetch size and periodically flushed generator).
  *
- * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see DatabaseRestorer
  */
-class DatabaseWriter(val emgrFactory: EntityManagerFactory) {
-    private val log = LoggerFactory.getLogger(DatabaseWriter::class.java)
-
-    private lateinit var writer: Writer
-
+class DatabaseWriter(val dataSource: DataSource) {
     /**
-     * @param out
+     * @param out The zip file is written to this stream (not closed).
      */
-    fun dump(out: OutputStream?) {
-        val jfactory = JsonFactory()
-        val jgen = jfactory.createGenerator(out, JsonEncoding.UTF8)
-        jgen.codec = getObjectMapper()
-        jgen.writeStartObject();
-        jgen.writeStringField("date", PFDateTime.now().isoString)
-        jgen.writeStringField("app", ProjectForgeVersion.APP_ID)
-        jgen.writeStringField("version", ProjectForgeVersion.VERSION_STRING)
-        jgen.writeStringField("user", ThreadLocalUserContext.loggedInUser!!.username)
-        jgen.writeArrayFieldStart("database")
-       /* val session = sessionFactory.openSession()
-        session.use {
-            dump(PFUserDO::class.java, session, jgen)
-            val entities = emgrFactory.metadataRepository.tableEntities
-            for (entity in entities) {
-                val entityClass = entity.javaType
-                //val entitySimpleName = entityClass.simpleName
-                //val entityType = entityClass.name
-                log.info("entityClass: ${entityClass.name}")
+    fun dump(out: OutputStream, format: DumpFormat = DumpFormat.JSON): DumpStatistics {
+        val statistics = DumpStatistics("Dump")
+        val info = DumpInfo(
+            date = PFDateTime.now().isoString,
+            app = ProjectForgeVersion.APP_ID,
+            version = ProjectForgeVersion.VERSION_STRING,
+            user = ThreadLocalUserContext.loggedInUser?.username,
+            format = format,
+        )
+        val factory = format.createFactory()
+        val countingOut = CountingOutputStream(out)
+        val zip = ZipOutputStream(countingOut)
+        dataSource.connection.use { connection ->
+            // PostgreSQL uses cursors (fetch size) only without auto commit:
+            connection.autoCommit = false
+            connection.isReadOnly = true
+            // One snapshot for all tables (otherwise rows may reference rows inserted after their table was dumped):
+            val isolation = connection.transactionIsolation
+            if (connection.metaData.supportsTransactionIsolationLevel(Connection.TRANSACTION_REPEATABLE_READ)) {
+                connection.transactionIsolation = Connection.TRANSACTION_REPEATABLE_READ
+            } else {
+                connection.transactionIsolation = Connection.TRANSACTION_SERIALIZABLE
+            }
+            try {
+                val tables = DatabaseTables(connection)
+                tables.tables.sortedBy { it.name.lowercase() }.forEach { table ->
+                    val started = System.currentTimeMillis()
+                    val file = "tables/${table.name.lowercase()}.${format.fileExtension}"
+                    zip.putNextEntry(ZipEntry(file))
+                    val generator = factory.createGenerator(zip)
+                    val tableInfo = dump(connection, tables, table, generator)
+                    generator.close() // Closes only the generator, the zip stream remains open.
+                    zip.closeEntry()
+                    tableInfo.file = file
+                    info.tables.add(tableInfo)
+                    log.info { DumpStatistics.toString(statistics.add(table.name, tableInfo.rows, System.currentTimeMillis() - started)) }
+                }
+            } finally {
+                connection.rollback()
+                connection.transactionIsolation = isolation
             }
-        }*/
-        jgen.writeEndArray()
-        jgen.writeEndObject()
-        jgen.flush()
+        }
+        zip.putNextEntry(ZipEntry(DumpInfo.FILENAME))
+        zip.write(JsonUtils.toJson(info).toByteArray(Charsets.UTF_8))
+        zip.closeEntry()
+        zip.finish()
+        zip.flush()
+        statistics.bytes = countingOut.count
+        log.info { statistics.toString() }
+        return statistics
     }
 
-    @Suppress("UNUSED_PARAMETER")
-    fun restore(inputStream: InputStream) {
-        //createObjectMapper().readValue(in, )
+    private fun dump(
+        connection: Connection,
+        tables: DatabaseTables,
+        table: DatabaseTables.Table,
+        generator: JsonGenerator,
+    ): DumpInfo.Table {
+        val orderBy = if (table.primaryKey.isNotEmpty()) " order by ${table.primaryKey.joinToString { tables.quote(it) }}" else ""
+        var rows = 0L
+        val columns = mutableListOf<String>()
+        connection.createStatement().use { statement ->
+            statement.fetchSize = FETCH_SIZE
+            statement.executeQuery("select * from ${tables.quote(table.name)}$orderBy").use { rs ->
+                val metaData = rs.metaData
+                val types = IntArray(metaData.columnCount) { metaData.getColumnType(it + 1) }
+                for (i in 1..metaData.columnCount) {
+                    columns.add(metaData.getColumnName(i))
+                }
+                generator.writeStartArray()
+                while (rs.next()) {
+                    generator.writeStartArray()
+                    for (i in types.indices) {
+                        writeValue(rs, i + 1, types[i], generator)
+                    }
+                    generator.writeEndArray()
+                    if (++rows % FETCH_SIZE == 0L) {
+                        generator.flush()
+                    }
+                }
+                generator.writeEndArray()
+            }
+        }
+        return DumpInfo.Table(name = table.name, columns = columns, rows = rows)
     }
 
-    private fun getObjectMapper(): ObjectMapper {
-        if (objectMapper != null) {
-            return objectMapper!!
+    private fun writeValue(rs: ResultSet, index: Int, sqlType: Int, generator: JsonGenerator) {
+        when (sqlType) {
+            Types.BIT, Types.BOOLEAN -> rs.getBoolean(index).let { if (rs.wasNull()) generator.writeNull() else generator.writeBoolean(it) }
+            Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT ->
+                rs.getLong(index).let { if (rs.wasNull()) generator.writeNull() else generator.writeNumber(it) }
+
+            Types.REAL, Types.FLOAT, Types.DOUBLE ->
+                rs.getDouble(index).let { if (rs.wasNull()) generator.writeNull() else generator.writeNumber(it) }
+
+            Types.NUMERIC, Types.DECIMAL -> rs.getBigDecimal(index)?.let { generator.writeNumber(it) } ?: generator.writeNull()
+            Types.DATE -> writeString(rs.getObject(index, LocalDate::class.java), generator)
+            Types.TIME -> writeString(rs.getObject(index, LocalTime::class.java), generator)
+            Types.TIMESTAMP -> writeString(rs.getObject(index, LocalDateTime::class.java), generator)
+            Types.TIMESTAMP_WITH_TIMEZONE -> writeString(rs.getObject(index, OffsetDateTime::class.java), generator)
+            Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB ->
+                rs.getBytes(index)?.let { generator.writeBinary(it) } ?: generator.writeNull()
+
+            else -> rs.getString(index)?.let { generator.writeString(it) } ?: generator.writeNull()
         }
-        val mapper = ObjectMapper()
-        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
-        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL)
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT)
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-        mapper.configure(SerializationFeature.FAIL_ON_SELF_REFERENCES, false)
-        val module = MyJacksonModule()
-        module.addSerializer(java.util.Date::class.java, UtilDateSerializer(UtilDateFormat.ISO_DATE_TIME_SECONDS))
-        module.addSerializer(Timestamp::class.java, TimestampSerializer(UtilDateFormat.ISO_DATE_TIME_MILLIS))
-        module.addSerializer(java.sql.Date::class.java, ToStringUtil.SqlDateSerializer())
-        mapper.registerModule(module)
-        mapper.registerModule(KotlinModule.Builder().build())
-        objectMapper = mapper
-        return mapper
     }
 
-    private fun dump(entityClass: Class<*>, session: Session, jgen: JsonGenerator) {
-        val sql = "select o from ${entityClass.name} o"
-        val list = session.createQuery(sql).setReadOnly(true).list()
-        if (list.isEmpty()) return
-        jgen.writeStartObject();
-        jgen.writeArrayFieldStart("${entityClass.simpleName}")
-        list.forEach {
-            var obj = it!!
-            //var type = it::class.java
-            jgen.writeObject(obj)
+    private fun writeString(value: Any?, generator: JsonGenerator) {
+        value?.let { generator.writeString(it.toString()) } ?: generator.writeNull()
+    }
+
+    private class CountingOutputStream(val out: OutputStream) : OutputStream() {
+        var count = 0L
+
+        override fun write(b: Int) {
+            out.write(b)
+            ++count
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            count += len
+        }
+
+        override fun flush() {
+            out.flush()
         }
-        jgen.writeEndArray()
-        jgen.writeEndObject()
     }
 
     companion object {
-        private var objectMapper: ObjectMapper? = null
+        internal const val FETCH_SIZE = 1000
     }
 }
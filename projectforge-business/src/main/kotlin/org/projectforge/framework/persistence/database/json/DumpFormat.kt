@@ -21,33 +21,25 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.framework.persistence.database.json
 
-import org.projectforge.framework.persistence.entities.AbstractBaseDO
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
 
 /**
- * WIP: Trying to export and import whole database as json (for db migration and for creating test data).
- *
- * @author Kai Reinhard (k.reinhard@micromata.de)
+ * Format of the table streams of a database dump. CBOR (binary JSON) is more compact and faster to parse,
+ * JSON is human-readable.
  */
-internal class ObjectIdRegistry {
-    private val writtenObjects = mutableMapOf<Class<*>, MutableList<Any>>()
-
-    internal fun wasWritten(obj: AbstractBaseDO<*>): Boolean {
-        val list = writtenObjects[obj::class.java] ?: return false
-        return list.find {
-            it == obj.id
-        } != null
-    }
+enum class DumpFormat(val fileExtension: String) {
+    JSON("json"),
+    CBOR("cbor");
 
-    internal fun markAsWritten(obj: AbstractBaseDO<*>) {
-        var list = writtenObjects[obj::class.java]
-        if (list == null) {
-            list = mutableListOf()
-            writtenObjects.put(obj::class.java, list)
-        }
-        obj.id?.let {
-            list.add(it)
-        }
+    fun createFactory(): JsonFactory {
+        val factory = if (this == CBOR) CBORFactory() else JsonFactory()
+        // The streams are entries of a zip file, which must not be closed by the generators:
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        return factory
     }
 }
@@ -0,0 +1,100 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.database.json
+
+import org.projectforge.common.extensions.format
+import org.projectforge.common.extensions.formatBytes
+import org.projectforge.common.extensions.formatMillis
+
+/**
+ * Manifest of a database dump (zip entry [DumpInfo.FILENAME]), describing the dumped tables.
+ */
+class DumpInfo(
+    var date: String? = null,
+    var app: String? = null,
+    var version: String? = null,
+    var user: String? = null,
+    var format: DumpFormat = DumpFormat.JSON,
+    var tables: MutableList<Table> = mutableListOf(),
+) {
+    /**
+     * @param columns The column names in the order of the values of each row.
+     * @param file The name of the zip entry containing the rows.
+     */
+    class Table(
+        var name: String? = null,
+        var columns: List<String> = emptyList(),
+        var file: String? = null,
+        var rows: Long = 0,
+    )
+
+    companion object {
+        const val FILENAME = "dump-info.json"
+    }
+}
+
+/**
+ * Throughput of a dump or restore run, logged per table and in total.
+ */
+class DumpStatistics(val action: String) {
+    class TableStatistics(val table: String, val rows: Long, val millis: Long)
+
+    private val started = System.currentTimeMillis()
+
+    private val tableStatistics = mutableListOf<TableStatistics>()
+
+    var bytes: Long = 0
+
+    val tables: List<TableStatistics>
+        get() = synchronized(tableStatistics) { tableStatistics.toList() }
+
+    val totalRows: Long
+        get() = tables.sumOf { it.rows }
+
+    val millis: Long
+        get() = System.currentTimeMillis() - started
+
+    fun add(table: String, rows: Long, millis: Long): TableStatistics {
+        val statistics = TableStatistics(table, rows, millis)
+        synchronized(tableStatistics) {
+            tableStatistics.add(statistics)
+        }
+        return statistics
+    }
+
+    override fun toString(): String {
+        val duration = millis
+        val speed = if (duration > 0) totalRows * 1000L / duration else totalRows
+        val size = if (bytes > 0) ", ${bytes.formatBytes()}" else ""
+        return "$action of ${tables.size.format()} tables with ${totalRows.format()} rows$size in ${duration.formatMillis()} (${speed.format()} rows/s)"
+    }
+
+    companion object {
+        internal fun toString(statistics: TableStatistics): String {
+            val speed = if (statistics.millis > 0) statistics.rows * 1000L / statistics.millis else statistics.rows
+            return "${statistics.table}: ${statistics.rows.format()} rows in ${statistics.millis.formatMillis()} (${speed.format()} rows/s)"
+        }
+    }
+}
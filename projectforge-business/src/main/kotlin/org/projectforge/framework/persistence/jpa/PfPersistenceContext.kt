@@ -78,6 +78,29 @@ class PfPersistenceContext internal constructor(
         callStats = PersistenceCallsRecorder(em, extended)
     }
 
+    /**
+     * Actions to run after the commit of the transaction of this context (see [PfPersistenceService.runAfterCommit]).
+     */
+    private val afterCommitActions = mutableListOf<() -> Unit>()
+
+    internal fun addAfterCommitAction(action: () -> Unit) {
+        afterCommitActions.add(action)
+    }
+
+    /**
+     * Runs all registered after-commit actions. Exceptions are logged, because the transaction is already committed.
+     */
+    internal fun runAfterCommitActions() {
+        afterCommitActions.forEach { action ->
+            try {
+                action()
+            } catch (ex: Exception) {
+                log.error(ex) { "Error while running action after commit of transactional context=$contextId: ${ex.message}" }
+            }
+        }
+        afterCommitActions.clear()
+    }
+
     @JvmOverloads
     fun formatStats(withDuration: Boolean = true, extended: Boolean = false): String {
         val callsStatsString = callStats?.toString(extended)
@@ -68,6 +68,20 @@ open class PfPersistenceService {
         }
     }
 
+    /**
+     * Runs the given action after the commit of the current transaction, e. g. for invalidating caches, so they don't
+     * reload data before the modifications are committed. The action is discarded on rollback. If no transaction is
+     * running in the current thread, the action is run immediately.
+     */
+    fun runAfterCommit(action: () -> Unit) {
+        val context = PfPersistenceContextThreadLocal.getTransactional()
+        if (context == null) {
+            action()
+        } else {
+            context.addAfterCommitAction(action)
+        }
+    }
+
     /**
      * Creates a new PfPersistenceContext (EntityManager), also if any EntityManager is available in ThreadLocal.
      * After finishing the block, the transactional context will be closed as well as removed from ThreadLocal.
@@ -146,6 +160,7 @@ open class PfPersistenceService {
                 try {
                     val ret = run(context)
                     em.transaction.commit()
+                    context.runAfterCommitActions()
                     //openedTransactions.remove(em.transaction)
                     //log.info { "Commit transaction ${em.transaction}..." }
                     return ret
@@ -0,0 +1,158 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.numbers
+
+import jakarta.persistence.LockModeType
+import mu.KotlinLogging
+import org.projectforge.framework.persistence.jpa.PfPersistenceContext
+import org.projectforge.framework.persistence.jpa.PfPersistenceService
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Allocates consecutive numbers (e. g. invoice and order numbers) from persistent counters per series (table
+ * t_number_series), instead of querying the max number of the entity table for every new entity.
+ *
+ * Gap-free allocation: [reserve], [allocateNext] and [raiseTo] lock the counter row of the series inside the caller's
+ * transaction, so the counter is incremented on commit and restored on rollback. Concurrent allocations of the same
+ * series wait only for this one row.
+ *
+ * Block allocation: [allocateFromBlock] reserves blocks of numbers in short transactions of their own and hands them
+ * out from memory. Numbers of a block not used before shutdown are lost, so this is only suitable for series without
+ * the need of gap-free numbers.
+ *
+ * The counter of a series is initialized on first use by the given initializer (normally the max number of the
+ * existing entities).
+ */
+@Service
+class NumberAllocationService {
+    @Autowired
+    private lateinit var persistenceService: PfPersistenceService
+
+    private val blocks = mutableMapOf<String, IntRange>()
+
+    /**
+     * @param series The name of the series, e. g. RechnungDO.
+     * @param initialLastNumber Gets the last number used so far, if the series has no counter yet.
+     * @return The next number of the series without reserving it (e. g. as proposal for a new entity).
+     */
+    fun getNextNumber(series: String, initialLastNumber: () -> Int): Int {
+        return persistenceService.runReadOnly { context ->
+            // attached = true: detaching would discard a counter modified by the current transaction.
+            val lastNumber = context.find(NumberSeriesDO::class.java, series, attached = true)?.lastNumber
+                ?: initialLastNumber()
+            lastNumber + 1
+        }
+    }
+
+    /**
+     * Reserves the given number inside the current transaction, if it's the next number of the series. The counter
+     * row is locked until the transaction ends.
+     * @return true, if the number was reserved, false, if the number isn't the next number of the series (e. g.
+     * already reserved by another user).
+     */
+    fun reserve(series: String, number: Int, initialLastNumber: () -> Int): Boolean {
+        return persistenceService.runInTransaction { context ->
+            val counter = lockCounter(context, series, initialLastNumber)
+            if (counter.lastNumber + 1 != number) {
+                log.info { "Number $number of series '$series' isn't the next number ${counter.lastNumber + 1}." }
+                return@runInTransaction false
+            }
+            counter.lastNumber = number
+            true
+        }
+    }
+
+    /**
+     * Allocates the next number of the series inside the current transaction. The counter row is locked until the
+     * transaction ends.
+     */
+    fun allocateNext(series: String, initialLastNumber: () -> Int): Int {
+        return persistenceService.runInTransaction { context ->
+            val counter = lockCounter(context, series, initialLastNumber)
+            ++counter.lastNumber
+        }
+    }
+
+    /**
+     * Raises the counter of the series to the given number, if it's higher than the last number (e. g. an entity was
+     * renumbered manually), so the number won't be allocated again. The counter is read without lock first: the counter
+     * row is locked (until the transaction ends) only, if the number is higher than the last number. So updates of
+     * entities without renumbering don't serialize on the counter row.
+     */
+    fun raiseTo(series: String, number: Int, initialLastNumber: () -> Int) {
+        if (number < getNextNumber(series, initialLastNumber)) {
+            return // Number already allocated, nothing to raise.
+        }
+        persistenceService.runInTransaction { context ->
+            val counter = lockCounter(context, series, initialLastNumber)
+            if (number > counter.lastNumber) { // Check again, the counter may be raised concurrently.
+                log.info { "Raising counter of series '$series' from ${counter.lastNumber} to $number." }
+                counter.lastNumber = number
+            }
+        }
+    }
+
+    /**
+     * Allocates the next number from a block of preallocated numbers. If the current block is exhausted, a new block
+     * of the given size is allocated in a new transaction. Numbers may get lost (gaps), see class description.
+     */
+    fun allocateFromBlock(series: String, blockSize: Int, initialLastNumber: () -> Int): Int {
+        require(blockSize > 0) { "blockSize must be positive: $blockSize" }
+        synchronized(blocks) {
+            val block = blocks[series]
+            if (block == null || block.isEmpty()) {
+                val lastNumber = persistenceService.runInNewTransaction { context ->
+                    val counter = lockCounter(context, series, initialLastNumber)
+                    counter.lastNumber += blockSize
+                    counter.lastNumber
+                }
+                val newBlock = (lastNumber - blockSize + 1)..lastNumber
+                log.info { "Block $newBlock of series '$series' allocated." }
+                blocks[series] = (newBlock.first + 1)..newBlock.last
+                return newBlock.first
+            }
+            blocks[series] = (block.first + 1)..block.last
+            return block.first
+        }
+    }
+
+    private fun lockCounter(
+        context: PfPersistenceContext,
+        series: String,
+        initialLastNumber: () -> Int,
+    ): NumberSeriesDO {
+        context.find(NumberSeriesDO::class.java, series, attached = true, lockModeType = LockModeType.PESSIMISTIC_WRITE)
+            ?.let { return it }
+        val counter = NumberSeriesDO()
+        counter.series = series
+        counter.lastNumber = initialLastNumber()
+        log.info { "Initializing counter of number series '$series' with last number ${counter.lastNumber}." }
+        context.insert(counter)
+        return counter
+    }
+}
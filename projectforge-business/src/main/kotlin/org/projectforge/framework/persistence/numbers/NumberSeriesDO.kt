@@ -0,0 +1,50 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.numbers
+
+import jakarta.persistence.Column
+import jakarta.persistence.Entity
+import jakarta.persistence.Id
+import jakarta.persistence.Table
+
+/**
+ * Persistent counter of a number series (e. g. invoice or order numbers), see [NumberAllocationService].
+ */
+@Entity
+@Table(name = "t_number_series")
+open class NumberSeriesDO {
+    /**
+     * The name of the series, e. g. RechnungDO.
+     */
+    @get:Id
+    @get:Column(name = "series", length = 100)
+    open var series: String? = null
+
+    /**
+     * The last allocated number of this series.
+     */
+    @get:Column(name = "last_number", nullable = false)
+    open var lastNumber: Int = 0
+}
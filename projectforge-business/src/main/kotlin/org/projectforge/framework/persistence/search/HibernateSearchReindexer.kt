@@ -23,27 +23,38 @@
 
 package org.projectforge.framework.persistence.search
 
+import com.fasterxml.jackson.core.type.TypeReference
 import jakarta.annotation.PostConstruct
 import jakarta.persistence.EntityManagerFactory
 import mu.KotlinLogging
+import org.apache.commons.lang3.ClassUtils
 import org.apache.commons.lang3.StringUtils
 import org.hibernate.search.mapper.orm.Search
 import org.hibernate.search.mapper.orm.entity.SearchIndexedEntity
+import org.projectforge.business.configuration.ConfigurationService
 import org.projectforge.common.StringHelper
 import org.projectforge.common.extensions.format
 import org.projectforge.framework.configuration.Configuration.Companion.instance
 import org.projectforge.framework.configuration.ConfigurationParam
+import org.projectforge.framework.json.JsonUtils
 import org.projectforge.framework.persistence.api.ReindexSettings
 import org.projectforge.framework.persistence.database.DatabaseDao
 import org.projectforge.framework.persistence.history.HistoryEntryDO
 import org.projectforge.framework.persistence.jpa.PfPersistenceService
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.time.DateHelper
 import org.projectforge.framework.time.DateTimeFormatter
 import org.projectforge.mail.Mail
 import org.projectforge.mail.SendMail
+import org.slf4j.MDC
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 import java.util.*
+import java.util.concurrent.Executors
 
 private val log = KotlinLogging.logger {}
 
@@ -63,8 +74,28 @@ class HibernateSearchReindexer {
     @Autowired
     private lateinit var entityManagerFactory: EntityManagerFactory
 
+    @Autowired
+    private lateinit var configurationService: ConfigurationService
+
+    /**
+     * Number of entity classes re-indexed concurrently by a full re-index run. Each entity itself is loaded by
+     * projectforge.search.reindex.threadsToLoadObjects threads (see [DatabaseDao]).
+     */
+    @Value("\${projectforge.search.reindex.parallelEntities:2}")
+    private var parallelEntities: Int = 2
+
     private lateinit var indexedEntities: Collection<SearchIndexedEntity<*>>
 
+    /**
+     * The per-entity progress of the current (or last) full re-index run.
+     */
+    @Volatile
+    var progressList: List<ReindexProgress> = emptyList()
+        private set
+
+    private val stateFile: File
+        get() = File(configurationService.applicationHomeDir, STATE_FILENAME)
+
     @PostConstruct
     private fun postConstruct() {
         indexedEntities = Search.mapping(entityManagerFactory).allIndexedEntities()
@@ -76,7 +107,8 @@ class HibernateSearchReindexer {
             log.error("Job not configured, aborting.")
             return
         }*/
-        val result = rebuildDatabaseSearchIndices()
+        // Interrupted runs are only resumed on explicit request, the nightly run rebuilds all indices:
+        val result = rebuildAllDatabaseSearchIndices(resume = false)
         if (result.contains("*")) {
             log.error(ERROR_MSG)
             val recipients = instance
@@ -101,22 +133,7 @@ class HibernateSearchReindexer {
 
     fun rebuildDatabaseSearchIndices(settings: ReindexSettings, vararg classes: Class<*>): String {
         if (currentReindexRun != null) {
-            val sb = StringBuilder()
-            if (classes != null && classes.size > 0) {
-                var first = true
-                for (cls in classes) {
-                    first = StringHelper.append(sb, first, cls.name, ", ")
-                }
-            }
-            val date = DateTimeFormatter.instance().getFormattedDateTime(
-                currentReindexRun, Locale.ENGLISH,
-                DateHelper.UTC
-            )
-            log.info(
-                ("Re-indexing of '" + sb.toString()
-                        + "' cancelled due to another already running re-index job started at " + date + " (UTC):")
-            )
-            return "Another re-index job is already running. The job was started at: $date"
+            return getAlreadyRunningMessage(*classes)
         }
         synchronized(this) {
             try {
@@ -126,6 +143,9 @@ class HibernateSearchReindexer {
                     for (cls in classes) {
                         reindex(cls, settings, sb)
                     }
+                } else if (settings.fromDate == null && settings.lastNEntries == null) {
+                    // Full re-index of all ProjectForge entities:
+                    return reindexAll(resume = false, isActive = { true })
                 } else {
                     // Re-index of all ProjectForge entities:
                     indexedEntities.forEach { entity ->
@@ -139,16 +159,176 @@ class HibernateSearchReindexer {
         }
     }
 
-    private fun reindex(clazz: Class<*>, settings: ReindexSettings, sb: StringBuilder) {
+    /**
+     * Re-indexes all entities. The entities are re-indexed in parallel (see parallelEntities) and in chunks ordered by
+     * id. The progress is saved after each chunk, so an interrupted or cancelled run may be resumed. The saved state is
+     * deleted after a successful run.
+     * @param resume If true and a state of an interrupted run exists, already indexed entities and chunks are
+     * skipped. Otherwise, all indices are rebuilt.
+     * @param isActive Checked before each chunk, the run is cancelled, if false (see [ReindexJob]).
+     */
+    fun rebuildAllDatabaseSearchIndices(resume: Boolean, isActive: () -> Boolean = { true }): String {
+        if (currentReindexRun != null) {
+            return getAlreadyRunningMessage()
+        }
+        synchronized(this) {
+            try {
+                currentReindexRun = Date()
+                return reindexAll(resume, isActive)
+            } finally {
+                currentReindexRun = null
+            }
+        }
+    }
+
+    private fun reindexAll(resume: Boolean, isActive: () -> Boolean): String {
+        val savedState = if (resume) readState() else null
+        if (savedState != null) {
+            log.info { "Resuming interrupted re-index run (${savedState.count { it.status == ReindexProgress.Status.DONE }} of ${savedState.size} entities done)." }
+        }
+        val entities = indexedEntities.map { it.javaClass() }
+        val list = entities.map { clazz ->
+            savedState?.find { it.entityClass == clazz.name }?.also {
+                if (it.status != ReindexProgress.Status.DONE) {
+                    // Continue counting after the last completed chunk:
+                    it.indexedEntities = it.indexedEntitiesOfCompletedChunks
+                    it.status = ReindexProgress.Status.WAITING
+                }
+            } ?: ReindexProgress(clazz.name)
+        }
+        progressList = list
+        // The pool threads run in the user and logging context of the caller:
+        val userContext = ThreadLocalUserContext.userContext
+        val mdcContext = MDC.getCopyOfContextMap()
+        val executor = Executors.newFixedThreadPool(parallelEntities.coerceAtLeast(1))
+        try {
+            entities.mapIndexed { index, clazz ->
+                val progress = list[index]
+                executor.submit(Runnable {
+                    if (progress.status == ReindexProgress.Status.DONE || !isActive()) {
+                        return@Runnable
+                    }
+                    ThreadLocalUserContext.userContext = userContext
+                    mdcContext?.let { MDC.setContextMap(it) }
+                    try {
+                        reindex(clazz, progress, isActive)
+                    } finally {
+                        ThreadLocalUserContext.clear()
+                        MDC.clear()
+                    }
+                })
+            }.forEach { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+        val sb = StringBuilder()
+        entities.forEachIndexed { index, clazz ->
+            when (list[index].status) {
+                ReindexProgress.Status.DONE -> sb.append(ClassUtils.getShortClassName(clazz)).append(", ")
+                ReindexProgress.Status.FAILED -> sb.append(ClassUtils.getShortClassName(clazz))
+                    .append(" (an error occurred, see log file for further information.), ")
+
+                ReindexProgress.Status.CANCELLED -> sb.append(ClassUtils.getShortClassName(clazz))
+                    .append(" (cancelled), ")
+
+                else -> {} // Not available.
+            }
+        }
+        if (list.all { it.status == ReindexProgress.Status.DONE || it.status == ReindexProgress.Status.NOT_AVAILABLE }) {
+            stateFile.delete()
+        }
+        return sb.toString()
+    }
+
+    private fun reindex(clazz: Class<*>, progress: ReindexProgress, isActive: () -> Boolean) {
+        if (!isAvailable(clazz)) {
+            progress.status = ReindexProgress.Status.NOT_AVAILABLE
+            return
+        }
+        progress.status = ReindexProgress.Status.RUNNING
+        progress.started = Date()
+        progress.finished = null
+        writeState()
+        try {
+            if (databaseDao.reindexResumable(clazz, progress, isActive) { writeState() }) {
+                progress.status = ReindexProgress.Status.DONE
+            } else if (!isActive()) {
+                progress.status = ReindexProgress.Status.CANCELLED
+            } else {
+                progress.status = ReindexProgress.Status.FAILED
+            }
+        } catch (ex: Exception) {
+            progress.status = ReindexProgress.Status.FAILED
+            log.error("While rebuilding data-base-search-index for '" + clazz.name + "': " + ex.message, ex)
+        }
+        progress.finished = Date()
+        writeState()
+    }
+
+    /**
+     * Try to check, if class is available (entity of ProjectForge's core or of active plugin).
+     */
+    private fun isAvailable(clazz: Class<*>): Boolean {
         try {
-            // Try to check, if class is available (entity of ProjectForge's core or of active plugin).
             persistenceService.selectSingleResult("select count(*) from " + clazz.simpleName + " t", Long::class.java)?.let {
                 log.info { "Re-indexing ${it.format()} entries of class '${clazz.name}'." }
             }
+            return true
         } catch (ex: Exception) {
             if (HistoryEntryDO::class.java != clazz) {
                 log.info("Class '$clazz' not available (OK for non-active plugins and HistoryEntryDO).")
             }
+            return false
+        }
+    }
+
+    private fun getAlreadyRunningMessage(vararg classes: Class<*>): String {
+        val sb = StringBuilder()
+        var first = true
+        for (cls in classes) {
+            first = StringHelper.append(sb, first, cls.name, ", ")
+        }
+        val date = DateTimeFormatter.instance().getFormattedDateTime(
+            currentReindexRun, Locale.ENGLISH,
+            DateHelper.UTC
+        )
+        log.info(
+            ("Re-indexing of '" + sb.toString()
+                    + "' cancelled due to another already running re-index job started at " + date + " (UTC):")
+        )
+        return "Another re-index job is already running. The job was started at: $date"
+    }
+
+    private fun writeState() {
+        synchronized(stateLock) {
+            try {
+                val file = stateFile
+                val tmpFile = File(file.parentFile, "${file.name}.tmp")
+                tmpFile.writeText(JsonUtils.toJson(progressList))
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            } catch (ex: Exception) {
+                log.warn { "Can't write state of re-index run to '${stateFile.absolutePath}': ${ex.message}" }
+            }
+        }
+    }
+
+    private fun readState(): List<ReindexProgress>? {
+        synchronized(stateLock) {
+            val file = stateFile
+            if (!file.exists()) {
+                return null
+            }
+            return try {
+                JsonUtils.fromJson(file.readText(), object : TypeReference<List<ReindexProgress>>() {}, false)
+            } catch (ex: Exception) {
+                log.warn { "Can't read state of re-index run from '${file.absolutePath}', re-indexing all: ${ex.message}" }
+                null
+            }
+        }
+    }
+
+    private fun reindex(clazz: Class<*>, settings: ReindexSettings, sb: StringBuilder) {
+        if (!isAvailable(clazz)) {
             return
         }
         // PF-378: Performance of run of full re-indexing the data-base is very slow for large data-bases
@@ -165,7 +345,11 @@ class HibernateSearchReindexer {
         return rebuildDatabaseSearchIndices(ReindexSettings())
     }
 
+    private val stateLock = Any()
+
     companion object {
+        private const val STATE_FILENAME = "reindex-state.json"
+
         private const val ERROR_MSG =
             ("Error while re-indexing data base: found lock files while re-indexing data-base. "
                     + "Try to run re-index manually in the web administration menu and if occurred again, "
@@ -0,0 +1,55 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.search
+
+import org.projectforge.framework.jobs.AbstractJob
+import org.projectforge.framework.persistence.user.entities.PFUserDO
+
+/**
+ * Runs a full re-index of all search indices as background job of the
+ * [org.projectforge.framework.jobs.JobHandler], so the run may be monitored and cancelled (after the current chunk).
+ * @param resume If true, an interrupted run will be resumed (see [HibernateSearchReindexer.rebuildAllDatabaseSearchIndices]).
+ */
+class ReindexJob(
+    private val reindexer: HibernateSearchReindexer,
+    private val resume: Boolean,
+) : AbstractJob(
+    "Re-indexing of all search indices",
+    area = "SearchReindex",
+    // Only one full re-index run at a time:
+    queueStrategy = QueueStrategy.REFUSE_PER_QUEUE,
+    timeoutSeconds = 24 * 3600,
+) {
+    var result: String? = null
+        private set
+
+    override suspend fun run() {
+        result = reindexer.rebuildAllDatabaseSearchIndices(resume, isActive = { isActive })
+    }
+
+    override fun writeAccess(user: PFUserDO?): Boolean {
+        return isOwner
+    }
+}
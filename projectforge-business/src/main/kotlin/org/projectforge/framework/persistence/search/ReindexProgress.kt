@@ -0,0 +1,86 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.framework.persistence.search
+
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Progress of the re-indexing of one entity class. Also used for persisting the state of a re-index run, so an
+ * interrupted run may be resumed (from the last completed entity and id range).
+ */
+class ReindexProgress(
+    var entityClass: String? = null,
+) {
+    enum class Status { WAITING, RUNNING, DONE, FAILED, CANCELLED, NOT_AVAILABLE }
+
+    @Volatile
+    var status: Status = Status.WAITING
+
+    /**
+     * Number of entities in the data base.
+     */
+    var totalEntities: Long? = null
+
+    private val indexed = AtomicLong()
+
+    /**
+     * Number of indexed entities (including the completed chunks of an interrupted run, if resumed).
+     */
+    var indexedEntities: Long
+        get() = indexed.get()
+        set(value) = indexed.set(value)
+
+    /**
+     * All entities with ids lower or equal are indexed (for resuming).
+     */
+    @Volatile
+    var lastCompletedId: Long? = null
+
+    /**
+     * Number of indexed entities of all chunks up to [lastCompletedId]. A resumed run continues counting from here.
+     */
+    @Volatile
+    var indexedEntitiesOfCompletedChunks: Long = 0
+
+    var started: Date? = null
+
+    var finished: Date? = null
+
+    fun addIndexed(increment: Long) {
+        indexed.addAndGet(increment)
+    }
+
+    /**
+     * Progress in percent (0-100) or null, if unknown.
+     */
+    val percentage: Int?
+        get() {
+            val total = totalEntities ?: return null
+            if (status == Status.DONE || total <= 0) {
+                return 100
+            }
+            return minOf(100, (indexedEntities * 100 / total).toInt())
+        }
+}
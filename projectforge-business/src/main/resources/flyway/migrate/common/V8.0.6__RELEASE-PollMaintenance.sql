@@ -0,0 +1,10 @@
+-- Indexes for the poll cron jobs and retry state of the result mails.
+
+CREATE INDEX idx_t_poll_deadline
+    ON t_poll (deadline);
+
+CREATE INDEX idx_fk_t_poll_response_poll_fk
+    ON t_poll_response (poll_fk);
+
+ALTER TABLE t_poll ADD COLUMN result_mail_attempts INTEGER;
+ALTER TABLE t_poll ADD COLUMN result_mail_next_attempt TIMESTAMP WITHOUT TIME ZONE;
@@ -0,0 +1,18 @@
+-- Persistent counters of number series (invoice and order numbers), see NumberAllocationService.
+
+CREATE TABLE t_number_series
+(
+    series      CHARACTER VARYING(100) NOT NULL,
+    last_number INTEGER                NOT NULL
+);
+
+ALTER TABLE t_number_series
+    ADD CONSTRAINT t_number_series_pkey PRIMARY KEY (series);
+
+INSERT INTO t_number_series (series, last_number)
+SELECT 'RechnungDO', COALESCE(MAX(nummer), 1000)
+FROM t_fibu_rechnung;
+
+INSERT INTO t_number_series (series, last_number)
+SELECT 'AuftragDO', COALESCE(MAX(nummer), 1)
+FROM t_fibu_auftrag;
@@ -0,0 +1,116 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.business.gantt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.projectforge.business.test.AbstractTestBase;
+import org.projectforge.business.test.TestSetup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GanttSchedulerTest extends AbstractTestBase {
+  private static long counter = 0;
+
+  @BeforeEach
+  public void setUpThisTest() {
+    // Needed if this tests runs before the ConfigurationTest.
+    TestSetup.init();
+  }
+
+  @Test
+  public void recalculateInDependencyOrder() {
+    final GanttTaskImpl root = createActivity(-1).setTitle("root");
+    final GanttTaskImpl a1 = createActivity(1).setTitle("a1");
+    a1.setStartDate(LocalDate.of(2010, 9, 1));
+    final GanttTaskImpl a2 = createActivity(2).setTitle("a2");
+    a2.setPredecessor(a1);
+    final GanttTaskImpl a3 = createActivity(2).setTitle("a3");
+    a3.setPredecessor(a2);
+    final GanttTaskImpl b1 = createActivity(1).setTitle("b1");
+    b1.setStartDate(LocalDate.of(2010, 8, 2));
+    // Add the successors first to ensure, that the order of the children doesn't matter:
+    root.addChild(a3).addChild(a2).addChild(a1).addChild(b1);
+
+    final GanttScheduler scheduler = new GanttScheduler(root).recalculate();
+    assertEquals(5, scheduler.getCalculatedNodesCounter());
+    assertTrue(scheduler.getCyclicNodes().isEmpty());
+    assertDates("2010-09-01", "2010-09-02", a1);
+    assertDates("2010-09-02", "2010-09-06", a2); // 2010-09-04 to 2010-09-05 is a weekend.
+    assertDates("2010-09-06", "2010-09-08", a3);
+    assertDates("2010-08-02", "2010-09-08", root);
+
+    scheduler.recalculateModified();
+    assertEquals(0, scheduler.getCalculatedNodesCounter(), "Nothing modified.");
+
+    a2.setDuration(new BigDecimal(3));
+    scheduler.recalculateModified();
+    assertEquals(3, scheduler.getCalculatedNodesCounter(), "a2, successor a3 and parent root expected.");
+    assertDates("2010-09-01", "2010-09-02", a1);
+    assertDates("2010-09-02", "2010-09-07", a2);
+    assertDates("2010-09-07", "2010-09-09", a3);
+    assertDates("2010-08-02", "2010-09-09", root);
+
+    a3.setPredecessor(b1);
+    scheduler.recalculate(a3);
+    assertEquals(2, scheduler.getCalculatedNodesCounter(), "a3 and parent root expected.");
+    assertDates("2010-08-03", "2010-08-05", a3);
+    assertDates("2010-08-02", "2010-09-07", root);
+  }
+
+  @Test
+  public void cyclicReferences() {
+    final GanttTaskImpl a1 = createActivity(1).setTitle("a1");
+    final GanttTaskImpl a1_1 = createActivity(10).setTitle("a1_1");
+    a1_1.setPredecessor(a1);
+    a1.addChild(a1_1);
+    final GanttTaskImpl a1_2 = createActivity(1).setTitle("a1_2");
+    a1_2.setStartDate(LocalDate.of(2010, 9, 1));
+    a1.addChild(a1_2);
+    final GanttScheduler scheduler = new GanttScheduler(a1).recalculate();
+    assertEquals(2, scheduler.getCyclicNodes().size());
+    assertTrue(scheduler.getCyclicNodes().contains(a1));
+    assertTrue(scheduler.getCyclicNodes().contains(a1_1));
+    assertEquals(3, scheduler.getCalculatedNodesCounter());
+    assertEquals(LocalDate.of(2010, 9, 2), a1_2.getCalculatedEndDate());
+  }
+
+  private GanttTaskImpl createActivity(final int durationDays) {
+    final GanttTaskImpl activity = new GanttTaskImpl();
+    if (durationDays >= 0) {
+      activity.setDuration(new BigDecimal(durationDays));
+    }
+    activity.setId(counter++);
+    return activity;
+  }
+
+  private void assertDates(final String expectedStartDate, final String expectedEndDate, final GanttTask task) {
+    assertTrue(task.isStartDateCalculated() || task.getStartDate() != null);
+    assertEquals(expectedStartDate, String.valueOf(GanttUtils.getCalculatedStartDate(task)), task.getTitle());
+    assertEquals(expectedEndDate, String.valueOf(GanttUtils.getCalculatedEndDate(task)), task.getTitle());
+  }
+}
@@ -40,6 +40,7 @@ import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Date;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -185,6 +186,68 @@ public class TimesheetTest extends AbstractTestBase {
         });
     }
 
+    @Test
+    public void testBulkInsert() {
+        persistenceService.runInTransaction(context ->
+        {
+            logon(AbstractTestBase.ADMIN);
+            initTestDB.addTask("timesheet-bulk", "root");
+            initTestDB.addUser("timesheet-bulk-user");
+            final TimesheetDO existing = createTimesheet("timesheet-bulk", "timesheet-bulk-user");
+            setTimeperiod(existing, 22, 8, 0, 22, 12, 0); // 11/22 from 8:00 to 12:00
+            timesheetDao.insert(existing);
+
+            final TimesheetDO ts1 = createTimesheet("timesheet-bulk", "timesheet-bulk-user");
+            setTimeperiod(ts1, 22, 12, 0, 22, 14, 0);
+            final TimesheetDO ts2 = createTimesheet("timesheet-bulk", "timesheet-bulk-user");
+            setTimeperiod(ts2, 22, 13, 0, 22, 15, 0);
+            try {
+                timesheetDao.insertBulk(List.of(ts1, ts2)); // Overlap inside the batch!
+                fail();
+            } catch (final UserException ex) {
+                // The colliding time sheet has no id yet, so the positions in the batch are reported:
+                assertEquals("timesheet.error.timeperiodOverlapDetection.bulk", ex.getI18nKey());
+                assertEquals(2, ex.getMsgParams()[0].getValue());
+                assertEquals(1, ex.getMsgParams()[1].getValue());
+            }
+            setTimeperiod(ts2, 22, 11, 0, 22, 12, 0);
+            try {
+                timesheetDao.insertBulk(List.of(ts1, ts2)); // Overlap with existing time sheet!
+                fail();
+            } catch (final UserException ex) {
+                assertEquals("timesheet.error.timeperiodOverlapDetection", ex.getI18nKey());
+            }
+            final TimesheetDO incomplete = createTimesheet("timesheet-bulk", "timesheet-bulk-user");
+            incomplete.setStartTime(ts1.getStartTime()); // Stop time missing.
+            try {
+                timesheetDao.insertBulk(List.of(incomplete));
+                fail();
+            } catch (final UserException ex) {
+                assertEquals("validation.required.valueNotPresent", ex.getI18nKey());
+            }
+            setTimeperiod(ts2, 22, 14, 0, 22, 16, 0);
+            final List<Long> ids = timesheetDao.insertBulk(List.of(ts1, ts2)); // No overlap, OK.
+            assertEquals(2, ids.size());
+            assertEquals(ts1.getId(), ids.get(0));
+            final TimesheetDO ts3 = createTimesheet("timesheet-bulk", "timesheet-bulk-user");
+            setTimeperiod(ts3, 22, 15, 0, 22, 17, 0);
+            try {
+                timesheetDao.insert(ts3); // Overlap with bulk inserted time sheet!
+                fail();
+            } catch (final UserException ex) {
+                assertEquals("timesheet.error.timeperiodOverlapDetection", ex.getI18nKey());
+            }
+            return null;
+        });
+    }
+
+    private TimesheetDO createTimesheet(final String task, final String user) {
+        final TimesheetDO timesheet = new TimesheetDO();
+        timesheet.setTask(getTask(task));
+        timesheet.setUser(getUser(user));
+        return timesheet;
+    }
+
     @Test
     public void testTimesheetProtection() {
         persistenceService.runInTransaction(context ->
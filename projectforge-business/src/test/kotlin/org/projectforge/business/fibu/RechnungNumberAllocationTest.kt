@@ -0,0 +1,184 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.fibu
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.test.AbstractTestBase
+import org.projectforge.common.i18n.UserException
+import org.projectforge.framework.persistence.numbers.NumberAllocationService
+import org.springframework.beans.factory.annotation.Autowired
+import java.math.BigDecimal
+import java.time.LocalDate
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class RechnungNumberAllocationTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var rechnungDao: RechnungDao
+
+    @Autowired
+    private lateinit var numberAllocationService: NumberAllocationService
+
+    @Test
+    fun parallelInsertsTest() {
+        logon(TEST_FINANCE_USER)
+        val projekt = persistenceService.runInTransaction { _ ->
+            initTestDB.addProjekt(null, 1, "numbers")
+        }
+        val firstNumber = rechnungDao.nextNumber
+        val numbers = ConcurrentHashMap.newKeySet<Int>()
+        val retries = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(THREADS)
+        val futures = (1..THREADS).map {
+            executor.submit {
+                logon(TEST_FINANCE_USER)
+                repeat(INVOICES_PER_THREAD) {
+                    var attempts = 0
+                    while (true) {
+                        val rechnung = RechnungDO()
+                        rechnung.datum = LocalDate.now()
+                        rechnung.faelligkeit = LocalDate.now()
+                        rechnung.projekt = projekt
+                        rechnung.nummer = rechnungDao.nextNumber // Proposal, may be taken by another thread meanwhile.
+                        rechnung.addPosition(createPosition())
+                        try {
+                            rechnungDao.insert(rechnung)
+                            Assertions.assertTrue(numbers.add(rechnung.nummer!!), "Number ${rechnung.nummer} allocated twice.")
+                            break
+                        } catch (ex: Exception) {
+                            // Number taken by another thread (UserException) or lock conflict of the database: retry.
+                            if (ex !is UserException) {
+                                baseLog.info("Retrying after ${ex.javaClass.simpleName}: ${ex.message}")
+                            }
+                            retries.incrementAndGet()
+                            Assertions.assertTrue(++attempts < MAX_ATTEMPTS, "Too many attempts for inserting invoice.")
+                        }
+                    }
+                }
+            }
+        }
+        executor.shutdown()
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES))
+        futures.forEach { it.get() } // Re-throws assertion errors of the threads.
+        baseLog.info("${numbers.size} invoices inserted by $THREADS threads with ${retries.get()} retries.")
+
+        val total = THREADS * INVOICES_PER_THREAD
+        Assertions.assertEquals((firstNumber until firstNumber + total).toSet(), numbers, "Numbers must be gap-free.")
+        val dbNumbers = persistenceService.executeQuery(
+            "select r.nummer from RechnungDO r where r.nummer>=:firstNumber",
+            Int::class.javaObjectType,
+            Pair("firstNumber", firstNumber),
+        )
+        Assertions.assertEquals(total, dbNumbers.size)
+        Assertions.assertEquals(total, dbNumbers.toSet().size)
+        Assertions.assertEquals(firstNumber + total, rechnungDao.nextNumber)
+    }
+
+    @Test
+    fun renumberingTest() {
+        logon(TEST_FINANCE_USER)
+        val projekt = persistenceService.runInTransaction { _ ->
+            initTestDB.addProjekt(null, 2, "renumbering")
+        }
+        val rechnung = RechnungDO()
+        rechnung.datum = LocalDate.now()
+        rechnung.faelligkeit = LocalDate.now()
+        rechnung.projekt = projekt
+        rechnung.nummer = rechnungDao.nextNumber
+        rechnung.addPosition(createPosition())
+        val id = rechnungDao.insert(rechnung)
+        // Renumber the invoice to the next free number:
+        val renumbered = rechnungDao.find(id)!!
+        val number = rechnungDao.nextNumber
+        renumbered.nummer = number
+        rechnungDao.update(renumbered)
+        Assertions.assertEquals(number + 1, rechnungDao.nextNumber, "Number of renumbered invoice mustn't be proposed again.")
+        // Renumbering to a lower (free) number doesn't lower the counter:
+        val renumberedAgain = rechnungDao.find(id)!!
+        renumberedAgain.nummer = number - 1
+        rechnungDao.update(renumberedAgain)
+        Assertions.assertEquals(number + 1, rechnungDao.nextNumber)
+        // The proposal is reservable:
+        val next = RechnungDO()
+        next.datum = LocalDate.now()
+        next.faelligkeit = LocalDate.now()
+        next.projekt = projekt
+        next.nummer = rechnungDao.nextNumber
+        next.addPosition(createPosition())
+        rechnungDao.insert(next)
+        Assertions.assertEquals(number + 1, next.nummer)
+    }
+
+    @Test
+    fun raiseToTest() {
+        val series = "RechnungNumberAllocationTest.raiseTo"
+        numberAllocationService.raiseTo(series, 15) { 10 } // Counter initialized with 10 and raised.
+        Assertions.assertEquals(16, numberAllocationService.getNextNumber(series) { 0 })
+        numberAllocationService.raiseTo(series, 5) { 0 } // Lower numbers don't lower the counter.
+        Assertions.assertEquals(16, numberAllocationService.getNextNumber(series) { 0 })
+        numberAllocationService.raiseTo(series, 15) { 0 } // Number already allocated.
+        Assertions.assertEquals(16, numberAllocationService.getNextNumber(series) { 0 })
+        numberAllocationService.raiseTo(series, 20) { 0 }
+        Assertions.assertEquals(21, numberAllocationService.getNextNumber(series) { 0 })
+    }
+
+    @Test
+    fun blockAllocationTest() {
+        val series = "RechnungNumberAllocationTest"
+        val numbers = ConcurrentHashMap.newKeySet<Int>()
+        val executor = Executors.newFixedThreadPool(THREADS)
+        val futures = (1..THREADS).map {
+            executor.submit {
+                repeat(100) {
+                    Assertions.assertTrue(numbers.add(numberAllocationService.allocateFromBlock(series, 7) { 0 }))
+                }
+            }
+        }
+        executor.shutdown()
+        Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+        futures.forEach { it.get() }
+        Assertions.assertEquals((1..THREADS * 100).toSet(), numbers)
+    }
+
+    private fun createPosition(): RechnungsPositionDO {
+        val pos = RechnungsPositionDO()
+        pos.menge = BigDecimal.ONE
+        pos.einzelNetto = BigDecimal("50.00")
+        pos.vat = BigDecimal.ZERO
+        pos.text = "test"
+        return pos
+    }
+
+    companion object {
+        private const val THREADS = 8
+
+        private const val INVOICES_PER_THREAD = 250
+
+        private const val MAX_ATTEMPTS = 1000
+    }
+}
@@ -54,17 +54,7 @@ class OrderbookStorageTest : AbstractTestBase() {
 
     @Test
     fun `test serialization and deserialization of order book`() {
-        recreateDataBase() // Remove any orders created by other tests before.
-        task = initTestDB.addTask("OrderbookStorageTest", "root")
-        kunde = KundeDO().also {
-            it.name = "ACME"
-            it.id = 984232
-            kundeDao.insert(it, checkAccess = false)
-        }
-        project = ProjektDO().also {
-            it.name = "Project"
-            projektDao.insert(it, checkAccess = false)
-        }
+        initData()
         createOrder("1", LocalDate.of(2024, Month.DECEMBER, 1))
         createOrder("2", LocalDate.of(2024, Month.DECEMBER, 1))
         createOrder("3", LocalDate.of(2024, Month.DECEMBER, 1))
@@ -119,6 +109,49 @@ class OrderbookStorageTest : AbstractTestBase() {
         Assertions.assertEquals(6, incrementalStats.count, "No storage found, based on date 2024-11-12, full backup expected.")
     }
 
+    @Test
+    fun `test maximum length of incremental chains`() {
+        initData()
+        createOrder("1")
+        createOrder("2")
+        val maxChainLength = orderbookStorageService.maxIncrementalChainLength
+        try {
+            orderbookStorageService.maxIncrementalChainLength = 2
+            val day1 = LocalDate.of(2024, Month.DECEMBER, 1)
+            val day2 = day1.plusDays(1)
+            val day3 = day1.plusDays(2)
+            val day4 = day1.plusDays(3)
+            orderbookStorageService.storeOrderbook(today = day1)
+            Assertions.assertEquals(0, orderbookStorageService.getChainLength(day1))
+            orderbookStorageService.storeOrderbook(incrementalBasedOn = day1, today = day2)
+            Assertions.assertEquals(1, orderbookStorageService.getChainLength(day2))
+            orderbookStorageService.storeOrderbook(incrementalBasedOn = day2, today = day3)
+            Assertions.assertEquals(2, orderbookStorageService.getChainLength(day3))
+            val stats = orderbookStorageService.storeOrderbook(incrementalBasedOn = day3, today = day4)
+            Assertions.assertEquals(0, orderbookStorageService.getChainLength(day4), "Full backup expected.")
+            Assertions.assertEquals(2, stats.count)
+            listOf(day1, day2, day3, day4, day3).forEach { day ->
+                Assertions.assertEquals(2, orderbookStorageService.restoreOrderbook(day)!!.size, "Restored orders of $day")
+            }
+        } finally {
+            orderbookStorageService.maxIncrementalChainLength = maxChainLength
+        }
+    }
+
+    private fun initData() {
+        recreateDataBase() // Remove any orders created by other tests before.
+        task = initTestDB.addTask("OrderbookStorageTest", "root")
+        kunde = KundeDO().also {
+            it.name = "ACME"
+            it.id = 984232
+            kundeDao.insert(it, checkAccess = false)
+        }
+        project = ProjektDO().also {
+            it.name = "Project"
+            projektDao.insert(it, checkAccess = false)
+        }
+    }
+
     private fun createOrder(id: String, dateOfLastUpdate: LocalDate? = null): AuftragDO {
         return AuftragDO().also { order ->
             order.nummer = auftragDao.nextNumber
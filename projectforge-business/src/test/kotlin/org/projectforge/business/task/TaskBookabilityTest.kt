@@ -0,0 +1,232 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.task
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.fibu.AuftragDO
+import org.projectforge.business.fibu.AuftragDao
+import org.projectforge.business.fibu.AuftragsPositionDO
+import org.projectforge.business.fibu.AuftragsStatus
+import org.projectforge.business.test.AbstractTestBase
+import org.projectforge.common.task.TimesheetBookingStatus
+import org.springframework.beans.factory.annotation.Autowired
+
+/**
+ * Tests the bookability of tasks for time sheets precalculated by the [TaskTree] (see [TaskBookability]).
+ */
+class TaskBookabilityTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var auftragDao: AuftragDao
+
+    @Autowired
+    private lateinit var taskDao: TaskDao
+
+    @Autowired
+    private lateinit var taskTree: TaskTree
+
+    @Test
+    fun treeClosedTest() {
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_FINANCE_USER)
+            addTask("TBA-closed", "root")
+            addTask("TBA-closed.1", "TBA-closed", TimesheetBookingStatus.TREE_CLOSED)
+            addTask("TBA-closed.1.1", "TBA-closed.1", TimesheetBookingStatus.OPENED)
+            addTask("TBA-closed.1.1.1", "TBA-closed.1.1")
+            assertBookable("TBA-closed")
+            assertNotBookable("TBA-closed.1", TREE_CLOSED, "TBA-closed.1")
+            assertNotBookable("TBA-closed.1.1", TREE_CLOSED, "TBA-closed.1") // OPENED doesn't reopen the tree.
+            assertNotBookable("TBA-closed.1.1.1", TREE_CLOSED, "TBA-closed.1")
+            // Reopen the tree:
+            updateBookingStatus("TBA-closed.1", TimesheetBookingStatus.OPENED)
+            assertBookable("TBA-closed.1")
+            assertBookable("TBA-closed.1.1")
+            assertBookable("TBA-closed.1.1.1")
+        }
+    }
+
+    @Test
+    fun inheritTest() {
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_FINANCE_USER)
+            addTask("TBA-inherit", "root", TimesheetBookingStatus.NO_BOOKING)
+            addTask("TBA-inherit.1", "TBA-inherit", TimesheetBookingStatus.INHERIT)
+            addTask("TBA-inherit.1.1", "TBA-inherit.1", TimesheetBookingStatus.OPENED)
+            addTask("TBA-inherit.1.1.1", "TBA-inherit.1.1", TimesheetBookingStatus.INHERIT)
+            addTask("TBA-inherit.2", "TBA-inherit") // Default status of new tasks is INHERIT.
+            assertNotBookable("TBA-inherit", NO_BOOKING, "TBA-inherit")
+            assertNotBookable("TBA-inherit.1", NO_BOOKING, "TBA-inherit.1")
+            assertNotBookable("TBA-inherit.2", NO_BOOKING, "TBA-inherit.2")
+            assertBookable("TBA-inherit.1.1")
+            assertBookable("TBA-inherit.1.1.1") // Inherited from TBA-inherit.1.1.
+            // The inherited status of the descendants follows the modification:
+            updateBookingStatus("TBA-inherit", TimesheetBookingStatus.OPENED)
+            assertBookable("TBA-inherit.1")
+            assertBookable("TBA-inherit.2")
+            updateBookingStatus("TBA-inherit.1.1", TimesheetBookingStatus.INHERIT)
+            assertBookable("TBA-inherit.1.1.1")
+            updateBookingStatus("TBA-inherit", TimesheetBookingStatus.NO_BOOKING)
+            assertNotBookable("TBA-inherit.1.1.1", NO_BOOKING, "TBA-inherit.1.1.1")
+        }
+    }
+
+    @Test
+    fun onlyLeafsTest() {
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_FINANCE_USER)
+            addTask("TBA-leafs", "root", TimesheetBookingStatus.ONLY_LEAFS)
+            addTask("TBA-leafs.1", "TBA-leafs")
+            addTask("TBA-leafs.1.1", "TBA-leafs.1")
+            addTask("TBA-leafs.2", "TBA-leafs", TimesheetBookingStatus.OPENED)
+            assertNotBookable("TBA-leafs", ONLY_LEAFS, "TBA-leafs")
+            assertNotBookable("TBA-leafs.1", ONLY_LEAFS, "TBA-leafs.1")
+            assertBookable("TBA-leafs.1.1")
+            assertBookable("TBA-leafs.2") // Leaf (ONLY_LEAFS is inherited, also by OPENED tasks).
+            // New child: the former leaf isn't bookable anymore.
+            addTask("TBA-leafs.2.1", "TBA-leafs.2")
+            assertNotBookable("TBA-leafs.2", ONLY_LEAFS, "TBA-leafs.2")
+            assertBookable("TBA-leafs.2.1")
+        }
+    }
+
+    @Test
+    fun orderPositionsTest() {
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_FINANCE_USER)
+            addTask("TBA-orders", "root")
+            addTask("TBA-orders.1", "TBA-orders")
+            addTask("TBA-orders.1.1", "TBA-orders.1")
+            addTask("TBA-orders.1.1.1", "TBA-orders.1.1")
+            addTask("TBA-orders.2", "TBA-orders")
+            addOrder("TBA-orders.1.1")
+        }
+        persistenceService.runReadOnly { _ ->
+            logon(TEST_FINANCE_USER)
+            assertNotBookable("TBA-orders", ORDER_POSITIONS, "TBA-orders")
+            assertNotBookable("TBA-orders.1", ORDER_POSITIONS, "TBA-orders.1")
+            assertBookable("TBA-orders.1.1") // Order position of the task itself.
+            assertBookable("TBA-orders.1.1.1")
+            assertBookable("TBA-orders.2")
+        }
+    }
+
+    @Test
+    fun reparentTest() {
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_FINANCE_USER)
+            addTask("TBA-move", "root")
+            addTask("TBA-move.orders", "TBA-move")
+            addTask("TBA-move.orders.1", "TBA-move.orders")
+            addTask("TBA-move.closed", "TBA-move", TimesheetBookingStatus.TREE_CLOSED)
+            addTask("TBA-move.leafs", "TBA-move", TimesheetBookingStatus.ONLY_LEAFS)
+            addTask("TBA-move.leafs.1", "TBA-move.leafs")
+            addTask("TBA-move.target", "TBA-move")
+            addOrder("TBA-move.orders.1")
+        }
+        persistenceService.runInTransaction { _ ->
+            logon(TEST_ADMIN_USER)
+            assertNotBookable("TBA-move.orders", ORDER_POSITIONS, "TBA-move.orders")
+            assertBookable("TBA-move.target")
+            // Move task with order position: the old ancestors get bookable, the new ones not.
+            moveTask("TBA-move.orders.1", "TBA-move.target")
+            assertBookable("TBA-move.orders")
+            assertNotBookable("TBA-move.target", ORDER_POSITIONS, "TBA-move.target")
+            assertBookable("TBA-move.orders.1")
+            // Move task into closed tree:
+            moveTask("TBA-move.orders.1", "TBA-move.closed")
+            assertBookable("TBA-move.target")
+            assertNotBookable("TBA-move.orders.1", TREE_CLOSED, "TBA-move.closed")
+            // Move the last child out of an ONLY_LEAFS sub tree: the parent gets a bookable leaf.
+            assertNotBookable("TBA-move.leafs", ONLY_LEAFS, "TBA-move.leafs")
+            moveTask("TBA-move.leafs.1", "TBA-move.target")
+            assertBookable("TBA-move.leafs")
+            assertBookable("TBA-move.leafs.1")
+            // And move it back into the ONLY_LEAFS sub tree with own child:
+            addTask("TBA-move.leafs.1.1", "TBA-move.leafs.1")
+            assertBookable("TBA-move.leafs.1")
+            moveTask("TBA-move.leafs.1", "TBA-move.leafs")
+            assertNotBookable("TBA-move.leafs", ONLY_LEAFS, "TBA-move.leafs")
+            assertNotBookable("TBA-move.leafs.1", ONLY_LEAFS, "TBA-move.leafs.1")
+            assertBookable("TBA-move.leafs.1.1")
+        }
+    }
+
+    private fun addTask(
+        taskName: String,
+        parentTaskName: String,
+        bookingStatus: TimesheetBookingStatus? = null,
+    ): TaskDO {
+        val task = initTestDB.addTask(taskName, parentTaskName)
+        if (bookingStatus != null) {
+            task.timesheetBookingStatus = bookingStatus
+            taskDao.update(task, checkAccess = false)
+        }
+        return task
+    }
+
+    private fun updateBookingStatus(taskName: String, bookingStatus: TimesheetBookingStatus) {
+        val task = taskDao.find(getTask(taskName).id, checkAccess = false)!!
+        task.timesheetBookingStatus = bookingStatus
+        taskDao.update(task, checkAccess = false)
+    }
+
+    private fun moveTask(taskName: String, newParentTaskName: String) {
+        val task = taskDao.find(getTask(taskName).id, checkAccess = false)!!
+        taskDao.setParentTask(task, getTask(newParentTaskName).id!!)
+        taskDao.update(task, checkAccess = false)
+    }
+
+    private fun addOrder(taskName: String) {
+        val pos = AuftragsPositionDO()
+        pos.status = AuftragsStatus.GELEGT
+        pos.task = getTask(taskName)
+        pos.titel = "Pos $taskName"
+        val auftrag = AuftragDO().addPosition(pos)
+        auftrag.status = AuftragsStatus.GELEGT
+        auftrag.nummer = auftragDao.getNextNumber(auftrag)
+        auftragDao.insert(auftrag)
+    }
+
+    private fun assertBookable(taskName: String) {
+        val bookability = taskTree.getBookability(getTask(taskName).id)!!
+        Assertions.assertNull(bookability.notBookableReason, "Task '$taskName' should be bookable.")
+        Assertions.assertTrue(bookability.bookable)
+        Assertions.assertTrue(taskTree.getTaskNodeById(getTask(taskName).id)!!.isBookableForTimesheets)
+    }
+
+    private fun assertNotBookable(taskName: String, expectedReason: String, expectedCausingTaskName: String) {
+        val bookability = taskTree.getBookability(getTask(taskName).id)!!
+        Assertions.assertEquals(expectedReason, bookability.notBookableReason, "Task '$taskName'")
+        Assertions.assertEquals(getTask(expectedCausingTaskName).id, bookability.causingTask?.id, "Task '$taskName'")
+        Assertions.assertFalse(taskTree.getTaskNodeById(getTask(taskName).id)!!.isBookableForTimesheets)
+    }
+
+    companion object {
+        private const val TREE_CLOSED = "timesheet.error.taskNotBookable.treeClosedForBooking"
+        private const val NO_BOOKING = "timesheet.error.taskNotBookable.taskClosedForBooking"
+        private const val ONLY_LEAFS = "timesheet.error.taskNotBookable.onlyLeafsAllowedForBooking"
+        private const val ORDER_POSITIONS = "timesheet.error.taskNotBookable.orderPositionsFoundInSubTasks"
+    }
+}
@@ -0,0 +1,133 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.business.teamcal.event
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.teamcal.event.model.TeamEventDO
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZonedDateTime
+import java.util.Date
+
+class TeamEventRecurrenceCacheTest {
+    @Test
+    fun `test extension and invalidation of cached windows`() {
+        val cache = TeamEventRecurrenceCache()
+        // Daily at 10:00 in Berlin, daylight saving time starts on 2024-03-31:
+        val event = TeamEventDO().also {
+            it.id = 42
+            it.startDate = Date.from(berlin(25, 10).toInstant())
+            it.recurrenceRule = "FREQ=DAILY;INTERVAL=1"
+        }
+        val calculated = mutableListOf<Pair<ZonedDateTime, ZonedDateTime>>()
+        val calculate = { from: Long, to: Long ->
+            calculated.add(Pair(zoned(from), zoned(to)))
+            rollOut(event, from, to)
+        }
+        Assertions.assertEquals(days(28, 29, 30), get(cache, event, berlin(28), berlin(31), calculate))
+        Assertions.assertEquals(listOf(Pair(berlin(28), berlin(31))), calculated)
+        // Inside the window, nothing to calculate (end of period is exclusive):
+        Assertions.assertEquals(days(29), get(cache, event, berlin(29), berlin(30, 10), calculate))
+        Assertions.assertEquals(1, calculated.size)
+        // Extension across the change to daylight saving time, only the missing period is calculated:
+        Assertions.assertEquals(days(30, 31, 32), get(cache, event, berlin(30, 10), berlin(33, 10), calculate))
+        Assertions.assertEquals(Pair(berlin(31), berlin(33, 10)), calculated[1])
+        Assertions.assertEquals(2, calculated.size)
+        // 10:00 in Berlin before and after the change (23 hours in between):
+        Assertions.assertEquals(
+            23 * 3600_000L,
+            berlin(31, 10).toInstant().toEpochMilli() - berlin(30, 10).toInstant().toEpochMilli(),
+        )
+        // Same results as calculated without cache:
+        for (period in listOf(Pair(berlin(30, 10), berlin(32, 10)), Pair(berlin(28, 9), berlin(33)))) {
+            Assertions.assertEquals(
+                get(TeamEventRecurrenceCache(), event, period.first, period.second, calculate),
+                get(cache, event, period.first, period.second, calculate),
+            )
+        }
+        // Modified event (exception dates), window is calculated again:
+        event.recurrenceExDate = "20240329T090000Z"
+        calculated.clear()
+        get(cache, event, berlin(28), berlin(30), calculate)
+        Assertions.assertEquals(listOf(Pair(berlin(28), berlin(30))), calculated)
+        // Events without id and uid aren't cached:
+        val event2 = TeamEventDO().also {
+            it.startDate = event.startDate
+            it.recurrenceRule = "FREQ=DAILY"
+        }
+        calculated.clear()
+        get(cache, event2, berlin(28), berlin(30), calculate)
+        get(cache, event2, berlin(28), berlin(30), calculate)
+        Assertions.assertEquals(2, calculated.size)
+        Assertions.assertEquals(1, cache.size)
+        // Deleted event:
+        cache.remove(event)
+        Assertions.assertEquals(0, cache.size)
+    }
+
+    /**
+     * Rolls out the recurrence rule by ical4j the same way as [TeamEventDao.rollOutRecurrenceEvents] (without exception
+     * dates).
+     */
+    private fun rollOut(event: TeamEventDO, from: Long, to: Long): List<TeamEventRecurrenceCache.Occurrence> {
+        val seed = zoned(event.startDate!!.time)
+        return event.recurrenceObject!!.getDates(seed, zoned(from), zoned(to)).map {
+            TeamEventRecurrenceCache.Occurrence(it, ZonedDateTime.from(it).toInstant().toEpochMilli())
+        }.sortedBy { it.epochMillis }
+    }
+
+    private fun get(
+        cache: TeamEventRecurrenceCache,
+        event: TeamEventDO,
+        from: ZonedDateTime,
+        to: ZonedDateTime,
+        calculate: (Long, Long) -> List<TeamEventRecurrenceCache.Occurrence>,
+    ): List<Long> {
+        return cache.getOccurrences(event, ZONE.id, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli(), calculate)
+            .map { it.epochMillis }
+    }
+
+    /**
+     * @return The given days of March 2024 (32 is April 1st) at 10:00 in Berlin as epoch millis.
+     */
+    private fun days(vararg days: Int): List<Long> {
+        return days.map { berlin(it, 10).toInstant().toEpochMilli() }
+    }
+
+    /**
+     * @param day Day of March 2024, 32 is April 1st and so on.
+     */
+    private fun berlin(day: Int, hour: Int = 0): ZonedDateTime {
+        return ZonedDateTime.of(2024, 3, 1, hour, 0, 0, 0, ZONE).plusDays(day - 1L)
+    }
+
+    private fun zoned(epochMillis: Long): ZonedDateTime {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZONE)
+    }
+
+    companion object {
+        private val ZONE = ZoneId.of("Europe/Berlin")
+    }
+}
@@ -0,0 +1,68 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.timesheet
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.framework.cache.AbstractCache
+
+class AutoCompletionIndexTest {
+    @Test
+    fun rankingTest() {
+        val now = System.currentTimeMillis()
+        val index = AutoCompletionIndex()
+        index.add("Office Kassel", now - 100 * AbstractCache.TICKS_PER_DAY, 10) // Frequent, but long ago.
+        index.add("Home office", now - AbstractCache.TICKS_PER_DAY, 5)
+        index.add("Customer", now, 1)
+        index.add("customer ", now, 1) // Same value, differs only in case.
+        index.add("  ", now)
+        Assertions.assertEquals(3, index.size)
+        Assertions.assertEquals(
+            listOf("Home office", "Office Kassel", "Customer"),
+            AutoCompletionIndex.search(listOf(index), null, now),
+        )
+        // Values starting with the search string first:
+        Assertions.assertEquals(
+            listOf("Office Kassel", "Home office"),
+            AutoCompletionIndex.search(listOf(index), "off", now),
+        )
+        Assertions.assertEquals(listOf("Office Kassel"), AutoCompletionIndex.search(listOf(index), "kas OFF", now))
+        Assertions.assertTrue(AutoCompletionIndex.search(listOf(index), "unknown", now).isEmpty())
+    }
+
+    @Test
+    fun mergeIndexesTest() {
+        val now = System.currentTimeMillis()
+        val task1 = AutoCompletionIndex()
+        val task2 = AutoCompletionIndex()
+        task1.add("Reference A", now, 1)
+        task1.add("Reference B", now, 2)
+        task2.add("reference a", now, 2)
+        Assertions.assertEquals(
+            listOf("Reference A", "Reference B"),
+            AutoCompletionIndex.search(listOf(task1, task2), "ref", now),
+        )
+    }
+}
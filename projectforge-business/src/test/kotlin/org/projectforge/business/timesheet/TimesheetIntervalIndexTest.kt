@@ -0,0 +1,58 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.timesheet
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class TimesheetIntervalIndexTest {
+    @Test
+    fun findOverlapTest() {
+        val index = TimesheetIntervalIndex()
+        index.add(1, TimesheetIntervalIndex.Interval(10, hour(8), hour(10)))
+        index.add(1, TimesheetIntervalIndex.Interval(11, hour(12), hour(13)))
+        index.add(2, TimesheetIntervalIndex.Interval(20, hour(9), hour(11)))
+
+        Assertions.assertNull(index.findOverlap(1, hour(10), hour(12)), "Adjacent periods don't overlap.")
+        Assertions.assertEquals(10L, index.findOverlap(1, hour(9), hour(11))?.id)
+        Assertions.assertEquals(10L, index.findOverlap(1, hour(7), hour(9))?.id)
+        Assertions.assertEquals(11L, index.findOverlap(1, hour(11), hour(14))?.id)
+        Assertions.assertNull(index.findOverlap(1, hour(9), hour(10), ignoreId = 10), "Updated time sheet itself is ignored.")
+        Assertions.assertNull(index.findOverlap(3, hour(0), hour(24)), "Unknown user.")
+
+        // Batch entries without id:
+        index.add(2, TimesheetIntervalIndex.Interval(null, hour(11), hour(12)))
+        Assertions.assertNotNull(index.findOverlap(2, hour(11), hour(11) + 5 * 60_000))
+        Assertions.assertNull(index.findOverlap(2, hour(12), hour(13)))
+
+        // Long-running interval (longer than the maximum duration) starting long before:
+        index.add(3, TimesheetIntervalIndex.Interval(30, hour(0), hour(20)))
+        Assertions.assertEquals(30L, index.findOverlap(3, hour(19), hour(21))?.id)
+    }
+
+    private fun hour(hour: Int): Long {
+        return hour * 3_600_000L
+    }
+}
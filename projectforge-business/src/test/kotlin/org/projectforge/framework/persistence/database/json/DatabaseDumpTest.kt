@@ -24,22 +24,90 @@
 package org.projectforge.framework.persistence.database.json
 
 import org.apache.commons.io.output.ByteArrayOutputStream
-import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Test
 import org.projectforge.business.test.AbstractTestBase
 import org.springframework.beans.factory.annotation.Autowired
+import java.io.ByteArrayInputStream
+import javax.sql.DataSource
 
 class DatabaseDumpTest : AbstractTestBase() {
     @Autowired
     private lateinit var databaseDump: DatabaseDump
 
+    @Autowired
+    private lateinit var dataSource: DataSource
+
     @Test
-    fun dumpTest() {
+    fun dumpAndRestoreTest() {
         logon(ADMIN)
-        val out = ByteArrayOutputStream()
-        databaseDump.dump( out)
-        val result = out.toString("UTF-8")
-        baseLog.info("$result")
-        assertEquals("WIP", "WIP")
+        val rowsBefore = countRows()
+        val tasksBefore = getTaskParents()
+        Assertions.assertTrue(tasksBefore.isNotEmpty())
+        DumpFormat.entries.forEach { format ->
+            val out = ByteArrayOutputStream()
+            val dumpStatistics = databaseDump.dump(out, format)
+            Assertions.assertEquals(rowsBefore.values.sum(), dumpStatistics.totalRows)
+            baseLog.info("$dumpStatistics")
+            val restoreStatistics = databaseDump.restore(ByteArrayInputStream(out.toByteArray()), purge = true)
+            baseLog.info("$restoreStatistics")
+            Assertions.assertEquals(dumpStatistics.totalRows, restoreStatistics.totalRows, "format: $format")
+            Assertions.assertEquals(rowsBefore, countRows(), "format: $format")
+            // Self references (parent tasks) are restored as deferred columns:
+            Assertions.assertEquals(tasksBefore, getTaskParents(), "format: $format")
+        }
+    }
+
+    @Test
+    fun levelsTest() {
+        dataSource.connection.use { connection ->
+            val tables = DatabaseTables(connection)
+            val a = createTable("a")
+            val b = createTable("b", "a", "c") // Cycle b <-> c, depending on a.
+            val c = createTable("c", "b")
+            val d = createTable("d", "b") // Depends on the cycle, but isn't part of it.
+            val e = createTable("e", "e") // Self reference.
+            val levels = tables.getLevels(listOf(d, c, b, a, e)).map { level -> level.map { it.name }.toSet() }
+            Assertions.assertEquals(listOf(setOf("a", "e"), setOf("b", "c"), setOf("d")), levels)
+            Assertions.assertEquals(setOf("c_fk"), b.deferredColumns)
+            Assertions.assertEquals(setOf("b_fk"), c.deferredColumns)
+            Assertions.assertTrue(d.deferredColumns.isEmpty(), "Table depending on a cycle mustn't defer its foreign keys.")
+            Assertions.assertEquals(setOf("e_fk"), e.deferredColumns)
+        }
+    }
+
+    private fun createTable(name: String, vararg references: String): DatabaseTables.Table {
+        val columns = listOf(DatabaseTables.Column("pk", java.sql.Types.BIGINT, false)) +
+                references.map { DatabaseTables.Column("${it}_fk", java.sql.Types.BIGINT, true) }
+        val foreignKeys = references.map { DatabaseTables.ForeignKey("${it}_fk", it) }
+        return DatabaseTables.Table(name, columns, listOf("pk"), foreignKeys)
+    }
+
+    private fun countRows(): Map<String, Long> {
+        dataSource.connection.use { connection ->
+            val tables = DatabaseTables(connection)
+            return tables.tables.associate { table ->
+                connection.createStatement().use { statement ->
+                    statement.executeQuery("select count(*) from ${tables.quote(table.name)}").use { rs ->
+                        rs.next()
+                        table.name to rs.getLong(1)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun getTaskParents(): Map<Long, Long?> {
+        dataSource.connection.use { connection ->
+            connection.createStatement().use { statement ->
+                statement.executeQuery("select pk, parent_task_id from t_task").use { rs ->
+                    val result = mutableMapOf<Long, Long?>()
+                    while (rs.next()) {
+                        result[rs.getLong(1)] = rs.getLong(2).takeUnless { rs.wasNull() }
+                    }
+                    return result
+                }
+            }
+        }
     }
 }
@@ -32,6 +32,7 @@ import org.projectforge.business.user.UserAuthenticationsService
 import org.projectforge.business.user.UserTokenType
 import org.projectforge.carddav.model.Contact
 import org.projectforge.carddav.service.AddressService
+import org.projectforge.carddav.service.CardDavChangeLog
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.projectforge.rest.utils.RequestLog
 import org.projectforge.rest.utils.ResponseUtils
@@ -50,6 +51,9 @@ class CardDavService {
     @Autowired
     private lateinit var addressService: AddressService
 
+    @Autowired
+    private lateinit var cardDavChangeLog: CardDavChangeLog
+
     @Autowired
     private lateinit var deleteRequestHandler: DeleteRequestHandler
 
@@ -59,6 +63,9 @@ class CardDavService {
     @Autowired
     private lateinit var getRequestHandler: GetRequestHandler
 
+    @Autowired
+    private lateinit var reportRequestHandler: ReportRequestHandler
+
     @Autowired
     private lateinit var restAuthenticationUtils: RestAuthenticationUtils
 
@@ -122,6 +129,8 @@ class CardDavService {
             }
             writerContext.props = CardDavUtils.handleProps(requestWrapper, response)
             writerContext.contactList = getContactList(userDO)
+            val syncSequence = cardDavChangeLog.registerFavorites(userDO.id!!, addressService.getFavoriteIds(userDO))
+            writerContext.syncToken = CardDavUtils.getSyncToken(syncSequence)
             if (normalizedRequestURI.startsWith("principals")) {
                 PropFindRequestHandler.handlePropFindPrincipalsCall(writerContext)
             } else {
@@ -130,8 +139,8 @@ class CardDavService {
         } else if (method == "REPORT") {
             // /carddav/users/admin/joe/addressbooks
             writerContext.props = CardDavUtils.handleProps(requestWrapper, response)
-            writerContext.contactList = getContactList(userDO)
-            ReportRequestHandler.handleSyncReportCall(writerContext)
+            // The contacts are loaded by the handler (only the modified or requested ones).
+            reportRequestHandler.handleSyncReportCall(writerContext)
             /*if (normalizedRequestURI.startsWith("users/")) {
                 val contactId = normalizedRequestURI.removePrefix("users/").removeSuffix(".vcf")
                 getContact(user, contactId)
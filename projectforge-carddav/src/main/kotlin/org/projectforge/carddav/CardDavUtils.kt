@@ -119,12 +119,19 @@ internal object CardDavUtils {
         return "\"${hashBytes.joinToString("") { "%02x".format(it) }}\""
     }
 
-    fun getSyncToken(): String {
-        return "\"sync-${System.currentTimeMillis()}\""
+    /**
+     * @param sequence The sequence of the last change (see [org.projectforge.carddav.service.CardDavChangeLog]).
+     */
+    fun getSyncToken(sequence: Long): String {
+        return "\"sync-$sequence\""
     }
 
-    fun getMillisFromSyncToken(syncToken: String?): Long? {
-        return syncToken?.removePrefix("sync-")?.toLongOrNull()
+    /**
+     * @param syncToken The sync token sent by the client, e.g. "sync-1234" (with or without quotes).
+     * @return The sequence of the sync token or null, if not given or invalid.
+     */
+    fun getSequenceFromSyncToken(syncToken: String?): Long? {
+        return syncToken?.trim()?.removeSurrounding("\"")?.removePrefix("sync-")?.toLongOrNull()
     }
 
     fun getLastUpdated(contactList: List<Contact>?): Date? {
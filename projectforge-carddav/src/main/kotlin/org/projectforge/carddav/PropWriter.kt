@@ -155,7 +155,8 @@ internal object PropWriter {
             }
 
             PropType.SYNCTOKEN -> {
-                appendProp(sb, prop, CardDavUtils.getSyncToken())
+                // If not given, sequence 0 forces a full sync by the next sync-collection report:
+                appendProp(sb, prop, writerContext.syncToken ?: CardDavUtils.getSyncToken(0L))
             }
 
             else -> log.warn { "Unsupported prop '<${prop.xmlns}:${prop.tag}>'" }
@@ -29,22 +29,32 @@ import org.projectforge.carddav.CardDavUtils.D
 import org.projectforge.carddav.CardDavXmlUtils.appendMultiStatusEnd
 import org.projectforge.carddav.CardDavXmlUtils.appendMultiStatusStart
 import org.projectforge.carddav.model.Contact
+import org.projectforge.carddav.service.AddressService
+import org.projectforge.carddav.service.CardDavChangeLog
 import org.projectforge.rest.utils.ResponseUtils
+import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType
+import org.springframework.stereotype.Service
 
 private val log = KotlinLogging.logger {}
 
-internal object ReportRequestHandler {
+@Service
+internal class ReportRequestHandler {
+    @Autowired
+    private lateinit var addressService: AddressService
+
+    @Autowired
+    private lateinit var cardDavChangeLog: CardDavChangeLog
+
     /**
-     * Handles a PROPFIND request for the current user principal.
-     * This is the initial call to the CardDAV server for getting the
+     * Handles a REPORT request (sync-collection or addressbook-multiget).
      *
      * Example 1:
      * ```
      *   <sync-collection xmlns="DAV:" xmlns:card="urn:ietf:params:xml:ns:carddav" xmlns:cs="http://calendarserver.org/ns/" xmlns:d="DAV:">
      *     <sync-token>
-     *           https://www.projectforge.org/ns/sync/e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855
+     *           "sync-1734530393642"
      *         </sync-token>
      *     <sync-level>1</sync-level>
      *     <prop>
@@ -53,44 +63,53 @@ internal object ReportRequestHandler {
      *     </prop>
      *   </sync-collection>
      * ```
+     * A sync-collection report returns only the contacts modified since the given sync token and the contacts
+     * deleted since then (as not found responses). If the sync token is unknown (initial sync, outdated or from a
+     * former server run), all contacts are returned (see [CardDavChangeLog]).
      *
      * @param writerContext The writer context.
      */
     fun handleSyncReportCall(writerContext: WriterContext) {
         val requestWrapper = writerContext.requestWrapper
         val response = writerContext.response
-        val contactList = writerContext.contactList ?: emptyList()
         log.debug { "handleReportCall:  ${requestWrapper.request.method}: '${requestWrapper.requestURI}' body=[${requestWrapper.body}]" }
-        val props = writerContext.props ?: return // No properties response is handled in handleProps.
+        writerContext.props ?: return // No properties response is handled in handleProps.
         val rootElement = CardDavXmlUtils.getRootElement(requestWrapper.body)
+        val userDO = writerContext.userDO
+        val favoriteIds = addressService.getFavoriteIds(userDO)
         val sb = StringBuilder()
         appendMultiStatusStart(sb)
         if (rootElement == "sync-collection") {
-            val syncToken = props.find { it.type == PropType.SYNCTOKEN }?.value
-            val syncTokenMillis = CardDavUtils.getMillisFromSyncToken(syncToken)
-            val lastUpdated = CardDavUtils.getLastUpdated(contactList)?.time ?: 0L
-            val newSyncToken = CardDavUtils.getSyncToken()
-            if (syncTokenMillis != null && syncTokenMillis >= lastUpdated) {
-                // 1. No modifications since the last sync-token.
-                log.debug { "handleReportCall: No modifications since the last sync-token." }
-                sb.appendLine("  <d:sync-token>$newSyncToken</d:sync-token>")
+            val syncToken = CardDavXmlUtils.extractElementValue(requestWrapper.body, "sync-token")
+            val changes = cardDavChangeLog.getChanges(
+                userDO.id!!,
+                favoriteIds,
+                CardDavUtils.getSequenceFromSyncToken(syncToken),
+            )
+            if (changes.fullSync) {
+                log.debug { "handleReportCall: Unknown or outdated sync-token, sending all contacts." }
+                addressService.getContacts(favoriteIds).forEach { contact ->
+                    appendPropfindContact(sb, requestWrapper.href, contact, false)
+                }
             } else {
-                // 2. Modifications since the last sync-token.
-                //val syncToken = CardDavXmlUtils.extractSyncToken(requestWrapper.body)
-                log.debug { "handleReportCall: Modifications detected since the last sync-token." }
-                contactList.forEach { contact ->
+                log.debug { "handleReportCall: ${changes.updated.size} modified and ${changes.deleted.size} deleted contacts since the last sync-token." }
+                addressService.getContacts(changes.updated).forEach { contact ->
                     appendPropfindContact(sb, requestWrapper.href, contact, false)
                 }
-                sb.appendLine("  <d:sync-token>$newSyncToken</d:sync-token>")
+                changes.deleted.forEach { deletedId ->
+                    generateNotFoundContact(sb, "${requestWrapper.href}${CardDavUtils.getVcfFileName(Contact(deletedId))}")
+                }
             }
+            sb.appendLine("  <d:sync-token>${CardDavUtils.getSyncToken(changes.syncToken)}</d:sync-token>")
         } else if (rootElement == "addressbook-multiget") {
-            val requestedAddressIds = CardDavXmlUtils.extractContactIds(requestWrapper.body)
-            val notFoundContactIds = requestedAddressIds.filter { addressId -> contactList.none { it.id == addressId } }
-            notFoundContactIds.forEach { notFoundId ->
+            val favoriteIdSet = favoriteIds.toSet()
+            val requestedAddressIds = CardDavXmlUtils.extractContactIds(requestWrapper.body).toSet()
+            val contacts = addressService.getContacts(requestedAddressIds.filter { favoriteIdSet.contains(it) })
+            val foundIds = contacts.mapNotNull { it.id }.toSet()
+            requestedAddressIds.filter { !foundIds.contains(it) }.forEach { notFoundId ->
                 generateNotFoundContact(sb, CardDavUtils.getVcfFileName(Contact(notFoundId)))
             }
-            val requestedContacts = contactList.filter { contact -> requestedAddressIds.contains(contact.id) }
-            requestedContacts.forEach { contact ->
+            contacts.forEach { contact ->
                 appendPropfindContact(sb, requestWrapper.href, contact, true)
             }
         } else {
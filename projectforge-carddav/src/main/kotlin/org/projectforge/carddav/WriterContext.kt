@@ -35,4 +35,5 @@ internal class WriterContext(
 ) {
     val href = requestWrapper.href
     var contactList: List<Contact>? = null
+    var syncToken: String? = null
 }
@@ -37,6 +37,10 @@ data class Contact(
     val imageLastUpdate: Date? = null,
     val imageType: ImageType? = null,
     var vcardData: String? = null,
+    /**
+     * The ETag of a former build of the unmodified vCard (e. g. before a restart), used instead of the computed one.
+     */
+    val storedEtag: String? = null,
 ) {
     val displayName = "$lastName, $firstName"
 
@@ -47,7 +51,7 @@ data class Contact(
      * @return The ETag.
      */
     val etag: String by lazy {
-        vcardData?.let {
+        storedEtag ?: vcardData?.let {
             CardDavUtils.getEtag("$it:imageLastUpdate=$imageLastUpdate".toByteArray())
         } ?: "\"null\""
     }
@@ -24,9 +24,13 @@
 package org.projectforge.carddav.service
 
 import jakarta.annotation.PostConstruct
+import jakarta.annotation.PreDestroy
 import mu.KotlinLogging
+import org.projectforge.ProjectForgeVersion
 import org.projectforge.business.address.*
 import org.projectforge.business.address.vcard.VCardUtils
+import org.projectforge.business.configuration.ConfigurationService
+import org.projectforge.business.configuration.DomainService
 import org.projectforge.carddav.CardDavConfig
 import org.projectforge.carddav.CardDavUtils
 import org.projectforge.carddav.model.Contact
@@ -35,11 +39,15 @@ import org.projectforge.framework.cache.AbstractCache
 import org.projectforge.framework.persistence.api.BaseDOModifiedListener
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
+import java.io.File
 
 private val log = KotlinLogging.logger {}
 
 /**
  * Cache needed, because vcard generation takes a lot of cpu power....
+ * The generated vCards are kept in a [VCardStore]. Only the vCards of modified addresses have to be regenerated after a
+ * refresh. The vCards and ETags of the store are persisted hourly and on shutdown, so the vCards of unmodified
+ * addresses aren't rebuilt after a restart and keep their ETags.
  */
 @Service
 open class AddressDAVCache : AbstractCache(TICKS_PER_HOUR), BaseDOModifiedListener<AddressDO> {
@@ -49,20 +57,33 @@ open class AddressDAVCache : AbstractCache(TICKS_PER_HOUR), BaseDOModifiedListen
     @Autowired
     private lateinit var addressImageCache: AddressImageCache
 
+    @Autowired
+    private lateinit var cardDavChangeLog: CardDavChangeLog
+
     @Autowired
     private lateinit var cardDavConfig: CardDavConfig
 
-    private var contactMap = mutableMapOf<Long, Contact>()
+    @Autowired
+    private lateinit var configurationService: ConfigurationService
+
+    @Autowired
+    private lateinit var domainService: DomainService
+
+    private lateinit var vCardStore: VCardStore
+
+    private val storeFile: File
+        get() = File(configurationService.applicationHomeDir, STORE_FILENAME)
 
     fun getContact(id: Long): Contact? {
-        return getCachedAddress(id)
+        return getContacts(listOf(id)).firstOrNull()
     }
 
     fun getContacts(ids: List<Long>): List<Contact> {
+        checkRefresh() // Invalidates the vCards and persists them hourly.
         val result = mutableListOf<Contact>()
         val missedInCache = mutableListOf<Long>()
         ids.forEach {
-            val contact = getCachedAddress(it)
+            val contact = vCardStore.getValidated(it)
             if (contact != null) {
                 result.add(contact)
             } else {
@@ -71,69 +92,77 @@ open class AddressDAVCache : AbstractCache(TICKS_PER_HOUR), BaseDOModifiedListen
         }
         log.info { "Got ${result.size} addresses from cache and must load ${missedInCache.size} from data base..." }
         if (missedInCache.size > 0) {
+            var built = 0
             addressDao.select(missedInCache, checkAccess = false)?.forEach {
                 val image = addressImageCache.getImage(it.id!!)
                 val imageType = image?.imageType
-                val imageUrl = if (image != null) {
-                    CardDavUtils.getImageUrl(it.id!!, imageType ?: ImageType.PNG)
-                } else {
-                    null
-                }
-                val vcard = VCardUtils.buildVCardString(
-                    it,
-                    cardDavConfig.vcardVersion,
-                    imageUrl = imageUrl,
-                    imageType = imageType
-                )
-                val contact =
-                    Contact(
-                        it.id,
-                        firstName = it.firstName,
-                        lastName = it.name,
-                        lastUpdated = it.lastUpdate,
-                        imageType = imageType,
-                        imageLastUpdate = image?.lastUpdate,
-                        vcardData = vcard,
+                val (contact, rebuilt) = vCardStore.getOrBuild(it, image?.lastUpdate, imageType) {
+                    val imageUrl = if (image != null) {
+                        CardDavUtils.getImageUrl(it.id!!, imageType ?: ImageType.PNG)
+                    } else {
+                        null
+                    }
+                    VCardUtils.buildVCardString(
+                        it,
+                        cardDavConfig.vcardVersion,
+                        imageUrl = imageUrl,
+                        imageType = imageType
                     )
-                addCachedContact(it.id!!, contact)
-                val copy = contact
-                result.add(copy)
+                }
+                if (rebuilt) {
+                    ++built
+                }
+                result.add(contact)
             }
+            log.info { "$built of ${missedInCache.size} vCards (re-)built, the others were unmodified." }
         }
         return result
     }
 
-    private fun getCachedAddress(id: Long): Contact? {
-        synchronized(contactMap) {
-            return contactMap[id]
-        }
-    }
-
-    private fun addCachedContact(id: Long, contact: Contact) {
-        synchronized(contactMap) {
-            contactMap[id] = contact
-        }
-    }
-
     /**
      * After modification of any address (insert, update, delete, undelete) this address should be removed from
-     * this cache.
+     * this cache. The modification is also logged for incremental syncs of the clients.
      */
     override fun afterInsertOrModify(changedObject: AddressDO, operationType: OperationType) {
-        synchronized(contactMap) {
-            contactMap.remove(changedObject.id)
+        changedObject.id?.let {
+            vCardStore.remove(it)
+            cardDavChangeLog.addressModified(it, changedObject.deleted)
         }
     }
 
     @PostConstruct
     fun postConstruct() {
         addressDao.register(this)
+        // The application version is part of the key, because the output of VCardUtils may change with new versions:
+        vCardStore = VCardStore(
+            "${ProjectForgeVersion.VERSION_NUMBER}|${cardDavConfig.vcardVersion}|${domainService.domainWithContextPath}"
+        )
+        vCardStore.read(storeFile)
     }
 
-    override fun refresh() {
-        log.info("Clearing cache ${this::class.java.simpleName}.")
-        synchronized(contactMap) {
-            contactMap.clear()
+    @PreDestroy
+    fun preDestroy() {
+        writeStore()
+    }
+
+    private fun writeStore() {
+        try {
+            vCardStore.write(storeFile)
+        } catch (ex: Exception) {
+            log.error(ex) { "Can't write vCard store '${storeFile.absolutePath}': ${ex.message}" }
         }
     }
+
+    /**
+     * The vCards aren't cleared, but validated on next usage (only modified addresses are rebuilt).
+     */
+    override fun refresh() {
+        log.info("Invalidating cache ${this::class.java.simpleName}.")
+        vCardStore.invalidateAll()
+        writeStore()
+    }
+
+    companion object {
+        private const val STORE_FILENAME = "carddav-vcards.bin"
+    }
 }
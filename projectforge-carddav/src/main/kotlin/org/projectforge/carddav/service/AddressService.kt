@@ -43,10 +43,24 @@ class AddressService {
     private lateinit var personalAddressDao: PersonalAddressDao
 
     fun getContactList(userDO: PFUserDO): List<Contact> {
-        val favorites = personalAddressDao.getFavoriteAddressIdList(userDO)
+        val favorites = getFavoriteIds(userDO)
         return addressDAVCache.getContacts(favorites)
     }
 
+    fun getFavoriteIds(userDO: PFUserDO): List<Long> {
+        return personalAddressDao.getFavoriteAddressIdList(userDO)
+    }
+
+    /**
+     * @param ids The ids of the contacts to get. The caller is responsible for checking the favorites of the user.
+     */
+    fun getContacts(ids: List<Long>): List<Contact> {
+        if (ids.isEmpty()) {
+            return emptyList()
+        }
+        return addressDAVCache.getContacts(ids)
+    }
+
     /*
         fun getContact(id: Long): Contact? {
             val favorites = personalAddressDao.favoriteAddressIdList
@@ -0,0 +1,190 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.carddav.service
+
+import mu.KotlinLogging
+import org.springframework.stereotype.Service
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Change log of the addresses for incremental CardDAV sync-collection reports (RFC 6578).
+ *
+ * Every modification gets a monotonic sequence number, the sync token given to the clients is the sequence number of
+ * the last change. Modifications of addresses (insert, update, delete) are logged globally, the modifications of the
+ * favorites of a user (the address book served via CardDAV) are detected by comparing the current favorites with the
+ * favorites known by the last call of the user and logged per user.
+ *
+ * The log is held in memory and bounded (number of entries and age). The sequence starts with the current time
+ * in millis on startup, so tokens of an older server run or tokens older than the retention window are detected and
+ * result in a full sync.
+ */
+@Service
+class CardDavChangeLog {
+    class Entry(val sequence: Long, val addressId: Long, val deleted: Boolean, val timestamp: Long)
+
+    /**
+     * @param syncToken The new sync token to return to the client.
+     * @param fullSync If true, the client token is unknown or outdated and all contacts must be sent. [updated] and
+     * [deleted] are empty in this case.
+     * @param updated The ids of the contacts inserted or modified since the client token.
+     * @param deleted The ids of the contacts deleted or removed from the favorites since the client token (tombstones).
+     */
+    class SyncChanges(
+        val syncToken: Long,
+        val fullSync: Boolean,
+        val updated: List<Long> = emptyList(),
+        val deleted: List<Long> = emptyList(),
+    )
+
+    private class UserState(var favorites: Set<Long>, var validSince: Long) {
+        val entries = ArrayDeque<Entry>()
+    }
+
+    internal var maxEntries = MAX_ENTRIES
+
+    internal var maxUserEntries = MAX_USER_ENTRIES
+
+    internal var retentionMillis = RETENTION_MILLIS
+
+    private var sequence = System.currentTimeMillis()
+
+    /**
+     * Tokens older than this sequence can't be served (the changes are no longer in the log).
+     */
+    private var validSince = sequence
+
+    private val entries = ArrayDeque<Entry>()
+
+    private val userStates = mutableMapOf<Long, UserState>()
+
+    private val lock = Any()
+
+    val currentSyncToken: Long
+        get() = synchronized(lock) { sequence }
+
+    /**
+     * Logs the modification of an address (insert, update, delete or undelete).
+     */
+    fun addressModified(addressId: Long, deleted: Boolean) {
+        synchronized(lock) {
+            val now = System.currentTimeMillis()
+            entries.addLast(Entry(++sequence, addressId, deleted, now))
+            validSince = trim(entries, maxEntries, now, validSince)
+        }
+    }
+
+    /**
+     * Registers the current favorites of the user and logs the differences to the last known favorites.
+     * @return The current sync token.
+     */
+    fun registerFavorites(userId: Long, favorites: Collection<Long>): Long {
+        synchronized(lock) {
+            updateUserState(userId, favorites)
+            return sequence
+        }
+    }
+
+    /**
+     * @param userId The user requesting the sync.
+     * @param favorites The current favorites of the user (the ids of the contacts of the address book).
+     * @param clientSyncToken The sync token of the client, null for an initial sync.
+     * @return The changes since the given client token.
+     */
+    fun getChanges(userId: Long, favorites: Collection<Long>, clientSyncToken: Long?): SyncChanges {
+        synchronized(lock) {
+            val known = userStates.containsKey(userId)
+            val userState = updateUserState(userId, favorites)
+            if (clientSyncToken == null || !known || clientSyncToken > sequence
+                || clientSyncToken < validSince || clientSyncToken < userState.validSince
+            ) {
+                log.debug { "Full sync required for user #$userId (sync token=$clientSyncToken)." }
+                return SyncChanges(sequence, fullSync = true)
+            }
+            // Global modifications are only of interest for the favorites, the last change of each address wins:
+            val deletedById = mutableMapOf<Long, Boolean>()
+            (entries.filter { it.sequence > clientSyncToken && userState.favorites.contains(it.addressId) }
+                    + userState.entries.filter { it.sequence > clientSyncToken })
+                .sortedBy { it.sequence }
+                .forEach { deletedById[it.addressId] = it.deleted }
+            val updated = mutableListOf<Long>()
+            val deleted = mutableListOf<Long>()
+            deletedById.forEach { (id, isDeleted) ->
+                if (!isDeleted && userState.favorites.contains(id)) updated.add(id) else deleted.add(id)
+            }
+            return SyncChanges(sequence, fullSync = false, updated = updated, deleted = deleted)
+        }
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+            userStates.clear()
+            validSince = sequence
+        }
+    }
+
+    private fun updateUserState(userId: Long, favorites: Collection<Long>): UserState {
+        val current = favorites.toSet()
+        var userState = userStates[userId]
+        if (userState == null) {
+            userState = UserState(current, sequence)
+            userStates[userId] = userState
+            return userState
+        }
+        if (userState.favorites == current) {
+            return userState
+        }
+        val now = System.currentTimeMillis()
+        current.filter { !userState.favorites.contains(it) }.forEach {
+            userState.entries.addLast(Entry(++sequence, it, false, now))
+        }
+        userState.favorites.filter { !current.contains(it) }.forEach {
+            userState.entries.addLast(Entry(++sequence, it, true, now))
+        }
+        userState.favorites = current
+        userState.validSince = trim(userState.entries, maxUserEntries, now, userState.validSince)
+        return userState
+    }
+
+    /**
+     * Removes the oldest entries exceeding the given max size or the retention time.
+     * @return The new valid-since sequence (sequence of the last removed entry).
+     */
+    private fun trim(entries: ArrayDeque<Entry>, maxSize: Int, now: Long, validSince: Long): Long {
+        var result = validSince
+        while (entries.isNotEmpty() && (entries.size > maxSize || entries.first().timestamp < now - retentionMillis)) {
+            result = maxOf(result, entries.removeFirst().sequence)
+        }
+        return result
+    }
+
+    companion object {
+        const val MAX_ENTRIES = 10_000
+
+        const val MAX_USER_ENTRIES = 1_000
+
+        const val RETENTION_MILLIS = 7 * 24 * 60 * 60 * 1000L
+    }
+}
@@ -0,0 +1,235 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.carddav.service
+
+import mu.KotlinLogging
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.ImageType
+import org.projectforge.carddav.model.Contact
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.Date
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Store of the generated vCards (incl. their lazy computed ETags) of the addresses.
+ *
+ * An entry is valid as long as the last update of the address and of its image are unchanged. Entries are validated
+ * against the data base objects, so after a refresh of the cache only the vCards of modified addresses have to be
+ * regenerated.
+ *
+ * The serialized vCards and their ETags are persisted to a file (gzipped, simple binary format), so after a restart
+ * only the vCards of modified addresses have to be built and unmodified addresses keep their ETags. The file contains a
+ * format key (application version, vCard version and domain of the image urls), if it differs on startup (e.g. new
+ * version with modified vCard output or configuration changes), the stored entries are discarded.
+ *
+ * This class is thread safe.
+ */
+internal class VCardStore(
+    /**
+     * Entries built with another format key are discarded.
+     */
+    val formatKey: String,
+) {
+    private class Entry(
+        val contact: Contact,
+        val addressLastUpdate: Long?,
+        val imageLastUpdate: Long?,
+        val imageType: ImageType?,
+        var validated: Boolean,
+    ) {
+        fun matches(address: AddressDO, imageLastUpdate: Date?, imageType: ImageType?): Boolean {
+            return addressLastUpdate == address.lastUpdate?.time
+                    && this.imageLastUpdate == imageLastUpdate?.time
+                    && this.imageType == imageType
+        }
+    }
+
+    private val entries = mutableMapOf<Long, Entry>()
+
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    /**
+     * @return The contact, if stored and validated (not modified since it was built).
+     */
+    fun getValidated(id: Long): Contact? {
+        synchronized(entries) {
+            val entry = entries[id] ?: return null
+            return if (entry.validated) entry.contact else null
+        }
+    }
+
+    /**
+     * Returns the stored contact, if the address and its image weren't modified since the vCard was built. Otherwise the
+     * vCard will be built and stored.
+     * @param buildVCard Builds the vCard of the given address (expensive).
+     * @return The contact and true, if the vCard was (re-)built.
+     */
+    fun getOrBuild(
+        address: AddressDO,
+        imageLastUpdate: Date?,
+        imageType: ImageType?,
+        buildVCard: () -> String,
+    ): Pair<Contact, Boolean> {
+        val id = address.id!!
+        synchronized(entries) {
+            val entry = entries[id]
+            if (entry != null && entry.matches(address, imageLastUpdate, imageType)) {
+                entry.validated = true
+                return Pair(entry.contact, false)
+            }
+        }
+        val contact = Contact(
+            id,
+            firstName = address.firstName,
+            lastName = address.name,
+            lastUpdated = address.lastUpdate,
+            imageType = imageType,
+            imageLastUpdate = imageLastUpdate,
+            vcardData = buildVCard(),
+        )
+        synchronized(entries) {
+            entries[id] = Entry(contact, address.lastUpdate?.time, imageLastUpdate?.time, imageType, true)
+        }
+        return Pair(contact, true)
+    }
+
+    fun remove(id: Long) {
+        synchronized(entries) {
+            entries.remove(id)
+        }
+    }
+
+    /**
+     * All entries have to be validated before being used again, but the vCards of unmodified addresses will be reused.
+     */
+    fun invalidateAll() {
+        synchronized(entries) {
+            entries.values.forEach { it.validated = false }
+        }
+    }
+
+    /**
+     * Writes the vCards and ETags to a temporary file, which replaces the given file atomically.
+     */
+    fun write(file: File) {
+        val list = synchronized(entries) { entries.entries.map { Pair(it.key, it.value) } }
+        val tmpFile = File(file.parentFile, "${file.name}.tmp")
+        DataOutputStream(GZIPOutputStream(tmpFile.outputStream().buffered())).use { out ->
+            out.writeInt(FORMAT_VERSION)
+            out.writeUTF(formatKey)
+            out.writeInt(list.size)
+            list.forEach { (id, entry) ->
+                val contact = entry.contact
+                out.writeLong(id)
+                out.writeLong(entry.addressLastUpdate ?: -1L)
+                out.writeLong(entry.imageLastUpdate ?: -1L)
+                writeNullableString(out, entry.imageType?.name)
+                writeNullableString(out, contact.firstName)
+                writeNullableString(out, contact.lastName)
+                writeNullableString(out, contact.vcardData)
+                writeNullableString(out, contact.etag)
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        log.info { "${list.size} vCards written to '${file.absolutePath}'." }
+    }
+
+    /**
+     * Reads the vCards of the given file (if exists). All read entries have to be validated before being used.
+     */
+    fun read(file: File) {
+        if (!file.exists()) {
+            return
+        }
+        try {
+            DataInputStream(GZIPInputStream(file.inputStream().buffered())).use { input ->
+                if (input.readInt() != FORMAT_VERSION || input.readUTF() != formatKey) {
+                    log.info { "Format of vCard store '${file.absolutePath}' changed, ignoring it." }
+                    return
+                }
+                val count = input.readInt()
+                val read = mutableMapOf<Long, Entry>()
+                repeat(count) {
+                    val id = input.readLong()
+                    val addressLastUpdate = input.readLong().takeIf { it >= 0 }
+                    val imageLastUpdate = input.readLong().takeIf { it >= 0 }
+                    val imageType = readNullableString(input)?.let { ImageType.valueOf(it) }
+                    val contact = Contact(
+                        id,
+                        firstName = readNullableString(input),
+                        lastName = readNullableString(input),
+                        lastUpdated = addressLastUpdate?.let { Date(it) },
+                        imageLastUpdate = imageLastUpdate?.let { Date(it) },
+                        imageType = imageType,
+                        vcardData = readNullableString(input),
+                        storedEtag = readNullableString(input),
+                    )
+                    read[id] = Entry(contact, addressLastUpdate, imageLastUpdate, imageType, false)
+                }
+                synchronized(entries) {
+                    read.forEach { (id, entry) -> entries.putIfAbsent(id, entry) }
+                }
+                log.info { "$count vCards read from '${file.absolutePath}'." }
+            }
+        } catch (ex: Exception) {
+            log.error(ex) { "Can't read vCard store '${file.absolutePath}', ignoring it: ${ex.message}" }
+        }
+    }
+
+    /**
+     * Strings are written as length and UTF-8 bytes (vCards may exceed the limit of [DataOutputStream.writeUTF]).
+     */
+    private fun writeNullableString(out: DataOutputStream, value: String?) {
+        if (value == null) {
+            out.writeInt(-1)
+            return
+        }
+        val bytes = value.toByteArray(StandardCharsets.UTF_8)
+        out.writeInt(bytes.size)
+        out.write(bytes)
+    }
+
+    private fun readNullableString(input: DataInputStream): String? {
+        val length = input.readInt()
+        if (length < 0) {
+            return null
+        }
+        val bytes = ByteArray(length)
+        input.readFully(bytes)
+        return String(bytes, StandardCharsets.UTF_8)
+    }
+
+    companion object {
+        private const val FORMAT_VERSION = 1
+    }
+}
@@ -0,0 +1,82 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.carddav.service
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class CardDavChangeLogTest {
+    @Test
+    fun `test incremental changes`() {
+        val changeLog = CardDavChangeLog()
+        val initial = changeLog.getChanges(1, listOf(10, 11, 12), null)
+        Assertions.assertTrue(initial.fullSync, "Initial sync without token.")
+        var token = initial.syncToken
+        changeLog.getChanges(1, listOf(10, 11, 12), token).let {
+            Assertions.assertFalse(it.fullSync)
+            Assertions.assertTrue(it.updated.isEmpty())
+            Assertions.assertTrue(it.deleted.isEmpty())
+            Assertions.assertEquals(token, it.syncToken)
+        }
+        changeLog.addressModified(11, false)
+        changeLog.addressModified(99, false) // Not a favorite of user 1.
+        changeLog.addressModified(12, true)
+        changeLog.getChanges(1, listOf(10, 11, 12, 13), token).let {
+            Assertions.assertFalse(it.fullSync)
+            Assertions.assertEquals(listOf(11L, 13L), it.updated.sorted())
+            Assertions.assertEquals(listOf(12L), it.deleted)
+            Assertions.assertTrue(it.syncToken > token)
+            token = it.syncToken
+        }
+        // Removed from favorites (tombstone):
+        changeLog.getChanges(1, listOf(11, 13), token).let {
+            Assertions.assertFalse(it.fullSync)
+            Assertions.assertTrue(it.updated.isEmpty())
+            Assertions.assertEquals(listOf(10L, 12L), it.deleted.sorted())
+        }
+        // Removed and re-added to favorites since the token:
+        changeLog.getChanges(1, listOf(10, 11, 13), token).let {
+            Assertions.assertEquals(listOf(10L), it.updated)
+            Assertions.assertEquals(listOf(12L), it.deleted)
+        }
+        // Unknown user, token of other user or of the future:
+        Assertions.assertTrue(changeLog.getChanges(2, listOf(10), token).fullSync)
+        Assertions.assertTrue(changeLog.getChanges(1, listOf(10, 11, 13), changeLog.currentSyncToken + 1).fullSync)
+    }
+
+    @Test
+    fun `test retention window`() {
+        val changeLog = CardDavChangeLog()
+        changeLog.maxEntries = 3
+        val token = changeLog.getChanges(1, listOf(1, 2, 3, 4, 5), null).syncToken
+        changeLog.addressModified(1, false)
+        changeLog.addressModified(2, false)
+        changeLog.addressModified(3, false)
+        Assertions.assertFalse(changeLog.getChanges(1, listOf(1, 2, 3, 4, 5), token).fullSync)
+        changeLog.addressModified(4, false) // Change of address 1 is removed from log.
+        Assertions.assertTrue(changeLog.getChanges(1, listOf(1, 2, 3, 4, 5), token).fullSync)
+        // Tokens of a former server run (sequence starts with the current time millis):
+        Assertions.assertTrue(changeLog.getChanges(1, listOf(1, 2, 3, 4, 5), 1_000L).fullSync)
+    }
+}
@@ -0,0 +1,122 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.carddav.service
+
+import mu.KotlinLogging
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.vcard.VCardUtils
+import org.projectforge.business.address.vcard.VCardVersion
+import org.projectforge.carddav.model.Contact
+import java.io.File
+import java.util.Date
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Compares cold (all vCards have to be built) and warm (vCards of the [VCardStore] are validated and reused)
+ * PROPFIND (ETags of all contacts) and addressbook-multiget (vCards of all contacts) calls for 20,000 contacts,
+ * including a restart (vCards and ETags written to and read from a file).
+ */
+class VCardStoreBenchmarkMain {
+    private val addresses = (1..NUMBER_OF_CONTACTS).map { createAddress(it.toLong()) }
+
+    fun run() {
+        val file = File.createTempFile("carddav-vcards", ".bin")
+        try {
+            var store = VCardStore(FORMAT_KEY)
+            measure("cold PROPFIND (vCards built)") { propfind(store) }
+            measure("cold multiget (vCards built)") { multiget(store) }
+            store = VCardStore(FORMAT_KEY)
+            multiget(store)
+            measure("warm PROPFIND") { propfind(store) }
+            measure("warm multiget") { multiget(store) }
+            store.invalidateAll()
+            measure("multiget after refresh (vCards validated)") { multiget(store) }
+            measure("write store") { store.write(file) }
+            log.info { "Store file size: ${file.length() / 1024}KB" }
+            store = VCardStore(FORMAT_KEY)
+            measure("read store after restart") { store.read(file) }
+            measure("multiget after restart (vCards validated)") { multiget(store) }
+        } finally {
+            file.delete()
+        }
+    }
+
+    /**
+     * @return The number of bytes of the response (roughly).
+     */
+    private fun propfind(store: VCardStore): Int {
+        return getContacts(store).sumOf { it.etag.length }
+    }
+
+    private fun multiget(store: VCardStore): Int {
+        return getContacts(store).sumOf { it.etag.length + (it.vcardData?.length ?: 0) }
+    }
+
+    /**
+     * Same as [org.projectforge.carddav.service.AddressDAVCache.getContacts], but without data base.
+     */
+    private fun getContacts(store: VCardStore): List<Contact> {
+        return addresses.map { address ->
+            store.getValidated(address.id!!)
+                ?: store.getOrBuild(address, null, null) {
+                    VCardUtils.buildVCardString(address, VCardVersion.V_3_0)
+                }.first
+        }
+    }
+
+    private fun measure(name: String, block: () -> Any) {
+        val startTime = System.nanoTime()
+        block()
+        log.info { "$name: ${(System.nanoTime() - startTime) / 1_000_000}ms for $NUMBER_OF_CONTACTS contacts." }
+    }
+
+    private fun createAddress(id: Long): AddressDO {
+        return AddressDO().also {
+            it.id = id
+            it.firstName = "Firstname$id"
+            it.name = "Name$id"
+            it.organization = "Organization ${id % 100}"
+            it.email = "firstname$id@example.com"
+            it.businessPhone = "+49 561 $id"
+            it.mobilePhone = "+49 170 $id"
+            it.addressText = "Street $id"
+            it.zipCode = "34117"
+            it.city = "Kassel"
+            it.comment = "Comment of contact $id"
+            it.lastUpdate = Date(1_700_000_000_000L + id)
+        }
+    }
+
+    companion object {
+        private const val NUMBER_OF_CONTACTS = 20_000
+
+        private const val FORMAT_KEY = "3.0|https://projectforge.example.com"
+
+        @JvmStatic
+        fun main(args: Array<String>) {
+            VCardStoreBenchmarkMain().run()
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.carddav.service
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.address.AddressDO
+import java.io.File
+import java.util.Date
+
+class VCardStoreTest {
+    @Test
+    fun `test persisted vCards`() {
+        val file = File.createTempFile("carddav-vcards", ".bin")
+        try {
+            val address = AddressDO().also {
+                it.id = 1
+                it.firstName = "Kai"
+                it.name = "Reinhard"
+                it.lastUpdate = Date(1_700_000_000_000L)
+            }
+            var store = VCardStore("1|3.0")
+            val contact = store.getOrBuild(address, null, null) { "BEGIN:VCARD\nFN:Kai Reinhard\nEND:VCARD" }.first
+            store.write(file)
+
+            // Restart: the vCard isn't built again and keeps its ETag.
+            store = VCardStore("1|3.0")
+            store.read(file)
+            Assertions.assertNull(store.getValidated(1), "Read entries have to be validated first.")
+            val (restored, rebuilt) = store.getOrBuild(address, null, null) { Assertions.fail("Unexpected build.") }
+            Assertions.assertFalse(rebuilt)
+            Assertions.assertEquals(contact.vcardData, restored.vcardData)
+            Assertions.assertEquals(contact.etag, restored.etag)
+            Assertions.assertEquals("Reinhard, Kai", restored.displayName)
+
+            // Modified address:
+            address.lastUpdate = Date(1_700_000_001_000L)
+            Assertions.assertTrue(store.getOrBuild(address, null, null) { "BEGIN:VCARD\nEND:VCARD" }.second)
+
+            // New version (format key), stored entries are discarded:
+            store = VCardStore("2|3.0")
+            store.read(file)
+            Assertions.assertEquals(0, store.size)
+        } finally {
+            file.delete()
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.jcr
+
+import java.io.File
+import java.util.*
+import java.util.zip.ZipFile
+
+/**
+ * The manifest of a backup archive (written as [RepoBackupService.MANIFEST_FILENAME] as last entry of each archive).
+ * It contains all files (binaries) of the repository at the time of the backup with their checksums and the archive
+ * containing the binary. Incremental backups contain only the binaries of files added or modified since the
+ * previous backup of the chain, all other binaries are referenced in older archives of the chain.
+ */
+class BackupManifest {
+  enum class Type { FULL, INCREMENTAL }
+
+  class FileEntry() {
+    constructor(checksum: String?, archive: String?) : this() {
+      this.checksum = checksum
+      this.archive = archive
+    }
+
+    var checksum: String? = null
+
+    /**
+     * The name of the archive (zip file) containing the binary.
+     */
+    var archive: String? = null
+  }
+
+  var type: Type = Type.FULL
+
+  /**
+   * The name of the archive (zip file) of this manifest.
+   */
+  var archiveName: String? = null
+
+  var created: Date? = null
+
+  /**
+   * The names of all archives needed for a restore: the full backup first and this archive last.
+   */
+  var chain: MutableList<String> = mutableListOf()
+
+  /**
+   * The files of the repository by absolute path of the file node.
+   */
+  var files: MutableMap<String, FileEntry> = mutableMapOf()
+
+  /**
+   * The archive names of the chain without this archive (full backup first).
+   */
+  val predecessors: List<String>
+    get() = chain.filter { it != archiveName }
+
+  companion object {
+    /**
+     * @return The manifest of the given archive or null, if the archive doesn't contain any manifest (e. g. created
+     * by older versions).
+     */
+    @JvmStatic
+    fun read(archive: File): BackupManifest? {
+      ZipFile(archive).use { zipFile ->
+        val entry = zipFile.entries().asSequence()
+          .firstOrNull { it.name.endsWith("/${RepoBackupService.MANIFEST_FILENAME}") } ?: return null
+        val json = zipFile.getInputStream(entry).use { it.readBytes().toString(Charsets.UTF_8) }
+        return PFJcrUtils.fromJson(json, BackupManifest::class.java)
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.jcr
+
+import org.apache.commons.codec.binary.Hex
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.security.MessageDigest
+
+/**
+ * Calculates the checksum (SHA256) and the size of the content while it's written to the repository, so the content
+ * doesn't have to be read again after storing.
+ * @param sizeChecker Called every [CHECK_SIZE_INTERVAL] bytes and at the end of the stream with the number of bytes read
+ * so far. Should throw an exception if the maximum file size is exceeded. Storing will be aborted in this case.
+ */
+internal class ChecksumInputStream(
+  istream: InputStream,
+  private val sizeChecker: ((size: Long) -> Unit)? = null,
+) : FilterInputStream(istream) {
+  private val digest = MessageDigest.getInstance("SHA-256")
+
+  private var nextSizeCheck = CHECK_SIZE_INTERVAL
+
+  /**
+   * Number of bytes read.
+   */
+  var size = 0L
+    private set
+
+  /**
+   * The exception thrown by sizeChecker, if any. The repository may wrap exceptions thrown while reading the stream, so
+   * the caller should throw this exception instead.
+   */
+  var sizeExceededException: Exception? = null
+    private set
+
+  /**
+   * The checksum of the read bytes in the format of [RepoService.checksum]. Should be called after reading the whole
+   * stream.
+   */
+  val checksum: String by lazy {
+    "SHA256: ${Hex.encodeHexString(digest.digest())}"
+  }
+
+  override fun read(): Int {
+    val b = super.read()
+    if (b >= 0) {
+      digest.update(b.toByte())
+      processed(1)
+    } else {
+      checkSize(size)
+    }
+    return b
+  }
+
+  override fun read(b: ByteArray, off: Int, len: Int): Int {
+    val read = super.read(b, off, len)
+    if (read > 0) {
+      digest.update(b, off, read)
+      processed(read)
+    } else if (read < 0) {
+      checkSize(size)
+    }
+    return read
+  }
+
+  /**
+   * Skipped bytes are read and processed as well, so they're part of the checksum and size.
+   * @return The number of bytes actually skipped (less than n at the end of the stream).
+   */
+  override fun skip(n: Long): Long {
+    if (n <= 0) {
+      return 0
+    }
+    val buffer = ByteArray(minOf(n, SKIP_BUFFER_SIZE.toLong()).toInt())
+    var remaining = n
+    while (remaining > 0) {
+      val read = read(buffer, 0, minOf(remaining, buffer.size.toLong()).toInt())
+      if (read < 0) {
+        break
+      }
+      remaining -= read
+    }
+    return n - remaining
+  }
+
+  override fun markSupported(): Boolean {
+    return false
+  }
+
+  private fun processed(bytes: Int) {
+    size += bytes
+    if (size >= nextSizeCheck) {
+      nextSizeCheck = size + CHECK_SIZE_INTERVAL
+      checkSize(size)
+    }
+  }
+
+  private fun checkSize(size: Long) {
+    sizeChecker ?: return
+    try {
+      sizeChecker.invoke(size)
+    } catch (ex: Exception) {
+      sizeExceededException = ex
+      throw ex
+    }
+  }
+
+  companion object {
+    const val CHECK_SIZE_INTERVAL = 1024L * 1024L
+
+    private const val SKIP_BUFFER_SIZE = 8 * 1024
+  }
+}
@@ -31,6 +31,7 @@ import org.springframework.scheduling.annotation.Scheduled
 import org.springframework.stereotype.Component
 import java.io.File
 import java.io.FileOutputStream
+import java.time.LocalDate
 import java.util.zip.ZipOutputStream
 
 private val log = KotlinLogging.logger {}
@@ -46,23 +47,122 @@ class JCRBackupJob {
   @Value("\${projectforge.jcr.cron.purgeBackupKeepWeeklyBackups}")
   private val keepWeeklyBackups: Long? = null
 
+  /**
+   * Interval of full backups in days. Between full backups, only incremental backups are created (containing all
+   * nodes, but only the binaries added or modified since the previous backup). 0 means full backups only.
+   */
+  @Value("\${projectforge.jcr.fullBackupIntervalDays:7}")
+  private val fullBackupIntervalDays: Long? = null
+
   // projectforge.jcr.cron.backup=0 30 0 * * *
   @Scheduled(cron = "\${projectforge.jcr.cron.backup}")
   fun execute() {
     log.info("JCR backup job started.")
     val time = System.currentTimeMillis()
-    val backupFile = RepoBackupService.backupFilename
     val backupDirectory = repoBackupService.backupDirectory!!
+    val baseManifest = getBaseManifest(backupDirectory)
+    val backupFile = if (baseManifest != null) {
+      RepoBackupService.incrementalBackupFilename
+    } else {
+      RepoBackupService.backupFilename
+    }
     val zipFile = File(backupDirectory, backupFile)
     ZipOutputStream(FileOutputStream(zipFile)).use {
-      repoBackupService.backupAsZipArchive(zipFile.name, it)
+      repoBackupService.backupAsZipArchive(zipFile.name, it, baseManifest = baseManifest)
     }
     log.info("JCR backup job finished after ${(System.currentTimeMillis() - time) / 1000} seconds.")
+    val keepDays = keepDailyBackups ?: 8
+    val intervalDays = fullBackupIntervalDays ?: 0L
     BackupFilesPurging.purgeDirectory(
       backupDirectory,
       filePrefix = RepoBackupService.backupFilenamePrefix,
-      keepDailyBackups = keepDailyBackups ?: 8,
+      // Full backups must be kept as long as the incremental backups based on them:
+      keepDailyBackups = if (intervalDays > 0) keepDays + intervalDays + 1 else keepDays,
       keepWeeklyBackups = keepWeeklyBackups ?: 4,
     )
+    purgeIncrementalBackups(backupDirectory, keepDays)
+  }
+
+  /**
+   * @return The manifest of the newest backup, if the next backup should be an incremental one based on it, or null
+   * for a full backup (no previous backup with manifest found, chain incomplete or full backup interval exceeded).
+   */
+  private fun getBaseManifest(backupDirectory: File): BackupManifest? {
+    val intervalDays = fullBackupIntervalDays ?: 0L
+    if (intervalDays <= 0) {
+      return null
+    }
+    val newest = getBackupFiles(backupDirectory).maxByOrNull { getDateString(it) } ?: return null
+    val manifest = try {
+      BackupManifest.read(newest)
+    } catch (ex: Exception) {
+      log.warn { "Can't read manifest of '${newest.absolutePath}', creating full backup: ${ex.message}" }
+      null
+    } ?: return null
+    val fullBackup = manifest.chain.firstOrNull()?.let { File(backupDirectory, it) } ?: return null
+    if (manifest.chain.any { !File(backupDirectory, it).exists() }) {
+      log.info { "Backup chain of '${newest.name}' is incomplete, creating full backup." }
+      return null
+    }
+    val fullBackupDate = BackupManifest.read(fullBackup)?.created ?: return null
+    if (fullBackupDate.time < System.currentTimeMillis() - intervalDays * MILLIS_PER_DAY) {
+      log.info { "Last full backup '${fullBackup.name}' is older than $intervalDays days, creating full backup." }
+      return null
+    }
+    return manifest
+  }
+
+  /**
+   * Deletes incremental backups older than the given number of days, if they aren't part of the backup chain of any
+   * kept incremental backup. Incremental backups with incomplete chains (e. g. full backup was deleted) are deleted
+   * as well, because they can't be restored.
+   */
+  private fun purgeIncrementalBackups(backupDirectory: File, keepDays: Long) {
+    val keepUntil = LocalDate.now().minusDays(keepDays).toString()
+    val files = backupDirectory.listFiles()
+      ?.filter { it.name.startsWith(RepoBackupService.incrementalBackupFilenamePrefix) } ?: return
+    val keptChains = mutableSetOf<String>()
+    val toDelete = mutableListOf<File>()
+    files.forEach { file ->
+      if (getDateString(file) < keepUntil) {
+        toDelete.add(file)
+        return@forEach
+      }
+      val chain = try {
+        BackupManifest.read(file)?.chain
+      } catch (ex: Exception) {
+        log.warn { "Can't read manifest of '${file.absolutePath}': ${ex.message}" }
+        null
+      }
+      if (chain == null || chain.any { !File(backupDirectory, it).exists() }) {
+        log.warn { "Backup chain of incremental backup '${file.absolutePath}' is incomplete, deleting it." }
+        file.delete()
+      } else {
+        keptChains.addAll(chain)
+      }
+    }
+    toDelete.filter { !keptChains.contains(it.name) }.forEach {
+      log.info { "Deleting incremental backup '${it.absolutePath}'..." }
+      it.delete()
+    }
+  }
+
+  private fun getBackupFiles(backupDirectory: File): List<File> {
+    return backupDirectory.listFiles()?.filter {
+      it.name.startsWith(RepoBackupService.backupFilenamePrefix) ||
+          it.name.startsWith(RepoBackupService.incrementalBackupFilenamePrefix)
+    } ?: emptyList()
+  }
+
+  /**
+   * @return The date and time part of the backup file name (sortable).
+   */
+  private fun getDateString(file: File): String {
+    return file.name.removePrefix(RepoBackupService.backupFilenamePrefix)
+      .removePrefix(RepoBackupService.incrementalBackupFilenamePrefix)
+  }
+
+  companion object {
+    private const val MILLIS_PER_DAY = 24L * 60 * 60 * 1000
   }
 }
@@ -63,8 +63,11 @@ open class JCRCheckSanityJob {
     log.info("JCR sanity check job started.")
     val errors = mutableListOf<String>()
     val warnings = mutableListOf<String>()
+    // Collect all files nodes for invalidating the index of files (file names):
+    val filesNodePaths = mutableSetOf<String>()
     val walker = object : RepoTreeWalker(repoService) {
       override fun visitFile(fileNode: Node, fileObject: FileObject) {
+        filesNodePaths.add(fileNode.parent.path)
         fileObject.checksum.let { repoChecksum ->
           if (repoChecksum != null && repoChecksum.length > 10) {
             log.info { "Checking checksum of file '${fileObject.fileName}' (${FormatterUtils.formatBytes(fileObject.size)})..." }
@@ -121,6 +124,9 @@ open class JCRCheckSanityJob {
       }
     }
     walker.walk()
+    // Files stored or deleted during the (long-running) walk are maintained by the index itself, so don't replace the
+    // index by the collected files, but let it rebuild the visited files nodes from the live nodes on next access:
+    filesNodePaths.forEach { repoService.fileIndex.invalidate(it) }
     log.info { "JCR sanity check job finished. ${walker.numberOfVisitedFiles} Files checked with ${warnings.size} warnings and ${errors.size} errors." }
     return CheckResult(errors, warnings, walker.numberOfVisitedFiles, walker.numberOfVisitedNodes)
   }
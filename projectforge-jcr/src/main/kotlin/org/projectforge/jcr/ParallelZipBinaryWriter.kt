@@ -0,0 +1,228 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.jcr
+
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.InputStream
+import java.nio.file.Files
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Writes binaries of the repository to a zip archive. The binaries are loaded by worker threads in parallel (each
+ * in its own session), which also calculate the crc and check, whether the content is compressible. Incompressible
+ * content (encrypted files, images, office documents etc.) is stored without deflating, which saves most of the
+ * cpu time of a backup. The entries are written by the caller's thread in the order of submission, so the result is
+ * a standard zip archive.
+ *
+ * Binaries larger than [maxInMemorySize] are streamed to temporary files instead of being loaded into memory. The
+ * size of all pending binaries (in memory and in temporary files) is limited by [maxPendingBytes].
+ */
+internal class ParallelZipBinaryWriter(
+  private val repoService: RepoService,
+  private val zipOut: ZipOutputStream,
+  numberOfThreads: Int = DEFAULT_NUMBER_OF_THREADS,
+  private val maxPendingBytes: Long = DEFAULT_MAX_PENDING_BYTES,
+  private val maxInMemorySize: Long = DEFAULT_MAX_IN_MEMORY_SIZE,
+) : Closeable {
+  /**
+   * The content is either given as [content] or as [tempFile] (for large binaries).
+   */
+  private class PreparedBinary(
+    val content: ByteArray?,
+    val tempFile: File?,
+    val size: Long,
+    val crc: Long,
+    val compressible: Boolean,
+  )
+
+  private class PendingEntry(val entryName: String, val size: Long, val future: Future<PreparedBinary?>)
+
+  private val executor: ExecutorService = Executors.newFixedThreadPool(numberOfThreads) { runnable ->
+    Thread(runnable, "jcr-backup-worker").also { it.isDaemon = true }
+  }
+
+  private val pending = ArrayDeque<PendingEntry>()
+
+  private var pendingBytes = 0L
+
+  var numberOfWrittenBinaries = 0
+    private set
+
+  var numberOfStoredBinaries = 0
+    private set
+
+  /**
+   * Loads the binary of the given file node asynchronously. Previously submitted binaries are written, if the limit
+   * of pending bytes is exceeded.
+   * @param entryName The name of the zip entry.
+   * @param fileNodePath The absolute path of the file node.
+   */
+  fun submit(entryName: String, fileNodePath: String, fileObject: FileObject) {
+    val size = fileObject.size ?: 0L
+    while (pending.isNotEmpty() && pendingBytes + size > maxPendingBytes) {
+      writeNext()
+    }
+    val future = executor.submit<PreparedBinary?> {
+      repoService.runInSession { session ->
+        repoService.getFileInputStream(session.getNode(fileNodePath), fileObject, useEncryptedFile = true)
+          ?.use { istream ->
+            if (size > maxInMemorySize) {
+              prepareTempFile(istream)
+            } else {
+              val content = istream.readBytes()
+              val crc = CRC32()
+              crc.update(content)
+              PreparedBinary(content, null, content.size.toLong(), crc.value, isCompressible(content))
+            }
+          }
+      }
+    }
+    pending.add(PendingEntry(entryName, size, future))
+    pendingBytes += size
+  }
+
+  /**
+   * Writes all pending binaries.
+   */
+  fun flush() {
+    while (pending.isNotEmpty()) {
+      writeNext()
+    }
+  }
+
+  override fun close() {
+    executor.shutdownNow()
+    executor.awaitTermination(10, TimeUnit.SECONDS)
+    // Deletes the temporary files of binaries not written (e. g. on failure):
+    pending.forEach { entry ->
+      if (entry.future.isDone && !entry.future.isCancelled) {
+        runCatching { entry.future.get() }.getOrNull()?.tempFile?.delete()
+      }
+    }
+    pending.clear()
+  }
+
+  private fun writeNext() {
+    val entry = pending.removeFirst()
+    pendingBytes -= entry.size
+    val binary = entry.future.get() ?: return
+    try {
+      val zipEntry = ZipEntry(entry.entryName)
+      if (!binary.compressible) {
+        zipEntry.method = ZipEntry.STORED
+        zipEntry.size = binary.size
+        zipEntry.compressedSize = binary.size
+        zipEntry.crc = binary.crc
+        ++numberOfStoredBinaries
+      }
+      zipOut.putNextEntry(zipEntry)
+      if (binary.tempFile != null) {
+        binary.tempFile.inputStream().use { it.copyTo(zipOut, BUFFER_SIZE) }
+      } else {
+        zipOut.write(binary.content!!)
+      }
+      zipOut.closeEntry()
+      ++numberOfWrittenBinaries
+    } finally {
+      binary.tempFile?.delete()
+    }
+  }
+
+  /**
+   * Streams the content to a temporary file and calculates the crc on the fly. The beginning of the content is kept
+   * as sample for the compressibility check.
+   */
+  private fun prepareTempFile(istream: InputStream): PreparedBinary {
+    val file = Files.createTempFile("projectforge-jcr-backup-", ".bin").toFile()
+    try {
+      val crc = CRC32()
+      val sample = ByteArrayOutputStream(SAMPLE_SIZE)
+      var size = 0L
+      file.outputStream().use { ostream ->
+        val buffer = ByteArray(BUFFER_SIZE)
+        while (true) {
+          val read = istream.read(buffer)
+          if (read < 0) {
+            break
+          }
+          crc.update(buffer, 0, read)
+          if (sample.size() < SAMPLE_SIZE) {
+            sample.write(buffer, 0, minOf(read, SAMPLE_SIZE - sample.size()))
+          }
+          ostream.write(buffer, 0, read)
+          size += read
+        }
+      }
+      return PreparedBinary(null, file, size, crc.value, isCompressible(sample.toByteArray()))
+    } catch (ex: Exception) {
+      file.delete()
+      throw ex
+    }
+  }
+
+  companion object {
+    private val DEFAULT_NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+
+    private const val DEFAULT_MAX_PENDING_BYTES = 256L * 1024 * 1024
+
+    private const val DEFAULT_MAX_IN_MEMORY_SIZE = 16L * 1024 * 1024
+
+    private const val BUFFER_SIZE = 64 * 1024
+
+    private const val SAMPLE_SIZE = 64 * 1024
+
+    /**
+     * Content is compressible, if a sample of its beginning can be deflated to less than 90%.
+     */
+    internal fun isCompressible(content: ByteArray): Boolean {
+      if (content.size < 1024) {
+        return true // Not worth checking.
+      }
+      val length = minOf(content.size, SAMPLE_SIZE)
+      val deflater = Deflater(Deflater.BEST_SPEED, true)
+      try {
+        deflater.setInput(content, 0, length)
+        deflater.finish()
+        val buffer = ByteArray(length)
+        var compressedSize = 0
+        while (!deflater.finished() && compressedSize < length) {
+          compressedSize += deflater.deflate(buffer)
+        }
+        return compressedSize < length * 0.9
+      } finally {
+        deflater.end()
+      }
+    }
+  }
+}
@@ -31,10 +31,12 @@ import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
 import java.io.ByteArrayInputStream
 import java.io.File
+import java.io.FileInputStream
 import java.nio.charset.StandardCharsets
 import java.time.ZoneOffset
 import java.time.ZonedDateTime
 import java.time.format.DateTimeFormatter
+import java.util.*
 import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
 import java.util.zip.ZipOutputStream
@@ -94,19 +96,32 @@ open class RepoBackupService {
 
   /**
    * @param absPath If not given, [RepoService.mainNodeName] is used.
+   * @param baseManifest If given, an incremental backup based on the backup of this manifest is created: all nodes
+   * (repository.json) are written, but only the binaries of files added or modified (checksum) since the base backup.
+   * @return The manifest of this backup (also written as last entry [MANIFEST_FILENAME] of the archive).
    */
+  @JvmOverloads
   open fun backupAsZipArchive(
     archiveName: String,
     zipOut: ZipOutputStream,
-    absPath: String = "/${repoService.mainNodeName}"
-  ) {
+    absPath: String = "/${repoService.mainNodeName}",
+    baseManifest: BackupManifest? = null,
+  ): BackupManifest {
     val archivNameWithoutExtension = if (archiveName.contains('.')) {
       archiveName.substring(0, archiveName.indexOf('.'))
     } else {
       archiveName
     }
+    val manifest = BackupManifest()
+    manifest.archiveName = archiveName
+    manifest.created = Date()
+    if (baseManifest != null) {
+      manifest.type = BackupManifest.Type.INCREMENTAL
+      manifest.chain.addAll(baseManifest.chain)
+    }
+    manifest.chain.add(archiveName)
 
-    log.info { "Creating backup of document view and binaries of path '$absPath' as '$archiveName'..." }
+    log.info { "Creating ${manifest.type.name.lowercase()} backup of document view and binaries of path '$absPath' as '$archiveName'..." }
 
     // Write README.TXT
     zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, "README.TXT"))
@@ -115,67 +130,124 @@ open class RepoBackupService {
       zipOut.write(readme.toByteArray(StandardCharsets.UTF_8))
     }
 
-    val walker = object : RepoTreeWalker(repoService, absPath) {
-      override fun visit(node: Node, isRootNode: Boolean) {
-        if (isRootNode) {
-          // Using repository.json if repository.xml doesn't work.
-          zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, "repository.json"))
-          zipOut.write(
-            PFJcrUtils.toJson(NodeInfo(node, recursive = true, listOfIgnoredNodePaths = listOfIgnoredNodePaths))
-              .toByteArray(StandardCharsets.UTF_8)
-          )
-        }
+    var numberOfUnchangedFiles = 0
+    ParallelZipBinaryWriter(repoService, zipOut).use { binaryWriter ->
+      val walker = object : RepoTreeWalker(repoService, absPath) {
+        override fun visit(node: Node, isRootNode: Boolean) {
+          if (isRootNode) {
+            // Using repository.json if repository.xml doesn't work.
+            zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, "repository.json"))
+            zipOut.write(
+              PFJcrUtils.toJson(NodeInfo(node, recursive = true, listOfIgnoredNodePaths = listOfIgnoredNodePaths))
+                .toByteArray(StandardCharsets.UTF_8)
+            )
+          }
 
-        if (PFJcrUtils.matchAnyPath(node, listOfIgnoredNodePaths)) {
-          // Ignore node.
-          log.debug { "Ignore path=${node.path} as configured." }
-          return
-        }
-        val fileList = repoService.getFileInfos(node)
-        if (!fileList.isNullOrEmpty()) {
-          zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "files.json"))
-          zipOut.write(PFJcrUtils.toJson(FileObjectList(fileList)).toByteArray(StandardCharsets.UTF_8))
-          zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "files.txt"))
-          val fileListAsString =
-            fileList.joinToString(separator = "\n") {
-              "${PFJcrUtils.createSafeFilename(it)} ${
-                FormatterUtils.formatBytes(
-                  it.size
-                )
-              } ${it.fileName}"
-            }
-          zipOut.write(fileListAsString.toByteArray(StandardCharsets.UTF_8))
+          if (PFJcrUtils.matchAnyPath(node, listOfIgnoredNodePaths)) {
+            // Ignore node.
+            log.debug { "Ignore path=${node.path} as configured." }
+            return
+          }
+          val fileList = repoService.getFileInfos(node)
+          if (!fileList.isNullOrEmpty()) {
+            zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "files.json"))
+            zipOut.write(PFJcrUtils.toJson(FileObjectList(fileList)).toByteArray(StandardCharsets.UTF_8))
+            zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "files.txt"))
+            val fileListAsString =
+              fileList.joinToString(separator = "\n") {
+                "${PFJcrUtils.createSafeFilename(it)} ${
+                  FormatterUtils.formatBytes(
+                    it.size
+                  )
+                } ${it.fileName}"
+              }
+            zipOut.write(fileListAsString.toByteArray(StandardCharsets.UTF_8))
+          }
+          val nodeInfo = NodeInfo(node, false)
+          zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "node.json"))
+          zipOut.write(PFJcrUtils.toJson(nodeInfo).toByteArray(StandardCharsets.UTF_8))
         }
-        val nodeInfo = NodeInfo(node, false)
-        zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, node.path, "node.json"))
-        zipOut.write(PFJcrUtils.toJson(nodeInfo).toByteArray(StandardCharsets.UTF_8))
-      }
 
-      override fun visitFile(fileNode: Node, fileObject: FileObject) {
-        if (PFJcrUtils.matchAnyPath(fileNode, listOfIgnoredNodePaths)) {
-          // Ignore node.
-          log.info { "Ignore path=${fileNode.path} as configured." }
-          return
-        }
-        val content = repoService.getFileContent(fileNode, fileObject, useEncryptedFile = true)
-        if (content != null) {
+        override fun visitFile(fileNode: Node, fileObject: FileObject) {
+          if (PFJcrUtils.matchAnyPath(fileNode, listOfIgnoredNodePaths)) {
+            // Ignore node.
+            log.info { "Ignore path=${fileNode.path} as configured." }
+            return
+          }
+          val path = fileNode.path
+          val checksum = fileObject.checksum
+          val baseEntry = baseManifest?.files?.get(path)
+          if (checksum != null && baseEntry?.archive != null && baseEntry.checksum == checksum) {
+            // Binary is unmodified and contained in an archive of the backup chain.
+            manifest.files[path] = BackupManifest.FileEntry(checksum, baseEntry.archive)
+            ++numberOfUnchangedFiles
+            return
+          }
+          manifest.files[path] = BackupManifest.FileEntry(checksum, archiveName)
           val fileName = PFJcrUtils.createSafeFilename(fileObject)
-          zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, fileNode.path, fileName))
-          zipOut.write(content)
+          binaryWriter.submit(createZipEntry(archivNameWithoutExtension, path, fileName).name, path, fileObject)
         }
       }
+      walker.walk()
+      binaryWriter.flush()
+      zipOut.putNextEntry(createZipEntry(archivNameWithoutExtension, MANIFEST_FILENAME))
+      zipOut.write(PFJcrUtils.toJson(manifest).toByteArray(StandardCharsets.UTF_8))
+      log.info {
+        "Backup of document view and binaries of path '$absPath' as '$archiveName' done: number of nodes=${
+          FormatterUtils.format(
+            walker.numberOfVisitedNodes
+          )
+        }, number of files=${FormatterUtils.format(walker.numberOfVisitedFiles)}, binaries written=${
+          FormatterUtils.format(binaryWriter.numberOfWrittenBinaries)
+        } (${FormatterUtils.format(binaryWriter.numberOfStoredBinaries)} incompressible), unchanged binaries of backup chain=${
+          FormatterUtils.format(numberOfUnchangedFiles)
+        }."
+      }
+    }
+    return manifest
+  }
+
+  /**
+   * Restores the given backup archive. If the archive is part of a backup chain (incremental backup), all archives
+   * of the chain (full backup and incremental backups) must be located in the same directory: the nodes are restored
+   * from the given archive and the binaries from the archives containing them.
+   * @param absPath If not given, [RepoService.mainNodeName] is used (only used for creation of repository.xml).
+   */
+  @JvmOverloads
+  open fun restoreBackupChain(
+    backupFile: File,
+    securityConfirmation: String,
+    absPath: String = "/${repoService.mainNodeName}"
+  ): JCRCheckSanityJob.CheckResult {
+    val manifest = BackupManifest.read(backupFile)
+    if (manifest == null || manifest.type == BackupManifest.Type.FULL) {
+      return ZipInputStream(FileInputStream(backupFile)).use {
+        restoreBackupFromZipArchive(it, securityConfirmation, absPath)
+      }
     }
-    walker.walk()
-    log.info {
-      "Backup of document view and binaries of path '$absPath' as '$archiveName' done: number of nodes=${
-        FormatterUtils.format(
-          walker.numberOfVisitedNodes
-        )
-      }, number of files=${FormatterUtils.format(walker.numberOfVisitedFiles)}."
+    checkSecurityConfirmation(securityConfirmation)
+    val archives = manifest.predecessors.map { File(backupFile.parentFile, it) }
+    archives.find { !it.exists() }?.let {
+      throw IllegalArgumentException("Can't restore backup chain of '${backupFile.name}', archive '${it.absolutePath}' is missing.")
+    }
+    repoService.runInSession { session ->
+      ZipInputStream(FileInputStream(backupFile)).use { zipIn ->
+        restore(session, zipIn, absPath, manifest, restoreNodes = true)
+      }
+      archives.forEach { archive ->
+        log.info { "Restoring binaries of backup chain from '${archive.name}'..." }
+        ZipInputStream(FileInputStream(archive)).use { zipIn ->
+          restore(session, zipIn, absPath, manifest, restoreNodes = false, archiveName = archive.name)
+        }
+      }
     }
+    // Nodes were restored directly, the sanity check rebuilds the index of files:
+    repoService.fileIndex.clear()
+    return jcrCheckSanityJob.execute()
   }
 
   /**
+   * Restores a single (full) backup archive. For restoring incremental backups use [restoreBackupChain].
    * @param absPath If not given, [RepoService.mainNodeName] is used (only used for creation of repository.xml).
    */
   @JvmOverloads
@@ -184,64 +256,103 @@ open class RepoBackupService {
     securityConfirmation: String,
     absPath: String = "/${repoService.mainNodeName}"
   ): JCRCheckSanityJob.CheckResult {
-    if (securityConfirmation != RESTORE_SECURITY_CONFIRMATION__I_KNOW_WHAT_I_M_DOING__REPO_MAY_BE_DESTROYED) {
-      throw IllegalArgumentException("You must use the correct security confirmation if you know what you're doing. The repo content may be lost after restoring!")
-    }
+    checkSecurityConfirmation(securityConfirmation)
     repoService.runInSession { session ->
-      log.info { "Restoring backup of document view and binaries of path '$absPath'..." }
-      var nodesRestored = false
-      var zipEntry = zipIn.nextEntry
-      while (zipEntry != null) {
-        if (zipEntry.isDirectory) {
+      restore(session, zipIn, absPath, null, restoreNodes = true)
+    }
+    // Nodes were restored directly, the sanity check rebuilds the index of files:
+    repoService.fileIndex.clear()
+    return jcrCheckSanityJob.execute()
+  }
+
+  /**
+   * @param manifest If given, only binaries contained by the archive [archiveName] (due to the manifest) are restored.
+   * @param restoreNodes If true, the nodes will be restored by the archive's repository.json first.
+   * @param archiveName The name of the archive to restore binaries from (only needed, if restoreNodes is false).
+   */
+  private fun restore(
+    session: SessionWrapper,
+    zipIn: ZipInputStream,
+    absPath: String,
+    manifest: BackupManifest?,
+    restoreNodes: Boolean,
+    archiveName: String? = manifest?.archiveName,
+  ) {
+    log.info { "Restoring backup of document view and binaries of path '$absPath'..." }
+    var nodesRestored = !restoreNodes
+    var zipEntry = zipIn.nextEntry
+    while (zipEntry != null) {
+      if (zipEntry.isDirectory) {
+        zipEntry = zipIn.nextEntry
+        continue
+      }
+      val fileName = FilenameUtils.getName(zipEntry.name)
+      if (!nodesRestored) {
+        if (fileName == "repository.json") {
+          log.info { "Restoring nodes from '${zipEntry?.name}'..." }
+          val json = zipIn.readBytes().toString(StandardCharsets.UTF_8)
+          val topNode = PFJcrUtils.fromJson(json, NodeInfo::class.java)
+          restoreNode(session.rootNode, topNode)
+          session.save()
+          nodesRestored = true
+          zipEntry = zipIn.nextEntry
+          continue
+        }
+      }
+      val filesPath = getFilesPath(zipEntry.name)
+      if (!filesPath.isNullOrBlank() && !IGNORE_FILES.contains(fileName)) {
+        if (log.isDebugEnabled) {
+          log.debug { "Restoring file content (binary) '${zipEntry?.name}', $fileName..." }
+        }
+        val filesNode = repoService.getNodeOrNull(session, filesPath)
+        if (filesNode == null) {
+          logMissingNode(manifest, "Can't determine node '$filesPath'. Can't restore binary '${zipEntry.name}'.")
+          zipEntry = zipIn.nextEntry
+          continue
+        }
+        val fileNode = repoService.findFile(filesNode, FilenameUtils.getBaseName(zipEntry.name))
+        if (fileNode == null) {
+          logMissingNode(manifest, "Can't determine file node of '$filesPath'. Can't restore binary '${zipEntry.name}'.")
           zipEntry = zipIn.nextEntry
           continue
         }
-        val fileName = FilenameUtils.getName(zipEntry.name)
         if (!nodesRestored) {
-          if (fileName == "repository.json") {
-            log.info { "Restoring nodes from '${zipEntry?.name}'..." }
-            val json = zipIn.readBytes().toString(StandardCharsets.UTF_8)
-            val topNode = PFJcrUtils.fromJson(json, NodeInfo::class.java)
-            restoreNode(session.rootNode, topNode)
-            session.save()
-            nodesRestored = true
-            zipEntry = zipIn.nextEntry
-            continue
-          }
+          throw IllegalArgumentException("Sorry, can't restore binaries. repository.xml must be read first (placed before restoring binaries in zip file)!")
         }
-        val filesPath = getFilesPath(zipEntry.name)
-        if (!filesPath.isNullOrBlank() && !IGNORE_FILES.contains(fileName)) {
-          if (log.isDebugEnabled) {
-            log.debug { "Restoring file content (binary) '${zipEntry?.name}', $fileName..." }
-          }
-          val filesNode = repoService.getNodeOrNull(session, filesPath)
-          if (filesNode == null) {
-            log.error { "Can't determine node '$filesNode'. Can't restore binary '${zipEntry?.name}'." }
-            zipEntry = zipIn.nextEntry
-            continue
-          }
-          val fileNode = repoService.findFile(filesNode, FilenameUtils.getBaseName(zipEntry.name))
-          if (fileNode == null) {
-            log.error { "Can't determine node '$fileNode'. Can't restore binary '${zipEntry?.name}'." }
-            zipEntry = zipIn.nextEntry
-            continue
-          }
-          if (!nodesRestored) {
-            throw IllegalArgumentException("Sorry, can't restore binaries. repository.xml must be read first (placed before restoring binaries in zip file)!")
-          }
-          val fileObject = FileObject(fileNode)
-          log.info { "Restoring file '${zipEntry?.name}': $fileObject" }
-          val content = zipIn.readBytes()
-          val inputStream = ByteArrayInputStream(content)
-          val bin: Binary = session.valueFactory.createBinary(inputStream)
-          fileNode.setProperty(RepoService.PROPERTY_FILECONTENT, session.valueFactory.createValue(bin))
-          session.save()
+        if (manifest != null && manifest.files[fileNode.path]?.archive != archiveName) {
+          // Binary was modified later, the current version is part of another archive of the backup chain.
+          log.debug { "Skipping outdated binary '${zipEntry?.name}'." }
+          zipEntry = zipIn.nextEntry
+          continue
         }
-        zipEntry = zipIn.nextEntry
+        val fileObject = FileObject(fileNode)
+        log.info { "Restoring file '${zipEntry?.name}': $fileObject" }
+        val content = zipIn.readBytes()
+        val inputStream = ByteArrayInputStream(content)
+        val bin: Binary = session.valueFactory.createBinary(inputStream)
+        fileNode.setProperty(RepoService.PROPERTY_FILECONTENT, session.valueFactory.createValue(bin))
+        session.save()
       }
-      zipIn.closeEntry()
+      zipEntry = zipIn.nextEntry
+    }
+    zipIn.closeEntry()
+  }
+
+  /**
+   * Older archives of a backup chain may contain binaries of files deleted later, so missing nodes are expected.
+   */
+  private fun logMissingNode(manifest: BackupManifest?, msg: String) {
+    if (manifest == null) {
+      log.error { msg }
+    } else {
+      log.debug { msg }
+    }
+  }
+
+  private fun checkSecurityConfirmation(securityConfirmation: String) {
+    if (securityConfirmation != RESTORE_SECURITY_CONFIRMATION__I_KNOW_WHAT_I_M_DOING__REPO_MAY_BE_DESTROYED) {
+      throw IllegalArgumentException("You must use the correct security confirmation if you know what you're doing. The repo content may be lost after restoring!")
     }
-    return jcrCheckSanityJob.execute()
   }
 
   private fun restoreNode(parentNode: Node, nodeInfo: NodeInfo) {
@@ -276,7 +387,9 @@ open class RepoBackupService {
 
     internal const val BACKUP_README = "/backupReadme.txt"
 
-    private val IGNORE_FILES = arrayOf("README.txt", "node.json", "files.txt", "files.json")
+    internal const val MANIFEST_FILENAME = "backup-manifest.json"
+
+    private val IGNORE_FILES = arrayOf("README.txt", "node.json", "files.txt", "files.json", MANIFEST_FILENAME)
 
     val backupFilename: String
       get() {
@@ -286,5 +399,18 @@ open class RepoBackupService {
       }
 
     const val backupFilenamePrefix = "projectforge-jcr-backup-"
+
+    val incrementalBackupFilename: String
+      get() {
+        val nowAsIsoString =
+          ZonedDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss").withZone(ZoneOffset.UTC))
+        return "$incrementalBackupFilenamePrefix$nowAsIsoString.zip"
+      }
+
+    /**
+     * Incremental backups are purged separately from the full backups (they must not be purged, as long as they're
+     * part of a backup chain of a kept incremental backup).
+     */
+    const val incrementalBackupFilenamePrefix = "projectforge-jcr-incremental-backup-"
   }
 }
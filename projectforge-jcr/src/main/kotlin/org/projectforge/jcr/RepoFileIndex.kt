@@ -0,0 +1,155 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.jcr
+
+import mu.KotlinLogging
+import java.util.concurrent.ConcurrentHashMap
+import javax.jcr.Node
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Index of the file names of all files nodes ([RepoService.NODENAME_FILES]) for finding files by name without
+ * iterating over all child nodes (files are found by id directly as child node name).
+ *
+ * The index of a files node is built lazily on its first usage and is maintained by [RepoService] on storing, renaming
+ * and deleting files. The [JCRCheckSanityJob] invalidates the index of all visited files nodes, so they are rebuilt
+ * from the live nodes on next access. A loaded index is authoritative, file names missing in the index don't exist (no
+ * scan of the nodes). If the index refers to a file not existing anymore, it's rebuilt (see [RepoService.findFile]).
+ */
+internal class RepoFileIndex {
+  /**
+   * File ids by file name of one files node. Several files with the same name are allowed in one files node, the
+   * first one stored is found first.
+   */
+  class FolderIndex {
+    private val fileIdsByName = mutableMapOf<String, MutableSet<String>>()
+
+    /**
+     * @return The id of the first stored file with the given name.
+     */
+    fun getFileId(fileName: String): String? {
+      synchronized(this) {
+        return fileIdsByName[fileName]?.firstOrNull()
+      }
+    }
+
+    fun add(fileId: String, fileName: String?) {
+      fileName ?: return
+      fileIdsByName.getOrPut(fileName) { linkedSetOf() }.add(fileId)
+    }
+
+    fun remove(fileId: String, fileName: String?) {
+      fileName ?: return
+      fileIdsByName[fileName]?.let { set ->
+        set.remove(fileId)
+        if (set.isEmpty()) {
+          fileIdsByName.remove(fileName)
+        }
+      }
+    }
+  }
+
+  /**
+   * Key is the absolute path of the files node.
+   */
+  @Volatile
+  private var folders = ConcurrentHashMap<String, FolderIndex>()
+
+  /**
+   * @return The id (node name) of the file with the given name or null, if not found.
+   */
+  fun getFileId(filesNode: Node, fileName: String): String? {
+    return folders.computeIfAbsent(filesNode.path) { buildFolderIndex(filesNode) }.getFileId(fileName)
+  }
+
+  /**
+   * Rebuilds the index of the given files node from the live nodes (e. g. if an inconsistency was detected).
+   * @return The rebuilt index.
+   */
+  fun rebuild(filesNode: Node): FolderIndex {
+    return folders.compute(filesNode.path) { _, _ -> buildFolderIndex(filesNode) }!!
+  }
+
+  // The modifications use computeIfPresent, so they wait for an index being built concurrently and aren't lost.
+
+  fun add(filesNodePath: String, fileId: String, fileName: String?) {
+    folders.computeIfPresent(filesNodePath) { _, folder ->
+      synchronized(folder) {
+        folder.add(fileId, fileName)
+      }
+      folder
+    }
+  }
+
+  fun remove(filesNodePath: String, fileId: String, fileName: String?) {
+    folders.computeIfPresent(filesNodePath) { _, folder ->
+      synchronized(folder) {
+        folder.remove(fileId, fileName)
+      }
+      folder
+    }
+  }
+
+  fun rename(filesNodePath: String, fileId: String, oldFileName: String?, newFileName: String?) {
+    folders.computeIfPresent(filesNodePath) { _, folder ->
+      synchronized(folder) {
+        folder.remove(fileId, oldFileName)
+        folder.add(fileId, newFileName)
+      }
+      folder
+    }
+  }
+
+  /**
+   * Removes the index of all files nodes of the given path and its descendants (e. g. after deleting a node). They
+   * will be rebuilt on next access.
+   */
+  fun invalidate(path: String) {
+    val prefix = "${path.removeSuffix("/")}/"
+    folders.keys.removeIf { it == path || it.startsWith(prefix) }
+  }
+
+  /**
+   * Removes the whole index. It will be rebuilt on next accesses.
+   */
+  fun clear() {
+    folders = ConcurrentHashMap()
+  }
+
+  private fun buildFolderIndex(filesNode: Node): FolderIndex {
+    val folder = FolderIndex()
+    val startTime = System.currentTimeMillis()
+    var counter = 0
+    filesNode.nodes?.let {
+      while (it.hasNext()) {
+        val node = it.nextNode()
+        folder.add(node.name, PFJcrUtils.getProperty(node, RepoService.PROPERTY_FILENAME)?.string)
+        ++counter
+      }
+    }
+    log.debug { "Index of files node '${filesNode.path}' with $counter files built in ${System.currentTimeMillis() - startTime}ms." }
+    return folder
+  }
+}
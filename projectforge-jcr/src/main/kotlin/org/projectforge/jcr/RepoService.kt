@@ -33,7 +33,6 @@ import org.apache.jackrabbit.oak.segment.file.FileStoreBuilder
 import org.apache.jackrabbit.oak.spi.state.NodeStore
 import org.projectforge.common.CryptStreamUtils
 import org.projectforge.common.FormatterUtils
-import org.projectforge.common.NumberOfBytes
 import org.springframework.stereotype.Service
 import java.io.File
 import java.io.InputStream
@@ -45,7 +44,6 @@ import javax.jcr.Binary
 import javax.jcr.Node
 import javax.jcr.Repository
 import javax.jcr.Session
-import kotlin.concurrent.thread
 
 private val log = KotlinLogging.logger {}
 
@@ -62,6 +60,8 @@ open class RepoService {
 
   internal lateinit var mainNodeName: String
 
+  internal val fileIndex = RepoFileIndex()
+
   @PreDestroy
   fun shutdown() {
     log.info { "Shutting down jcr repository..." }
@@ -159,7 +159,6 @@ open class RepoService {
     if (parentNodePath == null || relPath == null) {
       throw IllegalArgumentException("Parent node path and relPath not given. Can't determine location of file to store: $fileObject")
     }
-    var lazyCheckSumFileObject: FileObject? = null
     runInSession { session ->
       val node = getNode(session, parentNodePath, relPath, true)
       val filesNode = ensureNode(node, NODENAME_FILES)
@@ -179,46 +178,45 @@ open class RepoService {
       }
       fileObject.lastUpdate = fileObject.created
       fileObject.lastUpdateByUser = user
+      val sizeCheckInfo = FileInfo(fileName = fileObject.fileName)
       var bin: Binary? = null
-      try {
+      val checksumStream = ChecksumInputStream(
         if (password.isNullOrBlank()) {
-          bin = session.valueFactory.createBinary(content)
+          content
         } else {
-          val inputStream = CryptStreamUtils.pipeToEncryptedInputStream(content, password)
-          bin = session.valueFactory.createBinary(inputStream)
           fileObject.aesEncrypted = true
+          CryptStreamUtils.pipeToEncryptedInputStream(content, password)
         }
-        fileNode.setProperty(PROPERTY_FILECONTENT, bin)
-        fileObject.size = bin?.size
-        Integer.MAX_VALUE
-      } finally {
-        bin?.dispose()
+      ) { size ->
+        // Check size while writing: abort as soon as the maximum size is exceeded.
+        sizeCheckInfo.size = size
+        fileSizeChecker.checkSize(sizeCheckInfo, data)
       }
-      // Check size again for the case, the fileObject didn't contain file size before processing the stream.
+      val startTime = System.currentTimeMillis()
       try {
-        fileSizeChecker.checkSize(fileObject, data)
+        bin = session.valueFactory.createBinary(checksumStream)
+        fileNode.setProperty(PROPERTY_FILECONTENT, bin)
+        fileObject.size = checksumStream.size
+        fileObject.checksum = checksumStream.checksum
       } catch (ex: Exception) {
         fileNode.remove()
-        throw ex
+        // The repository may wrap the exception thrown by the size checker:
+        throw checksumStream.sizeExceededException ?: ex
+      } finally {
+        bin?.dispose()
       }
-      if (fileObject.size ?: 0 > NumberOfBytes.MEGA_BYTES * 50) {
-        lazyCheckSumFileObject = fileObject
-        fileObject.checksum = "..."
-      } else {
-        checksum(fileNode, fileObject)
+      log.info {
+        "Checksum of '${fileObject.fileName}' of size ${FormatterUtils.formatBytes(fileObject.size)} calculated while storing in ${
+          FormatterUtils.format((System.currentTimeMillis() - startTime) / 1000)
+        }s."
       }
       fileObject.copyTo(fileNode)
       session.save()
-    }
-    lazyCheckSumFileObject?.let {
-      thread {
-        checksum(it)
-      }
+      fileIndex.add(filesNode.path, fileId, fileObject.fileName)
     }
   }
 
   private fun checksum(fileNode: Node, fileObject: FileObject) {
-    // Calculate checksum for files smaller than 50MB (it's fast enough).
     val startTime = System.currentTimeMillis()
     // Calculate checksum
     getFileInputStream(fileNode, fileObject, useEncryptedFile = true).use { istream ->
@@ -251,6 +249,7 @@ open class RepoService {
           log.info { "Deleting file: $fileObject" }
           fileNode.remove()
           session.save()
+          fileIndex.remove(filesNode.path, fileObject.fileId!!, fileObject.fileName)
           true
         }
       }
@@ -261,8 +260,10 @@ open class RepoService {
     return runInSession { session ->
       val node = getNode(session, nodeInfo.path, nodeInfo.name, false)
       log.info { "Deleting node: $nodeInfo" }
+      val path = node.path
       node.remove()
       session.save()
+      fileIndex.invalidate(path)
       true
     }
   }
@@ -327,6 +328,7 @@ open class RepoService {
           null
         } else {
           var modified = false
+          val oldFileName = PFJcrUtils.getProperty(fileNode, PROPERTY_FILENAME)?.string
           if (!newFileName.isNullOrBlank()) {
             log.info { "Changing file name to '$newFileName' for: $fileObject" }
             fileNode.setProperty(PROPERTY_FILENAME, newFileName)
@@ -347,6 +349,9 @@ open class RepoService {
             fileNode.setProperty(PROPERTY_LAST_UPDATE, PFJcrUtils.convertToString(Date()) ?: "")
           }
           session.save()
+          if (!newFileName.isNullOrBlank()) {
+            fileIndex.rename(filesNode.path, fileNode.name, oldFileName, newFileName)
+          }
           FileObject(fileNode)
         }
       }
@@ -442,20 +447,31 @@ open class RepoService {
     return result
   }
 
+  /**
+   * Finds the file node by id (child node name) or, if not found by id, by file name (using the [fileIndex]).
+   * The index is authoritative: file names not found in the index don't exist. Only if the index refers to a file node
+   * not existing anymore (inconsistent index), the index of the files node is rebuilt once.
+   */
   internal fun findFile(filesNode: Node?, fileId: String?, fileName: String? = null): Node? {
     filesNode ?: return null
-    if (!filesNode.hasNodes()) {
-      return null
+    if (isValidFileId(fileId) && filesNode.hasNode(fileId)) {
+      return filesNode.getNode(fileId)
     }
-    filesNode.nodes?.let {
-      while (it.hasNext()) {
-        val node = it.nextNode()
-        if (node.name == fileId || PFJcrUtils.getProperty(node, PROPERTY_FILENAME)?.string == fileName) {
-          return node
-        }
-      }
+    fileName ?: return null
+    val indexedFileId = fileIndex.getFileId(filesNode, fileName) ?: return null
+    if (filesNode.hasNode(indexedFileId)) {
+      return filesNode.getNode(indexedFileId)
     }
-    return null
+    log.warn { "Index of files node '${filesNode.path}' is outdated (file '$fileName' not found), rebuilding it." }
+    val rebuiltFileId = fileIndex.rebuild(filesNode).getFileId(fileName) ?: return null
+    return if (filesNode.hasNode(rebuiltFileId)) filesNode.getNode(rebuiltFileId) else null
+  }
+
+  /**
+   * File ids are used as child node names, so they must not be relative paths.
+   */
+  private fun isValidFileId(fileId: String?): Boolean {
+    return !fileId.isNullOrBlank() && fileId != "." && fileId != ".." && fileId.none { it in INVALID_FILE_ID_CHARS }
   }
 
   @JvmOverloads
@@ -474,7 +490,20 @@ open class RepoService {
     }
   }
 
-  open fun retrieveFileInputStream(fileObject: FileObject, password: String? = null): InputStream? {
+  /**
+   * Opens the content of the file as stream directly from the binary of the repository (the content isn't loaded into
+   * memory). Usable for streaming downloads.
+   * @param password Must be given for encrypted files.
+   * @param startPosition Skips the given number of bytes of the (decrypted) content, e. g. for serving http range
+   * requests. The binary streams of the repository skip without reading the skipped content (encrypted files have to
+   * be decrypted while skipping).
+   */
+  @JvmOverloads
+  open fun retrieveFileInputStream(
+    fileObject: FileObject,
+    password: String? = null,
+    startPosition: Long = 0,
+  ): InputStream? {
     return runInSession { session ->
       val filesNode = getFilesNode(session, fileObject.parentNodePath, fileObject.relPath, false)
       val node = findFile(filesNode, fileObject.fileId, fileObject.fileName)
@@ -482,7 +511,11 @@ open class RepoService {
         log.warn { "File not found in repository: $fileObject" }
         null
       } else {
-        getFileInputStream(node, fileObject)
+        getFileInputStream(node, fileObject, password = password)?.also { istream ->
+          if (startPosition > 0) {
+            istream.skipNBytes(startPosition)
+          }
+        }
       }
     }
   }
@@ -659,6 +692,7 @@ open class RepoService {
       System.setProperty("derby.stream.error.field", "${DerbyUtil::class.java.name}.DEV_NULL")
       log.info { "Initializing JCR repository with main node '$mainNodeName' in: ${repositoryDir.absolutePath}" }
       this.mainNodeName = mainNodeName
+      fileIndex.clear()
 
       FileStoreBuilder.fileStoreBuilder(repositoryDir).build().let { fileStore ->
         this.fileStore = fileStore
@@ -697,6 +731,7 @@ open class RepoService {
     internal const val PROPERTY_ZIP_MODE = "zipMode"
     private const val PROPERTY_RANDOM_ID_LENGTH = 20
     private val ALPHA_CHARSET: Array<Char> = ('a'..'z').toList().toTypedArray()
+    private const val INVALID_FILE_ID_CHARS = "/:[]|*"
 
     internal fun checksum(istream: InputStream?): String {
       istream ?: return ""
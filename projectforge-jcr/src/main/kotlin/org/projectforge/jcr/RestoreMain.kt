@@ -23,9 +23,6 @@
 
 package org.projectforge.jcr
 
-import java.io.FileInputStream
-import java.util.zip.ZipInputStream
-
 class RestoreMain {
     companion object {
         @JvmStatic
@@ -37,9 +34,7 @@ class RestoreMain {
             val repositoryLocation = BackupMain.checkRepoDir(args[0]) ?: return
             val backupFile = BackupMain.checkBackupFileReadable(args[1]) ?: return
             val repoBackupService = BackupMain.prepare(repositoryLocation)
-            ZipInputStream(FileInputStream(backupFile)).use {
-                repoBackupService.restoreBackupFromZipArchive(it, RepoBackupService.RESTORE_SECURITY_CONFIRMATION__I_KNOW_WHAT_I_M_DOING__REPO_MAY_BE_DESTROYED)
-            }
+            repoBackupService.restoreBackupChain(backupFile, RepoBackupService.RESTORE_SECURITY_CONFIRMATION__I_KNOW_WHAT_I_M_DOING__REPO_MAY_BE_DESTROYED)
             BackupMain.shutdown(repoBackupService)
         }
     }
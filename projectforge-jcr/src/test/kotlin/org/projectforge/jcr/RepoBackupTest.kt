@@ -26,6 +26,7 @@ package org.projectforge.jcr
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Test
 import org.projectforge.commons.test.TestUtils
+import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.util.zip.ZipInputStream
@@ -125,6 +126,90 @@ class RepoBackupTest {
     repo2Service.shutdown()
   }
 
+  @Test
+  fun incrementalBackupTest() {
+    repoService.ensureNode(null, "world/europe")
+    val gradleFile = createFileObject("/world/europe", "germany", "build.gradle.kts")
+    repoService.storeFile(gradleFile, FileSizeStandardChecker(100000L))
+    val backupDir = testUtils.deleteAndCreateTestFile("incrementalBackups")
+    backupDir.mkdirs()
+
+    val fullBackup = File(backupDir, "full.zip")
+    val fullManifest = ZipOutputStream(FileOutputStream(fullBackup)).use {
+      repoBackupService.backupAsZipArchive(fullBackup.name, it)
+    }
+    Assertions.assertEquals(BackupManifest.Type.FULL, fullManifest.type)
+    Assertions.assertEquals(listOf("full.zip"), fullManifest.chain)
+
+    val logo = createFileObject("/world/europe", "germany", "test", "files", "logo.png")
+    repoService.storeFile(logo, FileSizeStandardChecker(100000L))
+    val incrementalBackup = File(backupDir, "incremental.zip")
+    val manifest = ZipOutputStream(FileOutputStream(incrementalBackup)).use {
+      repoBackupService.backupAsZipArchive(incrementalBackup.name, it, baseManifest = BackupManifest.read(fullBackup))
+    }
+    Assertions.assertEquals(BackupManifest.Type.INCREMENTAL, manifest.type)
+    Assertions.assertEquals(listOf("full.zip", "incremental.zip"), BackupManifest.read(incrementalBackup)!!.chain)
+    Assertions.assertEquals(setOf("full.zip", "incremental.zip"), manifest.files.values.map { it.archive }.toSet())
+    ZipInputStream(FileInputStream(incrementalBackup)).use {
+      var zipEntry = it.nextEntry
+      while (zipEntry != null) {
+        Assertions.assertFalse(zipEntry.name.contains(gradleFile.fileId!!), "Unmodified binary expected only in full backup.")
+        zipEntry = it.nextEntry
+      }
+    }
+
+    val repo2Service = RepoService()
+    val repo2BackupService = RepoBackupService()
+    repo2Service.init(testUtils.deleteAndCreateTestFile("testIncrementalBackupRepo2"))
+    repo2BackupService.repoService = repo2Service
+    repo2BackupService.jcrCheckSanityJob = JCRCheckSanityJob()
+    repo2BackupService.jcrCheckSanityJob.repoService = repo2Service
+    val checkResult = repo2BackupService.restoreBackupChain(
+      incrementalBackup,
+      RepoBackupService.RESTORE_SECURITY_CONFIRMATION__I_KNOW_WHAT_I_M_DOING__REPO_MAY_BE_DESTROYED
+    )
+    Assertions.assertEquals(0, checkResult.errors.size)
+    Assertions.assertEquals(2, checkResult.numberOfVisitedFiles)
+    listOf(gradleFile, logo).forEach { expected ->
+      val fileObject = FileObject("/world/europe", "germany", fileInfo = FileInfo(expected.fileName))
+      Assertions.assertTrue(repo2Service.retrieveFile(fileObject))
+      Assertions.assertArrayEquals(expected.content, fileObject.content)
+    }
+
+    repoService.shutdown()
+    repo2Service.shutdown()
+  }
+
+  @Test
+  fun binaryWriterTest() {
+    repoService.ensureNode(null, "world/europe")
+    val files = listOf(
+      createFileObject("/world/europe", "germany", "build.gradle.kts"),
+      createFileObject("/world/europe", "germany", "test", "files", "logo.png"),
+    )
+    files.forEach { repoService.storeFile(it, FileSizeStandardChecker(100000L)) }
+    val parentPath = repoService.getAbsolutePath("world/europe/germany")
+    // maxInMemorySize = 0: all binaries are streamed via temporary files.
+    listOf(Long.MAX_VALUE, 0L).forEach { maxInMemorySize ->
+      val zipFile = testUtils.deleteAndCreateTestFile("binaryWriter-$maxInMemorySize.zip")
+      ZipOutputStream(FileOutputStream(zipFile)).use { zipOut ->
+        ParallelZipBinaryWriter(repoService, zipOut, maxInMemorySize = maxInMemorySize).use { writer ->
+          files.forEach { writer.submit(it.fileName!!, "$parentPath/${RepoService.NODENAME_FILES}/${it.fileId}", it) }
+          writer.flush()
+          Assertions.assertEquals(2, writer.numberOfWrittenBinaries)
+          Assertions.assertEquals(1, writer.numberOfStoredBinaries, "logo.png is incompressible.")
+        }
+      }
+      ZipInputStream(FileInputStream(zipFile)).use { zipIn ->
+        files.forEach { expected ->
+          Assertions.assertEquals(expected.fileName, zipIn.nextEntry!!.name)
+          Assertions.assertArrayEquals(expected.content, zipIn.readBytes())
+        }
+      }
+    }
+    repoService.shutdown()
+  }
+
   private fun createFileObject(parentNodePath: String, relPath: String, vararg path: String): FileObject {
     val fileObject = FileObject()
     fileObject.fileName = path.last()
@@ -0,0 +1,125 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.jcr
+
+import mu.KotlinLogging
+import org.junit.jupiter.api.Assertions
+import org.projectforge.commons.test.TestUtils
+import javax.jcr.Node
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Compares the lookup of files by name and by id using the [RepoFileIndex] with the linear scan over all file nodes
+ * (as done before the index was introduced) for files nodes with 100, 10,000 and 100,000 files.
+ */
+class RepoFileIndexBenchmarkMain {
+  private val repoService = RepoService()
+
+  init {
+    val repoDir = TestUtils(MODULE_NAME).deleteAndCreateTestFile("testBenchmarkRepo")
+    repoService.init(repoDir)
+  }
+
+  fun run() {
+    for (numberOfFiles in NUMBER_OF_FILES) {
+      val relPath = "folder$numberOfFiles"
+      createFiles(relPath, numberOfFiles)
+      repoService.runInSession { session ->
+        val filesNode = repoService.getNode(session, PARENT_NODE, relPath).getNode(RepoService.NODENAME_FILES)
+        var startTime = System.nanoTime()
+        repoService.findFile(filesNode, null, "file-0.txt") // Builds the index of this files node.
+        val indexBuildMillis = (System.nanoTime() - startTime) / 1_000_000
+        val names = (0 until LOOKUPS).map { "file-${(it * 7919L % numberOfFiles)}.txt" }
+        startTime = System.nanoTime()
+        names.forEach { Assertions.assertNotNull(repoService.findFile(filesNode, null, it)) }
+        val indexByName = (System.nanoTime() - startTime) / LOOKUPS
+        startTime = System.nanoTime()
+        names.forEach { Assertions.assertNotNull(repoService.findFile(filesNode, it.removeSuffix(".txt"), null)) }
+        val indexById = (System.nanoTime() - startTime) / LOOKUPS
+        val scanLookups = minOf(LOOKUPS, maxOf(10, 1_000_000 / numberOfFiles))
+        startTime = System.nanoTime()
+        names.take(scanLookups).forEach { Assertions.assertNotNull(linearScan(filesNode, null, it)) }
+        val scanByName = (System.nanoTime() - startTime) / scanLookups
+        startTime = System.nanoTime()
+        names.take(scanLookups).forEach { Assertions.assertNotNull(linearScan(filesNode, it.removeSuffix(".txt"), null)) }
+        val scanById = (System.nanoTime() - startTime) / scanLookups
+        log.info {
+          "$numberOfFiles files: index built in ${indexBuildMillis}ms, lookup by name: index=${indexByName / 1000}µs, scan=${scanByName / 1000}µs, lookup by id: direct=${indexById / 1000}µs, scan=${scanById / 1000}µs"
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the file nodes directly in one session (much faster than storing each file by [RepoService.storeFile]).
+   */
+  private fun createFiles(relPath: String, numberOfFiles: Int) {
+    val startTime = System.currentTimeMillis()
+    repoService.ensureNode(null, PARENT_NODE)
+    repoService.runInSession { session ->
+      val node = repoService.getNode(session, PARENT_NODE, relPath, true)
+      val filesNode = repoService.ensureNode(node, RepoService.NODENAME_FILES)
+      for (i in 0 until numberOfFiles) {
+        val fileObject = FileObject()
+        fileObject.fileId = "file-$i"
+        fileObject.fileName = "file-$i.txt"
+        fileObject.size = 0L
+        fileObject.copyTo(filesNode.addNode(fileObject.fileId))
+        if (i % 10_000 == 9_999) {
+          session.save()
+        }
+      }
+      session.save()
+    }
+    log.info { "$numberOfFiles files created in ${System.currentTimeMillis() - startTime}ms." }
+  }
+
+  /**
+   * The lookup of files before the index was introduced.
+   */
+  private fun linearScan(filesNode: Node, fileId: String?, fileName: String?): Node? {
+    filesNode.nodes?.let {
+      while (it.hasNext()) {
+        val node = it.nextNode()
+        if (node.name == fileId || PFJcrUtils.getProperty(node, RepoService.PROPERTY_FILENAME)?.string == fileName) {
+          return node
+        }
+      }
+    }
+    return null
+  }
+
+  companion object {
+    @JvmStatic
+    fun main(args: Array<String>) {
+      RepoFileIndexBenchmarkMain().run()
+    }
+
+    private const val PARENT_NODE = "benchmark"
+    private const val LOOKUPS = 1000
+    private val NUMBER_OF_FILES = intArrayOf(100, 10_000, 100_000)
+  }
+}
@@ -102,6 +102,8 @@ class RepoTest {
     Assertions.assertFalse(repoService.retrieveFile(file))
 
     cryptoTest()
+    storeStreamTest()
+    fileIndexTest()
 
     val repoBackupService = RepoBackupService()
     repoBackupService.repoService = repoService
@@ -138,6 +140,45 @@ class RepoTest {
     Assertions.assertNull(file.content)
   }
 
+  private fun storeStreamTest() {
+    val content = ByteArray(3 * 1024 * 1024) { (it % 251).toByte() }
+    val file = FileObject("/world/europe", "germany", fileInfo = FileInfo("big.bin"))
+    Assertions.assertNull(file.size)
+    // Size unknown before storing: the maximum size must be checked while writing.
+    Assertions.assertThrows(
+      MaxFileSizeExceeded::class.java
+    ) { repoService.storeFile(file, content.inputStream(), FileSizeStandardChecker(100L)) }
+    Assertions.assertNull(repoService.getFileInfo("/world/europe", "germany", fileId = file.fileId))
+
+    val file2 = FileObject("/world/europe", "germany", fileInfo = FileInfo("big.bin"))
+    repoService.storeFile(file2, content.inputStream(), FileSizeStandardChecker(10L * 1024 * 1024))
+    Assertions.assertEquals(content.size.toLong(), file2.size)
+    Assertions.assertEquals(RepoService.checksum(content.inputStream()), file2.checksum)
+    val checksum = file2.checksum
+    // Checksum calculated by reading the stored content must be the same:
+    Assertions.assertEquals(checksum, repoService.checksum(file2))
+
+    val file3 = FileObject("/world/europe", "germany", fileInfo = FileInfo("big.bin.enc"))
+    repoService.storeFile(file3, content.inputStream(), FileSizeStandardChecker(10L * 1024 * 1024), password = "test")
+    val encryptedChecksum = file3.checksum
+    Assertions.assertNotEquals(checksum, encryptedChecksum, "Checksum of the stored encrypted content expected.")
+    Assertions.assertEquals(encryptedChecksum, repoService.checksum(file3))
+  }
+
+  private fun fileIndexTest() {
+    // Index of files node is already built by the previous lookups by name. Files stored later must be found:
+    val file = FileObject("/world/europe", "germany", fileInfo = FileInfo("index.txt"))
+    file.content = "index".toByteArray()
+    repoService.storeFile(file, FileSizeStandardChecker(10000L))
+    val found = FileObject("/world/europe", "germany", fileInfo = FileInfo("index.txt"))
+    Assertions.assertTrue(repoService.retrieveFile(found))
+    Assertions.assertEquals(file.fileId, found.fileId)
+    Assertions.assertFalse(repoService.retrieveFile(FileObject("/world/europe", "germany", fileInfo = FileInfo("missing.txt"))))
+    // Deleted files mustn't be found anymore:
+    Assertions.assertTrue(repoService.deleteFile(file))
+    Assertions.assertFalse(repoService.retrieveFile(FileObject("/world/europe", "germany", fileInfo = FileInfo("index.txt"))))
+  }
+
   private fun checkFile(expected: FileObject, id: String?, fileName: String?, repo: RepoService = repoService) {
     val file = FileObject()
     file.fileId = id
@@ -24,18 +24,38 @@
 package org.projectforge.rest
 
 import de.micromata.merlin.utils.ReplaceUtils
+import jakarta.servlet.http.HttpServletResponse
+import mu.KotlinLogging
 import org.projectforge.framework.jcr.Attachment
 import org.projectforge.framework.jcr.AttachmentsAccessChecker
 import org.projectforge.framework.jcr.AttachmentsService
 import org.projectforge.framework.time.PFDay
 import org.projectforge.rest.config.RestUtils
+import java.io.BufferedOutputStream
+import java.io.IOException
+import java.util.zip.Deflater
 import java.util.zip.ZipEntry
 import java.util.zip.ZipOutputStream
-import jakarta.servlet.http.HttpServletResponse
+
+private val log = KotlinLogging.logger {}
 
 object AttachmentsRestUtils {
   /**
+   * File extensions of formats, which are already compressed. Recompressing them costs cpu time without any gain.
+   */
+  private val COMPRESSED_EXTENSIONS = setOf(
+    "7z", "aac", "avi", "bz2", "docx", "epub", "gif", "gz", "heic", "jar", "jpeg", "jpg", "m4a", "m4v", "mkv", "mov",
+    "mp3", "mp4", "odp", "ods", "odt", "ogg", "pdf", "png", "pptx", "rar", "tgz", "webm", "webp", "xlsx", "xz", "zip",
+  )
+
+  private const val BUFFER_SIZE = 64 * 1024
+
+  /**
+   * Streams the attachments entry by entry directly from the repository to the response (constant memory usage, the
+   * client receives the first bytes immediately). Already compressed files (by extension) and encrypted files are
+   * stored without compression. If the client cancels the download, the streaming is stopped.
    * @param attachments If not given, all attachments will be downloaded, otherwise only these given attachments.
+   * @return true, if the zip archive was completely written, false if the download was aborted.
    */
   fun multiDownload(
     response: HttpServletResponse,
@@ -45,30 +65,66 @@ object AttachmentsRestUtils {
     jcrPath: String,
     id: Long,
     attachments: List<Attachment>? = null,
-  ) {
+  ): Boolean {
     response.status = HttpServletResponse.SC_OK
+    response.contentType = "application/zip"
     val filename = ReplaceUtils.encodeFilename("${filebasename}_${PFDay.now().isoString}.zip")
     RestUtils.setContentDisposition(response, filename)
-    val zipOutputStream = ZipOutputStream(response.outputStream)
-    if (attachments == null) {
-      zipOutputStream.putNextEntry(ZipEntry("empty.txt"))
-      zipOutputStream.write("Area is empty. Thank you for using ProjectForge!".toByteArray())
-      zipOutputStream.closeEntry()
-    } else {
-      for (attachment in attachments) {
-        zipOutputStream.putNextEntry(ZipEntry(attachment.name ?: "unknown"))
-        val result = attachmentsService.getAttachmentInputStream(
-          jcrPath,
-          id,
-          attachment.fileId!!,
-          attachmentsAccessChecker
-        ) ?: continue
-        result.second.use {
-          it.copyTo(zipOutputStream)
+    try {
+      ZipOutputStream(BufferedOutputStream(response.outputStream, BUFFER_SIZE)).use { zipOutputStream ->
+        if (attachments == null) {
+          zipOutputStream.putNextEntry(ZipEntry("empty.txt"))
+          zipOutputStream.write("Area is empty. Thank you for using ProjectForge!".toByteArray())
+          zipOutputStream.closeEntry()
+          return@use
+        }
+        val usedNames = mutableSetOf<String>()
+        for (attachment in attachments) {
+          val fileId = attachment.fileId ?: continue
+          val result = attachmentsService.getAttachmentInputStream(jcrPath, id, fileId, attachmentsAccessChecker)
+          if (result == null) {
+            log.warn { "Attachment '${attachment.name}' (fileId=$fileId) of '$jcrPath/$id' not found, skipping it in zip archive." }
+            continue
+          }
+          result.second.use { istream ->
+            // The level is used for the next entry. Level 0 writes stored blocks inside the deflate stream, so the size
+            // and crc of the entry aren't required in advance (as for ZipEntry.STORED) and the file is read only once.
+            zipOutputStream.setLevel(if (isCompressed(attachment)) Deflater.NO_COMPRESSION else Deflater.DEFAULT_COMPRESSION)
+            val entry = ZipEntry(getUniqueName(attachment.name, usedNames))
+            attachment.lastUpdate?.let { entry.time = it.time }
+            zipOutputStream.putNextEntry(entry)
+            istream.copyTo(zipOutputStream, BUFFER_SIZE)
+            zipOutputStream.closeEntry()
+          }
+          zipOutputStream.flush() // Send entry to the client.
         }
-        zipOutputStream.closeEntry()
+      }
+    } catch (ex: IOException) {
+      // Mostly: connection closed by the client (download canceled).
+      log.info { "Download of '$filename' aborted: ${ex.message}" }
+      return false
+    }
+    return true
+  }
+
+  internal fun isCompressed(attachment: Attachment): Boolean {
+    return attachment.encrypted || COMPRESSED_EXTENSIONS.contains(attachment.fileExtension.lowercase())
+  }
+
+  /**
+   * Zip archives don't support duplicate entry names, so "file.txt" will be renamed to "file (1).txt" etc.
+   */
+  internal fun getUniqueName(name: String?, usedNames: MutableSet<String>): String {
+    val filename = if (name.isNullOrBlank()) "unknown" else name
+    var result = filename
+    var counter = 1
+    while (!usedNames.add(result.lowercase())) {
+      result = if (filename.contains('.')) {
+        "${filename.substringBeforeLast('.')} (${counter++}).${filename.substringAfterLast('.')}"
+      } else {
+        "$filename (${counter++})"
       }
     }
-    zipOutputStream.close()
+    return result
   }
 }
@@ -39,14 +39,13 @@ import org.projectforge.jcr.FileObject
 import org.projectforge.jcr.ZipMode
 import org.projectforge.jcr.ZipUtils
 import org.projectforge.rest.config.Rest
-import org.projectforge.rest.config.RestUtils
 import org.projectforge.rest.core.AbstractDynamicPageRest
 import org.projectforge.rest.core.AbstractPagesRest
 import org.projectforge.rest.core.PagesResolver
 import org.projectforge.rest.dto.PostData
+import org.projectforge.rest.utils.FileDownloadUtils
 import org.projectforge.ui.*
 import org.springframework.beans.factory.annotation.Autowired
-import org.springframework.core.io.InputStreamResource
 import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.*
@@ -350,39 +349,48 @@ class AttachmentsServicesRest : AbstractDynamicPageRest() {
     return actionListener.afterUpload(attachment, obj, pagesRest.jcrPath!!, pagesRest.attachmentsAccessChecker, listId)
   }
 
+  /**
+   * Streams the file directly from the repository. Supports http range requests and ETags (If-None-Match).
+   * The download access is checked before any conditional request is answered.
+   * @return null, because the file is written directly to the response.
+   */
   @GetMapping("download/{category}/{id}")
   fun download(
+    request: HttpServletRequest,
+    response: HttpServletResponse,
     @PathVariable("category", required = true) category: String,
     @PathVariable("id", required = true) id: Long,
     @RequestParam("fileId", required = true) fileId: String,
     @RequestParam("listId") listId: String?
-  )
-      : ResponseEntity<InputStreamResource> {
-
+  ): ResponseEntity<*>? {
     log.info { "User tries to download attachment: ${paramsToString(category, id, fileId, listId)}." }
     val pagesRest = getPagesRest(category, listId)
 
-    val result =
+    val attachment = attachmentsService.getAttachmentInfoForDownload(
+      pagesRest.jcrPath!!,
+      id,
+      fileId,
+      pagesRest.attachmentsAccessChecker,
+    ) ?: throw TechnicalException(
+      "File to download not accessible for user or not found: ${paramsToString(category, id, fileId, listId)}."
+    )
+    FileDownloadUtils.download(
+      request,
+      response,
+      filename = attachment.name ?: "file",
+      size = attachment.size,
+      checksum = attachment.checksum,
+    ) { startPosition ->
       attachmentsService.getAttachmentInputStream(
         pagesRest.jcrPath!!,
         id,
         fileId,
         pagesRest.attachmentsAccessChecker,
         baseDao = pagesRest.baseDao,
-      )
-        ?: throw TechnicalException(
-          "File to download not accessible for user or not found: ${
-            paramsToString(
-              category,
-              id,
-              fileId,
-              listId
-            )
-          }."
-        )
-    val filename = result.first.fileName ?: "file"
-    val inputStream = result.second
-    return RestUtils.downloadFile(filename, inputStream)
+        startPosition = startPosition,
+      )?.second
+    }
+    return null
   }
 
   /**
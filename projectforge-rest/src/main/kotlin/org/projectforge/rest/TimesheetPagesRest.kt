@@ -339,7 +339,7 @@ class TimesheetPagesRest : AbstractDTOPagesRest<TimesheetDO, Timesheet, Timeshee
         layout.add(descriptionArea)
         JiraSupport.createJiraElement(dto.description, descriptionArea)
             ?.let { layout.add(UIRow().add(UICol().add(it))) }
-        Favorites.addTranslations(layout.translations)
+        layout.addTranslations(*Favorites.TRANSLATION_KEYS)
         layout.addAction(
             UIButton.createSecondaryButton(
                 id = "switch",
@@ -0,0 +1,113 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.rest
+
+import org.projectforge.framework.i18n.I18nHelper
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.projectforge.rest.config.Rest
+import org.projectforge.ui.UILayout
+import org.springframework.http.CacheControl
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.RequestHeader
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
+import org.springframework.web.bind.annotation.RestController
+import java.util.concurrent.TimeUnit
+
+/**
+ * Provides all translations of the logged-in user's locale as one versioned bundle. The version (also given by
+ * [org.projectforge.ui.UILayout.translationsVersion] and the user status) is used as strong ETag, so clients may
+ * cache the bundle and send the version as header [TRANSLATIONS_VERSION_HEADER] on layout requests: the layouts
+ * will then neither resolve nor contain the translations being part of the bundle.
+ */
+@RestController
+@RequestMapping("${Rest.URL}/translations")
+class TranslationsRest {
+  class TranslationsBundle(
+    val locale: String,
+    val version: String,
+    val translations: Map<String, String>,
+  )
+
+  /**
+   * @param version If given and equal to the current version, the bundle may be cached by the client forever
+   * (immutable), otherwise the client has to revalidate the bundle by its ETag.
+   */
+  @GetMapping
+  fun getTranslations(
+    @RequestParam("version", required = false) version: String?,
+    @RequestHeader(HttpHeaders.IF_NONE_MATCH, required = false) ifNoneMatch: String?,
+  ): ResponseEntity<TranslationsBundle> {
+    val locale = ThreadLocalUserContext.locale
+    val currentVersion = I18nHelper.getTranslationsVersion(locale)
+    val eTag = "\"$currentVersion\""
+    val cacheControl = if (version == currentVersion) {
+      CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable()
+    } else {
+      CacheControl.noCache().cachePrivate()
+    }
+    if (ifNoneMatch != null && ifNoneMatch.split(',').any { it.trim().removePrefix("W/") == eTag }) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(cacheControl).build()
+    }
+    val bundle = TranslationsBundle(
+      locale = ThreadLocalUserContext.localeAsString,
+      version = currentVersion,
+      translations = I18nHelper.getAllTranslations(locale),
+    )
+    return ResponseEntity.ok().eTag(eTag).cacheControl(cacheControl).body(bundle)
+  }
+
+  companion object {
+    /**
+     * Header sent by clients with the version of their cached translations bundle.
+     */
+    const val TRANSLATIONS_VERSION_HEADER = "X-Translations-Version"
+
+    /**
+     * @param clientVersion The version of the client's cached translations bundle (header [TRANSLATIONS_VERSION_HEADER]).
+     * @return true, if the client's bundle is the current one of the logged-in user's locale.
+     */
+    fun isCurrentVersion(clientVersion: String?): Boolean {
+      clientVersion ?: return false
+      return clientVersion == I18nHelper.getTranslationsVersion(ThreadLocalUserContext.locale)
+    }
+
+    /**
+     * Runs the given block (request processing) with layouts omitting the translations of the bundle, if the client
+     * has the current bundle (see [UILayout.omitBundleTranslations]).
+     */
+    fun <T> withClientTranslationsVersion(clientVersion: String?, block: () -> T): T {
+      UILayout.clientHasCurrentTranslations.set(isCurrentVersion(clientVersion))
+      try {
+        return block()
+      } finally {
+        UILayout.clientHasCurrentTranslations.remove()
+      }
+    }
+  }
+}
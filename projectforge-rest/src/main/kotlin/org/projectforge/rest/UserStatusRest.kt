@@ -29,6 +29,7 @@ import org.projectforge.SystemAlertMessage
 import org.projectforge.business.fibu.EmployeeDao
 import org.projectforge.business.user.UserLocale
 import org.projectforge.common.DateFormatType
+import org.projectforge.framework.i18n.I18nHelper
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.time.DateFormats
 import org.projectforge.framework.time.PFDateCompatibilityUtils
@@ -84,6 +85,10 @@ open class UserStatusRest {
     var currency: String? = Constants.CURRENCY_SYMBOL,
     var thousandSeparator: Char? = null,
     var decimalSeparator: Char? = null,
+    /**
+     * Version of the translations bundle of the user's locale, see [TranslationsRest].
+     */
+    var translationsVersion: String? = null,
   ) {
     /**
      * 0 - Sunday, 1 - Monday, ...
@@ -135,6 +140,7 @@ open class UserStatusRest {
       firstDayOfWeek = firstDayOfWeek,
       thousandSeparator = DecimalFormatSymbols(UserLocale.determineUserLocale()).groupingSeparator,
       decimalSeparator = DecimalFormatSymbols(UserLocale.determineUserLocale()).decimalSeparator,
+      translationsVersion = I18nHelper.getTranslationsVersion(ThreadLocalUserContext.locale),
 
       )
     userData.jsDateFormat = convertToJavascriptFormat(userData.dateFormat)
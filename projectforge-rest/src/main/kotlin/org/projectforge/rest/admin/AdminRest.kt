@@ -23,20 +23,29 @@
 
 package org.projectforge.rest.admin
 
+import mu.KotlinLogging
 import org.projectforge.business.user.UserXmlPreferencesDO
 import org.projectforge.business.user.UserXmlPreferencesDao
 import org.projectforge.framework.access.AccessChecker
+import org.projectforge.framework.i18n.I18nHelper
+import org.projectforge.framework.jobs.JobHandler
 import org.projectforge.framework.json.JsonUtils
+import org.projectforge.framework.persistence.search.HibernateSearchReindexer
+import org.projectforge.framework.persistence.search.ReindexJob
+import org.projectforge.framework.persistence.search.ReindexProgress
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.projectforge.framework.utils.GZIPHelper
 import org.projectforge.rest.config.Rest
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
 
+private val log = KotlinLogging.logger {}
 
 @RestController
 @RequestMapping("${Rest.URL}/admin")
@@ -44,6 +53,12 @@ class AdminRest() {
     @Autowired
     private lateinit var accessChecker: AccessChecker
 
+    @Autowired
+    private lateinit var hibernateSearchReindexer: HibernateSearchReindexer
+
+    @Autowired
+    private lateinit var jobHandler: JobHandler
+
     @Autowired
     private lateinit var userXmlPreferencesDao: UserXmlPreferencesDao
 
@@ -59,6 +74,37 @@ class AdminRest() {
         val result = userXmlPreferencesDao.deserialize(userPref)
         return JsonUtils.toJson(result)
     }
+
+    /**
+     * @return The per-entity progress of the current (or last) full re-index run of the search indices.
+     */
+    @GetMapping("reindex/progress")
+    fun getReindexProgress(): List<ReindexProgress> {
+        accessChecker.checkIsLoggedInUserMemberOfAdminGroup()
+        return hibernateSearchReindexer.progressList
+    }
+
+    /**
+     * Starts a full re-index run of the search indices as background job (may be monitored and cancelled in the jobs
+     * monitor).
+     * @param resume If true, an interrupted run will be resumed (already indexed entities and chunks are skipped).
+     */
+    @PostMapping("reindex/start")
+    fun startReindex(@RequestParam("resume", required = false) resume: Boolean?): List<ReindexProgress> {
+        accessChecker.checkIsLoggedInUserMemberOfAdminGroup()
+        log.info { "Admin starts re-indexing of all search indices (resume=${resume == true})." }
+        jobHandler.addJob(ReindexJob(hibernateSearchReindexer, resume == true))
+        return hibernateSearchReindexer.progressList
+    }
+
+    /**
+     * Reloads all i18n resource bundles (useful in development mode after modifying properties files).
+     */
+    @PostMapping("i18n/reload")
+    fun reloadI18n() {
+        accessChecker.checkIsLoggedInUserMemberOfAdminGroup()
+        I18nHelper.reload()
+    }
 }
 
 /**
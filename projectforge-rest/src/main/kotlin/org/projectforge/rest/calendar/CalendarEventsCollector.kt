@@ -0,0 +1,164 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.rest.calendar
+
+import jakarta.annotation.PostConstruct
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.*
+import kotlinx.coroutines.slf4j.MDCContext
+import mu.KotlinLogging
+import org.projectforge.business.admin.SystemStatistics
+import org.projectforge.business.admin.SystemStatisticsData
+import org.projectforge.business.admin.SystemsStatisticsBuilderInterface
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Service
+import java.util.concurrent.atomic.AtomicLong
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Collects the events of all calendar event sources (time sheets, team calendars, birthdays, vacations, holidays)
+ * concurrently. Every source has a time budget, sources exceeding it are omitted and reported as late, so a slow source
+ * (e.g. an external subscription calendar) doesn't hold up the whole calendar view. Late sources are cancelled (their
+ * threads are interrupted, so blocking waits are aborted), but their latency is still recorded.
+ *
+ * The latencies of the sources are part of the system statistics.
+ */
+@Service
+class CalendarEventsCollector : SystemsStatisticsBuilderInterface {
+    enum class Source { TIMESHEETS, TEAMCALENDARS, BIRTHDAYS, VACATIONS, HOLIDAYS }
+
+    /**
+     * @param missingSources The sources which were late or failed.
+     */
+    class Result(val events: List<FullCalendarEvent>, val missingSources: List<Source>)
+
+    private class SourceStatistics {
+        val count = AtomicLong()
+        val totalMillis = AtomicLong()
+        val maxMillis = AtomicLong()
+        val late = AtomicLong()
+        val failed = AtomicLong()
+
+        override fun toString(): String {
+            val count = count.get()
+            val avg = if (count > 0) totalMillis.get() / count else 0
+            return "calls=$count, avg=${avg}ms, max=${maxMillis.get()}ms, late=${late.get()}, failed=${failed.get()}"
+        }
+    }
+
+    @Autowired
+    private lateinit var systemStatistics: SystemStatistics
+
+    /**
+     * The time budget of every source.
+     */
+    @Value("\${projectforge.calendar.sourceTimeoutMillis:5000}")
+    internal var sourceTimeoutMillis: Long = 5000
+
+    private val statistics = Source.entries.associateWith { SourceStatistics() }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    @PostConstruct
+    private fun postConstruct() {
+        systemStatistics.registerStatisticsBuilder(this)
+    }
+
+    @PreDestroy
+    private fun shutdown() {
+        scope.cancel()
+    }
+
+    /**
+     * Runs the given sources concurrently (with the user context of the calling thread).
+     * @param sources Every source adds its events to the given list.
+     * @return The events of all sources in the order of the given sources (events of late or failed sources are missing).
+     */
+    fun collect(sources: List<Pair<Source, (MutableList<FullCalendarEvent>) -> Unit>>): Result {
+        var context = MDCContext() + ThreadLocalUserContext.getLocaleAsContextElement(ThreadLocalUserContext.locale)
+        ThreadLocalUserContext.userContext?.let { context += ThreadLocalUserContext.getUserAsContextElement(it) }
+        val startMillis = System.currentTimeMillis()
+        val deferreds = sources.map { (source, provider) ->
+            source to scope.async(context) {
+                val events = mutableListOf<FullCalendarEvent>()
+                try {
+                    // Interruptible, so the blocking provider is interrupted if cancelled after the time budget:
+                    runInterruptible { provider(events) }
+                    events
+                } catch (ex: Exception) {
+                    if (!isActive) {
+                        log.info { "Getting calendar events of source $source cancelled: ${ex.message}" }
+                    } else {
+                        log.error(ex) { "Error while getting calendar events of source $source: ${ex.message}" }
+                        statistics[source]!!.failed.incrementAndGet()
+                    }
+                    null
+                } finally {
+                    record(source, System.currentTimeMillis() - startMillis)
+                }
+            }
+        }
+        val events = mutableListOf<FullCalendarEvent>()
+        val missingSources = mutableListOf<Source>()
+        runBlocking {
+            deferreds.forEach { (source, deferred) ->
+                val remaining = startMillis + sourceTimeoutMillis - System.currentTimeMillis()
+                val result = withTimeoutOrNull(maxOf(remaining, 1)) { deferred.await() }
+                if (result != null) {
+                    events.addAll(result)
+                } else {
+                    if (deferred.isActive) {
+                        log.warn { "Calendar events of source $source not available within ${sourceTimeoutMillis}ms, omitting them." }
+                        statistics[source]!!.late.incrementAndGet()
+                        deferred.cancel() // Don't hold threads and db connections for a discarded result.
+                    }
+                    missingSources.add(source)
+                }
+            }
+        }
+        return Result(events, missingSources)
+    }
+
+    private fun record(source: Source, millis: Long) {
+        val stats = statistics[source]!!
+        stats.count.incrementAndGet()
+        stats.totalMillis.addAndGet(millis)
+        stats.maxMillis.accumulateAndGet(millis) { a, b -> maxOf(a, b) }
+        log.debug { "Calendar events of source $source got in ${millis}ms." }
+    }
+
+    override fun addStatisticsEntries(stats: SystemStatisticsData) {
+        statistics.forEach { (source, sourceStatistics) ->
+            stats.add(
+                "calendarSource${source.name}",
+                "calendar",
+                "'Calendar events source ${source.name.lowercase()}",
+                sourceStatistics.toString(),
+            )
+        }
+    }
+}
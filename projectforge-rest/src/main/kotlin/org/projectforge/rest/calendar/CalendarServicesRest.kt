@@ -66,6 +66,11 @@ class CalendarServicesRest {
         val date: LocalDate,
         val alternateHoursBackground: Boolean?,
         @Suppress("unused") val events: List<FullCalendarEvent>,
+        /**
+         * True, if the events of any source are missing (source was late or failed).
+         */
+        @Suppress("unused") val incomplete: Boolean = false,
+        @Suppress("unused") val missingSources: List<CalendarEventsCollector.Source>? = null,
     )
 
     class CalendarState(
@@ -92,6 +97,9 @@ class CalendarServicesRest {
     @Autowired
     private lateinit var teamCalEventsProvider: TeamCalEventsProvider
 
+    @Autowired
+    private lateinit var calendarEventsCollector: CalendarEventsCollector
+
     @Autowired
     private lateinit var calendarFilterServicesRest: CalendarFilterServicesRest
 
@@ -259,21 +267,14 @@ class CalendarServicesRest {
     }
 
     private fun buildEvents(filter: CalendarRestFilter): CalendarData { //startParam: PFDateTime? = null, endParam: PFDateTime? = null, viewParam: CalendarViewType? = null): Response {
-        val events = mutableListOf<FullCalendarEvent>()
         val range = DateTimeRange(
             PFDateTime.fromOrNow(filter.start),
             PFDateTime.fromOrNull(filter.end)
         )
         adjustRange(range)
+        val start = range.start
+        val end = range.end!!
         val settings = calendarSettingsService.getSettings()
-        timesheetsProvider.addTimesheetEvents(
-            range.start,
-            range.end!!,
-            filter.timesheetUserId,
-            events,
-            settings,
-            showBreaks = filter.showBreaks
-        )
         var visibleCalendarIds = filter.activeCalendarIds
         if (filter.useVisibilityState == true && !visibleCalendarIds.isNullOrEmpty()) {
             val currentFilter = getCurrentFilter(userPrefService)
@@ -289,41 +290,63 @@ class CalendarServicesRest {
         }
         val visibleTeamCalendarIds =
             visibleCalendarIds?.filter { it != null && it >= 0 } // calendars with id < 0 are pseudo calendars (such as birthdays etc.)
-        val calendarSettings = calendarSettingsService.getSettings()
-        teamCalEventsProvider.addEvents(
-            range.start,
-            range.end!!,
-            events,
-            visibleTeamCalendarIds,
-            calendarFilterServicesRest.getStyleMap(),
-            settings,
-        )
-
+        // User preferences are read here (not by the concurrent event sources):
+        val styleMap = calendarFilterServicesRest.getStyleMap()
+        val sources = mutableListOf<Pair<CalendarEventsCollector.Source, (MutableList<FullCalendarEvent>) -> Unit>>()
+        sources.add(CalendarEventsCollector.Source.TIMESHEETS to { events ->
+            timesheetsProvider.addTimesheetEvents(
+                start,
+                end,
+                filter.timesheetUserId,
+                events,
+                settings,
+                showBreaks = filter.showBreaks
+            )
+        })
+        sources.add(CalendarEventsCollector.Source.TEAMCALENDARS to { events ->
+            teamCalEventsProvider.addEvents(start, end, events, visibleTeamCalendarIds, styleMap, settings)
+        })
         val showFavoritesBirthdays = visibleCalendarIds?.contains(TeamCalendar.BIRTHDAYS_FAVS_CAL_ID) ?: false
         val showAllBirthdays = visibleCalendarIds?.contains(TeamCalendar.BIRTHDAYS_ALL_CAL_ID) ?: false
         if (showAllBirthdays || showFavoritesBirthdays) {
-            BirthdaysProvider.addEvents(
-                addressDao, range.start, range.end!!, events, calendarFilterServicesRest.getStyleMap(),
-                calendarSettings,
-                showFavoritesBirthdays,
-                showAllBirthdays,
-                !accessChecker.isLoggedInUserMemberOfGroup(
-                    ProjectForgeGroup.FINANCE_GROUP,
-                    ProjectForgeGroup.HR_GROUP,
-                    ProjectForgeGroup.ORGA_TEAM
-                )
+            val dataProtection = !accessChecker.isLoggedInUserMemberOfGroup(
+                ProjectForgeGroup.FINANCE_GROUP,
+                ProjectForgeGroup.HR_GROUP,
+                ProjectForgeGroup.ORGA_TEAM
             )
+            sources.add(CalendarEventsCollector.Source.BIRTHDAYS to { events ->
+                BirthdaysProvider.addEvents(
+                    addressDao, start, end, events, styleMap,
+                    settings,
+                    showFavoritesBirthdays,
+                    showAllBirthdays,
+                    dataProtection,
+                )
+            })
         }
-        vacationProvider.addEvents(
-            range.start,
-            range.end!!,
-            events,
-            filter.vacationGroupIds,
-            filter.vacationUserIds,
-            settings,
+        sources.add(CalendarEventsCollector.Source.VACATIONS to { events ->
+            vacationProvider.addEvents(start, end, events, filter.vacationGroupIds, filter.vacationUserIds, settings)
+        })
+        sources.add(CalendarEventsCollector.Source.HOLIDAYS to { events ->
+            addHolidayEvents(start, end, events, settings)
+        })
+        val result = calendarEventsCollector.collect(sources)
+        return CalendarData(
+            range.start.localDate,
+            settings.alternateHoursBackground,
+            result.events,
+            incomplete = result.missingSources.isNotEmpty(),
+            missingSources = result.missingSources.takeIf { it.isNotEmpty() },
         )
+    }
 
-        val specialDays = HolidayAndWeekendProvider.getSpecialDayInfos(range.start, range.end!!)
+    private fun addHolidayEvents(
+        start: PFDateTime,
+        end: PFDateTime,
+        events: MutableList<FullCalendarEvent>,
+        calendarSettings: CalendarSettings,
+    ) {
+        val specialDays = HolidayAndWeekendProvider.getSpecialDayInfos(start, end)
         specialDays.forEach { specialDay ->
             if (specialDay.holidayTitle.isNotBlank()) {
                 // Show allday entry with title:
@@ -345,11 +368,6 @@ class CalendarServicesRest {
                 )
             }
         }
-        return CalendarData(
-            range.start.localDate,
-            calendarSettingsService.getSettings().alternateHoursBackground,
-            events
-        )
     }
 
     /**
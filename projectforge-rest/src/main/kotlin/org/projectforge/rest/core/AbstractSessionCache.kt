@@ -27,12 +27,21 @@ import mu.KotlinLogging
 import org.projectforge.framework.cache.AbstractCache
 import org.projectforge.rest.utils.RequestLog
 import jakarta.servlet.http.HttpServletRequest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
 
 private val log = KotlinLogging.logger {}
 
 /**
  * Caches the session id's of the clients (for up to 5 Minutes). Every 10 Minutes, expired sessions will be removed.
  * The session id is the http session id.
+ *
+ * The entries are held in a concurrent map, so readers and writers don't block each other. The sweep of expired
+ * entries is done by the thread of the first request after the clear interval, without blocking other requests.
+ * If the number of entries exceeds [maxSize], expired and then least recently used entries are evicted in one batch
+ * down to a low-water mark (90% of [maxSize]) by a single thread, so the eviction isn't done on every registration.
  */
 abstract class AbstractSessionCache<T : Any>(
   /**
@@ -46,11 +55,18 @@ abstract class AbstractSessionCache<T : Any>(
   /**
    * For logging purposes.
    */
-  val sessionType: String = "Http session id"
+  val sessionType: String = "Http session id",
+  /**
+   * Maximum number of entries.
+   */
+  val maxSize: Int = DEFAULT_MAX_SIZE,
 ) : AbstractCache(clearEntriesIntervalInMillis) {
 
   class Entry<T : Any>(val sessionId: String, data: T) {
+    @Volatile
     var lastAccess: Long = System.currentTimeMillis()
+
+    @Volatile
     internal var _data = data
     val data: T
       get() {
@@ -59,22 +75,33 @@ abstract class AbstractSessionCache<T : Any>(
       }
   }
 
-  protected val cache = mutableListOf<Entry<T>>()
+  /**
+   * Hits, misses and evictions since start.
+   */
+  data class Statistics(val size: Int, val hits: Long, val misses: Long, val evictions: Long)
+
+  protected val cache = ConcurrentHashMap<String, Entry<T>>()
+
+  private val hits = LongAdder()
+
+  private val misses = LongAdder()
+
+  private val evictions = LongAdder()
+
+  private val nextSweep = AtomicLong(System.currentTimeMillis() + clearEntriesIntervalInMillis)
+
+  private val evictionInProgress = AtomicBoolean(false)
+
+  private val lowWaterMark = maxSize - maxOf(1, maxSize / 10)
 
   val size: Int
-    get() {
-      synchronized(cache)
-      {
-        return cache.size
-      }
-    }
+    get() = cache.size
 
   val validSize: Int
-    get() {
-      synchronized(cache) {
-        return cache.filter { !isExpired(it) }.size
-      }
-    }
+    get() = cache.values.count { !isExpired(it) }
+
+  val statistics: Statistics
+    get() = Statistics(size = size, hits = hits.sum(), misses = misses.sum(), evictions = evictions.sum())
 
   fun registerSessionData(request: HttpServletRequest, data: T) {
     val sessionId = getSessionId(request) ?: return
@@ -86,29 +113,37 @@ abstract class AbstractSessionCache<T : Any>(
       log.info { "$storageId: $sessionType id to short. Usage denied: ${getTruncatedSessionId(sessionId)}" }
       return
     }
-    synchronized(cache) {
-      val entry = cache.find { it.sessionId == sessionId }
-      if (entry != null) {
-        entry._data = data
-        log.info {
-          "$storageId: $sessionType '${getTruncatedSessionId(sessionId)}' is re-used for entry ${
-            entryAsString(
-              data
-            )
-          }."
-        }
-        // last access is updated by call entry.user.
-      } else {
-        log.info {
-          "$storageId: Registering entry ${entryAsString(data)} by new $sessionType '${
-            getTruncatedSessionId(
-              sessionId
-            )
-          }'."
+    val entry = cache.putIfAbsent(sessionId, Entry(sessionId, data))
+    if (entry != null) {
+      entry._data = data
+      entry.lastAccess = System.currentTimeMillis()
+      log.info {
+        "$storageId: $sessionType '${getTruncatedSessionId(sessionId)}' is re-used for entry ${
+          entryAsString(
+            data
+          )
+        }."
+      }
+    } else {
+      log.info {
+        "$storageId: Registering entry ${entryAsString(data)} by new $sessionType '${
+          getTruncatedSessionId(
+            sessionId
+          )
+        }'."
+      }
+      if (cache.size > maxSize && evictionInProgress.compareAndSet(false, true)) {
+        // Only one thread evicts, concurrent registrants proceed without waiting.
+        try {
+          do {
+            evictOverflow()
+          } while (cache.size > maxSize) // Entries added meanwhile by concurrent registrants.
+        } finally {
+          evictionInProgress.set(false)
         }
-        cache.add(Entry(sessionId, data))
       }
     }
+    checkSweep()
   }
 
   open fun getTruncatedSessionId(sessionId: String?): String? {
@@ -125,29 +160,34 @@ abstract class AbstractSessionCache<T : Any>(
       log.info { "$storageId: $sessionType to short. Usage denied: ${getTruncatedSessionId(sessionId)}" }
       return null
     }
-    synchronized(cache) {
-      val entry = cache.find { it.sessionId == sessionId } ?: return null
-      if (isExpired(entry)) {
-        if (log.isDebugEnabled) {
-          log.debug {
-            "$storageId: Found expired session entry for $sessionType '${
-              getTruncatedSessionId(
-                sessionId
-              )
-            }'."
-          }
+    checkSweep()
+    val entry = cache[sessionId]
+    if (entry == null) {
+      misses.increment()
+      return null
+    }
+    if (isExpired(entry)) {
+      if (log.isDebugEnabled) {
+        log.debug {
+          "$storageId: Found expired session entry for $sessionType '${
+            getTruncatedSessionId(
+              sessionId
+            )
+          }'."
         }
-        return null
-      }
-      log.info {
-        "$storageId: Restore entry ${entryAsString(entry.data)} by $sessionType '${
-          getTruncatedSessionId(
-            sessionId
-          )
-        }'."
       }
-      return entry.data
+      misses.increment()
+      return null
+    }
+    hits.increment()
+    log.info {
+      "$storageId: Restore entry ${entryAsString(entry.data)} by $sessionType '${
+        getTruncatedSessionId(
+          sessionId
+        )
+      }'."
     }
+    return entry.data
   }
 
   protected open fun isExpired(entry: Entry<T>): Boolean {
@@ -170,11 +210,52 @@ abstract class AbstractSessionCache<T : Any>(
   private val storageId: String
     get() = this::class.java.simpleName
 
+  /**
+   * Runs the sweep of expired entries, if the clear interval is over. Only one thread wins the race, all others
+   * proceed without waiting.
+   */
+  private fun checkSweep() {
+    val now = System.currentTimeMillis()
+    val next = nextSweep.get()
+    if (now >= next && nextSweep.compareAndSet(next, now + expireTime)) {
+      refresh()
+    }
+  }
+
+  /**
+   * Removes expired entries and, if the cache is still above the low-water mark, the least recently used ones.
+   */
+  private fun evictOverflow() {
+    refresh()
+    val overflow = cache.size - lowWaterMark
+    if (overflow <= 0) {
+      return
+    }
+    cache.values.sortedBy { it.lastAccess }.take(overflow).forEach {
+      if (cache.remove(it.sessionId, it)) {
+        evictions.increment()
+      }
+    }
+    log.info { "$storageId: Maximum size $maxSize exceeded, $overflow least recently used entries evicted." }
+  }
+
+  /**
+   * Removes the expired entries. The map isn't locked, so concurrent readers and writers aren't blocked.
+   */
   override fun refresh() {
-    synchronized(cache) {
-      cache.removeIf {
-        isExpired(it)
+    var counter = 0
+    cache.values.forEach {
+      if (isExpired(it) && cache.remove(it.sessionId, it)) {
+        ++counter
       }
     }
+    if (counter > 0) {
+      evictions.add(counter.toLong())
+      log.info { "$storageId: $counter expired entries removed, ${statistics}." }
+    }
+  }
+
+  companion object {
+    const val DEFAULT_MAX_SIZE = 100_000
   }
 }
@@ -23,6 +23,7 @@
 
 package org.projectforge.rest.poll
 
+import jakarta.annotation.PreDestroy
 import org.projectforge.business.poll.PollDO
 import org.projectforge.business.poll.PollDao
 import org.projectforge.business.poll.PollResponseDao
@@ -39,6 +40,11 @@ import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 
 @RestController
 class PollCronJobs {
@@ -60,6 +66,19 @@ class PollCronJobs {
 
     private val log: Logger = LoggerFactory.getLogger(PollCronJobs::class.java)
 
+    /**
+     * Generates the Excel results and sends the result mails of finished polls in the background. The queue is
+     * bounded: polls not accepted are processed by the next run of [cronFinishPolls].
+     */
+    private val executor = ThreadPoolExecutor(
+        1, 1, 0L, TimeUnit.MILLISECONDS, ArrayBlockingQueue(MAX_QUEUED_POLLS),
+    ) { runnable -> Thread(runnable, "PollResultMailer").also { it.isDaemon = true } }
+
+    /**
+     * Ids of the polls queued or processed by the executor (avoids queueing a poll twice).
+     */
+    private val pollsInProcess = ConcurrentHashMap.newKeySet<Long>()
+
     /**
      * Cron job for daily stuff
      */
@@ -68,92 +87,140 @@ class PollCronJobs {
     fun dailyCronJobs() {
         log.info("Start daily cron jobs")
         cronDeletePolls()
-        cronEndPolls()
+        cronRemindAttendees()
     }
 
-
     /**
-     * Method to end polls after deadline
+     * Ends polls after deadline: sets [PollDO.State.FINISHED] and sends the results. Failed result mails are retried
+     * by the next runs (see [PollDO.resultMailAttempts]).
      */
-    private fun cronEndPolls() {
-        val pollDOs = pollDao.selectAllNotDeleted(checkAccess = false)
-        // set State.FINISHED for all old polls and export excel
-        pollDOs.forEach { pollDO ->
-            // try to send mail until successfully changed to FINISHED_AND_MAIL_SENT
-            if (pollDO.state != PollDO.State.FINISHED_AND_MAIL_SENT) {
-                if (pollDO.deadline?.isBefore(LocalDate.now()) == true) {
-                    pollDO.state = PollDO.State.FINISHED
-
+    @Scheduled(cron = "0 15 * * * *")
+    fun cronFinishPolls() {
+        val polls = pollDao.selectPollsToFinish(LocalDate.now(), LocalDateTime.now(), MAX_RESULT_MAIL_ATTEMPTS)
+        polls.forEach { pollDO ->
+            val pollId = pollDO.id ?: return@forEach
+            if (!pollsInProcess.add(pollId)) {
+                return@forEach // Already queued.
+            }
+            try {
+                executor.execute {
                     try {
-                        val poll = Poll()
-                        poll.copyFrom(pollDO)
-
-                        val excel = exporter.getExcel(poll)
-
-                        val mailAttachment = object : MailAttachment {
-                            override fun getFilename(): String {
-                                return "${pollDO.title}_${LocalDateTime.now().year}_Result.xlsx"
-                            }
-
-                            override fun getContent(): ByteArray? {
-                                return excel
-                            }
-                        }
-                        val owner = userService.getUser(poll.owner?.id)
-                        val mailTo = pollMailService.getAllAttendeesEmails(poll)
-                        val mailFrom = pollDO.owner?.email.toString()
-                        val mailSubject = translateMsg("poll.mail.endedafterdeadline.subject", poll.title)
-                        val mailContent = translateMsg("poll.mail.endedafterdeadline.content", pollDO.title, owner?.displayName, )
-
-                        pollMailService.sendMail(mailFrom, mailTo, mailContent, mailSubject, listOf(mailAttachment))
-                        pollDO.state = PollDO.State.FINISHED_AND_MAIL_SENT
-                        log.info("Set state of poll (${pollDO.id}) ${pollDO.title} to FINISHED_AND_MAIL_SENT")
-                        pollDao.insertOrUpdate(pollDO, checkAccess = false)
-                    } catch (e: Exception) {
-                        log.error(e.message, e)
+                        finishPoll(pollDO)
+                    } finally {
+                        pollsInProcess.remove(pollId)
                     }
                 }
+            } catch (ex: RejectedExecutionException) {
+                pollsInProcess.remove(pollId)
+                log.info("Queue of poll result mails is full, poll ($pollId) will be processed by next run.")
             }
         }
+    }
 
-        val pollsInFuture = pollDOs.filter { it.deadline?.isAfter(LocalDate.now()) ?: false }
-        pollsInFuture.forEach { pollDO ->
+    private fun finishPoll(pollDO: PollDO) {
+        pollDO.state = PollDO.State.FINISHED
+        var sent = false
+        try {
             val poll = Poll()
             poll.copyFrom(pollDO)
-            val daysDifference = ChronoUnit.DAYS.between(LocalDate.now(), pollDO.deadline)
-            if (daysDifference == 1L || daysDifference == 7L) {
-                // add all attendees mails
-                val mailTo = pollMailService.getAllAttendeesEmails(poll)
-                val mailFrom = pollDO.owner?.email.toString()
-                val mailSubject = translateMsg("poll.mail.endingSoon.subject", daysDifference)
-                val mailContent = translateMsg(
-                    "poll.mail.endingSoon.content",
-                    pollDO.title,
-                    pollDO.owner?.displayName,
-                    pollDO.deadline?.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")).toString(),
-                    pollDO.id.toString(),
-                )
-                pollMailService.sendMail(mailFrom, mailTo, mailSubject, mailContent)
+            val mailTo = pollMailService.getAllAttendeesEmails(poll)
+            if (mailTo.isEmpty()) {
+                log.info("No attendees with mail addresses for poll (${pollDO.id}) ${pollDO.title}, no result mail sent.")
+                sent = true
+            } else {
+                val excel = exporter.getExcel(poll)
+
+                val mailAttachment = object : MailAttachment {
+                    override fun getFilename(): String {
+                        return "${pollDO.title}_${LocalDateTime.now().year}_Result.xlsx"
+                    }
+
+                    override fun getContent(): ByteArray? {
+                        return excel
+                    }
+                }
+                val owner = userService.getUser(poll.owner?.id)
+                val mailFrom = owner?.email.toString()
+                val mailSubject = translateMsg("poll.mail.endedafterdeadline.subject", poll.title)
+                val mailContent = translateMsg("poll.mail.endedafterdeadline.content", pollDO.title, owner?.displayName)
+
+                sent = pollMailService.sendMail(mailFrom, mailTo, mailSubject, mailContent, listOf(mailAttachment))
+            }
+        } catch (e: Exception) {
+            log.error("Error while sending result mail of poll (${pollDO.id}) ${pollDO.title}: ${e.message}", e)
+        }
+        if (sent) {
+            pollDO.state = PollDO.State.FINISHED_AND_MAIL_SENT
+            pollDO.resultMailNextAttempt = null
+            log.info("Set state of poll (${pollDO.id}) ${pollDO.title} to FINISHED_AND_MAIL_SENT")
+        } else {
+            val attempts = (pollDO.resultMailAttempts ?: 0) + 1
+            pollDO.resultMailAttempts = attempts
+            if (attempts >= MAX_RESULT_MAIL_ATTEMPTS) {
+                log.error("Giving up sending result mail of poll (${pollDO.id}) ${pollDO.title} after $attempts attempts.")
+            } else {
+                // Retry after 1, 2, 4, ... hours.
+                pollDO.resultMailNextAttempt = LocalDateTime.now().plusHours(1L shl (attempts - 1))
             }
         }
+        try {
+            pollDao.insertOrUpdate(pollDO, checkAccess = false)
+        } catch (e: Exception) {
+            log.error("Error while saving state of poll (${pollDO.id}) ${pollDO.title}: ${e.message}", e)
+        }
+    }
+
+    /**
+     * Reminds the attendees of polls ending in 1 or 7 days.
+     */
+    private fun cronRemindAttendees() {
+        val today = LocalDate.now()
+        pollDao.selectPollsByDeadlines(REMINDER_DAYS.map { today.plusDays(it) }).forEach { pollDO ->
+            val poll = Poll()
+            poll.copyFrom(pollDO)
+            val daysDifference = ChronoUnit.DAYS.between(today, pollDO.deadline)
+            // add all attendees mails
+            val mailTo = pollMailService.getAllAttendeesEmails(poll)
+            val owner = userService.getUser(pollDO.owner?.id)
+            val mailFrom = owner?.email.toString()
+            val mailSubject = translateMsg("poll.mail.endingSoon.subject", daysDifference)
+            val mailContent = translateMsg(
+                "poll.mail.endingSoon.content",
+                pollDO.title,
+                owner?.displayName,
+                pollDO.deadline?.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")).toString(),
+                pollDO.id.toString(),
+            )
+            pollMailService.sendMail(mailFrom, mailTo, mailSubject, mailContent)
+        }
     }
 
     /**
-     * Method to delete old polls
+     * Method to delete old polls: the responses of all polls with deadline more than one year ago are marked as
+     * deleted by one statement.
      */
     private fun cronDeletePolls() {
-        val polls = pollDao.selectAll(checkAccess = false)
-        val pollsMoreThanOneYearPast = polls.filter {
-            it.deadline?.isBefore(LocalDate.now().minusYears(1)) == true
+        val polls = pollDao.selectPollsWithDeadlineBefore(LocalDate.now().minusYears(1))
+        if (polls.isEmpty()) {
+            return
         }
-        pollsMoreThanOneYearPast.forEach { poll ->
-            val pollResponses = pollResponseDao.selectAll(checkAccess = false).filter { response ->
-                response.poll?.id == poll.id
-            }
-            pollResponses.forEach {
-                pollResponseDao.markAsDeleted(it, checkAccess = false)
-            }
+        val counter = pollResponseDao.markAsDeletedByPollIds(polls.mapNotNull { it.id })
+        polls.forEach { poll ->
             pollDao.markAsDeleted(poll, checkAccess = false)
         }
+        log.info("${polls.size} polls and $counter poll responses with deadline more than one year ago marked as deleted.")
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdownNow()
+    }
+
+    companion object {
+        private const val MAX_RESULT_MAIL_ATTEMPTS = 5
+
+        private const val MAX_QUEUED_POLLS = 100
+
+        private val REMINDER_DAYS = listOf(1L, 7L)
     }
-}
\ No newline at end of file
+}
@@ -44,13 +44,16 @@ class PollMailService {
     @Autowired
     private lateinit var groupService: GroupService
 
+    /**
+     * @return true, if the mail was sent (or queued for sending), otherwise false.
+     */
     fun sendMail(
         from: String,
         to: List<String>,
         subject: String,
         content: String,
         mailAttachments: List<MailAttachment>? = null
-    ) {
+    ): Boolean {
         try {
             if (content.isNotEmpty() && to.isNotEmpty()) {
                 val mail = Mail()
@@ -59,14 +62,19 @@ class PollMailService {
                 mail.content = content
                 mail.from = from
                 to.forEach { mail.addTo(it) }
-                sendMail.send(mail, attachments = mailAttachments)
+                if (!sendMail.send(mail, attachments = mailAttachments)) {
+                    log.error("Mail with subject $subject couldn't be sent to $to")
+                    return false
+                }
                 log.info("Mail with subject $subject sent to $to")
+                return true
             } else {
                 log.error("There are missing parameters for sending mail: from: $from, to: $to, subject: $subject, content: $content")
             }
         } catch (e: Exception) {
             log.error(e.message, e)
         }
+        return false
     }
 
     fun getAllMails(poll: Poll): List<String> {
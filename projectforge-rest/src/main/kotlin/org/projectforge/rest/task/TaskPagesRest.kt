@@ -80,7 +80,7 @@ class TaskPagesRest
         val layout = super.createEditLayout(dto, userAccess)
                 .add(lc, "parentTask", "title", "status", "priority", "responsibleUser", "shortDescription", "reference", "description")
         layout.add(UIRow().add(UICol().add(UIInput("protectTimesheetsUntil", lc, dataType = UIDataType.DATE))))
-        Favorites.addTranslations(layout.translations)
+        layout.addTranslations(*Favorites.TRANSLATION_KEYS)
         return LayoutUtils.processEditPage(layout, dto, this)
     }
 }
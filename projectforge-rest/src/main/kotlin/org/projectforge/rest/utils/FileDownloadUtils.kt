@@ -0,0 +1,182 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.rest.utils
+
+import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
+import mu.KotlinLogging
+import org.projectforge.rest.config.RestUtils
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Streams files (e. g. attachments of the JCR repository) directly to the http response with constant memory usage.
+ * Supports single http range requests (resuming of interrupted downloads) as well as conditional requests
+ * (If-None-Match and If-Range) by using the stored checksum of the file as strong ETag.
+ */
+object FileDownloadUtils {
+  /**
+   * @param size The size of the file. If not given, ranges aren't supported.
+   * @param checksum The stored checksum of the file (e. g. "SHA256: 1234..."), used as ETag.
+   * @param openStream Opens the content, skipping the given number of bytes. Returns null, if the file isn't available.
+   * @return false, if the file wasn't found (status 404 is set), otherwise true.
+   */
+  fun download(
+    request: HttpServletRequest,
+    response: HttpServletResponse,
+    filename: String,
+    size: Long?,
+    checksum: String?,
+    openStream: (startPosition: Long) -> InputStream?,
+  ): Boolean {
+    val eTag = getETag(checksum)
+    if (eTag != null) {
+      response.setHeader(HttpHeaders.ETAG, eTag)
+      if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+        response.status = HttpServletResponse.SC_NOT_MODIFIED
+        return true
+      }
+    }
+    var requestedRange: LongRange? = null
+    if (size != null) {
+      response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes")
+      val rangeHeader = request.getHeader(HttpHeaders.RANGE)
+      val ifRange = request.getHeader(HttpHeaders.IF_RANGE)
+      if (rangeHeader != null && (ifRange == null || (eTag != null && ifRange == eTag))) {
+        val range = parseRange(rangeHeader, size)
+        if (range?.isEmpty() == true) {
+          log.info { "Unsatisfiable range '$rangeHeader' requested for file '$filename' of size $size." }
+          response.status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+          response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */$size")
+          return true
+        }
+        if (range != null && (range.first > 0L || range.last < size - 1)) {
+          requestedRange = range // Otherwise, the whole file is requested.
+        }
+      }
+    }
+    val range = requestedRange
+    val inputStream = openStream(range?.first ?: 0L)
+    if (inputStream == null) {
+      response.status = HttpServletResponse.SC_NOT_FOUND
+      return false
+    }
+    inputStream.use { istream ->
+      response.contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE
+      RestUtils.setContentDisposition(response, filename)
+      val length = if (range != null) {
+        response.status = HttpServletResponse.SC_PARTIAL_CONTENT
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes ${range.first}-${range.last}/$size")
+        range.last - range.first + 1
+      } else {
+        response.status = HttpServletResponse.SC_OK
+        size
+      }
+      length?.let { response.setContentLengthLong(it) }
+      try {
+        copy(istream, response.outputStream, length)
+        response.outputStream.flush()
+      } catch (ex: IOException) {
+        // Mostly: connection closed by the client (download canceled).
+        log.info { "Download of '$filename' aborted: ${ex.message}" }
+      }
+    }
+    return true
+  }
+
+  /**
+   * @return The checksum as strong ETag (without algorithm prefix) or null, if no checksum is given.
+   */
+  fun getETag(checksum: String?): String? {
+    val value = checksum?.substringAfter(':')?.trim()
+    if (value.isNullOrBlank() || !value.all { it.isLetterOrDigit() }) {
+      return null
+    }
+    return "\"$value\""
+  }
+
+  /**
+   * Parses a single byte range of a http range header, e. g. "bytes=0-499", "bytes=500-" or "bytes=-500" (last 500 bytes).
+   * Multiple ranges aren't supported, the whole file is returned instead (as allowed by RFC 7233).
+   * @return The range of bytes (last byte inclusive), [LongRange.EMPTY] if the range isn't satisfiable or null, if
+   * the header should be ignored (invalid or multiple ranges).
+   */
+  internal fun parseRange(rangeHeader: String, size: Long): LongRange? {
+    val spec = rangeHeader.trim()
+    if (!spec.startsWith("bytes=") || spec.contains(',')) {
+      return null
+    }
+    val fromTo = spec.removePrefix("bytes=").split('-')
+    if (fromTo.size != 2) {
+      return null
+    }
+    val from = fromTo[0].trim()
+    val to = fromTo[1].trim()
+    if (from.isEmpty()) {
+      // Suffix range: last n bytes.
+      val suffixLength = to.toLongOrNull() ?: return null
+      if (suffixLength <= 0 || size == 0L) {
+        return LongRange.EMPTY
+      }
+      return maxOf(0L, size - suffixLength)..(size - 1)
+    }
+    val start = from.toLongOrNull() ?: return null
+    val end = if (to.isEmpty()) size - 1 else (to.toLongOrNull() ?: return null)
+    if (start < 0 || end < start) {
+      return null
+    }
+    if (start >= size) {
+      return LongRange.EMPTY
+    }
+    return start..minOf(end, size - 1)
+  }
+
+  private fun matches(ifNoneMatch: String?, eTag: String): Boolean {
+    ifNoneMatch ?: return false
+    return ifNoneMatch.split(',').any {
+      val value = it.trim().removePrefix("W/")
+      value == "*" || value == eTag
+    }
+  }
+
+  private fun copy(istream: InputStream, ostream: OutputStream, length: Long?) {
+    val buffer = ByteArray(BUFFER_SIZE)
+    var remaining = length ?: Long.MAX_VALUE
+    while (remaining > 0) {
+      val read = istream.read(buffer, 0, minOf(buffer.size.toLong(), remaining).toInt())
+      if (read < 0) {
+        break
+      }
+      ostream.write(buffer, 0, read)
+      remaining -= read
+    }
+  }
+
+  private const val BUFFER_SIZE = 64 * 1024
+}
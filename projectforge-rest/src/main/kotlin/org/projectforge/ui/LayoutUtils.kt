@@ -45,17 +45,18 @@ object LayoutUtils {
 
   @JvmStatic
   fun addCommonTranslations(translations: MutableMap<String, String>) {
-    addTranslations(
-      "calendar.today", // Used for date picker.
-      "cancel",
-      "finish", // Color picker
-      "save", // Color picker
-      "select.placeholder",
-      "yes",
-      translations = translations,
-    )
+    addTranslations(*COMMON_TRANSLATION_KEYS, translations = translations)
   }
 
+  private val COMMON_TRANSLATION_KEYS = arrayOf(
+    "calendar.today", // Used for date picker.
+    "cancel",
+    "finish", // Color picker
+    "save", // Color picker
+    "select.placeholder",
+    "yes",
+  )
+
   /**
    * Auto-detects max-length of input fields (by referring the @Column annotations of clazz) and
    * i18n-keys (by referring the [org.projectforge.common.anots.PropertyInfo] annotations of clazz).
@@ -64,7 +65,7 @@ object LayoutUtils {
    */
   @JvmStatic
   fun process(layout: UILayout): List<Any?> {
-    addCommonTranslations(layout.translations)
+    addCommonTranslations(layout)
     layout.postProcessPageMenu()
     val elements = processAllElements(layout, layout.getAllElements())
     var counter = 0
@@ -103,7 +104,7 @@ object LayoutUtils {
     process(layout)
     layout.addTranslations("search", "cancel", "save", "favorite.filter.addNew")
     addCommonTranslations(layout)
-    Favorites.addTranslations(layout.translations)
+    layout.addTranslations(*Favorites.TRANSLATION_KEYS)
     return layout
   }
 
@@ -229,7 +230,7 @@ object LayoutUtils {
   }
 
   private fun addCommonTranslations(layout: UILayout) {
-    addCommonTranslations(layout.translations)
+    layout.addTranslations(*COMMON_TRANSLATION_KEYS)
   }
 
   /**
@@ -23,8 +23,11 @@
 
 package org.projectforge.ui
 
+import com.fasterxml.jackson.annotation.JsonIgnore
+import org.projectforge.framework.i18n.I18nHelper
 import org.projectforge.framework.i18n.addTranslations
 import org.projectforge.framework.i18n.translate
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.menu.MenuItem
 import org.projectforge.rest.core.AbstractPagesRest
 import kotlin.reflect.KProperty
@@ -113,6 +116,22 @@ class UILayout(
    */
   val translations = mutableMapOf<String, String>()
 
+  /**
+   * If true, the client has the current translations bundle (see [org.projectforge.rest.TranslationsRest]), so
+   * translations of the bundle aren't added by [addTranslations] (they're neither resolved nor sent). Only translations
+   * not being part of the bundle (custom or parameterized ones) are sent. Decided by the rest layer per request, see
+   * [org.projectforge.rest.TranslationsRest.withClientTranslationsVersion].
+   */
+  @JsonIgnore
+  var omitBundleTranslations: Boolean = clientHasCurrentTranslations.get() == true
+
+  /**
+   * The version of the translations bundle of the logged-in-user's language (see
+   * [org.projectforge.rest.TranslationsRest]).
+   */
+  val translationsVersion: String
+    get() = I18nHelper.getTranslationsVersion(ThreadLocalUserContext.locale)
+
   /**
    * Name of the history back button or null, if now history back button should be shown (default).
    * Please use [enableHistoryBackButton] for enabling back button with localized button title.
@@ -137,7 +156,16 @@ class UILayout(
    * @return this for chaining.
    */
   fun addTranslations(vararg i18nKeys: String): UILayout {
-    addTranslations(*i18nKeys, translations = translations)
+    if (!omitBundleTranslations) {
+      addTranslations(*i18nKeys, translations = translations)
+      return this
+    }
+    val bundle = I18nHelper.getAllTranslations(ThreadLocalUserContext.locale)
+    i18nKeys.forEach { key ->
+      if (!bundle.containsKey(key)) {
+        translations[key] = translate(key)
+      }
+    }
     return this
   }
 
@@ -314,4 +342,12 @@ class UILayout(
   init {
     this.title = LayoutUtils.getLabelTransformation(title)
   }
+
+  companion object {
+    /**
+     * Default of [omitBundleTranslations] for layouts created by the current thread (see
+     * [org.projectforge.rest.TranslationsRest.withClientTranslationsVersion]).
+     */
+    internal val clientHasCurrentTranslations = ThreadLocal<Boolean>()
+  }
 }
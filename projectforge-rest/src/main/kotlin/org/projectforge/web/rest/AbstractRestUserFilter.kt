@@ -28,6 +28,7 @@ import org.projectforge.business.user.UserAuthenticationsService
 import org.projectforge.business.user.UserTokenType
 import org.projectforge.business.user.service.UserService
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.projectforge.rest.TranslationsRest
 import org.projectforge.rest.utils.RequestLog
 import org.projectforge.security.SecurityLogging
 import org.springframework.beans.factory.annotation.Autowired
@@ -87,7 +88,11 @@ abstract class AbstractRestUserFilter(val userTokenType: UserTokenType) : Filter
       response,
       userTokenType,
       authenticate = { authInfo -> authenticate(authInfo) },
-      doFilter = { -> chain.doFilter(request, response) }
+      doFilter = { ->
+        // The user's locale is known after authentication:
+        val clientVersion = (request as HttpServletRequest).getHeader(TranslationsRest.TRANSLATIONS_VERSION_HEADER)
+        TranslationsRest.withClientTranslationsVersion(clientVersion) { chain.doFilter(request, response) }
+      }
     )
   }
 
@@ -0,0 +1,82 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.rest.calendar
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class CalendarEventsCollectorTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var calendarEventsCollector: CalendarEventsCollector
+
+    @Test
+    fun lateSourcesTest() {
+        logon(TEST_USER)
+        val sourceTimeoutMillis = calendarEventsCollector.sourceTimeoutMillis
+        calendarEventsCollector.sourceTimeoutMillis = 200
+        try {
+            val slowSourceInterrupted = CountDownLatch(1)
+            val started = System.currentTimeMillis()
+            val result = calendarEventsCollector.collect(
+                listOf(
+                    CalendarEventsCollector.Source.TIMESHEETS to { events ->
+                        events.add(FullCalendarEvent(id = "timesheet"))
+                    },
+                    CalendarEventsCollector.Source.TEAMCALENDARS to { _ ->
+                        try {
+                            Thread.sleep(10_000) // Late source.
+                        } catch (ex: InterruptedException) {
+                            slowSourceInterrupted.countDown()
+                            throw ex
+                        }
+                    },
+                    CalendarEventsCollector.Source.BIRTHDAYS to { _ ->
+                        throw IllegalStateException("Failed source.")
+                    },
+                    CalendarEventsCollector.Source.HOLIDAYS to { events ->
+                        events.add(FullCalendarEvent(id = "holiday"))
+                    },
+                )
+            )
+            Assertions.assertTrue(System.currentTimeMillis() - started < 5_000, "Late source shouldn't block the result.")
+            // Partial result: events of the successful sources in the order of the sources.
+            Assertions.assertEquals(listOf("timesheet", "holiday"), result.events.map { it.id })
+            Assertions.assertEquals(
+                listOf(CalendarEventsCollector.Source.TEAMCALENDARS, CalendarEventsCollector.Source.BIRTHDAYS),
+                result.missingSources,
+            )
+            Assertions.assertTrue(
+                slowSourceInterrupted.await(5, TimeUnit.SECONDS),
+                "Late source should be cancelled (interrupted)."
+            )
+        } finally {
+            calendarEventsCollector.sourceTimeoutMillis = sourceTimeoutMillis
+        }
+    }
+}
@@ -25,11 +25,14 @@ package org.projectforge.rest.core
 
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
+import org.projectforge.framework.cache.AbstractCache
 import org.projectforge.framework.utils.NumberHelper
+import kotlin.concurrent.thread
 
 class AbstractSessionCacheTest {
-    class TestSessionCache: AbstractSessionCache<String>(expireTimeInMillis = 100, clearEntriesIntervalInMillis = TICKS_PER_DAY) {
+    class TestSessionCache(maxSize: Int = DEFAULT_MAX_SIZE, expireTimeInMillis: Long = 100): AbstractSessionCache<String>(expireTimeInMillis = expireTimeInMillis, clearEntriesIntervalInMillis = TICKS_PER_DAY, maxSize = maxSize) {
         override fun entryAsString(entry: String): String {
             return entry
         }
@@ -63,4 +66,41 @@ class AbstractSessionCacheTest {
         cache.refresh()
         assertEquals(1, cache.size, "Expired entry should be removed now.")
     }
+
+    @Test
+    fun maxSizeTest() {
+        val cache = TestSessionCache(maxSize = 3)
+        val sessionIds = (0..4).map { NumberHelper.getSecureRandomAlphanumeric(30) }
+        sessionIds.forEachIndexed { index, sessionId ->
+            cache.registerSessionData(sessionId, "$index")
+            Thread.sleep(2) // Different access times.
+        }
+        assertEquals(3, cache.size)
+        assertNull(cache.getSessionData(sessionIds[0]), "Least recently used entry should be evicted.")
+        assertNull(cache.getSessionData(sessionIds[1]), "Least recently used entry should be evicted.")
+        assertEquals("4", cache.getSessionData(sessionIds[4]))
+        val statistics = cache.statistics
+        assertEquals(3, statistics.size)
+        assertEquals(1, statistics.hits)
+        assertEquals(2, statistics.misses)
+        assertEquals(2, statistics.evictions)
+    }
+
+    @Test
+    fun concurrentEvictionTest() {
+        val cache = TestSessionCache(maxSize = 100, expireTimeInMillis = AbstractCache.TICKS_PER_HOUR)
+        val numberOfThreads = 8
+        val registrationsPerThread = 200
+        (1..numberOfThreads).map {
+            thread {
+                repeat(registrationsPerThread) {
+                    cache.registerSessionData(NumberHelper.getSecureRandomAlphanumeric(30), "$it")
+                }
+            }
+        }.forEach { it.join() }
+        val size = cache.size
+        assertTrue(size >= 90, "Evictions only down to the low-water mark expected, but size is $size.")
+        assertTrue(size <= 100 + numberOfThreads, "Size $size exceeds maximum size.")
+        assertEquals(numberOfThreads * registrationsPerThread - size, cache.statistics.evictions.toInt())
+    }
 }
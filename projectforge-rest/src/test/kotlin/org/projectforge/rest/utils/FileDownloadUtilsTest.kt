@@ -0,0 +1,132 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2024 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.rest.utils
+
+import jakarta.servlet.ServletOutputStream
+import jakarta.servlet.WriteListener
+import jakarta.servlet.http.HttpServletRequest
+import jakarta.servlet.http.HttpServletResponse
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.fail
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import org.springframework.http.HttpHeaders
+import java.io.ByteArrayOutputStream
+
+class FileDownloadUtilsTest {
+  @Test
+  fun parseRangeTest() {
+    assertEquals(0L..499L, FileDownloadUtils.parseRange("bytes=0-499", 1000))
+    assertEquals(500L..999L, FileDownloadUtils.parseRange("bytes=500-", 1000))
+    assertEquals(500L..999L, FileDownloadUtils.parseRange("bytes=500-5000", 1000))
+    assertEquals(900L..999L, FileDownloadUtils.parseRange("bytes=-100", 1000))
+    assertEquals(0L..999L, FileDownloadUtils.parseRange("bytes=-5000", 1000))
+    assertEquals(LongRange.EMPTY, FileDownloadUtils.parseRange("bytes=1000-", 1000))
+    assertEquals(LongRange.EMPTY, FileDownloadUtils.parseRange("bytes=-0", 1000))
+    assertNull(FileDownloadUtils.parseRange("bytes=0-10,20-30", 1000), "Multiple ranges not supported.")
+    assertNull(FileDownloadUtils.parseRange("bytes=10-5", 1000), "Invalid range.")
+    assertNull(FileDownloadUtils.parseRange("items=0-5", 1000), "Unsupported unit.")
+    assertNull(FileDownloadUtils.parseRange("bytes=a-b", 1000))
+  }
+
+  @Test
+  fun eTagTest() {
+    assertEquals("\"0123abcd\"", FileDownloadUtils.getETag("SHA256: 0123abcd"))
+    assertNull(FileDownloadUtils.getETag(null))
+    assertNull(FileDownloadUtils.getETag(""))
+    assertNull(FileDownloadUtils.getETag("..."))
+  }
+
+  @Test
+  fun rangeRequestTest() {
+    val content = "0123456789".toByteArray()
+    val request = mockRequest(HttpHeaders.RANGE to "bytes=2-5")
+    val out = ByteArrayOutputStream()
+    val response = mockResponse(out)
+    var openedAt: Long? = null
+    FileDownloadUtils.download(request, response, "test.txt", content.size.toLong(), CHECKSUM) { startPosition ->
+      openedAt = startPosition
+      content.inputStream(startPosition.toInt(), content.size - startPosition.toInt())
+    }
+    assertEquals(2L, openedAt)
+    Mockito.verify(response).status = HttpServletResponse.SC_PARTIAL_CONTENT
+    Mockito.verify(response).setHeader(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10")
+    Mockito.verify(response).setContentLengthLong(4L)
+    assertEquals("2345", out.toString())
+  }
+
+  @Test
+  fun rangeRequestWithOutdatedIfRangeTest() {
+    val content = "0123456789".toByteArray()
+    val request = mockRequest(HttpHeaders.RANGE to "bytes=2-5", HttpHeaders.IF_RANGE to "\"outdated\"")
+    val out = ByteArrayOutputStream()
+    val response = mockResponse(out)
+    FileDownloadUtils.download(request, response, "test.txt", content.size.toLong(), CHECKSUM) { content.inputStream() }
+    Mockito.verify(response).status = HttpServletResponse.SC_OK
+    assertEquals("0123456789", out.toString(), "ETag doesn't match If-Range, so the whole file is expected.")
+  }
+
+  @Test
+  fun ifNoneMatchTest() {
+    val request = mockRequest(HttpHeaders.IF_NONE_MATCH to "\"0123abcd\"")
+    val out = ByteArrayOutputStream()
+    val response = mockResponse(out)
+    FileDownloadUtils.download(request, response, "test.txt", 10L, CHECKSUM) {
+      fail("Content shouldn't be read for not modified files.")
+    }
+    Mockito.verify(response).setHeader(HttpHeaders.ETAG, "\"0123abcd\"")
+    Mockito.verify(response).status = HttpServletResponse.SC_NOT_MODIFIED
+    assertEquals(0, out.size())
+  }
+
+  private fun mockRequest(vararg headers: Pair<String, String>): HttpServletRequest {
+    val request = Mockito.mock(HttpServletRequest::class.java)
+    headers.forEach { (name, value) ->
+      Mockito.`when`(request.getHeader(name)).thenReturn(value)
+    }
+    return request
+  }
+
+  private fun mockResponse(out: ByteArrayOutputStream): HttpServletResponse {
+    val response = Mockito.mock(HttpServletResponse::class.java)
+    Mockito.`when`(response.outputStream).thenReturn(object : ServletOutputStream() {
+      override fun write(b: Int) {
+        out.write(b)
+      }
+
+      override fun isReady(): Boolean {
+        return true
+      }
+
+      override fun setWriteListener(writeListener: WriteListener?) {
+      }
+    })
+    return response
+  }
+
+  companion object {
+    private const val CHECKSUM = "SHA256: 0123abcd"
+  }
+}
@@ -27,11 +27,14 @@ import com.google.gson.GsonBuilder
 import org.junit.jupiter.api.Assertions.*
 import org.junit.jupiter.api.Test
 import org.mockito.Mockito
+import org.projectforge.framework.i18n.I18nHelper
 import org.projectforge.framework.i18n.translate
 import org.projectforge.framework.json.JsonValidator
 import org.projectforge.framework.persistence.api.MagicFilter
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.rest.AddressPagesRest
 import org.projectforge.rest.BookPagesRest
+import org.projectforge.rest.TranslationsRest
 import org.projectforge.rest.dto.Address
 import org.projectforge.rest.dto.Book
 import org.projectforge.business.test.AbstractTestBase
@@ -135,6 +138,36 @@ class UILayoutTest : AbstractTestBase() {
         assertEquals("PRIMARY", jsonValidator.get("actions[1].color")) // Gson doesn't know JsonProperty of Jackson.
     }
 
+    @Test
+    fun testTranslationsVersionHeader() {
+        logon(TEST_USER)
+        val locale = ThreadLocalUserContext.locale
+        val currentVersion = I18nHelper.getTranslationsVersion(locale)
+        val buildLayout = {
+            UILayout("book.title.edit").addTranslations("book.title", "cancel")
+                .addTranslation("custom.key", "Custom translation")
+        }
+        // No header given: all translations are sent.
+        var layout = TranslationsRest.withClientTranslationsVersion(null) { buildLayout() }
+        assertFalse(layout.omitBundleTranslations)
+        assertEquals(translate("book.title"), layout.translations["book.title"])
+        assertEquals(translate("cancel"), layout.translations["cancel"])
+        assertEquals("Custom translation", layout.translations["custom.key"])
+        // Outdated bundle of client: all translations are sent.
+        layout = TranslationsRest.withClientTranslationsVersion("outdated-$currentVersion") { buildLayout() }
+        assertFalse(layout.omitBundleTranslations)
+        assertEquals(3, layout.translations.size)
+        // Current bundle of client: only translations not being part of the bundle are sent.
+        layout = TranslationsRest.withClientTranslationsVersion(currentVersion) { buildLayout() }
+        assertTrue(layout.omitBundleTranslations)
+        assertEquals(currentVersion, layout.translationsVersion)
+        assertFalse(layout.translations.containsKey("book.title"))
+        assertFalse(layout.translations.containsKey("cancel"))
+        assertEquals("Custom translation", layout.translations["custom.key"])
+        // ThreadLocal is cleared after the request:
+        assertFalse(UILayout("book.title.edit").omitBundleTranslations)
+    }
+
     private fun findIndexed(jsonValidator: JsonValidator, field: String, path: String): Int {
         for (i in 0..7) {
             if (jsonValidator.get(path.replace("#idx#", "$i")) == field) {
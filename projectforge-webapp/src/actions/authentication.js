@@ -1,4 +1,5 @@
 import { getServiceURL, handleHTTPErrors } from '../utilities/rest';
+import { loadTranslations } from '../utilities/translations';
 
 export const USER_LOGIN_BEGIN = 'USER_LOGIN_BEGIN';
 export const USER_LOGIN_SUCCESS = 'USER_LOGIN_SUCCESS';
@@ -40,6 +41,8 @@ export const loadUserStatus = () => (dispatch) => {
         .then(handleHTTPErrors)
         .then((response) => response.json())
         .then(({ userData, systemData, alertMessage }) => {
+            // Layouts requested meanwhile contain all translations, so there's no need to wait:
+            loadTranslations(userData.translationsVersion);
             dispatch(userLoginSuccess(
                 userData,
                 systemData.version,
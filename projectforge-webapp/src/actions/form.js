@@ -1,6 +1,7 @@
 import fileDownload from 'js-file-download';
 import history from '../utilities/history';
 import { getServiceURL, handleHTTPErrors } from '../utilities/rest';
+import { addBundleTranslations, getTranslationsHeaders } from '../utilities/translations';
 import { loadUserStatus } from './authentication';
 import { addToast } from './toast';
 
@@ -273,10 +274,12 @@ export const loadFormPage = (category, id, url, params = {}) => (dispatch, getSt
         {
             method: 'GET',
             credentials: 'include',
+            headers: getTranslationsHeaders(),
         },
     )
         .then(handleHTTPErrors)
         .then((response) => response.json())
+        .then(addBundleTranslations)
         .then((json) => {
             const { targetType } = json;
             if (targetType) {
@@ -1,5 +1,6 @@
 import history from '../../utilities/history';
 import { fetchJsonPost, getObjectFromQuery, getServiceURL, handleHTTPErrors } from '../../utilities/rest';
+import { addBundleTranslations, getTranslationsHeaders } from '../../utilities/translations';
 
 export const LIST_DISMISS_ERROR = 'LIST_DISMISS_ERROR';
 export const LIST_SWITCH_CATEGORY = 'LIST_SWITCH_CATEGORY';
@@ -61,10 +62,12 @@ const initialCall = (category, dispatch) => {
         {
             method: 'GET',
             credentials: 'include',
+            headers: getTranslationsHeaders(),
         },
     )
         .then(handleHTTPErrors)
         .then((response) => response.json())
+        .then(addBundleTranslations)
         .then((json) => {
             const { targetType, url: redirectUrl } = json;
             if (targetType === 'REDIRECT' && redirectUrl) {
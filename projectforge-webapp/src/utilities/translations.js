@@ -0,0 +1,79 @@
+import { getServiceURL, handleHTTPErrors } from './rest';
+
+export const TRANSLATIONS_VERSION_HEADER = 'X-Translations-Version';
+
+// Bundle of all translations of the user's locale (rs/translations). It's loaded once and only
+// reloaded, if the server reports another version (e. g. after changing the user's locale).
+let bundle;
+let loading;
+
+export const loadTranslations = (version) => {
+    if (bundle && (!version || bundle.version === version)) {
+        return Promise.resolve(bundle);
+    }
+
+    if (!loading) {
+        loading = fetch(
+            getServiceURL('translations', version ? { version } : undefined),
+            {
+                method: 'GET',
+                credentials: 'include',
+                headers: {
+                    Accept: 'application/json',
+                },
+            },
+        )
+            .then(handleHTTPErrors)
+            .then((response) => response.json())
+            .then((json) => {
+                bundle = json;
+                loading = undefined;
+                return bundle;
+            })
+            // Without bundle, the layouts contain all translations, so nothing to do:
+            .catch(() => {
+                loading = undefined;
+                return bundle;
+            });
+    }
+
+    return loading;
+};
+
+// Headers for layout requests: the layouts of the server omit the translations of the bundle.
+export const getTranslationsHeaders = () => (
+    bundle ? { [TRANSLATIONS_VERSION_HEADER]: bundle.version } : {}
+);
+
+// Adds the translations of the bundle to the translations of the layout (json.ui), if the layout
+// was built for the version of the bundle. Otherwise the layout contains all translations and the
+// bundle is reloaded for the next requests.
+export const addBundleTranslations = (json) => {
+    const ui = json && json.ui;
+
+    if (!ui || !ui.translationsVersion) {
+        return json;
+    }
+
+    if (!bundle || bundle.version !== ui.translationsVersion) {
+        loadTranslations(ui.translationsVersion);
+        return json;
+    }
+
+    return {
+        ...json,
+        ui: {
+            ...ui,
+            translations: {
+                ...bundle.translations,
+                ...ui.translations,
+            },
+        },
+    };
+};
+
+// For tests only.
+export const resetTranslations = () => {
+    bundle = undefined;
+    loading = undefined;
+};
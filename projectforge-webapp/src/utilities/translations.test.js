@@ -0,0 +1,59 @@
+import fetchMock from 'fetch-mock/es5/client';
+import {
+    addBundleTranslations,
+    getTranslationsHeaders,
+    loadTranslations,
+    resetTranslations,
+} from './translations';
+
+describe('translations bundle', () => {
+    const bundle = {
+        locale: 'en',
+        version: 'v1',
+        translations: {
+            cancel: 'Cancel',
+            save: 'Save',
+        },
+    };
+
+    afterEach(() => {
+        fetchMock.restore();
+        resetTranslations();
+    });
+
+    it('layouts unchanged without bundle', () => {
+        fetchMock.getOnce('/rs/translations?version=v1', bundle);
+        const json = { ui: { translationsVersion: 'v1', translations: { save: 'Save' } } };
+
+        expect(getTranslationsHeaders())
+            .toEqual({});
+        expect(addBundleTranslations(json))
+            .toBe(json);
+    });
+
+    it('bundle translations added to layouts of the same version', () => {
+        fetchMock.getOnce('/rs/translations?version=v1', bundle);
+
+        return loadTranslations('v1')
+            .then(() => {
+                expect(getTranslationsHeaders())
+                    .toEqual({ 'X-Translations-Version': 'v1' });
+                expect(addBundleTranslations({
+                    ui: {
+                        translationsVersion: 'v1',
+                        translations: { custom: 'Custom' },
+                    },
+                }).ui.translations)
+                    .toEqual({
+                        cancel: 'Cancel',
+                        save: 'Save',
+                        custom: 'Custom',
+                    });
+                // Layout of another version contains all translations:
+                const json = { ui: { translationsVersion: 'v2', translations: { save: 'Sichern' } } };
+                fetchMock.getOnce('/rs/translations?version=v2', { ...bundle, version: 'v2' });
+                expect(addBundleTranslations(json))
+                    .toBe(json);
+            });
+    });
+});
@@ -51,6 +51,11 @@ public class GanttChartEditPage extends AbstractEditPage<GanttChartDO, GanttChar
 
     GanttChartData ganttChartData;
 
+    /**
+     * Remembers the last calculation, so only the modified Gantt objects and their dependents are recalculated on redraw.
+     */
+    private transient GanttScheduler ganttScheduler;
+
     private Component ganttImage;
 
     public GanttChartEditPage(final PageParameters parameters) {
@@ -128,9 +133,15 @@ public class GanttChartEditPage extends AbstractEditPage<GanttChartDO, GanttChar
         if (ganttChartData == null) {
             return null;
         }
-        ganttChartData.getRootObject().sortChildren();
-        final GanttChart ganttChart = new GanttChart(ganttChartData.getRootObject(), getGanttChartStyle(), getSettings(), getData().getName());
-        // chart.getRootObject().recalculate();
+        final GanttTask rootObject = ganttChartData.getRootObject();
+        if (ganttScheduler == null || ganttScheduler.getRootNode() != rootObject) {
+            ganttScheduler = new GanttScheduler(rootObject);
+        }
+        // Calculate before sorting, the children are sorted by their calculated dates:
+        ganttScheduler.recalculateModified();
+        rootObject.sortChildren();
+        final GanttChart ganttChart = new GanttChart(rootObject, getGanttChartStyle(), getSettings(), getData().getName());
+        ganttChart.setScheduler(ganttScheduler);
         return ganttChart;
     }
 